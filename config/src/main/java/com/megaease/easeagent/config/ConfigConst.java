@@ -69,6 +69,27 @@ public interface ConfigConst {
         String TRACE_OUTPUT_MESSAGE_TIMEOUT = join(TRACE_OUTPUT, "messageTimeout");
         String TRACE_OUTPUT_QUEUED_MAX_SPANS = join(TRACE_OUTPUT, "queuedMaxSpans");
         String TRACE_OUTPUT_QUEUED_MAX_SIZE = join(TRACE_OUTPUT, "queuedMaxSize");
+        String TRACE_OUTPUT_ENCODING = join(TRACE_OUTPUT, "encoding");
+
+        String TRACE_TAIL_SAMPLING = join(TRACE, "tailSampling");
+        String TRACE_TAIL_SAMPLING_ENABLED = join(TRACE_TAIL_SAMPLING, "enabled");
+        String TRACE_TAIL_SAMPLING_LATENCY_THRESHOLD = join(TRACE_TAIL_SAMPLING, "latencyThreshold");
+        String TRACE_TAIL_SAMPLING_BASE_RATE = join(TRACE_TAIL_SAMPLING, "baseRate");
+        String TRACE_TAIL_SAMPLING_MAX_TRACES = join(TRACE_TAIL_SAMPLING, "maxTraces");
+        String TRACE_TAIL_SAMPLING_MAX_SPANS = join(TRACE_TAIL_SAMPLING, "maxSpans");
+        String TRACE_TAIL_SAMPLING_TIMEOUT = join(TRACE_TAIL_SAMPLING, "timeout");
+
+        String TRACE_AGGREGATION = join(TRACE, "aggregation");
+        String TRACE_AGGREGATION_ENABLED = join(TRACE_AGGREGATION, "enabled");
+        String TRACE_AGGREGATION_THRESHOLD = join(TRACE_AGGREGATION, "threshold");
+        String TRACE_AGGREGATION_MAX_PARENTS = join(TRACE_AGGREGATION, "maxParents");
+        String TRACE_AGGREGATION_TIMEOUT = join(TRACE_AGGREGATION, "timeout");
+
+        String TRACE_ADAPTIVE_SAMPLING = join(TRACE, "adaptiveSampling");
+        String TRACE_ADAPTIVE_SAMPLING_ENABLED = join(TRACE_ADAPTIVE_SAMPLING, "enabled");
+        String TRACE_ADAPTIVE_SAMPLING_FLOOR = join(TRACE_ADAPTIVE_SAMPLING, "floor");
+        String TRACE_ADAPTIVE_SAMPLING_CEILING = join(TRACE_ADAPTIVE_SAMPLING, "ceiling");
+        String TRACE_ADAPTIVE_SAMPLING_INTERVAL = join(TRACE_ADAPTIVE_SAMPLING, "interval");
 
         String KEY_METRICS_ACCESS = "access";
         String KEY_METRICS_REQUEST = "request";
@@ -79,6 +100,7 @@ public interface ConfigConst {
         String KEY_METRICS_CACHE = "redis";
         String KEY_METRICS_JVM_GC = "jvmGc";
         String KEY_METRICS_JVM_MEMORY = "jvmMemory";
+        String KEY_METRICS_JVM_RUNTIME = "jvmRuntime";
         String KEY_METRICS_MD5_DICTIONARY = "md5Dictionary";
 
         String KEY_TRACE_REQUEST = "request";
@@ -93,5 +115,6 @@ public interface ConfigConst {
         String KEY_COMM_INTERVAL = "interval";
         String KEY_COMM_TOPIC = "topic";
         String KEY_COMM_APPEND_TYPE = "appendType";
+        String KEY_COMM_HISTOGRAM = "histogram";
     }
 }
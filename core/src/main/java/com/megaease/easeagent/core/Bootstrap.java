@@ -22,13 +22,17 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.megaease.easeagent.config.*;
+import com.megaease.easeagent.core.interceptor.InterceptorOverhead;
 import com.megaease.easeagent.core.utils.JsonUtil;
+import com.megaease.easeagent.core.utils.ThreadResourceUsage;
 import com.megaease.easeagent.core.utils.WrappedConfigManager;
 import com.megaease.easeagent.httpserver.AgentHttpHandler;
 import com.megaease.easeagent.httpserver.AgentHttpHandlerProvider;
 import com.megaease.easeagent.httpserver.AgentHttpServer;
 import com.megaease.easeagent.report.AgentReport;
 import com.megaease.easeagent.report.AgentReportAware;
+import com.megaease.easeagent.report.telemetry.AgentFlightRecorder;
+import com.megaease.easeagent.report.telemetry.AgentTelemetry;
 import fi.iki.elonen.NanoHTTPD;
 import fi.iki.elonen.router.RouterNanoHTTPD;
 import lombok.SneakyThrows;
@@ -72,6 +76,20 @@ public class Bootstrap {
 
     private static final String AGENT_MIDDLEWARE_UPDATE = "easeagent.middleware.update";
 
+    private static final String AGENT_WARM_UP_ENABLED_KEY = "easeagent.warmUp.enabled";
+
+    private static final String AGENT_WARM_UP_DELAY_KEY = "easeagent.warmUp.delay";
+
+    private static final int DEF_AGENT_WARM_UP_DELAY = 10;
+
+    private static final String AGENT_OVERHEAD_SAMPLE_RATIO_KEY = "easeagent.overhead.sampleRatio";
+
+    private static final String AGENT_JFR_ENABLED_KEY = "easeagent.jfr.enabled";
+
+    private static final String AGENT_THREAD_USAGE_ENABLED_KEY = "easeagent.threadUsage.enabled";
+
+    private static final String AGENT_THREAD_USAGE_SAMPLE_RATIO_KEY = "easeagent.threadUsage.sampleRatio";
+
     private static final int DEF_AGENT_SERVER_PORT = 9900;
 
     private static WrappedConfigManager wrappedConfigManager;
@@ -89,6 +107,11 @@ public class Bootstrap {
             LOGGER.debug("Loaded conf:\n{}", display);
         }
         registerMBeans(conf);
+        registerLoaderTelemetry(Bootstrap.class.getClassLoader());
+        ConfigUtils.bindProp(AGENT_OVERHEAD_SAMPLE_RATIO_KEY, conf, Config::getDouble, InterceptorOverhead.INSTANCE::setSampleRatio, 0.0);
+        ConfigUtils.bindProp(AGENT_JFR_ENABLED_KEY, conf, Config::getBoolean, AgentFlightRecorder::setEnabled, false);
+        ConfigUtils.bindProp(AGENT_THREAD_USAGE_SAMPLE_RATIO_KEY, conf, Config::getDouble, ThreadResourceUsage::setSampleRatio, 1.0);
+        ConfigUtils.bindProp(AGENT_THREAD_USAGE_ENABLED_KEY, conf, Config::getBoolean, ThreadResourceUsage::setEnabled, false);
 
         Integer port = conf.getInt(AGENT_SERVER_PORT_KEY);
         if (port == null) {
@@ -135,10 +158,15 @@ public class Bootstrap {
         LOGGER.info("AgentBuilder use time: {}", (System.currentTimeMillis() - buildBegin));
 
         final AgentReport agentReport = AgentReport.create(conf);
-        builder = define(transformations, scoped(providers, conf, agentReport), builder, conf, agentReport);
+        final TransformationWarmUp warmUp = conf.getBoolean(AGENT_WARM_UP_ENABLED_KEY) ? new TransformationWarmUp() : null;
+        builder = define(transformations, scoped(providers, conf, agentReport), builder, conf, agentReport, warmUp);
         long installBegin = System.currentTimeMillis();
         builder.installOn(inst);
         LOGGER.info("installBegin use time: {}", (System.currentTimeMillis() - installBegin));
+        if (warmUp != null) {
+            Integer delay = conf.getInt(AGENT_WARM_UP_DELAY_KEY);
+            warmUp.start(inst, delay == null ? DEF_AGENT_WARM_UP_DELAY : delay);
+        }
         agentHttpServer.addHttpRoutes(AGENT_HTTP_HANDLER_LIST_AFTER_PROVIDER);
         LOGGER.info("Initialization has took {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
     }
@@ -153,6 +181,34 @@ public class Bootstrap {
         LOGGER.info("Register {} as MBean {}, use time: {}", conf.getClass().getName(), mxbeanName, (System.currentTimeMillis() - begin));
     }
 
+    /**
+     * Export counters of the agent class loader, read by reflection since it is defined by the loader module.
+     */
+    static void registerLoaderTelemetry(ClassLoader loader) {
+        registerLoaderCounter(loader, "getHits", "loader_resolved_hits",
+                "Application classes resolved by the cache of the agent class loader.");
+        registerLoaderCounter(loader, "getNegativeHits", "loader_negative_hits",
+                "Class names refused by the cache of missing names of the agent class loader.");
+        registerLoaderCounter(loader, "getMisses", "loader_misses",
+                "Class names the agent class loader searched application class loaders for.");
+    }
+
+    private static void registerLoaderCounter(ClassLoader loader, String getter, String name, String help) {
+        final Method method;
+        try {
+            method = loader.getClass().getMethod(getter);
+        } catch (NoSuchMethodException e) {
+            return;
+        }
+        AgentTelemetry.counter(name, help, () -> {
+            try {
+                return (long) method.invoke(loader);
+            } catch (Exception e) {
+                return 0L;
+            }
+        });
+    }
+
     private static Map<Class<?>, Iterable<QualifiedBean>> scoped(Iterable<Class<?>> providers, final Configs conf, final AgentReport agentReport) {
         return ImmutableMap.copyOf(Maps.transformValues(
                 from(providers).uniqueIndex(new Function<Class<?>, Class<?>>() {
@@ -172,8 +228,12 @@ public class Bootstrap {
         return isBootstrapClassLoader().or(is(Bootstrap.class.getClassLoader()));
     }
 
+    /**
+     * @param warmUp collects the type matchers to be warmed up, or null if warm-up is disabled
+     */
     private static AgentBuilder define(Iterable<Class<? extends Transformation>> transformations,
-                                       Map<Class<?>, Iterable<QualifiedBean>> scopedBeans, AgentBuilder ab, Configs conf, AgentReport report) {
+                                       Map<Class<?>, Iterable<QualifiedBean>> scopedBeans, AgentBuilder ab, Configs conf, AgentReport report,
+                                       TransformationWarmUp warmUp) {
         long begin = System.currentTimeMillis();
         for (Class<? extends Transformation> tc : transformations) {
             final Injection.Provider ann = tc.getAnnotation(Injection.Provider.class);
@@ -183,6 +243,9 @@ public class Bootstrap {
             for (Map.Entry<ElementMatcher<? super TypeDescription>, Iterable<Definition.Transformer>> entry :
                     newInstance(tc, conf, report).define(Definition.Default.EMPTY).asMap().entrySet()) {
                 ab = ab.type(entry.getKey()).transform(compound(entry.getValue(), register));
+                if (warmUp != null) {
+                    warmUp.collect(entry.getKey());
+                }
             }
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("Defined {}", tc);
@@ -252,6 +315,7 @@ public class Bootstrap {
         }
         AGENT_HTTP_HANDLER_LIST_ON_INIT.add(new ServiceUpdateAgentHttpHandler());
         AGENT_HTTP_HANDLER_LIST_ON_INIT.add(new CanaryUpdateAgentHttpHandler());
+        AGENT_HTTP_HANDLER_LIST_ON_INIT.add(new InterceptorOverheadAgentHttpHandler());
         return configs;
     }
 
@@ -285,6 +349,21 @@ public class Bootstrap {
         }
     }
 
+    public static class InterceptorOverheadAgentHttpHandler extends AgentHttpHandler {
+        @Override
+        public String getPath() {
+            return "/interceptor-overhead";
+        }
+
+        @Override
+        public NanoHTTPD.Response process(RouterNanoHTTPD.UriResource uriResource, Map<String, String> urlParams, NanoHTTPD.IHTTPSession session) {
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("sampleRatio", InterceptorOverhead.INSTANCE.getSampleRatio());
+            result.put("interceptors", InterceptorOverhead.INSTANCE.snapshot());
+            return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK, AgentHttpServer.JSON_TYPE, JsonUtil.toJson(result));
+        }
+    }
+
 //    public static class MiddlewareConfigChangeAgentHttpHandler extends AgentHttpHandler {
 //        @Override
 //        public String getPath() {
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.core;
+
+import net.bytebuddy.matcher.ElementMatcher;
+import net.bytebuddy.matcher.HasSuperClassMatcher;
+import net.bytebuddy.matcher.HasSuperTypeMatcher;
+import net.bytebuddy.matcher.StringMatcher;
+import net.bytebuddy.matcher.StringSetMatcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the types named in the matchers of transformations in a low priority background thread, so that
+ * weaving and registering advices of them would not happen on the first request of application.
+ * <p>
+ * Only types matched by their own names, i.e. {@code named} and {@code namedOneOf}, are warmed up. Names
+ * under {@code hasSuperType} or {@code hasSuperClass} are supertypes of the instrumented types, which are
+ * loaded already whenever any of their subtypes is.
+ */
+class TransformationWarmUp {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransformationWarmUp.class);
+
+    private final Set<String> typeNames = new TreeSet<>();
+
+    void collect(ElementMatcher<?> matcher) {
+        collect(matcher, typeNames, Collections.newSetFromMap(new IdentityHashMap<>()));
+    }
+
+    Set<String> getTypeNames() {
+        return Collections.unmodifiableSet(typeNames);
+    }
+
+    void start(Instrumentation inst, long delaySeconds) {
+        final Thread thread = new AgentThreadFactory().newThread(() -> {
+            try {
+                TimeUnit.SECONDS.sleep(delaySeconds);
+                warmUp(inst);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable e) {
+                LOGGER.warn("warm up transformations error.", e);
+            }
+        });
+        thread.setName("easeagent-warm-up");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    void warmUp(Instrumentation inst) {
+        final long begin = System.currentTimeMillis();
+        int loaded = 0;
+        for (ClassLoader loader : applicationLoaders(inst)) {
+            for (String name : typeNames) {
+                if (loader.getResource(name.replace('.', '/') + ".class") == null) continue;
+                try {
+                    Class.forName(name, false, loader);
+                    loaded++;
+                } catch (Throwable ignored) {
+                    // Missing dependencies of the type, it would never be loaded by application either
+                }
+            }
+        }
+        LOGGER.info("warm up {} types use time: {}", loaded, (System.currentTimeMillis() - begin));
+    }
+
+    private Set<ClassLoader> applicationLoaders(Instrumentation inst) {
+        final ClassLoader agent = getClass().getClassLoader();
+        final Set<ClassLoader> loaders = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Class<?> aClass : inst.getAllLoadedClasses()) {
+            final ClassLoader loader = aClass.getClassLoader();
+            if (loader != null && loader != agent) {
+                loaders.add(loader);
+            }
+        }
+        return loaders;
+    }
+
+    /**
+     * Matchers of ByteBuddy keep no public accessor of what they match, so walk through their fields to find
+     * the fully matched names, e.g. {@code named} and {@code namedOneOf}.
+     */
+    private static void collect(Object matcher, Set<String> names, Set<Object> visited) {
+        if (matcher == null || !visited.add(matcher)) {
+            return;
+        }
+        if (matcher instanceof HasSuperTypeMatcher || matcher instanceof HasSuperClassMatcher) {
+            return;
+        }
+        if (matcher instanceof StringMatcher) {
+            final Object value = read(matcher, "value");
+            if (read(matcher, "mode") == StringMatcher.Mode.EQUALS_FULLY && value instanceof String) {
+                names.add((String) value);
+            }
+            return;
+        }
+        if (matcher instanceof StringSetMatcher) {
+            final Object values = read(matcher, "values");
+            if (values instanceof Set) {
+                for (Object value : (Set<?>) values) {
+                    names.add(String.valueOf(value));
+                }
+            }
+            return;
+        }
+        for (Class<?> c = matcher.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) continue;
+                final Object value = read(matcher, field);
+                if (value instanceof ElementMatcher) {
+                    collect(value, names, visited);
+                } else if (value instanceof Iterable) {
+                    for (Object element : (Iterable<?>) value) {
+                        if (element instanceof ElementMatcher) {
+                            collect(element, names, visited);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static Object read(Object target, String fieldName) {
+        try {
+            return read(target, target.getClass().getDeclaredField(fieldName));
+        } catch (NoSuchFieldException e) {
+            return null;
+        }
+    }
+
+    private static Object read(Object target, Field field) {
+        try {
+            field.setAccessible(true);
+            return field.get(target);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -34,7 +34,14 @@ public class AgentCoreSubscriber<T> implements CoreSubscriber<T> {
     private final AgentInterceptorChainInvoker chainInvoker;
     private final Map<Object, Object> context;
     private final boolean newInterceptorChain;
-    private final List<T> results = new ArrayList<>();
+    /**
+     * Chain notified of elements, which is not the one passing the before/after flow.
+     */
+    private final AgentInterceptorChain signalChain;
+    /**
+     * Elements emitted, null unless an interceptor asks for them as the return value.
+     */
+    private final List<T> results;
 
     public AgentCoreSubscriber(CoreSubscriber<T> actual, MethodInfo methodInfo, AgentInterceptorChain.Builder chainBuilder, AgentInterceptorChainInvoker chainInvoker, Map<Object, Object> context) {
         this(actual, methodInfo, chainBuilder, chainInvoker, context, false);
@@ -47,6 +54,8 @@ public class AgentCoreSubscriber<T> implements CoreSubscriber<T> {
         this.chainInvoker = chainInvoker;
         this.context = context;
         this.newInterceptorChain = newInterceptorChain;
+        this.signalChain = chainBuilder == null ? null : chainBuilder.build();
+        this.results = signalChain != null && signalChain.materializeResults() ? new ArrayList<>() : null;
     }
 
     @Nonnull
@@ -62,8 +71,11 @@ public class AgentCoreSubscriber<T> implements CoreSubscriber<T> {
 
     @Override
     public void onNext(T t) {
+        this.chainInvoker.doOnNext(signalChain, methodInfo, context, t);
+        if (results != null) {
+            results.add(t);
+        }
         actual.onNext(t);
-        results.add(t);
     }
 
     @Override
@@ -76,7 +88,9 @@ public class AgentCoreSubscriber<T> implements CoreSubscriber<T> {
     @Override
     public void onComplete() {
         actual.onComplete();
-        methodInfo.setRetValue(results);
+        if (results != null) {
+            methodInfo.setRetValue(results);
+        }
         this.chainInvoker.doAfter(this.chainBuilder, methodInfo, context, newInterceptorChain);
     }
 }
@@ -27,6 +27,19 @@ public interface AgentInterceptorChain {
 
     void skipBegin();
 
+    /**
+     * Notify the {@link ReactiveAgentInterceptor}s in chain of an element emitted by the returned publisher.
+     */
+    default void onNext(MethodInfo methodInfo, Map<Object, Object> context, Object element) {
+    }
+
+    /**
+     * @return true if any interceptor in chain asks for all elements emitted as the return value
+     */
+    default boolean materializeResults() {
+        return false;
+    }
+
     interface Builder {
 
         Builder addInterceptor(AgentInterceptor agentInterceptor);
@@ -18,6 +18,7 @@
 package com.megaease.easeagent.core.interceptor;
 
 import com.megaease.easeagent.core.utils.ContextUtils;
+import com.megaease.easeagent.report.telemetry.AgentFlightRecorder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.time.DateFormatUtils;
 
@@ -54,6 +55,7 @@ public class AgentInterceptorChainInvoker {
             context.put(BEFORE_BEGIN_TIME_KEY, beginTime);
         } catch (Throwable e) {
             log.warn("interceptorChain doBefore error.", e);
+            AgentFlightRecorder.interceptorError("before", methodInfo.getInvoker(), methodInfo.getMethod(), e);
         }
     }
 
@@ -80,10 +82,23 @@ public class AgentInterceptorChainInvoker {
             return result;
         } catch (Throwable e) {
             log.warn("interceptorChain doAfter error.", e);
+            AgentFlightRecorder.interceptorError("after", methodInfo.getInvoker(), methodInfo.getMethod(), e);
             return methodInfo.getRetValue();
         }
     }
 
+    public void doOnNext(AgentInterceptorChain interceptorChain, MethodInfo methodInfo, Map<Object, Object> context, Object element) {
+        if (interceptorChain == null) {
+            return;
+        }
+        try {
+            interceptorChain.onNext(methodInfo, context, element);
+        } catch (Throwable e) {
+            log.warn("interceptorChain onNext error.", e);
+            AgentFlightRecorder.interceptorError("onNext", methodInfo.getInvoker(), methodInfo.getMethod(), e);
+        }
+    }
+
     private void logTime(MethodInfo methodInfo, Map<Object, Object> context, long beginTime4After) {
         if (!logElapsedTime) {
             return;
@@ -27,8 +27,19 @@ public class DefaultAgentInterceptorChain implements AgentInterceptorChain {
 
     private int pos = 0;
 
+    /**
+     * Whether time of each interceptor is recorded into {@link InterceptorOverhead}, decided once per chain.
+     */
+    private final boolean timed;
+
+    /**
+     * Nanoseconds spent in the nested calls of chain, which are excluded from the time of the calling interceptor.
+     */
+    private long nested;
+
     public DefaultAgentInterceptorChain(List<AgentInterceptor> agentInterceptors) {
         this.agentInterceptors = agentInterceptors;
+        this.timed = InterceptorOverhead.INSTANCE.sample();
     }
 
     @Override
@@ -37,7 +48,17 @@ public class DefaultAgentInterceptorChain implements AgentInterceptorChain {
             return;
         }
         AgentInterceptor interceptor = this.agentInterceptors.get(pos++);
-        interceptor.before(methodInfo, context, this);
+        if (!timed) {
+            interceptor.before(methodInfo, context, this);
+            return;
+        }
+        final long outer = nested;
+        final long begin = System.nanoTime();
+        try {
+            interceptor.before(methodInfo, context, this);
+        } finally {
+            exit(interceptor, true, outer, begin);
+        }
     }
 
     @Override
@@ -47,7 +68,23 @@ public class DefaultAgentInterceptorChain implements AgentInterceptorChain {
             return methodInfo.getRetValue();
         }
         AgentInterceptor interceptor = this.agentInterceptors.get(pos);
-        return interceptor.after(methodInfo, context, this);
+        if (!timed) {
+            return interceptor.after(methodInfo, context, this);
+        }
+        final long outer = nested;
+        final long begin = System.nanoTime();
+        try {
+            return interceptor.after(methodInfo, context, this);
+        } finally {
+            exit(interceptor, false, outer, begin);
+        }
+    }
+
+    private void exit(AgentInterceptor interceptor, boolean before, long outer, long begin) {
+        final long elapsed = System.nanoTime() - begin;
+        InterceptorOverhead.INSTANCE.record(interceptor, before, elapsed - (nested - outer));
+        // The recording is excluded from the calling interceptor too
+        nested = outer + System.nanoTime() - begin;
     }
 
     @Override
@@ -55,6 +92,25 @@ public class DefaultAgentInterceptorChain implements AgentInterceptorChain {
         this.pos = this.agentInterceptors.size();
     }
 
+    @Override
+    public void onNext(MethodInfo methodInfo, Map<Object, Object> context, Object element) {
+        for (AgentInterceptor interceptor : this.agentInterceptors) {
+            if (interceptor instanceof ReactiveAgentInterceptor) {
+                ((ReactiveAgentInterceptor) interceptor).onNext(methodInfo, context, element);
+            }
+        }
+    }
+
+    @Override
+    public boolean materializeResults() {
+        for (AgentInterceptor interceptor : this.agentInterceptors) {
+            if (interceptor instanceof ReactiveAgentInterceptor && ((ReactiveAgentInterceptor) interceptor).materializeResults()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static class Builder implements AgentInterceptorChain.Builder {
 
         private final List<AgentInterceptor> list = new ArrayList<>();
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.core.interceptor;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Sampled time spent in {@link AgentInterceptor#before} and {@link AgentInterceptor#after} of each interceptor,
+ * excluding the interceptors after it in chain. It is disabled until a positive sample ratio is set.
+ */
+public class InterceptorOverhead {
+    public static final InterceptorOverhead INSTANCE = new InterceptorOverhead();
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final Map<Class<?>, NanoHistogram[]> histograms = new ConcurrentHashMap<>();
+
+    private volatile double sampleRatio;
+
+    public double getSampleRatio() {
+        return sampleRatio;
+    }
+
+    /**
+     * @param sampleRatio the ratio of chain invocations timed, 0 disables timing
+     */
+    public void setSampleRatio(double sampleRatio) {
+        this.sampleRatio = Math.max(0, Math.min(1, sampleRatio));
+    }
+
+    /**
+     * @return true if the chain invocation should be timed
+     */
+    boolean sample() {
+        final double ratio = this.sampleRatio;
+        return ratio > 0 && (ratio >= 1 || ThreadLocalRandom.current().nextDouble() < ratio);
+    }
+
+    void record(AgentInterceptor interceptor, boolean before, long nanos) {
+        NanoHistogram[] pair = histograms.get(interceptor.getClass());
+        if (pair == null) {
+            pair = histograms.computeIfAbsent(interceptor.getClass(), k -> new NanoHistogram[]{new NanoHistogram(), new NanoHistogram()});
+        }
+        pair[before ? 0 : 1].record(nanos);
+    }
+
+    public void reset() {
+        histograms.clear();
+    }
+
+    /**
+     * @return statistics of each interceptor and phase, the most expensive in total first
+     */
+    public List<Map<String, Object>> snapshot() {
+        final List<Map<String, Object>> list = new ArrayList<>();
+        for (Map.Entry<Class<?>, NanoHistogram[]> entry : histograms.entrySet()) {
+            list.add(statistics(entry.getKey(), "before", entry.getValue()[0]));
+            list.add(statistics(entry.getKey(), "after", entry.getValue()[1]));
+        }
+        list.removeIf(m -> (Long) m.get("count") == 0);
+        list.sort(Comparator.comparing((Map<String, Object> m) -> (Long) m.get("totalNanos")).reversed());
+        return list;
+    }
+
+    private static Map<String, Object> statistics(Class<?> interceptor, String phase, NanoHistogram histogram) {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("interceptor", interceptor.getName());
+        map.put("phase", phase);
+        map.put("count", histogram.getCount());
+        map.put("totalNanos", histogram.getTotal());
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            map.put(PERCENTILE_NAMES[i], histogram.getValueAtPercentile(PERCENTILES[i]));
+        }
+        map.put("max", histogram.getMax());
+        return map;
+    }
+}
@@ -17,5 +17,28 @@
 
 package com.megaease.easeagent.core.interceptor;
 
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interceptor of a method returning a reactive publisher, which is told of each element as it is emitted.
+ * The terminal signal goes through {@link #after} as usual, with the error as {@link MethodInfo#getThrowable()}.
+ */
 public interface ReactiveAgentInterceptor extends AgentInterceptor {
+
+    /**
+     * @param methodInfo instrumented method info
+     * @param context    Interceptor can pass data, method `after` of interceptor can receive context data
+     * @param element    The element emitted, before it is passed to the downstream
+     */
+    default void onNext(MethodInfo methodInfo, Map<Object, Object> context, Object element) {
+    }
+
+    /**
+     * @return true if {@link MethodInfo#getRetValue()} should be a {@link List} of all elements emitted on completion.
+     * The elements are buffered until then, so it should only be asked for publishers of few elements such as a Mono.
+     */
+    default boolean materializeResults() {
+        return false;
+    }
 }
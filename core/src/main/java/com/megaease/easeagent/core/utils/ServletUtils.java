@@ -20,8 +20,10 @@ package com.megaease.easeagent.core.utils;
 import lombok.SneakyThrows;
 
 import javax.servlet.http.HttpServletRequest;
+import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.*;
+import java.util.function.BiConsumer;
 
 public class ServletUtils {
 
@@ -80,6 +82,41 @@ public class ServletUtils {
         return map;
     }
 
+    /**
+     * Pass each name and value of query string to consumer in order, decoded the same as {@link #getQueries}
+     * but without collecting them.
+     */
+    @SneakyThrows
+    public static void forEachQuery(String queryString, BiConsumer<String, String> consumer) {
+        if (queryString == null || queryString.isEmpty()) {
+            return;
+        }
+        int end = queryString.length();
+        // Trailing empty pairs are dropped like String.split
+        while (end > 0 && queryString.charAt(end - 1) == '&') {
+            end--;
+        }
+        for (int start = 0; start < end; ) {
+            int next = queryString.indexOf('&', start);
+            if (next < 0 || next > end) {
+                next = end;
+            }
+            int idx = queryString.indexOf('=', start);
+            if (idx > start && idx < next) {
+                String key = decode(queryString.substring(start, idx));
+                String value = next > idx + 1 ? decode(queryString.substring(idx + 1, next)) : null;
+                consumer.accept(key, value);
+            } else {
+                consumer.accept(queryString.substring(start, next), null);
+            }
+            start = next + 1;
+        }
+    }
+
+    private static String decode(String s) throws UnsupportedEncodingException {
+        return s.indexOf('%') < 0 && s.indexOf('+') < 0 ? s : URLDecoder.decode(s, "UTF-8");
+    }
+
     public static Map<String, String> getQueries4SingleValue(HttpServletRequest httpServletRequest) {
         Map<String, List<String>> map = getQueries(httpServletRequest);
         Map<String, String> singleValueMap = new HashMap<>();
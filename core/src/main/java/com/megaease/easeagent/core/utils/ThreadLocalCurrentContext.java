@@ -60,7 +60,10 @@ public class ThreadLocalCurrentContext {
         final Context ctx = get();
         if (ctx != null) {
             for (String one : names) {
-                consumer.accept(one, ctx.get(one));
+                final String value = ctx.get(one);
+                if (value != null) {
+                    consumer.accept(one, value);
+                }
             }
         }
     }
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.core.utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * CPU time and heap bytes allocated by the thread serving a request, read from the per-thread counters of
+ * {@link ThreadMXBean}, unlike the wall clock time of a request they tell CPU bound requests from those
+ * blocked on I/O.
+ * <p>
+ * It is kept in the context of interceptor chain, so that interceptors of the same request share one
+ * measurement. Requests finished on another thread than the one began, e.g. asynchronous servlets, are not
+ * measured. It is disabled by default, and only a ratio of requests are sampled once enabled, so the counters
+ * are never read on a request not sampled.
+ */
+public final class ThreadResourceUsage {
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean ALLOCATION_MX_BEAN = allocationMXBean();
+    private static final ThreadResourceUsage NOT_SAMPLED = new ThreadResourceUsage(-1, -1, -1);
+
+    private static volatile boolean enabled;
+    private static volatile double sampleRatio = 1;
+
+    private final long threadId;
+    private final long beginCpuNanos;
+    private final long beginAllocatedBytes;
+    private long cpuNanos = -1;
+    private long allocatedBytes = -1;
+    private boolean ended;
+
+    private ThreadResourceUsage(long threadId, long beginCpuNanos, long beginAllocatedBytes) {
+        this.threadId = threadId;
+        this.beginCpuNanos = beginCpuNanos;
+        this.beginAllocatedBytes = beginAllocatedBytes;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enabling it turns on the cpu time and allocated memory measurement of {@link ThreadMXBean} if supported.
+     */
+    public static void setEnabled(boolean enabled) {
+        if (enabled) {
+            enableCounters();
+        }
+        ThreadResourceUsage.enabled = enabled;
+    }
+
+    public static double getSampleRatio() {
+        return sampleRatio;
+    }
+
+    public static void setSampleRatio(double sampleRatio) {
+        ThreadResourceUsage.sampleRatio = Math.max(0, Math.min(1, sampleRatio));
+    }
+
+    /**
+     * Read the counters of current thread unless the request has been sampled by another interceptor.
+     */
+    public static void begin(Map<Object, Object> context) {
+        if (!enabled || context.containsKey(ThreadResourceUsage.class)) {
+            return;
+        }
+        final double ratio = sampleRatio;
+        if (ratio < 1 && ThreadLocalRandom.current().nextDouble() >= ratio) {
+            context.put(ThreadResourceUsage.class, NOT_SAMPLED);
+            return;
+        }
+        final long threadId = Thread.currentThread().getId();
+        context.put(ThreadResourceUsage.class, new ThreadResourceUsage(threadId, cpuNanos(), allocatedBytes(threadId)));
+    }
+
+    /**
+     * @return usage of the request since {@link #begin}, measured by the first call, or null if it was not
+     * sampled or finished on another thread
+     */
+    public static ThreadResourceUsage end(Map<Object, Object> context) {
+        final Object o = context.get(ThreadResourceUsage.class);
+        if (!(o instanceof ThreadResourceUsage) || o == NOT_SAMPLED) {
+            return null;
+        }
+        final ThreadResourceUsage usage = (ThreadResourceUsage) o;
+        if (!usage.ended) {
+            usage.ended = true;
+            if (Thread.currentThread().getId() == usage.threadId) {
+                usage.cpuNanos = difference(usage.beginCpuNanos, cpuNanos());
+                usage.allocatedBytes = difference(usage.beginAllocatedBytes, allocatedBytes(usage.threadId));
+            }
+        }
+        return usage.cpuNanos < 0 && usage.allocatedBytes < 0 ? null : usage;
+    }
+
+    /**
+     * @return cpu time in nanoseconds, or -1 if unsupported by the JVM
+     */
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    /**
+     * @return bytes allocated in heap, or -1 if unsupported by the JVM
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    private static long difference(long begin, long end) {
+        return begin < 0 || end < 0 ? -1 : Math.max(0, end - begin);
+    }
+
+    private static long cpuNanos() {
+        return THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocatedBytes(long threadId) {
+        return ALLOCATION_MX_BEAN == null ? -1 : ALLOCATION_MX_BEAN.getThreadAllocatedBytes(threadId);
+    }
+
+    private static void enableCounters() {
+        try {
+            if (THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && !THREAD_MX_BEAN.isThreadCpuTimeEnabled()) {
+                THREAD_MX_BEAN.setThreadCpuTimeEnabled(true);
+            }
+            if (ALLOCATION_MX_BEAN != null && !ALLOCATION_MX_BEAN.isThreadAllocatedMemoryEnabled()) {
+                ALLOCATION_MX_BEAN.setThreadAllocatedMemoryEnabled(true);
+            }
+        } catch (UnsupportedOperationException | SecurityException ignored) {
+            // Counters stay disabled, they are read as -1
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationMXBean() {
+        try {
+            if (THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_MX_BEAN;
+                return bean.isThreadAllocatedMemorySupported() ? bean : null;
+            }
+        } catch (Throwable ignored) {
+            // Not a HotSpot compatible JVM
+        }
+        return null;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.core;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.Instrumentation;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static net.bytebuddy.matcher.ElementMatchers.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TransformationWarmUpTest {
+
+    @Test
+    public void should_collect_fully_matched_names() {
+        TransformationWarmUp warmUp = new TransformationWarmUp();
+        warmUp.collect(named("com.zaxxer.hikari.HikariDataSource").and(not(isInterface())));
+        warmUp.collect(namedOneOf("redis.clients.jedis.Jedis", "redis.clients.jedis.BinaryJedis"));
+        warmUp.collect(nameStartsWith("org.springframework."));
+        assertEquals(new HashSet<>(Arrays.asList("com.zaxxer.hikari.HikariDataSource",
+                "redis.clients.jedis.Jedis", "redis.clients.jedis.BinaryJedis")), warmUp.getTypeNames());
+    }
+
+    @Test
+    public void should_skip_names_of_super_types() {
+        TransformationWarmUp warmUp = new TransformationWarmUp();
+        warmUp.collect(hasSuperType(namedOneOf("javax.servlet.Filter", "javax.servlet.http.HttpServlet")));
+        warmUp.collect(hasSuperClass(named("javax.servlet.http.HttpServlet")));
+        warmUp.collect(hasSuperType(named("javax.servlet.Filter")).or(named("org.example.Handler")));
+        assertEquals(Collections.singleton("org.example.Handler"), warmUp.getTypeNames());
+    }
+
+    @Test
+    public void should_load_types_in_application_loaders() throws Exception {
+        IsolatedLoader loader = new IsolatedLoader(Foo.class.getName(), Bar.class.getName());
+        Class<?> bar = loader.loadClass(Bar.class.getName());
+        Instrumentation inst = mock(Instrumentation.class);
+        when(inst.getAllLoadedClasses()).thenReturn(new Class[]{bar, String.class});
+
+        TransformationWarmUp warmUp = new TransformationWarmUp();
+        warmUp.collect(named(Foo.class.getName()));
+        warmUp.collect(named("com.megaease.easeagent.core.NotExists"));
+        assertNull(loader.loaded(Foo.class.getName()));
+        warmUp.warmUp(inst);
+
+        Class<?> foo = loader.loaded(Foo.class.getName());
+        assertNotNull(foo);
+        assertNotSame(Foo.class, foo);
+        assertNull(loader.loaded("com.megaease.easeagent.core.NotExists"));
+    }
+
+    static class Foo {
+    }
+
+    static class Bar {
+    }
+
+    /**
+     * Defines the given classes by itself from the class files of test class path, without any parent.
+     */
+    static class IsolatedLoader extends ClassLoader {
+        private final Set<String> names;
+
+        IsolatedLoader(String... names) {
+            super(null);
+            this.names = new HashSet<>(Arrays.asList(names));
+        }
+
+        Class<?> loaded(String name) {
+            return findLoadedClass(name);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (!names.contains(name)) {
+                throw new ClassNotFoundException(name);
+            }
+            try (InputStream in = TransformationWarmUpTest.class.getClassLoader().getResourceAsStream(resource(name))) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[4096];
+                for (int n; (n = in.read(buf)) != -1; ) {
+                    out.write(buf, 0, n);
+                }
+                return defineClass(name, out.toByteArray(), 0, out.size());
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+
+        @Override
+        protected URL findResource(String name) {
+            for (String n : names) {
+                if (resource(n).equals(name)) {
+                    return TransformationWarmUpTest.class.getClassLoader().getResource(name);
+                }
+            }
+            return null;
+        }
+
+        private static String resource(String className) {
+            return className.replace('.', '/') + ".class";
+        }
+    }
+}
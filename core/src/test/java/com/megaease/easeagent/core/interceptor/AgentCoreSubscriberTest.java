@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.core.interceptor;
+
+import com.megaease.easeagent.core.utils.ContextUtils;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class AgentCoreSubscriberTest {
+
+    private static final int COUNT = 1_000_000;
+
+    @Test
+    public void should_stream_elements_without_buffering() throws InterruptedException {
+        final AtomicLong count = new AtomicLong();
+        final AtomicReference<WeakReference<Object>> first = new AtomicReference<>();
+        final AtomicReference<Object> completed = new AtomicReference<>();
+        final ReactiveAgentInterceptor interceptor = new ReactiveAgentInterceptor() {
+            @Override
+            public void onNext(MethodInfo methodInfo, Map<Object, Object> context, Object element) {
+                if (count.getAndIncrement() == 0) {
+                    first.set(new WeakReference<>(element));
+                }
+            }
+
+            @Override
+            public Object after(MethodInfo methodInfo, Map<Object, Object> context, AgentInterceptorChain chain) {
+                completed.set(methodInfo.getRetValue());
+                return chain.doAfter(methodInfo, context);
+            }
+        };
+
+        final Flux<byte[]> source = Flux.range(0, COUNT).map(i -> new byte[64]);
+        subscribe(source, interceptor).blockLast();
+
+        assertThat(count.get(), is((long) COUNT));
+        assertThat(completed.get(), nullValue());
+        // Nothing in the subscriber holds the elements emitted, System.gc() is only a hint so it is retried a few times
+        assertTrue("the first element is still reachable", collected(first.get()));
+    }
+
+    private static boolean collected(WeakReference<Object> reference) throws InterruptedException {
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return reference.get() == null;
+    }
+
+    @Test
+    public void should_materialize_results_on_demand() {
+        final AtomicReference<Object> completed = new AtomicReference<>();
+        final ReactiveAgentInterceptor interceptor = new ReactiveAgentInterceptor() {
+            @Override
+            public boolean materializeResults() {
+                return true;
+            }
+
+            @Override
+            public Object after(MethodInfo methodInfo, Map<Object, Object> context, AgentInterceptorChain chain) {
+                completed.set(methodInfo.getRetValue());
+                return chain.doAfter(methodInfo, context);
+            }
+        };
+
+        subscribe(Flux.just("a", "b", "c"), interceptor).blockLast();
+
+        assertThat(completed.get(), is(Arrays.asList("a", "b", "c")));
+    }
+
+    @Test
+    public void should_pass_error_to_after() {
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final ReactiveAgentInterceptor interceptor = new ReactiveAgentInterceptor() {
+            @Override
+            public Object after(MethodInfo methodInfo, Map<Object, Object> context, AgentInterceptorChain chain) {
+                error.set(methodInfo.getThrowable());
+                return chain.doAfter(methodInfo, context);
+            }
+        };
+        final IllegalStateException e = new IllegalStateException();
+
+        subscribe(Flux.error(e), interceptor).onErrorResume(t -> Flux.empty()).blockLast();
+
+        assertTrue(error.get() == e);
+    }
+
+    private static <T> Flux<T> subscribe(Flux<T> source, AgentInterceptor interceptor) {
+        final AgentInterceptorChain.Builder builder = ChainBuilderFactory.DEFAULT.createBuilder().addInterceptor(interceptor);
+        final AgentInterceptorChainInvoker invoker = new AgentInterceptorChainInvoker();
+        final MethodInfo methodInfo = MethodInfo.builder().method("subscribe").build();
+        final Map<Object, Object> context = ContextUtils.createContext();
+        invoker.doBefore(builder, methodInfo, context);
+        return new AgentFlux<>(source, methodInfo, builder, invoker, context);
+    }
+}
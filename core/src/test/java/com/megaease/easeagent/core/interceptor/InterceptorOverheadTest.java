@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.core.interceptor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class InterceptorOverheadTest {
+
+    @After
+    public void tearDown() {
+        InterceptorOverhead.INSTANCE.setSampleRatio(0);
+        InterceptorOverhead.INSTANCE.reset();
+    }
+
+    @Test
+    public void should_not_record_when_disabled() {
+        run(new Spin(1), new Spin(1));
+        assertTrue(InterceptorOverhead.INSTANCE.snapshot().isEmpty());
+    }
+
+    @Test
+    public void should_rank_interceptors_by_exclusive_time() {
+        InterceptorOverhead.INSTANCE.setSampleRatio(1);
+        for (int i = 0; i < 5; i++) {
+            run(new Outer(), new Inner());
+        }
+        final List<Map<String, Object>> snapshot = InterceptorOverhead.INSTANCE.snapshot();
+        assertEquals(4, snapshot.size());
+        final Map<String, Object> first = snapshot.get(0);
+        assertEquals(Inner.class.getName(), first.get("interceptor"));
+        assertEquals("before", first.get("phase"));
+        assertEquals(5L, first.get("count"));
+        assertTrue((Long) first.get("p50") >= TimeUnit.MILLISECONDS.toNanos(5));
+
+        final Map<String, Object> outer = find(snapshot, Outer.class, "before");
+        final long outerNanos = (Long) outer.get("p50");
+        assertTrue("outer " + outerNanos, outerNanos >= TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue("outer " + outerNanos, outerNanos < TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    private static Map<String, Object> find(List<Map<String, Object>> snapshot, Class<?> interceptor, String phase) {
+        for (Map<String, Object> map : snapshot) {
+            if (interceptor.getName().equals(map.get("interceptor")) && phase.equals(map.get("phase"))) {
+                return map;
+            }
+        }
+        throw new AssertionError(interceptor + " " + phase + " not found");
+    }
+
+    private static void run(AgentInterceptor... interceptors) {
+        final DefaultAgentInterceptorChain.Builder builder = new DefaultAgentInterceptorChain.Builder();
+        for (AgentInterceptor interceptor : interceptors) {
+            builder.addInterceptor(interceptor);
+        }
+        final AgentInterceptorChain chain = builder.build();
+        final MethodInfo methodInfo = MethodInfo.builder().method("run").build();
+        final Map<Object, Object> context = new HashMap<>();
+        chain.doBefore(methodInfo, context);
+        chain.doAfter(methodInfo, context);
+    }
+
+    private static void spin(long millis) {
+        final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() < end) {
+            Thread.yield();
+        }
+    }
+
+    static class Spin implements AgentInterceptor {
+        private final long millis;
+
+        Spin(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public void before(MethodInfo methodInfo, Map<Object, Object> context, AgentInterceptorChain chain) {
+            spin(millis);
+            chain.doBefore(methodInfo, context);
+        }
+    }
+
+    static class Outer extends Spin {
+        Outer() {
+            super(1);
+        }
+    }
+
+    static class Inner extends Spin {
+        Inner() {
+            super(5);
+        }
+    }
+}
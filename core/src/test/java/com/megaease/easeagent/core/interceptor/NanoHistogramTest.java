@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.core.interceptor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NanoHistogramTest {
+
+    @Test
+    public void should_bucket_value_within_its_bounds() {
+        for (long value = 0; value < 1 << 20; value++) {
+            final int index = NanoHistogram.indexOf(value);
+            assertTrue(value + " above bucket " + index, value <= NanoHistogram.highestOf(index));
+            if (index > 0) {
+                assertTrue(value + " below bucket " + index, value > NanoHistogram.highestOf(index - 1));
+            }
+        }
+        assertEquals(NanoHistogram.indexOf(Long.MAX_VALUE), NanoHistogram.indexOf(1L << 50));
+    }
+
+    @Test
+    public void should_report_percentiles_within_precision() {
+        final NanoHistogram histogram = new NanoHistogram();
+        for (long i = 1; i <= 100_000; i++) {
+            histogram.record(i * 100);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(100L * 100_000 * 100_001 / 2, histogram.getTotal());
+        assertNear(5_000_000, histogram.getValueAtPercentile(50));
+        assertNear(9_000_000, histogram.getValueAtPercentile(90));
+        assertNear(9_900_000, histogram.getValueAtPercentile(99));
+        assertNear(9_990_000, histogram.getValueAtPercentile(99.9));
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void should_be_empty_initially() {
+        final NanoHistogram histogram = new NanoHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        histogram.record(-1);
+        assertEquals(0, histogram.getMax());
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                actual >= expected && actual <= expected + expected / NanoHistogram.SUB_BUCKETS);
+    }
+}
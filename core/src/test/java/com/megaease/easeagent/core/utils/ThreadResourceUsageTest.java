@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.core.utils;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ThreadResourceUsageTest {
+    private static final int ALLOCATED_BYTES = 8 * 1024 * 1024;
+
+    private static volatile byte[] sink;
+
+    @After
+    public void tearDown() {
+        ThreadResourceUsage.setEnabled(false);
+        ThreadResourceUsage.setSampleRatio(1);
+    }
+
+    @Test
+    public void should_not_measure_when_disabled() {
+        Map<Object, Object> context = new HashMap<>();
+        ThreadResourceUsage.begin(context);
+        assertTrue(context.isEmpty());
+        assertNull(ThreadResourceUsage.end(context));
+    }
+
+    @Test
+    public void should_measure_cpu_and_allocation() {
+        ThreadResourceUsage.setEnabled(true);
+        Map<Object, Object> context = new HashMap<>();
+        ThreadResourceUsage.begin(context);
+        sink = new byte[ALLOCATED_BYTES];
+        spin();
+
+        ThreadResourceUsage usage = ThreadResourceUsage.end(context);
+        assertNotNull(usage);
+        assertTrue(usage.getCpuNanos() > 0);
+        assertTrue(usage.getAllocatedBytes() >= ALLOCATED_BYTES);
+
+        // Interceptors after the first one share the measurement
+        sink = new byte[ALLOCATED_BYTES];
+        ThreadResourceUsage again = ThreadResourceUsage.end(context);
+        assertSame(usage, again);
+        assertTrue(again.getAllocatedBytes() < 2L * ALLOCATED_BYTES);
+    }
+
+    @Test
+    public void should_keep_measurement_of_first_begin() {
+        ThreadResourceUsage.setEnabled(true);
+        Map<Object, Object> context = new HashMap<>();
+        ThreadResourceUsage.begin(context);
+        Object first = context.get(ThreadResourceUsage.class);
+        ThreadResourceUsage.begin(context);
+        assertSame(first, context.get(ThreadResourceUsage.class));
+    }
+
+    @Test
+    public void should_skip_requests_not_sampled() {
+        ThreadResourceUsage.setEnabled(true);
+        ThreadResourceUsage.setSampleRatio(0);
+        Map<Object, Object> context = new HashMap<>();
+        ThreadResourceUsage.begin(context);
+        assertFalse(context.isEmpty());
+        assertNull(ThreadResourceUsage.end(context));
+
+        // The decision is kept for the other interceptors of the request
+        ThreadResourceUsage.setSampleRatio(1);
+        ThreadResourceUsage.begin(context);
+        assertNull(ThreadResourceUsage.end(context));
+    }
+
+    @Test
+    public void should_not_measure_request_finished_on_another_thread() throws InterruptedException {
+        ThreadResourceUsage.setEnabled(true);
+        Map<Object, Object> context = new HashMap<>();
+        ThreadResourceUsage.begin(context);
+        AtomicReference<ThreadResourceUsage> usage = new AtomicReference<>();
+        Thread thread = new Thread(() -> usage.set(ThreadResourceUsage.end(context)));
+        thread.start();
+        thread.join();
+        assertNull(usage.get());
+    }
+
+    private static void spin() {
+        long end = System.nanoTime() + 20_000_000L;
+        long x = 0;
+        while (System.nanoTime() < end) {
+            x += System.identityHashCode(new Object());
+        }
+        assertNotEquals(42, x);
+    }
+}
@@ -38,4 +38,15 @@ public interface Generate {
     @interface Advice {
         Class<?> value() default Object.class;
     }
+
+    /**
+     * Declares the indexes of arguments read by interceptors, then a read-only {@code @Advice.AllArguments}
+     * parameter of the annotated advice (or advice method) would be generated as {@code @Advice.Argument}
+     * bindings of these indexes only, and passed as an array with unselected positions left null.
+     */
+    @Retention(RetentionPolicy.CLASS)
+    @Target({ElementType.TYPE, ElementType.METHOD})
+    @interface Arguments {
+        int[] value();
+    }
 }
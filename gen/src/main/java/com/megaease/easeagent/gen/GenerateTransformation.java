@@ -187,6 +187,80 @@ class GenerateTransformation extends ElementKindVisitor6<TypeSpec.Builder, Proce
                     return sb.toString();
                 }
 
+                private int[] selectedArguments(ExecutableElement e) {
+                    final Generate.Arguments onMethod = e.getAnnotation(Generate.Arguments.class);
+                    if (onMethod != null) {
+                        return validIndexes(e, onMethod.value());
+                    }
+                    final Element type = e.getEnclosingElement();
+                    final Generate.Arguments onType = type.getAnnotation(Generate.Arguments.class);
+                    return onType == null ? null : validIndexes(type, onType.value());
+                }
+
+                private int[] validIndexes(Element annotated, int[] indexes) {
+                    final Set<Integer> distinct = new HashSet<>();
+                    for (int i : indexes) {
+                        if (i < 0) {
+                            throw new ElementException(annotated, "should not select negative index " + i + " of arguments");
+                        }
+                        if (!distinct.add(i)) {
+                            throw new ElementException(annotated, "should not select index " + i + " of arguments twice");
+                        }
+                    }
+                    return indexes;
+                }
+
+                private boolean isSelectable(VariableElement p, ExecutableElement e, int[] selected) {
+                    final Advice.AllArguments aa = p.getAnnotation(Advice.AllArguments.class);
+                    if (selected == null || aa == null) {
+                        return false;
+                    }
+                    if (!aa.readOnly()) {
+                        throw new ElementException(e, "should not select arguments of a writable @Advice.AllArguments");
+                    }
+                    return true;
+                }
+
+                private Iterable<ParameterSpec> parameterSpecs(ExecutableElement e, int[] selected, ProcessUtils utils) {
+                    final List<ParameterSpec> specs = new ArrayList<>();
+                    for (VariableElement p : e.getParameters()) {
+                        if (!isSelectable(p, e, selected)) {
+                            specs.add(utils.asParameterSpec(p));
+                            continue;
+                        }
+                        for (int i : selected) {
+                            specs.add(ParameterSpec.builder(Object.class, argumentName(p, i))
+                                    .addAnnotation(AnnotationSpec.builder(Advice.Argument.class)
+                                            .addMember("value", "$L", i)
+                                            .addMember("optional", "$L", true)
+                                            .build())
+                                    .build());
+                        }
+                    }
+                    return specs;
+                }
+
+                /**
+                 * Replace selectable arguments with an array having selected arguments at their original positions.
+                 */
+                private Map<VariableElement, String> getArgumentsMap(ExecutableElement e, int[] selected) {
+                    final Map<VariableElement, String> result = new HashMap<>();
+                    for (VariableElement p : e.getParameters()) {
+                        if (!isSelectable(p, e, selected)) continue;
+                        final String[] elements = new String[Arrays.stream(selected).max().orElse(-1) + 1];
+                        Arrays.fill(elements, "null");
+                        for (int i : selected) {
+                            elements[i] = argumentName(p, i);
+                        }
+                        result.put(p, "(Object) new Object[]{" + String.join(", ", elements) + "}");
+                    }
+                    return result;
+                }
+
+                private String argumentName(VariableElement p, int index) {
+                    return p.getSimpleName() + "_" + index;
+                }
+
                 private MethodSpec inlineAdviceMethod(ExecutableElement e, ProcessUtils utils) {
                     final String name = utils.simpleNameOf(e);
                     final TypeName returnType = utils.typeNameOf(e.getReturnType());
@@ -194,10 +268,13 @@ class GenerateTransformation extends ElementKindVisitor6<TypeSpec.Builder, Proce
                     final String format;
                     final Object[] args;
                     final List<? extends VariableElement> parameters = e.getParameters();
+                    final int[] selected = selectedArguments(e);
 
                     Map<VariableElement, String> replaceMap = getReplaceMap(parameters);
+                    Map<VariableElement, String> joinMap = new HashMap<>(replaceMap);
+                    joinMap.putAll(getArgumentsMap(e, selected));
 
-                    final String join = parameters.isEmpty() ? "null" : join(parameters, replaceMap);
+                    final String join = parameters.isEmpty() ? "null" : join(parameters, joinMap);
 
                     String beforeExecute = buildBeforeExecute(replaceMap);
                     String afterExecute = buildAfterExecute(replaceMap);
@@ -235,7 +312,7 @@ class GenerateTransformation extends ElementKindVisitor6<TypeSpec.Builder, Proce
                     return MethodSpec.methodBuilder(name)
                             .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
                             .addAnnotations(utils.asAnnotationSpecs(e.getAnnotationMirrors()))
-                            .addParameters(utils.asParameterSpecs(parameters))
+                            .addParameters(parameterSpecs(e, selected, utils))
                             .returns(returnType)
                             .addStatement(format, args)
                             .build();
@@ -101,14 +101,18 @@ abstract class ProcessUtils {
     }
 
     Iterable<ParameterSpec> asParameterSpecs(List<? extends VariableElement> params) {
-        Iterator<ParameterSpec> it = params.stream().map(input -> ParameterSpec
-            .builder(TypeName.get(input.asType()), input.getSimpleName().toString())
-            .addAnnotations(asAnnotationSpecs(input.getAnnotationMirrors()))
-            .build()).iterator();
+        Iterator<ParameterSpec> it = params.stream().map(this::asParameterSpec).iterator();
 
         return () -> it;
     }
 
+    ParameterSpec asParameterSpec(VariableElement param) {
+        return ParameterSpec
+            .builder(TypeName.get(param.asType()), param.getSimpleName().toString())
+            .addAnnotations(asAnnotationSpecs(param.getAnnotationMirrors()))
+            .build();
+    }
+
     Set<TypeElement> asTypeElements(Set<String> classNames) {
         return classNames.stream()
             .map(this::getTypeElement)
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.gen;
+
+import org.junit.Test;
+
+import javax.tools.*;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertThat;
+
+public class GenerateTransformationTest {
+
+    @Test
+    public void should_report_duplicate_index_of_arguments() {
+        assertThat(errorsOf("1, 1"), containsString("should not select index 1 of arguments twice"));
+    }
+
+    @Test
+    public void should_report_negative_index_of_arguments() {
+        assertThat(errorsOf("0, -1"), containsString("should not select negative index -1 of arguments"));
+    }
+
+    private static String errorsOf(String indexes) {
+        final String source = "package demo;\n"
+                + "import com.megaease.easeagent.core.*;\n"
+                + "import com.megaease.easeagent.gen.Generate;\n"
+                + "import net.bytebuddy.asm.Advice;\n"
+                + "import net.bytebuddy.description.method.MethodDescription;\n"
+                + "import net.bytebuddy.matcher.ElementMatcher;\n"
+                + "@Generate.Assembly({Selective.class})\n"
+                + "public abstract class Selective implements Transformation {\n"
+                + "    public <T extends Definition> T define(Definition<T> def) { return null; }\n"
+                + "    @AdviceTo(Demo.class)\n"
+                + "    abstract Definition.Transformer demo(ElementMatcher<? super MethodDescription> matcher);\n"
+                + "    @Generate.Arguments({" + indexes + "})\n"
+                + "    static class Demo {\n"
+                + "        @Advice.OnMethodEnter\n"
+                + "        void enter(@Advice.AllArguments Object[] args) { }\n"
+                + "    }\n"
+                + "}\n";
+        final JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///demo/Selective.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        final List<String> options = Arrays.asList("-proc:only", "-classpath", System.getProperty("java.class.path"));
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null,
+                Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new AssemblyProcessor()));
+        task.call();
+        return diagnostics.getDiagnostics().stream()
+                .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+                .map(d -> d.getMessage(null))
+                .collect(Collectors.joining("\n"));
+    }
+}
@@ -26,6 +26,8 @@ public class AgentHttpServer extends RouterNanoHTTPD {
 
     public static String JSON_TYPE = "application/json";
 
+    private static final String OPENMETRICS_TYPE = "application/openmetrics-text";
+
     public AgentHttpServer(int port) {
         super(port);
         Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
@@ -41,6 +43,15 @@ public class AgentHttpServer extends RouterNanoHTTPD {
         this.addRoute(path, handler, initParameter);
     }
 
+    /**
+     * Compress OpenMetrics as well, whose media type is neither text nor json.
+     */
+    @Override
+    protected boolean useGzipWhenAccepted(Response r) {
+        return super.useGzipWhenAccepted(r)
+                || (r.getMimeType() != null && r.getMimeType().startsWith(OPENMETRICS_TYPE));
+    }
+
     @SneakyThrows
     public void startServer() {
         this.start(5000, true);
@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+
+/**
+ * The nested jars under {@code lib/} of agent jar extracted into a directory named by the version, size and
+ * modified time of agent jar, with an index of class name to the jar containing it, so that agent classes could be
+ * found without scanning or decompressing nested archives at every start.
+ * <p>
+ * The extracted jars are opened as multi-release jars on Java 9 or later, so a class is read from
+ * {@code META-INF/versions} if there is one for the running version. Classes only existing under
+ * {@code META-INF/versions} are not indexed, and are still found through {@link #urls()}.
+ */
+final class AgentLibraryCache {
+    static final String CACHE_DIR_KEY = "easeagent.loader.cache-dir";
+
+    private static final String LIB = "lib/";
+    private static final String INDEX = "classes.idx";
+    private static final String CLASS_SUFFIX = ".class";
+    private static final int INDEX_VERSION = 1;
+    private static final String UNKNOWN_VERSION = "unknown";
+
+    /**
+     * {@code JarFile(File, boolean, int, Runtime.Version)} and {@code Runtime.version()}, absent before Java 9.
+     */
+    private static final Constructor<JarFile> MULTI_RELEASE_JAR;
+    private static final Object RUNTIME_VERSION;
+
+    static {
+        Constructor<JarFile> constructor;
+        Object version;
+        try {
+            final Method runtimeVersion = Runtime.class.getMethod("version");
+            constructor = JarFile.class.getConstructor(File.class, boolean.class, int.class, runtimeVersion.getReturnType());
+            version = runtimeVersion.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            constructor = null;
+            version = null;
+        }
+        MULTI_RELEASE_JAR = constructor;
+        RUNTIME_VERSION = version;
+    }
+
+    private final File[] jars;
+    private final URL[] urls;
+    private final JarFile[] opened;
+    private final Map<String, Integer> index;
+
+    private AgentLibraryCache(File[] jars, Map<String, Integer> index) throws MalformedURLException {
+        this.jars = jars;
+        this.index = index;
+        this.opened = new JarFile[jars.length];
+        this.urls = new URL[jars.length];
+        for (int i = 0; i < jars.length; i++) {
+            urls[i] = jars[i].toURI().toURL();
+        }
+    }
+
+    static AgentLibraryCache prepare(File agentJar, File root) throws IOException {
+        final File dir = new File(root, key(agentJar));
+        if (!new File(dir, INDEX).isFile()) {
+            extract(agentJar, root, dir);
+        }
+        return load(dir);
+    }
+
+    URL[] urls() {
+        return urls.clone();
+    }
+
+    /**
+     * @return position of the jar in {@link #urls()} containing the class, or -1 if absent
+     */
+    int indexOf(String className) {
+        final Integer i = index.get(className);
+        return i == null ? -1 : i;
+    }
+
+    URL urlAt(int i) {
+        return urls[i];
+    }
+
+    synchronized JarFile jarAt(int i) throws IOException {
+        if (opened[i] == null) {
+            // Kept open as long as the agent class loader, which lives as long as the JVM
+            opened[i] = openJar(jars[i]);
+        }
+        return opened[i];
+    }
+
+    private static JarFile openJar(File file) throws IOException {
+        if (MULTI_RELEASE_JAR == null) {
+            return new JarFile(file);
+        }
+        try {
+            return MULTI_RELEASE_JAR.newInstance(file, true, ZipFile.OPEN_READ, RUNTIME_VERSION);
+        } catch (ReflectiveOperationException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            return new JarFile(file);
+        }
+    }
+
+    /**
+     * Cheap enough to be computed at every start instead of a checksum over the whole agent jar.
+     */
+    static String key(File agentJar) throws IOException {
+        String version = null;
+        try (JarFile jar = new JarFile(agentJar)) {
+            final Manifest manifest = jar.getManifest();
+            if (manifest != null) {
+                version = manifest.getMainAttributes().getValue(Attributes.Name.IMPLEMENTATION_VERSION);
+            }
+        }
+        version = version == null ? UNKNOWN_VERSION : version.replaceAll("[^A-Za-z0-9._-]", "_");
+        return version + "-" + Long.toHexString(agentJar.length()) + "-" + Long.toHexString(agentJar.lastModified());
+    }
+
+    private static void extract(File agentJar, File root, File dir) throws IOException {
+        if (!root.isDirectory() && !root.mkdirs()) {
+            throw new IOException("Unable to create cache directory " + root);
+        }
+        final Path tmp = Files.createTempDirectory(root.toPath(), dir.getName() + ".");
+        try {
+            final List<String> names = new ArrayList<>();
+            try (JarFile jar = new JarFile(agentJar)) {
+                final Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    final JarEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || !entry.getName().startsWith(LIB)) continue;
+                    final String name = entry.getName().substring(LIB.length()).replace('/', '_');
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        Files.copy(in, tmp.resolve(name));
+                    }
+                    names.add(name);
+                }
+            }
+            writeIndex(tmp, names);
+            try {
+                Files.move(tmp, dir.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                // Another JVM started with the same agent has done it
+            }
+        } finally {
+            delete(tmp.toFile());
+        }
+    }
+
+    private static void writeIndex(Path dir, List<String> names) throws IOException {
+        final Path idx = dir.resolve(INDEX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(idx)))) {
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(names.size());
+            for (String name : names) {
+                writeString(out, name);
+            }
+            for (int i = 0; i < names.size(); i++) {
+                final List<String> classes = classesOf(dir.resolve(names.get(i)).toFile());
+                out.writeInt(classes.size());
+                for (String c : classes) {
+                    writeString(out, c);
+                }
+            }
+        }
+    }
+
+    private static List<String> classesOf(File file) throws IOException {
+        final List<String> classes = new ArrayList<>();
+        try (JarFile jar = new JarFile(file)) {
+            final Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                final String name = entries.nextElement().getName();
+                if (!name.endsWith(CLASS_SUFFIX) || name.startsWith("META-INF/")) continue;
+                classes.add(name.substring(0, name.length() - CLASS_SUFFIX.length()).replace('/', '.'));
+            }
+        }
+        return classes;
+    }
+
+    private static AgentLibraryCache load(File dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(dir, INDEX).toPath(), StandardOpenOption.READ)) {
+            final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != INDEX_VERSION) {
+                throw new IOException("Unsupported index version in " + dir);
+            }
+            final File[] jars = new File[buf.getInt()];
+            for (int i = 0; i < jars.length; i++) {
+                jars[i] = new File(dir, readString(buf));
+            }
+            final Map<String, Integer> index = new HashMap<>();
+            for (int i = 0; i < jars.length; i++) {
+                final Integer position = i;
+                for (int n = buf.getInt(); n > 0; n--) {
+                    // The former jar wins like the order of URLClassLoader
+                    index.putIfAbsent(readString(buf), position);
+                }
+            }
+            return new AgentLibraryCache(jars, index);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        final byte[] bytes = new byte[buf.getShort() & 0xFFFF];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
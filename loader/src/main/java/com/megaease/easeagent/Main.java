@@ -17,13 +17,17 @@
 
 package com.megaease.easeagent;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import org.springframework.boot.loader.LaunchedURLClassLoader;
 import org.springframework.boot.loader.archive.Archive;
 import org.springframework.boot.loader.archive.JarFileArchive;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.instrument.Instrumentation;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -34,8 +38,13 @@ import java.util.ArrayList;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 
 public class Main {
     private static final ClassLoader BOOTSTRAP_CLASS_LOADER = null;
@@ -44,10 +53,10 @@ public class Main {
     private static final String EASEAGENT_LOG_CONF = "easeagent.log.conf";
 
     public static void premain(final String args, final Instrumentation inst) throws Exception {
-        final JarFileArchive archive = new JarFileArchive(getArchiveFileContains());
+        final File agentJar = getArchiveFileContains();
+        final JarFileArchive archive = new JarFileArchive(agentJar);
 
-        final URL[] urls = nestArchiveUrls(archive);
-        final ClassLoader loader = new CompoundableClassLoader(urls);
+        final ClassLoader loader = newClassLoader(agentJar, archive);
 
         final Attributes attributes = archive.getManifest().getMainAttributes();
         final String loggingProperty = attributes.getValue(LOGGING_PROPERTY);
@@ -61,6 +70,18 @@ public class Main {
         });
     }
 
+    static ClassLoader newClassLoader(File agentJar, Archive archive) throws IOException {
+        final String cacheDir = System.getProperty(AgentLibraryCache.CACHE_DIR_KEY);
+        if (cacheDir != null) {
+            try {
+                return new CompoundableClassLoader(AgentLibraryCache.prepare(agentJar, new File(cacheDir)));
+            } catch (IOException e) {
+                System.err.println("Fallback to nested archives, since the agent library cache is unavailable: " + e);
+            }
+        }
+        return new CompoundableClassLoader(nestArchiveUrls(archive));
+    }
+
     /**
      * Switching the system property temporary could fix the problem of conflict of logging configuration
      * when host used the same logging library as agent.
@@ -124,35 +145,191 @@ public class Main {
     }
 
     public static class CompoundableClassLoader extends LaunchedURLClassLoader {
+        private static final String CLASS_SUFFIX = ".class";
+        private static final String NEGATIVE_CACHE_SIZE_KEY = "easeagent.loader.negative-cache-size";
+        private static final int DEF_NEGATIVE_CACHE_SIZE = 4096;
+        private static final String NEGATIVE_CACHE_TTL_KEY = "easeagent.loader.negative-cache-ttl";
+        private static final long DEF_NEGATIVE_CACHE_TTL = 1000;
+
         private final Set<ClassLoader> externals = new CopyOnWriteArraySet<>();
 
+        /**
+         * Remember which external loader resolved a name, loaders are held weakly so that
+         * an undeployed web application could be collected.
+         */
+        private final Cache<String, ClassLoader> resolved = CacheBuilder.newBuilder().weakValues().build();
+
+        /**
+         * Names found in neither agent nor any external loader, it would be invalidated
+         * once a new external loader was added, and expires shortly in case an existing
+         * external loader defines the class later.
+         */
+        private final Cache<String, Boolean> missing = CacheBuilder.newBuilder()
+                .maximumSize(Long.getLong(NEGATIVE_CACHE_SIZE_KEY, DEF_NEGATIVE_CACHE_SIZE))
+                .expireAfterWrite(Long.getLong(NEGATIVE_CACHE_TTL_KEY, DEF_NEGATIVE_CACHE_TTL), TimeUnit.MILLISECONDS)
+                .build();
+
+        /**
+         * Indexed extracted libraries, null if agent classes were loaded from nested archives.
+         */
+        private final AgentLibraryCache libraryCache;
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder negativeHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
         CompoundableClassLoader(URL[] urls) {
             // super(urls, ClassLoader.getSystemClassLoader());
             super(urls, Main.BOOTSTRAP_CLASS_LOADER);
+            this.libraryCache = null;
+        }
+
+        CompoundableClassLoader(AgentLibraryCache libraryCache) {
+            super(true, libraryCache.urls(), Main.BOOTSTRAP_CLASS_LOADER);
+            this.libraryCache = libraryCache;
         }
 
         public void add(ClassLoader cl) {
-            if (cl != null && !Objects.equals(cl, this)) {
-                externals.add(cl);
+            if (cl != null && !Objects.equals(cl, this) && externals.add(cl)) {
+                missing.invalidateAll();
             }
         }
 
         @Override
         protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            final ClassLoader cached = resolved.getIfPresent(name);
+            if (cached != null) {
+                hits.increment();
+                return loadFrom(cached, name, resolve);
+            }
+            if (missing.getIfPresent(name) != null) {
+                negativeHits.increment();
+                throw new ClassNotFoundException(name);
+            }
             try {
                 return super.loadClass(name, resolve);
             } catch (ClassNotFoundException e) {
-                for (ClassLoader external : externals) {
-                    try {
-                        final Class<?> aClass = external.loadClass(name);
-                        if (resolve) resolveClass(aClass);
-                        return aClass;
-                    } catch (ClassNotFoundException ignore) {
-                    }
+                misses.increment();
+                final Class<?> aClass = loadFromExternals(name, resolve);
+                if (aClass == null) {
+                    missing.put(name, Boolean.TRUE);
+                    throw e;
                 }
+                return aClass;
+            }
+        }
 
-                throw e;
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (libraryCache == null) {
+                return super.findClass(name);
+            }
+            final int i = libraryCache.indexOf(name);
+            if (i < 0) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                final JarFile jar = libraryCache.jarAt(i);
+                final JarEntry entry = jar.getJarEntry(name.replace('.', '/') + CLASS_SUFFIX);
+                if (entry == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                final byte[] bytes;
+                try (InputStream in = jar.getInputStream(entry)) {
+                    bytes = readFully(in, (int) entry.getSize());
+                }
+                definePackageIfAbsent(name, jar.getManifest(), libraryCache.urlAt(i));
+                final CodeSource cs = new CodeSource(libraryCache.urlAt(i), entry.getCodeSigners());
+                return defineClass(name, bytes, 0, bytes.length, cs);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
             }
         }
+
+        private void definePackageIfAbsent(String className, Manifest manifest, URL url) {
+            final int dot = className.lastIndexOf('.');
+            if (dot < 0) return;
+            final String pkg = className.substring(0, dot);
+            if (getPackage(pkg) != null) return;
+            try {
+                if (manifest == null) {
+                    definePackage(pkg, null, null, null, null, null, null, null);
+                } else {
+                    definePackage(pkg, manifest, url);
+                }
+            } catch (IllegalArgumentException ignore) {
+                // Defined concurrently
+            }
+        }
+
+        private static byte[] readFully(InputStream in, int size) throws IOException {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(size > 0 ? size : 4096);
+            final byte[] buf = new byte[4096];
+            for (int n; (n = in.read(buf)) != -1; ) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * @return names resolved by the cache of external loaders
+         */
+        public long getHits() {
+            return hits.sum();
+        }
+
+        /**
+         * @return names refused by the cache of missing names
+         */
+        public long getNegativeHits() {
+            return negativeHits.sum();
+        }
+
+        /**
+         * @return names neither in agent nor cached, which external loaders were searched for
+         */
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        /**
+         * Loaders having a class file resource of the name are tried first, which avoids throwing a
+         * ClassNotFoundException for every external loader missed. Classes defined at runtime without resource,
+         * e.g. proxies and generated classes, are then tried by loading from every loader, the cost of repeated
+         * misses is absorbed by the cache of missing names.
+         */
+        private Class<?> loadFromExternals(String name, boolean resolve) {
+            final String resource = name.replace('.', '/') + CLASS_SUFFIX;
+            for (ClassLoader external : externals) {
+                if (external.getResource(resource) == null) continue;
+                final Class<?> aClass = tryLoadFrom(external, name, resolve);
+                if (aClass != null) {
+                    return aClass;
+                }
+            }
+            for (ClassLoader external : externals) {
+                final Class<?> aClass = tryLoadFrom(external, name, resolve);
+                if (aClass != null) {
+                    return aClass;
+                }
+            }
+            return null;
+        }
+
+        private Class<?> tryLoadFrom(ClassLoader external, String name, boolean resolve) {
+            try {
+                final Class<?> aClass = loadFrom(external, name, resolve);
+                resolved.put(name, external);
+                return aClass;
+            } catch (ClassNotFoundException ignore) {
+                return null;
+            }
+        }
+
+        private Class<?> loadFrom(ClassLoader loader, String name, boolean resolve) throws ClassNotFoundException {
+            final Class<?> aClass = loader.loadClass(name);
+            if (resolve) resolveClass(aClass);
+            return aClass;
+        }
     }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.boot.loader.archive.JarFileArchive;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class AgentLibraryCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_extract_into_versioned_directory() throws Exception {
+        File agentJar = agentJar("1.0.0");
+        File root = folder.newFolder("cache");
+
+        AgentLibraryCache cache = AgentLibraryCache.prepare(agentJar, root);
+
+        File dir = new File(root, AgentLibraryCache.key(agentJar));
+        assertTrue(dir.getName().startsWith("1.0.0-"));
+        assertTrue(new File(dir, "a.jar").isFile());
+        assertTrue(new File(dir, "b.jar").isFile());
+        assertTrue(new File(dir, "classes.idx").isFile());
+        assertArrayEquals(new String[]{dir.getName()}, root.list());
+        assertEquals(2, cache.urls().length);
+    }
+
+    @Test
+    public void should_look_up_classes_by_index() throws Exception {
+        AgentLibraryCache cache = AgentLibraryCache.prepare(agentJar("1.0.0"), folder.newFolder("cache"));
+
+        assertEquals(0, cache.indexOf("com.x.A"));
+        // The former jar wins
+        assertEquals(0, cache.indexOf("com.x.B"));
+        assertEquals(1, cache.indexOf("com.y.C"));
+        assertEquals(-1, cache.indexOf("com.y.Missing"));
+        assertTrue(cache.urlAt(1).getPath().endsWith("/b.jar"));
+
+        JarFile jar = cache.jarAt(1);
+        assertSame(jar, cache.jarAt(1));
+        assertNotNull(jar.getJarEntry("com/y/C.class"));
+    }
+
+    @Test
+    public void should_reload_index_without_extracting_again() throws Exception {
+        File agentJar = agentJar("1.0.0");
+        File root = folder.newFolder("cache");
+        AgentLibraryCache.prepare(agentJar, root);
+        File dir = new File(root, AgentLibraryCache.key(agentJar));
+        assertTrue(new File(dir, "a.jar").delete());
+
+        AgentLibraryCache cache = AgentLibraryCache.prepare(agentJar, root);
+
+        assertFalse(new File(dir, "a.jar").exists());
+        assertEquals(0, cache.indexOf("com.x.A"));
+        assertEquals(1, cache.indexOf("com.y.C"));
+    }
+
+    @Test
+    public void should_extract_again_for_another_agent_version() throws Exception {
+        File root = folder.newFolder("cache");
+        AgentLibraryCache.prepare(agentJar("1.0.0"), root);
+
+        File upgraded = agentJar("1.0.1");
+        AgentLibraryCache.prepare(upgraded, root);
+
+        assertEquals(2, root.list().length);
+        assertTrue(new File(root, AgentLibraryCache.key(upgraded)).isDirectory());
+    }
+
+    @Test
+    public void should_read_versioned_entries_of_multi_release_jars() throws Exception {
+        Assume.assumeFalse(System.getProperty("java.specification.version").startsWith("1."));
+        AgentLibraryCache cache = AgentLibraryCache.prepare(agentJar("1.0.0"), folder.newFolder("cache"));
+
+        JarFile jar = cache.jarAt(1);
+
+        assertEquals("9", read(jar, "com/y/C.class"));
+    }
+
+    @Test(expected = IOException.class)
+    public void should_fail_if_cache_dir_is_not_writable() throws Exception {
+        AgentLibraryCache.prepare(agentJar("1.0.0"), new File(folder.newFile("cache"), "sub"));
+    }
+
+    @Test
+    public void should_fallback_to_nested_archives_if_cache_dir_is_not_writable() throws Exception {
+        File agentJar = agentJar("1.0.0");
+        String origin = System.getProperty(AgentLibraryCache.CACHE_DIR_KEY);
+        System.setProperty(AgentLibraryCache.CACHE_DIR_KEY, new File(folder.newFile("cache"), "sub").getPath());
+        try (JarFileArchive archive = new JarFileArchive(agentJar)) {
+            URL[] urls = ((URLClassLoader) Main.newClassLoader(agentJar, archive)).getURLs();
+
+            assertEquals(2, urls.length);
+            assertTrue(urls[0].toString().endsWith("!/lib/a.jar!/"));
+        } finally {
+            if (origin == null) {
+                System.clearProperty(AgentLibraryCache.CACHE_DIR_KEY);
+            } else {
+                System.setProperty(AgentLibraryCache.CACHE_DIR_KEY, origin);
+            }
+        }
+    }
+
+    private File agentJar(String version) throws IOException {
+        Manifest a = new Manifest();
+        a.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        Manifest b = new Manifest();
+        b.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        b.getMainAttributes().putValue("Multi-Release", "true");
+        byte[] aJar = jar(a, "com/x/A.class", "8", "com/x/B.class", "8");
+        byte[] bJar = jar(b, "com/x/B.class", "8", "com/y/C.class", "8",
+                "META-INF/versions/9/com/y/C.class", "9");
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_VERSION, version);
+        File file = folder.newFile("easeagent-" + version + ".jar");
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest)) {
+            // Nested jars are stored without compression like the assembly of easeagent.jar
+            stored(out, "lib/a.jar", aJar);
+            stored(out, "lib/b.jar", bJar);
+        }
+        return file;
+    }
+
+    private static byte[] jar(Manifest manifest, String... nameAndContents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (JarOutputStream out = new JarOutputStream(bytes, manifest)) {
+            for (int i = 0; i < nameAndContents.length; i += 2) {
+                out.putNextEntry(new JarEntry(nameAndContents[i]));
+                out.write(nameAndContents[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void stored(JarOutputStream out, String name, byte[] content) throws IOException {
+        JarEntry entry = new JarEntry(name);
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        entry.setMethod(JarEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    private static String read(JarFile jar, String name) throws IOException {
+        JarEntry entry = jar.getJarEntry(name);
+        byte[] bytes = new byte[(int) entry.getSize()];
+        int n = jar.getInputStream(entry).read(bytes);
+        return new String(bytes, 0, n, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.junit.Assert.*;
+
+public class CompoundableClassLoaderTest {
+    private static final String DEFINED = CompoundableClassLoaderTest.class.getName() + "$Defined";
+    private static final String MISSING = "com.megaease.easeagent.Missing";
+
+    @Test
+    public void should_load_classes_with_resource_from_externals() throws Exception {
+        Main.CompoundableClassLoader loader = new Main.CompoundableClassLoader(new URL[0]);
+        URL classes = getClass().getProtectionDomain().getCodeSource().getLocation();
+        URLClassLoader external = new URLClassLoader(new URL[]{classes}, null);
+        loader.add(new URLClassLoader(new URL[0], null));
+        loader.add(external);
+
+        assertSame(external, loader.loadClass(DEFINED).getClassLoader());
+        assertSame(external, loader.loadClass(DEFINED).getClassLoader());
+        assertEquals(1, loader.getMisses());
+        assertEquals(1, loader.getHits());
+    }
+
+    @Test
+    public void should_load_classes_defined_at_runtime_from_externals() throws Exception {
+        Main.CompoundableClassLoader loader = new Main.CompoundableClassLoader(new URL[0]);
+        RuntimeDefiner external = new RuntimeDefiner();
+        loader.add(new URLClassLoader(new URL[0], null));
+        loader.add(external);
+
+        assertNull(external.getResource(DEFINED.replace('.', '/') + ".class"));
+        assertSame(external, loader.loadClass(DEFINED).getClassLoader());
+        assertEquals(1, loader.getMisses());
+    }
+
+    @Test
+    public void should_remember_missing_names() {
+        Main.CompoundableClassLoader loader = new Main.CompoundableClassLoader(new URL[0]);
+        loader.add(new RuntimeDefiner());
+        for (int i = 0; i < 3; i++) {
+            try {
+                loader.loadClass(MISSING);
+                fail("should not be found");
+            } catch (ClassNotFoundException expected) {
+            }
+        }
+        assertEquals(1, loader.getMisses());
+        assertEquals(2, loader.getNegativeHits());
+
+        // A new external loader may define it
+        loader.add(new URLClassLoader(new URL[0], null));
+        try {
+            loader.loadClass(MISSING);
+            fail("should not be found");
+        } catch (ClassNotFoundException expected) {
+        }
+        assertEquals(2, loader.getMisses());
+    }
+
+    public static class Defined {
+    }
+
+    /**
+     * Defines {@link Defined} without a class file resource, like a loader of proxies or generated classes.
+     */
+    private static class RuntimeDefiner extends ClassLoader {
+        RuntimeDefiner() {
+            super(null);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            if (!DEFINED.equals(name)) {
+                throw new ClassNotFoundException(name);
+            }
+            try (InputStream in = CompoundableClassLoaderTest.class.getResourceAsStream("CompoundableClassLoaderTest$Defined.class")) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[4096];
+                for (int n; (n = in.read(buf)) != -1; ) {
+                    out.write(buf, 0, n);
+                }
+                byte[] bytes = out.toByteArray();
+                return defineClass(name, bytes, 0, bytes.length);
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
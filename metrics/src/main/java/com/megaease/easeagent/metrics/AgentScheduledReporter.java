@@ -20,6 +20,7 @@ package com.megaease.easeagent.metrics;
 import com.codahale.metrics.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.megaease.easeagent.metrics.converter.Converter;
+import com.megaease.easeagent.report.telemetry.AgentTelemetry;
 import lombok.SneakyThrows;
 import org.slf4j.Logger;
 import org.slf4j.Marker;
@@ -35,6 +36,8 @@ import java.util.function.Supplier;
 public class AgentScheduledReporter extends ScheduledReporter {
     public static final Map<String, Map<String, String>> METRIC_MAP = new ConcurrentHashMap<>();
     public static final Map<String, Long> METRIC_TIMESTAMP = new ConcurrentHashMap<>();
+    private static final AgentTelemetry.Timer REPORT_TIMER = AgentTelemetry.timer("metric_report_cycle",
+            "Time spent converting and outputting metrics per report cycle.");
 
     private final ObjectMapper objectMapper = new ObjectMapper();
     private Converter converter;
@@ -74,13 +77,29 @@ public class AgentScheduledReporter extends ScheduledReporter {
     @SuppressWarnings("rawtypes")
     public void report(SortedMap<String, Gauge> gauges, SortedMap<String, Counter> counters, SortedMap<String, Histogram> histograms, SortedMap<String, Meter> meters, SortedMap<String, com.codahale.metrics.Timer> timers) {
 
+        // Close the windows even if disabled, so that they always span one interval
+        for (com.codahale.metrics.Timer timer : timers.values()) {
+            if (timer instanceof IntervalTimer) {
+                ((IntervalTimer) timer).rotate();
+            }
+        }
+        for (Histogram histogram : histograms.values()) {
+            if (histogram instanceof IntervalHistogram) {
+                ((IntervalHistogram) histogram).rotate();
+            }
+        }
         if (!this.enabled.get()) {
             return;
         }
 
-        List<Map<String, Object>> outputs = converter.convertMap(gauges, counters, histograms, meters, timers);
-        for (Map<String, Object> output : outputs) {
-            this.dataConsumer.accept(objectMapper.writeValueAsString(output));
+        long start = System.nanoTime();
+        try {
+            List<Map<String, Object>> outputs = converter.convertMap(gauges, counters, histograms, meters, timers);
+            for (Map<String, Object> output : outputs) {
+                this.dataConsumer.accept(objectMapper.writeValueAsString(output));
+            }
+        } finally {
+            REPORT_TIMER.record(System.nanoTime() - start);
         }
     }
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.megaease.easeagent.metrics;
+
+import com.megaease.easeagent.report.telemetry.AgentTelemetry;
+import io.prometheus.client.Collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Exports {@link AgentTelemetry} under the {@code easeagent_agent} namespace, timers as summaries in seconds.
+ */
+public class AgentTelemetryCollector extends Collector {
+    static final String NAMESPACE = "easeagent_agent_";
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples> families = new ArrayList<>();
+        for (AgentTelemetry.Metric metric : AgentTelemetry.metrics()) {
+            String name = NAMESPACE + metric.getName();
+            if (metric instanceof AgentTelemetry.Counter) {
+                long value = ((AgentTelemetry.Counter) metric).get();
+                families.add(family(name, Type.COUNTER, metric.getHelp(), sample(name + "_total", value)));
+            } else if (metric instanceof AgentTelemetry.Gauge) {
+                double value = ((AgentTelemetry.Gauge) metric).get();
+                families.add(family(name, Type.GAUGE, metric.getHelp(), sample(name, value)));
+            } else if (metric instanceof AgentTelemetry.Timer) {
+                AgentTelemetry.Timer timer = (AgentTelemetry.Timer) metric;
+                String seconds = name + "_seconds";
+                families.add(family(seconds, Type.SUMMARY, metric.getHelp(),
+                        sample(seconds + "_count", timer.getCount()),
+                        sample(seconds + "_sum", timer.getTotalNanos() / NANOS_PER_SECOND)));
+            }
+        }
+        return families;
+    }
+
+    private static MetricFamilySamples family(String name, Type type, String help, MetricFamilySamples.Sample... samples) {
+        return new MetricFamilySamples(name, type, help, Arrays.asList(samples));
+    }
+
+    private static MetricFamilySamples.Sample sample(String name, double value) {
+        return new MetricFamilySamples.Sample(name, Collections.emptyList(), Collections.emptyList(), value);
+    }
+}
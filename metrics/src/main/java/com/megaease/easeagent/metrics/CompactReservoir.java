@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.metrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts values in log-linear buckets of a fixed primitive array, instead of keeping samples, so that a timer costs
+ * a few KB no matter how busy it is. Values below {@value #SUB_COUNT} are exact, larger ones fall in one of
+ * {@value #SUB_COUNT} buckets per power of two, whose midpoint is within about 3% of them. Values from
+ * 2<sup>{@value #MAX_EXPONENT}</sup> nanoseconds, about 18 minutes, on are counted in the last bucket.
+ * <p>
+ * Counts are halved every minute, so like the default forward decaying reservoir, percentiles are biased to
+ * the last few minutes. The exact min and max are kept while their buckets are not empty, and values of snapshot
+ * are clamped to them, so that no value reported exceeds those recorded.
+ */
+public class CompactReservoir implements Reservoir {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_COUNT;
+    private static final long RESCALE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int MAX_HALVINGS = 31;
+
+    private final Clock clock;
+    private final AtomicIntegerArray counts = new AtomicIntegerArray(BUCKETS);
+    private final AtomicLong nextRescale;
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(-1);
+
+    public CompactReservoir() {
+        this(Clock.defaultClock());
+    }
+
+    public CompactReservoir(Clock clock) {
+        this.clock = clock;
+        this.nextRescale = new AtomicLong(clock.getTick() + RESCALE_NANOS);
+    }
+
+    @Override
+    public int size() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void update(long value) {
+        rescaleIfNeeded();
+        long v = Math.max(value, 0);
+        counts.incrementAndGet(indexOf(v));
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+        if (v < min.get()) {
+            min.accumulateAndGet(v, Math::min);
+        }
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        rescaleIfNeeded();
+        int[] copy = new int[BUCKETS];
+        int nonEmpty = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            if (copy[i] > 0) {
+                nonEmpty++;
+            }
+        }
+        long[] values = new long[nonEmpty];
+        long[] weights = new long[nonEmpty];
+        int[] indexes = new int[nonEmpty];
+        for (int i = 0, j = 0; i < BUCKETS; i++) {
+            if (copy[i] > 0) {
+                indexes[j] = i;
+                values[j] = valueOf(i);
+                weights[j++] = copy[i];
+            }
+        }
+        if (nonEmpty == 0) {
+            return new BucketSnapshot(values, weights, 0, 0);
+        }
+        long lowest = exactOrBound(min, indexes[0], upperOf(indexes[0]));
+        long highest = exactOrBound(max, indexes[nonEmpty - 1], lowerOf(indexes[nonEmpty - 1]));
+        for (int j = 0; j < nonEmpty; j++) {
+            values[j] = Math.min(Math.max(values[j], lowest), highest);
+        }
+        return new BucketSnapshot(values, weights, lowest, highest);
+    }
+
+    /**
+     * @return the exact extreme if its bucket is still the outermost non-empty one, otherwise the bound of the
+     * outermost bucket nearest to its recorded values, which is kept as the new extreme
+     */
+    private static long exactOrBound(AtomicLong extreme, int outermost, long bound) {
+        long exact = extreme.get();
+        if (indexOf(exact) == outermost) {
+            return exact;
+        }
+        extreme.compareAndSet(exact, bound);
+        return bound;
+    }
+
+    /**
+     * @return bytes held by the reservoir, rough for a 64-bit JVM with compressed oops
+     */
+    public long estimatedBytes() {
+        // this, the counts with its array, the rescale time, min and max
+        return 32 + 16 + 16 + 4L * BUCKETS + 3 * 24;
+    }
+
+    /**
+     * Halve counts once for every minute passed, e.g. after an idle gap of ten minutes they are divided by 2^11.
+     */
+    private void rescaleIfNeeded() {
+        long now = clock.getTick();
+        long next = nextRescale.get();
+        if (now >= next && nextRescale.compareAndSet(next, now + RESCALE_NANOS)) {
+            int halvings = (int) Math.min((now - next) / RESCALE_NANOS + 1, MAX_HALVINGS);
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts.get(i) != 0) {
+                    counts.getAndUpdate(i, c -> c >> halvings);
+                }
+            }
+        }
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BITS;
+        int mantissa = (int) (value >>> shift) - SUB_COUNT;
+        return (shift + 1) * SUB_COUNT + mantissa;
+    }
+
+    /**
+     * @return midpoint of the bucket
+     */
+    static long valueOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        return lowerOf(index) + ((1L << shift) >>> 1);
+    }
+
+    static long lowerOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        return (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+    }
+
+    static long upperOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        if (index == BUCKETS - 1) {
+            return Long.MAX_VALUE;
+        }
+        int shift = index / SUB_COUNT - 1;
+        return lowerOf(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * Snapshot of the buckets, whose values are the midpoints of non-empty buckets in ascending order, clamped
+     * to the min and max. Unlike other snapshots, {@link #getValues()} has one value per non-empty bucket, while
+     * {@link #size()} is the decayed count of values recorded.
+     */
+    static class BucketSnapshot extends Snapshot {
+        private final long[] values;
+        private final long[] weights;
+        private final long total;
+        private final long min;
+        private final long max;
+
+        BucketSnapshot(long[] values, long[] weights, long min, long max) {
+            this.values = values;
+            this.weights = weights;
+            this.min = min;
+            this.max = max;
+            long sum = 0;
+            for (long weight : weights) {
+                sum += weight;
+            }
+            this.total = sum;
+        }
+
+        @Override
+        public double getValue(double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < values.length; i++) {
+                seen += weights[i];
+                if (seen >= rank) {
+                    return values[i];
+                }
+            }
+            return values[values.length - 1];
+        }
+
+        @Override
+        public long[] getValues() {
+            return Arrays.copyOf(values, values.length);
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(total, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public long getMin() {
+            return min;
+        }
+
+        @Override
+        public double getMean() {
+            if (total == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < values.length; i++) {
+                sum += (double) values[i] * weights[i];
+            }
+            return sum / total;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (total <= 1) {
+                return 0;
+            }
+            double mean = getMean();
+            double variance = 0;
+            for (int i = 0; i < values.length; i++) {
+                double diff = values[i] - mean;
+                variance += diff * diff * weights[i];
+            }
+            return Math.sqrt(variance / (total - 1));
+        }
+
+        @Override
+        public void dump(OutputStream output) {
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (int i = 0; i < values.length; i++) {
+                    out.printf("%d %d%n", values[i], weights[i]);
+                }
+            }
+        }
+    }
+}
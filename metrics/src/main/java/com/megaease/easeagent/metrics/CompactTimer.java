@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.metrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Timer;
+
+/**
+ * A timer keeping durations in a {@link CompactReservoir}.
+ */
+public class CompactTimer extends Timer {
+    private final CompactReservoir reservoir;
+
+    public CompactTimer() {
+        this(Clock.defaultClock());
+    }
+
+    public CompactTimer(Clock clock) {
+        this(new CompactReservoir(clock), clock);
+    }
+
+    private CompactTimer(CompactReservoir reservoir, Clock clock) {
+        super(reservoir, clock);
+        this.reservoir = reservoir;
+    }
+
+    public long estimatedReservoirBytes() {
+        return reservoir.estimatedBytes();
+    }
+}
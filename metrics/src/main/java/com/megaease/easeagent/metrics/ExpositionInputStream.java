@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.megaease.easeagent.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.exporter.common.TextFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+/**
+ * Renders metric families into the exposition format one family at a time as the response is read, so that a
+ * scrape holds the text of one family in a reused buffer instead of the whole text.
+ * <p>
+ * The samples themselves are not bounded by it: the registry collects them collector by collector, and
+ * {@code DropwizardExports} builds all families of its {@code MetricRegistry} at once, so the samples of the largest
+ * registry are still held while its families are read.
+ * <p>
+ * The output is the same as {@link TextFormat#writeFormat} of all families, except that the {@code _created},
+ * {@code _gsum} and {@code _gcount} gauges of the 0.0.4 format follow their own family rather than the last one.
+ */
+class ExpositionInputStream extends InputStream {
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final String OPENMETRICS_EOF = "# EOF\n";
+
+    private final String contentType;
+    private final boolean openMetrics;
+    private final Enumeration<Collector.MetricFamilySamples> families;
+    private final SingleFamily family = new SingleFamily();
+    private final Utf8Buffer buffer = new Utf8Buffer();
+    private int position;
+    private boolean finished;
+
+    ExpositionInputStream(String contentType, Enumeration<Collector.MetricFamilySamples> families) {
+        this.contentType = contentType;
+        this.openMetrics = TextFormat.CONTENT_TYPE_OPENMETRICS_100.equals(contentType);
+        this.families = families;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer.array()[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.size() - position);
+        System.arraycopy(buffer.array(), position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return buffer.size() - position;
+    }
+
+    int bufferCapacity() {
+        return buffer.array().length;
+    }
+
+    /**
+     * @return false if all families are read
+     */
+    private boolean fill() throws IOException {
+        while (position >= buffer.size()) {
+            if (finished) {
+                return false;
+            }
+            buffer.reset();
+            position = 0;
+            if (families.hasMoreElements()) {
+                family.set(families.nextElement());
+                TextFormat.writeFormat(contentType, buffer, family);
+                if (openMetrics) {
+                    // Every call of writeOpenMetrics100 terminates the exposition, keep only the last one
+                    buffer.truncate(buffer.size() - OPENMETRICS_EOF.length());
+                }
+            } else {
+                finished = true;
+                if (openMetrics) {
+                    buffer.write(OPENMETRICS_EOF);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Encodes straight into a growable byte array, since {@code OutputStreamWriter} copies every string written
+     * into a new char array first.
+     */
+    private static final class Utf8Buffer extends Writer {
+        private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+        private int count;
+
+        byte[] array() {
+            return bytes;
+        }
+
+        int size() {
+            return count;
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        void truncate(int size) {
+            count = size;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            ensureCapacity(count + len);
+            int end = off + len;
+            for (int i = off; i < end; i++) {
+                char c = str.charAt(i);
+                if (c < 0x80) {
+                    bytes[count++] = (byte) c;
+                } else {
+                    i = writeNonAscii(str, i, end);
+                }
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            write(new String(cbuf, off, len), 0, len);
+        }
+
+        @Override
+        public void write(int c) {
+            if (c < 0x80) {
+                ensureCapacity(count + 1);
+                bytes[count++] = (byte) c;
+            } else {
+                write(String.valueOf((char) c), 0, 1);
+            }
+        }
+
+        /**
+         * @return index of the last char written
+         */
+        private int writeNonAscii(String str, int i, int end) {
+            char c = str.charAt(i);
+            ensureCapacity(count + 4 + (end - i));
+            if (c < 0x800) {
+                bytes[count++] = (byte) (0xC0 | (c >> 6));
+                bytes[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, str.charAt(++i));
+                bytes[count++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[count++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[count++] = '?';
+            } else {
+                bytes[count++] = (byte) (0xE0 | (c >> 12));
+                bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+            return i;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class SingleFamily implements Enumeration<Collector.MetricFamilySamples> {
+        private Collector.MetricFamilySamples next;
+
+        void set(Collector.MetricFamilySamples family) {
+            this.next = family;
+        }
+
+        @Override
+        public boolean hasMoreElements() {
+            return next != null;
+        }
+
+        @Override
+        public Collector.MetricFamilySamples nextElement() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Collector.MetricFamilySamples family = next;
+            next = null;
+            return family;
+        }
+    }
+}
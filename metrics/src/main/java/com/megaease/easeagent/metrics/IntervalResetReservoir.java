@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.megaease.easeagent.metrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformSnapshot;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Keeps the values of the current window only, so that percentiles published per report cycle are not blended
+ * with former ones. {@link #rotate()} closes the window, and {@link #getSnapshot()} returns the last closed one,
+ * so a scrape between report cycles reads the same values without resetting anything.
+ * <p>
+ * Values are exact up to the capacity of a window, beyond which they are sampled uniformly, while the count, min
+ * and max are always exact. Updating never blocks, rotating waits for the updates in progress on the window.
+ */
+public class IntervalResetReservoir implements Reservoir {
+    static final int DEFAULT_CAPACITY = 1024;
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final Clock clock;
+    private final int capacity;
+    private volatile Window current;
+    private volatile IntervalSnapshot last;
+
+    public IntervalResetReservoir() {
+        this(Clock.defaultClock(), DEFAULT_CAPACITY);
+    }
+
+    public IntervalResetReservoir(Clock clock, int capacity) {
+        this.clock = clock;
+        this.capacity = capacity;
+        long now = clock.getTick();
+        this.current = new Window(capacity, now);
+        this.last = new IntervalSnapshot(new long[0], 0, 0, 0, 0);
+    }
+
+    @Override
+    public int size() {
+        return last.size();
+    }
+
+    @Override
+    public void update(long value) {
+        for (; ; ) {
+            Window window = current;
+            window.writers.incrementAndGet();
+            if (window == current) {
+                try {
+                    window.record(value);
+                } finally {
+                    window.writers.decrementAndGet();
+                }
+                return;
+            }
+            // Rotated in between, the reader may have taken the window already
+            window.writers.decrementAndGet();
+        }
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        return last;
+    }
+
+    /**
+     * Close the current window and start a new one.
+     *
+     * @return snapshot of the closed window
+     */
+    public synchronized IntervalSnapshot rotate() {
+        Window window = current;
+        long now = clock.getTick();
+        current = new Window(capacity, now);
+        while (window.writers.get() != 0) {
+            Thread.yield();
+        }
+        last = window.snapshot(now);
+        return last;
+    }
+
+    /**
+     * @return bytes held by the current window and the last snapshot, rough for a 64-bit JVM with compressed oops
+     */
+    public long estimatedBytes() {
+        Window window = current;
+        long bytes = 64 + window.estimatedBytes();
+        // values of the last snapshot, and the snapshot itself
+        return bytes + 16 + 8L * last.size() + 40;
+    }
+
+    private static final class Window {
+        final AtomicInteger writers = new AtomicInteger();
+        final AtomicLong count = new AtomicLong();
+        final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+        final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        final AtomicReferenceArray<long[]> chunks;
+        final int capacity;
+        final long start;
+
+        Window(int capacity, long start) {
+            this.capacity = capacity;
+            this.start = start;
+            this.chunks = new AtomicReferenceArray<>((capacity + CHUNK_SIZE - 1) >>> CHUNK_BITS);
+        }
+
+        void record(long value) {
+            min.accumulate(value);
+            max.accumulate(value);
+            long index = count.getAndIncrement();
+            if (index >= capacity) {
+                // Algorithm R, replaces a kept value with the probability of capacity / count
+                index = ThreadLocalRandom.current().nextLong(index + 1);
+                if (index >= capacity) {
+                    return;
+                }
+            }
+            chunk((int) (index >>> CHUNK_BITS))[(int) index & (CHUNK_SIZE - 1)] = value;
+        }
+
+        private long[] chunk(int i) {
+            long[] chunk = chunks.get(i);
+            if (chunk == null) {
+                chunks.compareAndSet(i, null, new long[CHUNK_SIZE]);
+                chunk = chunks.get(i);
+            }
+            return chunk;
+        }
+
+        long estimatedBytes() {
+            long bytes = 200 + 16 + 4L * chunks.length();
+            for (int i = 0; i < chunks.length(); i++) {
+                if (chunks.get(i) != null) {
+                    bytes += 16 + 8L * CHUNK_SIZE;
+                }
+            }
+            return bytes;
+        }
+
+        IntervalSnapshot snapshot(long end) {
+            long n = count.get();
+            long[] values = new long[(int) Math.min(n, capacity)];
+            for (int i = 0; i < values.length; i += CHUNK_SIZE) {
+                System.arraycopy(chunks.get(i >>> CHUNK_BITS), 0, values, i, Math.min(CHUNK_SIZE, values.length - i));
+            }
+            return n == 0 ? new IntervalSnapshot(values, 0, 0, 0, end - start)
+                    : new IntervalSnapshot(values, n, min.get(), max.get(), end - start);
+        }
+    }
+
+    /**
+     * Values of one window, with the exact count, min and max of it.
+     */
+    public static class IntervalSnapshot extends UniformSnapshot {
+        private final long count;
+        private final long min;
+        private final long max;
+        private final long durationNanos;
+
+        IntervalSnapshot(long[] values, long count, long min, long max, long durationNanos) {
+            super(values);
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.durationNanos = durationNanos;
+        }
+
+        /**
+         * @return number of values updated in the window, which is more than {@link #size()} once sampled
+         */
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public long getMin() {
+            return min;
+        }
+
+        @Override
+        public long getMax() {
+            return max;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+    }
+}
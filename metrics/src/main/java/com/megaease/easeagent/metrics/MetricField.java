@@ -35,6 +35,7 @@ public enum MetricField {
     P999_EXECUTION_TIME("p999", ConverterType.DURATION, 2),
     STD("std"),
     EXECUTION_COUNT("cnt"),
+    INTERVAL_COUNT("intervalcnt"),
     EXECUTION_ERROR_COUNT("errcnt"),
     M1_RATE("m1", ConverterType.RATE, 5),
     M5_RATE("m5", ConverterType.RATE, 5),
@@ -85,6 +86,15 @@ public enum MetricField {
     EXECUTION_CONSUMER_ERROR_COUNT("consrerrcnt"),
     EXECUTION_PRODUCER_COUNT("prodrcnt"),
     EXECUTION_CONSUMER_COUNT("consrcnt"),
+    /* cpu time and allocated bytes of thread serving a request */
+    MEAN_CPU_TIME("cpumean", ConverterType.DURATION, 2),
+    P95_CPU_TIME("cpup95", ConverterType.DURATION, 2),
+    P99_CPU_TIME("cpup99", ConverterType.DURATION, 2),
+    MAX_CPU_TIME("cpumax", ConverterType.DURATION, 2),
+    MEAN_ALLOCATED_BYTES("allocmean"),
+    P95_ALLOCATED_BYTES("allocp95"),
+    P99_ALLOCATED_BYTES("allocp99"),
+    MAX_ALLOCATED_BYTES("allocmax"),
     PRODUCER_MIN_EXECUTION_TIME("prodrmin", ConverterType.DURATION, 2),
     PRODUCER_MAX_EXECUTION_TIME("prodrmax", ConverterType.DURATION, 2),
     PRODUCER_MEAN_EXECUTION_TIME("prodrmean", ConverterType.DURATION, 2),
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.metrics;
+
+import com.codahale.metrics.*;
+import io.prometheus.client.Collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Estimates the heap held by the registries of {@link MetricRegistryService} per metric type and family, and
+ * exports it under the {@code easeagent_agent} namespace, so that operators could see which keys cost the most
+ * and choose a compact histogram for them. The sizes are rough ones for a 64-bit JVM with compressed oops, from
+ * the known layouts of metrics instead of walking the heap.
+ */
+public class MetricFootprint extends Collector {
+    static final String BYTES = AgentTelemetryCollector.NAMESPACE + "metric_registry_bytes";
+    static final String METRICS = AgentTelemetryCollector.NAMESPACE + "metric_registry_metrics";
+    private static final List<String> LABELS = Arrays.asList("registry", "family");
+
+    // node of the map of registry, and the name
+    private static final long ENTRY_BYTES = 32 + 24 + 16;
+    private static final long COUNTER_BYTES = 16 + 24;
+    // three EWMAs, the count and the ticks
+    private static final long METER_BYTES = 40 + 3 * 64 + 24 + 2 * 24;
+    private static final long HISTOGRAM_BYTES = 24 + 24;
+    private static final long TIMER_BYTES = 24 + METER_BYTES + HISTOGRAM_BYTES;
+    private static final long GAUGE_BYTES = 32;
+    // the skip list, its lock and ticks, and a node with the priority and sample per value
+    private static final long DECAYING_RESERVOIR_BYTES = 300;
+    private static final long DECAYING_SAMPLE_BYTES = 72;
+    private static final int DECAYING_RESERVOIR_SIZE = 1028;
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> bytes = new ArrayList<>();
+        List<MetricFamilySamples.Sample> metrics = new ArrayList<>();
+        estimate().forEach((registry, families) -> families.forEach((family, usage) -> {
+            List<String> values = Arrays.asList(registry, family);
+            bytes.add(new MetricFamilySamples.Sample(BYTES, LABELS, values, usage[0]));
+            metrics.add(new MetricFamilySamples.Sample(METRICS, LABELS, values, usage[1]));
+        }));
+        return Arrays.asList(
+                new MetricFamilySamples(BYTES, Type.GAUGE, "Estimated heap bytes held by agent metric registries", bytes),
+                new MetricFamilySamples(METRICS, Type.GAUGE, "Number of metrics in agent metric registries", metrics));
+    }
+
+    /**
+     * @return bytes and number of metrics by family by metric type
+     */
+    static SortedMap<String, SortedMap<String, long[]>> estimate() {
+        SortedMap<String, SortedMap<String, long[]>> result = new TreeMap<>();
+        for (Map.Entry<String, MetricRegistry> entry : MetricRegistryService.registries()) {
+            SortedMap<String, long[]> families = result.computeIfAbsent(entry.getKey(), k -> new TreeMap<>());
+            entry.getValue().getMetrics().forEach((name, metric) -> {
+                long[] usage = families.computeIfAbsent(family(metric), k -> new long[2]);
+                usage[0] += ENTRY_BYTES + 2L * name.length() + estimate(metric);
+                usage[1]++;
+            });
+        }
+        return result;
+    }
+
+    static String family(Metric metric) {
+        if (metric instanceof Timer) {
+            return "timer";
+        } else if (metric instanceof Histogram) {
+            return "histogram";
+        } else if (metric instanceof Meter) {
+            return "meter";
+        } else if (metric instanceof Counter) {
+            return "counter";
+        } else if (metric instanceof Gauge) {
+            return "gauge";
+        }
+        return "other";
+    }
+
+    static long estimate(Metric metric) {
+        if (metric instanceof IntervalTimer) {
+            return TIMER_BYTES + ((IntervalTimer) metric).estimatedReservoirBytes();
+        } else if (metric instanceof CompactTimer) {
+            return TIMER_BYTES + ((CompactTimer) metric).estimatedReservoirBytes();
+        } else if (metric instanceof IntervalHistogram) {
+            return HISTOGRAM_BYTES + ((IntervalHistogram) metric).estimatedReservoirBytes();
+        } else if (metric instanceof CompactHistogram) {
+            return HISTOGRAM_BYTES + ((CompactHistogram) metric).estimatedReservoirBytes();
+        } else if (metric instanceof Timer) {
+            return TIMER_BYTES + decayingReservoirBytes(((Timer) metric).getCount());
+        } else if (metric instanceof Histogram) {
+            return HISTOGRAM_BYTES + decayingReservoirBytes(((Histogram) metric).getCount());
+        } else if (metric instanceof Meter) {
+            return METER_BYTES;
+        } else if (metric instanceof Counter) {
+            return COUNTER_BYTES;
+        }
+        return GAUGE_BYTES;
+    }
+
+    /**
+     * The reservoir is not accessible from timers and histograms, it keeps at most its size of values updated.
+     */
+    private static long decayingReservoirBytes(long count) {
+        return DECAYING_RESERVOIR_BYTES + DECAYING_SAMPLE_BYTES * Math.min(count, DECAYING_RESERVOIR_SIZE);
+    }
+}
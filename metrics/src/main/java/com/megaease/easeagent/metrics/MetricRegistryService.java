@@ -17,22 +17,97 @@
 
 package com.megaease.easeagent.metrics;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.megaease.easeagent.config.Config;
+import com.megaease.easeagent.config.ConfigConst;
 import io.prometheus.client.dropwizard.DropwizardExports;
 
-import java.util.ArrayList;
+import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class MetricRegistryService {
 
     public static final MetricRegistryService DEFAULT = new MetricRegistryService();
 
-    private static final List<MetricRegistry> REGISTRY_LIST = new ArrayList<>();
+    /**
+     * Value of {@code observability.metrics.[type].histogram} for timers and histograms publishing the last
+     * interval only.
+     */
+    public static final String INTERVAL_HISTOGRAM = "interval";
+
+    /**
+     * Value of {@code observability.metrics.[type].histogram} for timers and histograms keeping values in fixed
+     * buckets.
+     */
+    public static final String COMPACT_HISTOGRAM = "compact";
+
+    static final String DEFAULT_TYPE = "default";
+
+    private static final List<Map.Entry<String, MetricRegistry>> REGISTRY_LIST = new CopyOnWriteArrayList<>();
 
     public MetricRegistry createMetricRegistry() {
-        MetricRegistry registry = new MetricRegistry();
-        REGISTRY_LIST.add(registry);
+        return register(DEFAULT_TYPE, new MetricRegistry());
+    }
+
+    /**
+     * Create a registry of the metric type, whose timers and histograms are {@link IntervalTimer} and
+     * {@link IntervalHistogram} if its histogram is configured as {@value #INTERVAL_HISTOGRAM}, or
+     * {@link CompactTimer} and {@link CompactHistogram} if {@value #COMPACT_HISTOGRAM}, which is read once when
+     * created.
+     */
+    public MetricRegistry createMetricRegistry(Config config, String type) {
+        String histogram = config.getString(ConfigConst.join(ConfigConst.Observability.METRICS, type,
+                ConfigConst.Observability.KEY_COMM_HISTOGRAM));
+        MetricRegistry registry;
+        if (INTERVAL_HISTOGRAM.equalsIgnoreCase(histogram)) {
+            registry = new IntervalMetricRegistry();
+        } else if (COMPACT_HISTOGRAM.equalsIgnoreCase(histogram)) {
+            registry = new CompactMetricRegistry();
+        } else {
+            registry = new MetricRegistry();
+        }
+        return register(type, registry);
+    }
+
+    /**
+     * @return registries created with their metric types, in the order of creation
+     */
+    static List<Map.Entry<String, MetricRegistry>> registries() {
+        return Collections.unmodifiableList(REGISTRY_LIST);
+    }
+
+    private MetricRegistry register(String type, MetricRegistry registry) {
+        REGISTRY_LIST.add(new AbstractMap.SimpleImmutableEntry<>(type, registry));
         new DropwizardExports(registry).register();
         return registry;
     }
+
+    static class IntervalMetricRegistry extends MetricRegistry {
+        @Override
+        public Timer timer(String name) {
+            return timer(name, IntervalTimer::new);
+        }
+
+        @Override
+        public Histogram histogram(String name) {
+            return histogram(name, IntervalHistogram::new);
+        }
+    }
+
+    static class CompactMetricRegistry extends MetricRegistry {
+        @Override
+        public Timer timer(String name) {
+            return timer(name, CompactTimer::new);
+        }
+
+        @Override
+        public Histogram histogram(String name) {
+            return histogram(name, CompactHistogram::new);
+        }
+    }
 }
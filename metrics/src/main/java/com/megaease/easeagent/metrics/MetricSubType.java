@@ -25,6 +25,8 @@ public enum MetricSubType {
     PRODUCER("04"), //for messaging kafka/rabbitmq producer
     CONSUMER_ERROR("05"), //for messaging kafka/rabbitmq consumer error
     PRODUCER_ERROR("06"), //for messaging kafka/rabbitmq producer error
+    THREAD_CPU("07"), //for cpu time of thread serving a request
+    THREAD_ALLOCATION("08"), //for bytes allocated by thread serving a request
     NONE("99");
 
     private final String code;
@@ -18,43 +18,39 @@
 package com.megaease.easeagent.metrics;
 
 import com.megaease.easeagent.httpserver.AgentHttpHandler;
-import com.megaease.easeagent.httpserver.AgentHttpServer;
 import fi.iki.elonen.NanoHTTPD;
 import fi.iki.elonen.router.RouterNanoHTTPD;
 import io.prometheus.client.Collector;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.exporter.common.TextFormat;
-import lombok.extern.slf4j.Slf4j;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.StringWriter;
-import java.io.Writer;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Map;
 
-@Slf4j
 public class PrometheusAgentHttpHandler extends AgentHttpHandler {
 
+    static {
+        // Metrics of the agent itself are exported along with those of application
+        new AgentTelemetryCollector().register();
+        new MetricFootprint().register();
+    }
+
     @Override
     public String getPath() {
         return "/prometheus/metrics";
     }
 
+    /**
+     * Samples are rendered while the chunked response is written, in the format negotiated by the accept header,
+     * and compressed by the server if the scraper accepts gzip.
+     */
     @Override
     public NanoHTTPD.Response process(RouterNanoHTTPD.UriResource uriResource, Map<String, String> urlParams, NanoHTTPD.IHTTPSession session) {
-        Map<String, String> headers = session.getHeaders();
-        String contentType = TextFormat.chooseContentType(headers.get("Accept"));
+        // Names of headers are in lower case
+        String contentType = TextFormat.chooseContentType(session.getHeaders().get("accept"));
         Enumeration<Collector.MetricFamilySamples> samples = CollectorRegistry.defaultRegistry.filteredMetricFamilySamples(Collections.emptySet());
-        StringWriter stringWriter = new StringWriter();
-        try (Writer writer = new BufferedWriter(stringWriter)) {
-            TextFormat.writeFormat(contentType, writer, samples);
-            writer.flush();
-        } catch (IOException e) {
-            log.warn("write data error. {}", e.getMessage());
-        }
-        String data = stringWriter.toString();
-        return NanoHTTPD.newFixedLengthResponse(NanoHTTPD.Response.Status.OK, AgentHttpServer.JSON_TYPE, data);
+        return NanoHTTPD.newChunkedResponse(NanoHTTPD.Response.Status.OK, contentType,
+                new ExpositionInputStream(contentType, samples));
     }
 }
@@ -19,6 +19,7 @@ package com.megaease.easeagent.metrics.converter;
 
 import com.codahale.metrics.Timer;
 import com.codahale.metrics.*;
+import com.megaease.easeagent.metrics.IntervalResetReservoir;
 import com.megaease.easeagent.metrics.MetricField;
 import com.megaease.easeagent.metrics.MetricName;
 import com.megaease.easeagent.metrics.MetricNameFactory;
@@ -165,7 +166,19 @@ public class ConverterAdapter extends AbstractConverter {
 
     @Override
     protected void writeHistograms(String key, SortedMap<String, Histogram> histograms, Map<String, Object> output) {
-
+        Map<MetricSubType, MetricName> map = metricNameFactory.histogramNames(key);
+        map.values().forEach(v -> Optional.ofNullable(histograms.get(v.name())).ifPresent(h -> {
+                    final Snapshot snapshot = h.getSnapshot();
+                    v.getValueFetcher().forEach((fieldName, fetcher) -> {
+                        if (fetcher.clazz.equals(Snapshot.class)) {
+                            appendField(output, fieldName, fetcher, snapshot);
+                        } else {
+                            appendField(output, fieldName, fetcher, h);
+                        }
+                    });
+                    appendIntervalCount(v, snapshot, output);
+                })
+        );
     }
 
     @Override
@@ -208,7 +221,25 @@ public class ConverterAdapter extends AbstractConverter {
                             appendField(output, fieldName, fetcher, t);
                         }
                     });
+                    appendIntervalCount(v, snapshot, output);
                 })
         );
     }
+
+    /**
+     * Write the exact count of the last interval of interval timers and histograms next to their max, prefixed
+     * like it, e.g. {@code intervalcnt} beside {@code max} and {@code cpuintervalcnt} beside {@code cpumax}.
+     */
+    private void appendIntervalCount(MetricName name, Snapshot snapshot, Map<String, Object> output) {
+        if (!(snapshot instanceof IntervalResetReservoir.IntervalSnapshot)) {
+            return;
+        }
+        name.getValueFetcher().forEach((fieldName, fetcher) -> {
+            String field = fieldName.getField();
+            if (fetcher == MetricValueFetcher.SnapshotMaxValue && field.endsWith("max")) {
+                String prefix = field.substring(0, field.length() - "max".length());
+                output.put(prefix + MetricField.INTERVAL_COUNT.getField(), MetricValueFetcher.IntervalSnapshotCount.apply(snapshot));
+            }
+        });
+    }
 }
@@ -20,6 +20,7 @@ package com.megaease.easeagent.metrics.converter;
 import com.codahale.metrics.Counting;
 import com.codahale.metrics.Metered;
 import com.codahale.metrics.Snapshot;
+import com.megaease.easeagent.metrics.IntervalResetReservoir;
 
 import java.util.function.Function;
 
@@ -41,7 +42,8 @@ public enum MetricValueFetcher {
     MeteredM5Rate(Metered::getFiveMinuteRate, Metered.class),
     MeteredM15Rate(Metered::getFifteenMinuteRate, Metered.class),
     MeteredMeanRate(Metered::getMeanRate, Metered.class),
-    MeteredCount(Metered::getCount, Metered.class);
+    MeteredCount(Metered::getCount, Metered.class),
+    IntervalSnapshotCount(IntervalResetReservoir.IntervalSnapshot::getCount, IntervalResetReservoir.IntervalSnapshot.class);
 
     public static <T, V> Function<T, V> wrapIgnoreZeroFunc(Function<T, V> origin) {
         return null;
@@ -37,6 +37,7 @@ import javax.management.openmbean.CompositeData;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import static com.sun.management.GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION;
@@ -57,6 +58,12 @@ public class JVMGCMetric extends AbstractMetric {
                 .counterType(MetricSubType.DEFAULT, ImmutableMap.<MetricField, MetricValueFetcher>builder()
                         .put(MetricField.TOTAL_COLLECTION_TIME, MetricValueFetcher.CountingCount)
                         .build())
+                // Pauses of each stop-the-world collection from notifications, rather than diffs of the collection time
+                .timerType(MetricSubType.DEFAULT, ImmutableMap.<MetricField, MetricValueFetcher>builder()
+                        .put(MetricField.MAX_EXECUTION_TIME, MetricValueFetcher.SnapshotMaxValue)
+                        .put(MetricField.MEAN_EXECUTION_TIME, MetricValueFetcher.SnapshotMeanValue)
+                        .put(MetricField.P99_EXECUTION_TIME, MetricValueFetcher.Snapshot99PercentileValue)
+                        .build())
                 .build();
         this.collect();
     }
@@ -109,9 +116,24 @@ public class JVMGCMetric extends AbstractMetric {
                 }
             });
 
+            if (NO_GC.equals(gcCause) || !isStopTheWorld(gcName)) {
+                return;
+            }
+            Map<MetricSubType, MetricName> timerNames = metricNameFactory.timerNames(gcName);
+            timerNames.forEach((type, name) -> metricRegistry.timer(name.name()).update(duration, TimeUnit.MILLISECONDS));
+
         };
     }
 
+    /**
+     * The duration of a collection is a pause only if the whole of it stops the world. Those of CMS span its
+     * concurrent phases, and those of ZGC and Shenandoah cycles are concurrent too, whose pauses are reported by
+     * separate beans named {@code ... Pauses}.
+     */
+    public static boolean isStopTheWorld(String gcName) {
+        return !gcName.equals("ConcurrentMarkSweep") && !gcName.endsWith(" Cycles");
+    }
+
     class JVMGCMetricConverter extends ConverterAdapter {
         JVMGCMetricConverter(Supplier<Map<String, Object>> attributes) {
             super("application", "jvm-gc", metricNameFactory, KeyType.Meter, attributes, "resource");
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.metrics.jvm.runtime;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.sun.management.GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION;
+
+/**
+ * Accounts bytes allocated in heap from GC notifications: what a collection found in use less what the former one
+ * left. The heap used since the last collection is added when read, so the total grows smoothly between them.
+ */
+final class HeapAllocationCounter implements NotificationListener {
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private final Set<String> heapPoolNames = new HashSet<>();
+    private long accounted;
+    private long lastAfterGc;
+    private long lastRead;
+
+    HeapAllocationCounter(List<MemoryPoolMXBean> pools) {
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+                heapPoolNames.add(pool.getName());
+            }
+        }
+        this.lastAfterGc = heapUsed();
+    }
+
+    void install(List<GarbageCollectorMXBean> collectors) {
+        for (GarbageCollectorMXBean collector : collectors) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+            }
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GcInfo gcInfo = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo();
+        onCollection(heapUsed(gcInfo.getMemoryUsageBeforeGc()), heapUsed(gcInfo.getMemoryUsageAfterGc()));
+    }
+
+    synchronized void onCollection(long usedBeforeGc, long usedAfterGc) {
+        if (usedBeforeGc > lastAfterGc) {
+            accounted += usedBeforeGc - lastAfterGc;
+        }
+        lastAfterGc = usedAfterGc;
+    }
+
+    /**
+     * @return bytes allocated since the counter created, never less than the former result
+     */
+    long allocatedBytes() {
+        return allocatedBytes(heapUsed());
+    }
+
+    synchronized long allocatedBytes(long heapUsed) {
+        lastRead = Math.max(lastRead, accounted + Math.max(heapUsed - lastAfterGc, 0));
+        return lastRead;
+    }
+
+    private long heapUsed() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            used += pool.getUsage().getUsed();
+        }
+        return used;
+    }
+
+    private long heapUsed(Map<String, MemoryUsage> usages) {
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> entry : usages.entrySet()) {
+            if (heapPoolNames.contains(entry.getKey())) {
+                used += entry.getValue().getUsed();
+            }
+        }
+        return used;
+    }
+}
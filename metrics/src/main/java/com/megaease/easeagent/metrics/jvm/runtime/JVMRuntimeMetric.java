@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.metrics.jvm.runtime;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.megaease.easeagent.common.config.SwitchUtil;
+import com.megaease.easeagent.config.Config;
+import com.megaease.easeagent.metrics.*;
+import com.megaease.easeagent.metrics.converter.Converter;
+import com.megaease.easeagent.metrics.converter.ConverterAdapter;
+import com.megaease.easeagent.metrics.converter.KeyType;
+import com.megaease.easeagent.metrics.model.*;
+import com.megaease.easeagent.report.telemetry.AgentTelemetry;
+
+import java.lang.management.*;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Runtime metrics of JVM besides memory pools and GC: threads by state, CPU time by thread pool, heap allocation,
+ * class loading, code cache and safepoints. Each of them is a key of type {@code jvm-runtime}, thread pools are
+ * keyed as {@code thread-pools.[pool]}.
+ */
+public class JVMRuntimeMetric extends AbstractMetric implements ScheduleRunner {
+    public static final String ENABLE_KEY = "observability.metrics.jvmRuntime.enabled";
+    static final String THREADS = "threads";
+    static final String THREAD_POOLS = "thread-pools";
+    static final String ALLOCATION = "allocation";
+    static final String CLASSES = "classes";
+    static final String CODE_CACHE = "code-cache";
+    static final String SAFEPOINTS = "safepoints";
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final AgentTelemetry.Timer COLLECT_TIMER = AgentTelemetry.timer("jvm_runtime_collect",
+            "Time spent collecting JVM runtime metrics");
+
+    private final Config config;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final ClassLoadingMXBean classLoadingMXBean = ManagementFactory.getClassLoadingMXBean();
+    private final ThreadPoolSampler threadPoolSampler = new ThreadPoolSampler(threadMXBean);
+    private final HeapAllocationCounter allocationCounter;
+    private final SafepointStats safepointStats = new SafepointStats();
+    private final Map<String, GaugeMetricModel> models = new ConcurrentHashMap<>();
+    private final Set<String> poolKeys = new HashSet<>();
+    private long lastAllocated = -1;
+
+    public JVMRuntimeMetric(MetricRegistry metricRegistry, Config config) {
+        this(metricRegistry, config, true);
+    }
+
+    public JVMRuntimeMetric(MetricRegistry metricRegistry, Config config, boolean enableSchedule) {
+        super(metricRegistry, enableSchedule);
+        this.config = config;
+        this.metricNameFactory = MetricNameFactory.createBuilder().gaugeType(MetricSubType.DEFAULT, new HashMap<>())
+                .build();
+        this.allocationCounter = new HeapAllocationCounter(ManagementFactory.getMemoryPoolMXBeans());
+        this.allocationCounter.install(ManagementFactory.getGarbageCollectorMXBeans());
+    }
+
+    @Override
+    public Converter newConverter(Supplier<Map<String, Object>> attributes) {
+        return new JVMRuntimeMetricConverter(attributes);
+    }
+
+    @Override
+    public void doJob() {
+        if (!SwitchUtil.enableMetric(config, ENABLE_KEY)) {
+            return;
+        }
+        long begin = System.nanoTime();
+        try {
+            collect();
+        } finally {
+            COLLECT_TIMER.record(System.nanoTime() - begin);
+        }
+    }
+
+    synchronized void collect() {
+        ThreadPoolSampler.Sample sample = threadPoolSampler.sample();
+        int[] states = sample.states;
+        update(THREADS, new JVMThreadsGaugeMetricModel(threadMXBean.getThreadCount(),
+                threadMXBean.getDaemonThreadCount(), threadMXBean.getPeakThreadCount(),
+                states[Thread.State.NEW.ordinal()], states[Thread.State.RUNNABLE.ordinal()],
+                states[Thread.State.BLOCKED.ordinal()], states[Thread.State.WAITING.ordinal()],
+                states[Thread.State.TIMED_WAITING.ordinal()]));
+        updateThreadPools(sample);
+
+        long allocated = allocationCounter.allocatedBytes();
+        double rate = lastAllocated < 0 || sample.intervalNanos == 0 ? 0
+                : (allocated - lastAllocated) * NANOS_PER_SECOND / sample.intervalNanos;
+        lastAllocated = allocated;
+        update(ALLOCATION, new JVMAllocationGaugeMetricModel(allocated, rate));
+
+        update(CLASSES, new JVMClassLoadingGaugeMetricModel(classLoadingMXBean.getLoadedClassCount(),
+                classLoadingMXBean.getUnloadedClassCount(), classLoadingMXBean.getTotalLoadedClassCount()));
+        update(CODE_CACHE, codeCache(ManagementFactory.getMemoryPoolMXBeans()));
+        if (safepointStats.isAvailable()) {
+            update(SAFEPOINTS, safepointStats.read());
+        }
+    }
+
+    private void updateThreadPools(ThreadPoolSampler.Sample sample) {
+        Set<String> keys = new HashSet<>();
+        sample.pools.forEach((name, pool) -> {
+            String key = MetricRegistry.name(THREAD_POOLS, name);
+            keys.add(key);
+            update(key, new JVMThreadPoolGaugeMetricModel(pool.threads, pool.cpuNanos / NANOS_PER_MILLI, pool.cores));
+        });
+        for (String key : poolKeys) {
+            if (!keys.contains(key)) {
+                // The pool has gone
+                models.remove(key);
+                metricNameFactory.gaugeNames(key).values().forEach(name -> metricRegistry.remove(name.name()));
+            }
+        }
+        poolKeys.clear();
+        poolKeys.addAll(keys);
+    }
+
+    private void update(String key, GaugeMetricModel model) {
+        if (model == null || models.put(key, model) != null) {
+            return;
+        }
+        for (MetricName metricName : metricNameFactory.gaugeNames(key).values()) {
+            Gauge<GaugeMetricModel> gauge = () -> models.get(key);
+            metricRegistry.gauge(metricName.name(), () -> gauge);
+        }
+    }
+
+    private static JVMMemoryGaugeMetricModel codeCache(List<MemoryPoolMXBean> pools) {
+        long init = 0, used = 0, committed = 0, max = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            // "Code Cache" before Java 9, "CodeHeap '...'" segments since then
+            if (pool.getType() != MemoryType.NON_HEAP || !pool.getName().startsWith("Code")) {
+                continue;
+            }
+            MemoryUsage usage = pool.getUsage();
+            init += usage.getInit();
+            used += usage.getUsed();
+            committed += usage.getCommitted();
+            max = max < 0 || usage.getMax() < 0 ? -1 : max + usage.getMax();
+        }
+        return new JVMMemoryGaugeMetricModel(init, used, committed, max);
+    }
+
+    /**
+     * Safepoint statistics of HotSpot are only accessible from its internal MBean, which is absent on other JVMs
+     * and encapsulated since Java 9, so they are read if accessible.
+     */
+    static class SafepointStats {
+        private final Object mbean;
+        private final Method count;
+        private final Method totalTime;
+        private final Method syncTime;
+
+        SafepointStats() {
+            Object bean = null;
+            Method c = null, t = null, s = null;
+            try {
+                bean = Class.forName("sun.management.ManagementFactoryHelper")
+                        .getMethod("getHotspotRuntimeMBean").invoke(null);
+                Class<?> type = Class.forName("sun.management.HotspotRuntimeMBean");
+                c = type.getMethod("getSafepointCount");
+                t = type.getMethod("getTotalSafepointTime");
+                s = type.getMethod("getSafepointSyncTime");
+                c.invoke(bean);
+            } catch (Throwable e) {
+                bean = null;
+            }
+            this.mbean = bean;
+            this.count = c;
+            this.totalTime = t;
+            this.syncTime = s;
+        }
+
+        boolean isAvailable() {
+            return mbean != null;
+        }
+
+        JVMSafepointGaugeMetricModel read() {
+            try {
+                return new JVMSafepointGaugeMetricModel((Long) count.invoke(mbean), (Long) totalTime.invoke(mbean),
+                        (Long) syncTime.invoke(mbean));
+            } catch (Exception e) {
+                return null;
+            }
+        }
+    }
+
+    class JVMRuntimeMetricConverter extends ConverterAdapter {
+        JVMRuntimeMetricConverter(Supplier<Map<String, Object>> attributes) {
+            super("application", "jvm-runtime", metricNameFactory, KeyType.Gauge, attributes, "resource");
+        }
+    }
+}
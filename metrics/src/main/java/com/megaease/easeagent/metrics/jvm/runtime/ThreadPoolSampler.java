@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.metrics.jvm.runtime;
+
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Samples states and CPU time of all threads, and groups them into pools by their names without the trailing
+ * sequence, e.g. {@code http-nio-8080-exec-12} into {@code http-nio-8080-exec}, whitespaces in pool names are
+ * replaced with {@code -}.
+ * <p>
+ * Threads are enumerated from the root thread group rather than {@link ThreadMXBean#getThreadInfo(long[])}, which
+ * looks up each id among all threads and so costs quadratic time with thousands of threads. For the same reason,
+ * CPU time is read for at most {@value #CPU_SAMPLES_PER_CYCLE} threads per sample in turn, the CPU time of a thread
+ * is accounted to its pool when read, so it is exact when there are fewer threads, and exact over several samples
+ * otherwise. The usage of a thread is its CPU time divided by the time since its own last read, and that of a pool
+ * is the sum of the latest usage of its threads, so that it does not swing with the turns of reading.
+ */
+final class ThreadPoolSampler {
+    static final int CPU_SAMPLES_PER_CYCLE = 256;
+    private static final Pattern WHITESPACE = Pattern.compile("[\\s]+");
+
+    private final ThreadMXBean threads;
+    private final boolean cpuTimeEnabled;
+    private final Map<Long, ThreadEntry> entries = new HashMap<>();
+    private Thread[] buffer = new Thread[64];
+    private long generation;
+    private long lastNanos;
+    private int cursor;
+
+    ThreadPoolSampler(ThreadMXBean threads) {
+        this.threads = threads;
+        this.cpuTimeEnabled = threads.isThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled();
+    }
+
+    synchronized Sample sample() {
+        long now = System.nanoTime();
+        int n = enumerate();
+        boolean first = generation == 0;
+        generation++;
+
+        Sample sample = new Sample(first ? 0 : now - lastNanos);
+        ThreadEntry[] current = new ThreadEntry[n];
+        for (int i = 0; i < n; i++) {
+            Thread thread = buffer[i];
+            buffer[i] = null;
+            Thread.State state = thread.getState();
+            if (state == Thread.State.TERMINATED) {
+                continue;
+            }
+            sample.states[state.ordinal()]++;
+
+            ThreadEntry entry = entries.get(thread.getId());
+            if (entry == null) {
+                // Threads started since the last sample have run at most since then
+                entry = new ThreadEntry(thread.getId(), first, first ? now : lastNanos);
+                entries.put(entry.id, entry);
+            }
+            String name = thread.getName();
+            if (!name.equals(entry.name)) {
+                entry.name = name;
+                entry.pool = poolOf(name);
+            }
+            entry.generation = generation;
+            current[i] = entry;
+            sample.pools.computeIfAbsent(entry.pool, k -> new Pool()).threads++;
+        }
+        entries.values().removeIf(e -> e.generation != generation);
+        if (cpuTimeEnabled) {
+            sampleCpuTime(current, sample, now);
+            for (ThreadEntry entry : current) {
+                if (entry != null) {
+                    sample.pools.get(entry.pool).cores += entry.cores;
+                }
+            }
+        }
+        lastNanos = now;
+        return sample;
+    }
+
+    private int enumerate() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        int n;
+        while ((n = root.enumerate(buffer, true)) == buffer.length) {
+            buffer = new Thread[buffer.length * 2];
+        }
+        return n;
+    }
+
+    private void sampleCpuTime(ThreadEntry[] current, Sample sample, long now) {
+        ThreadEntry[] alive = Arrays.stream(current).filter(e -> e != null).toArray(ThreadEntry[]::new);
+        int count = Math.min(alive.length, CPU_SAMPLES_PER_CYCLE);
+        if (count == 0) {
+            return;
+        }
+        ThreadEntry[] chosen = new ThreadEntry[count];
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            chosen[i] = alive[(cursor + i) % alive.length];
+            ids[i] = chosen[i].id;
+        }
+        cursor = (cursor + count) % alive.length;
+
+        long[] cpuTimes = cpuTimes(ids);
+        for (int i = 0; i < count; i++) {
+            ThreadEntry entry = chosen[i];
+            long cpuTime = cpuTimes[i];
+            if (cpuTime < 0) {
+                continue;
+            }
+            // Threads existing at the first sample are read for a baseline, those started since spent all of it
+            long former = entry.cpuTime >= 0 ? entry.cpuTime : entry.baseline ? cpuTime : 0;
+            long spent = Math.max(cpuTime - former, 0);
+            sample.pools.get(entry.pool).cpuNanos += spent;
+            long elapsed = now - entry.readNanos;
+            entry.cores = elapsed > 0 ? (double) spent / elapsed : 0;
+            entry.cpuTime = cpuTime;
+            entry.readNanos = now;
+        }
+    }
+
+    private long[] cpuTimes(long[] ids) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadCpuTime(ids);
+        }
+        long[] cpuTimes = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            cpuTimes[i] = threads.getThreadCpuTime(ids[i]);
+        }
+        return cpuTimes;
+    }
+
+    static String poolOf(String threadName) {
+        int end = threadName.length();
+        while (end > 0) {
+            char c = threadName.charAt(end - 1);
+            if (Character.isDigit(c) || c == '-' || c == '_' || c == '#' || c == ' ' || c == '.' || c == ':') {
+                end--;
+            } else {
+                break;
+            }
+        }
+        return WHITESPACE.matcher(end == 0 ? threadName : threadName.substring(0, end)).replaceAll("-");
+    }
+
+    private static final class ThreadEntry {
+        final long id;
+        final boolean baseline;
+        String name;
+        String pool;
+        long cpuTime = -1;
+        long readNanos;
+        double cores;
+        long generation;
+
+        ThreadEntry(long id, boolean baseline, long readNanos) {
+            this.id = id;
+            this.baseline = baseline;
+            this.readNanos = readNanos;
+        }
+    }
+
+    static final class Pool {
+        /**
+         * Number of live threads
+         */
+        int threads;
+
+        /**
+         * CPU nanoseconds accounted since the last sample
+         */
+        long cpuNanos;
+
+        /**
+         * Sum of the latest CPU usage of threads, 1 means one core fully used
+         */
+        double cores;
+    }
+
+    static final class Sample {
+        /**
+         * Number of threads by ordinal of {@link Thread.State}
+         */
+        final int[] states = new int[Thread.State.values().length];
+
+        /**
+         * Usage by pool
+         */
+        final Map<String, Pool> pools = new HashMap<>();
+
+        /**
+         * Nanoseconds since the last sample, 0 for the first one
+         */
+        final long intervalNanos;
+
+        Sample(long intervalNanos) {
+            this.intervalNanos = intervalNanos;
+        }
+    }
+}
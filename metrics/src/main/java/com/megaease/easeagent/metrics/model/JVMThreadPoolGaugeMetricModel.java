@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.metrics.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+public class JVMThreadPoolGaugeMetricModel implements GaugeMetricModel {
+    private Integer threads;
+    private Double cpuTime;
+    private Double cpuUsage;
+
+    @Override
+    public Map<String, Object> toHashMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("threads", threads);
+        result.put("cpu-time", cpuTime);
+        result.put("cpu-usage", cpuUsage);
+        return result;
+    }
+}
@@ -23,6 +23,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.google.common.collect.ImmutableMap;
 import com.megaease.easeagent.core.utils.ContextUtils;
+import com.megaease.easeagent.core.utils.ThreadResourceUsage;
 import com.megaease.easeagent.metrics.AbstractMetric;
 import com.megaease.easeagent.metrics.MetricField;
 import com.megaease.easeagent.metrics.MetricNameFactory;
@@ -76,6 +77,20 @@ public abstract class AbstractServerMetric extends AbstractMetric {
                                 .put(MetricField.P99_EXECUTION_TIME, MetricValueFetcher.Snapshot99PercentileValue)
                                 .put(MetricField.P999_EXECUTION_TIME, MetricValueFetcher.Snapshot999PercentileValue)
                                 .build())
+                .histogramType(MetricSubType.THREAD_CPU,
+                        ImmutableMap.<MetricField, MetricValueFetcher>builder()
+                                .put(MetricField.MEAN_CPU_TIME, MetricValueFetcher.SnapshotMeanValue)
+                                .put(MetricField.P95_CPU_TIME, MetricValueFetcher.Snapshot95PercentileValue)
+                                .put(MetricField.P99_CPU_TIME, MetricValueFetcher.Snapshot99PercentileValue)
+                                .put(MetricField.MAX_CPU_TIME, MetricValueFetcher.SnapshotMaxValue)
+                                .build())
+                .histogramType(MetricSubType.THREAD_ALLOCATION,
+                        ImmutableMap.<MetricField, MetricValueFetcher>builder()
+                                .put(MetricField.MEAN_ALLOCATED_BYTES, MetricValueFetcher.SnapshotMeanValue)
+                                .put(MetricField.P95_ALLOCATED_BYTES, MetricValueFetcher.Snapshot95PercentileValue)
+                                .put(MetricField.P99_ALLOCATED_BYTES, MetricValueFetcher.Snapshot99PercentileValue)
+                                .put(MetricField.MAX_ALLOCATED_BYTES, MetricValueFetcher.SnapshotMaxValue)
+                                .build())
                 .build();
     }
 
@@ -93,6 +108,7 @@ public abstract class AbstractServerMetric extends AbstractMetric {
         }
         counter.inc();
         meter.mark();
+        collectThreadUsage(key, ThreadResourceUsage.end(context));
 
         metricRegistry.gauge(metricNameFactory.gaugeName(key, MetricSubType.DEFAULT), () -> () -> {
             BigDecimal m1ErrorPercent = BigDecimal.ZERO;
@@ -118,6 +134,18 @@ public abstract class AbstractServerMetric extends AbstractMetric {
         });
     }
 
+    private void collectThreadUsage(String key, ThreadResourceUsage usage) {
+        if (usage == null) {
+            return;
+        }
+        if (usage.getCpuNanos() >= 0) {
+            metricRegistry.histogram(metricNameFactory.histogramName(key, MetricSubType.THREAD_CPU)).update(usage.getCpuNanos());
+        }
+        if (usage.getAllocatedBytes() >= 0) {
+            metricRegistry.histogram(metricNameFactory.histogramName(key, MetricSubType.THREAD_ALLOCATION)).update(usage.getAllocatedBytes());
+        }
+    }
+
     @Override
     public Converter newConverter(Supplier<Map<String, Object>> attributes) {
         return new ServerConverter("application", "http-request", "url",
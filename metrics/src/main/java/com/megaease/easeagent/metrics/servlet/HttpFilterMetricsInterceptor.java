@@ -22,6 +22,7 @@ import com.megaease.easeagent.common.http.HttpServletInterceptor;
 import com.megaease.easeagent.config.Config;
 import com.megaease.easeagent.core.interceptor.MethodInfo;
 import com.megaease.easeagent.core.utils.ServletUtils;
+import com.megaease.easeagent.core.utils.ThreadResourceUsage;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -46,7 +47,9 @@ public class HttpFilterMetricsInterceptor extends HttpServletInterceptor {
 
     @Override
     public void internalBefore(MethodInfo methodInfo, Map<Object, Object> context, HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse) {
-
+        if (SwitchUtil.enableMetric(config, ENABLE_KEY)) {
+            ThreadResourceUsage.begin(context);
+        }
     }
 
     @Override
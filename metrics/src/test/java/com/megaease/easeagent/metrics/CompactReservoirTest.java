@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.megaease.easeagent.config.ConfigConst;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+public class CompactReservoirTest extends BaseMetricsTest {
+
+    @Test
+    public void should_bucket_within_relative_error() {
+        for (long v = 0; v < 32; v++) {
+            Assert.assertEquals(v, CompactReservoir.valueOf(CompactReservoir.indexOf(v)));
+        }
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            long v = 32 + (random.nextLong() >>> 25);
+            int index = CompactReservoir.indexOf(v);
+            Assert.assertTrue(index < CompactReservoir.BUCKETS);
+            double error = Math.abs(CompactReservoir.valueOf(index) - v) / (double) v;
+            Assert.assertTrue(v + " error " + error, error <= 1.0 / 32);
+        }
+        Assert.assertEquals(CompactReservoir.BUCKETS - 1, CompactReservoir.indexOf(Long.MAX_VALUE));
+        Assert.assertEquals(0, CompactReservoir.indexOf(-1));
+    }
+
+    @Test
+    public void should_approximate_percentiles() {
+        CompactReservoir reservoir = new CompactReservoir(new IntervalTimerTest.ManualClock());
+        for (int i = 1; i <= 100000; i++) {
+            reservoir.update(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(100000, snapshot.size());
+        assertClose(TimeUnit.MICROSECONDS.toNanos(50000), snapshot.getMedian());
+        assertClose(TimeUnit.MICROSECONDS.toNanos(99000), snapshot.get99thPercentile());
+        assertClose(TimeUnit.MICROSECONDS.toNanos(100000), snapshot.getMax());
+        assertClose(TimeUnit.MICROSECONDS.toNanos(1), snapshot.getMin());
+        assertClose(TimeUnit.MICROSECONDS.toNanos(50000), snapshot.getMean());
+        Assert.assertTrue(snapshot.getValues().length < CompactReservoir.BUCKETS);
+    }
+
+    @Test
+    public void should_halve_counts_every_minute() {
+        IntervalTimerTest.ManualClock clock = new IntervalTimerTest.ManualClock();
+        CompactReservoir reservoir = new CompactReservoir(clock);
+        for (int i = 0; i < 100; i++) {
+            reservoir.update(1000);
+        }
+        clock.advance(61, TimeUnit.SECONDS);
+        for (int i = 0; i < 100; i++) {
+            reservoir.update(5);
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(150, snapshot.size());
+        Assert.assertEquals(5, snapshot.getMedian(), 0.0);
+        assertClose(1000, snapshot.getMax());
+    }
+
+    @Test
+    public void should_halve_counts_for_every_minute_passed() {
+        IntervalTimerTest.ManualClock clock = new IntervalTimerTest.ManualClock();
+        CompactReservoir reservoir = new CompactReservoir(clock);
+        for (int i = 0; i < 1024; i++) {
+            reservoir.update(1000);
+        }
+        clock.advance(5, TimeUnit.MINUTES);
+        reservoir.update(5);
+        Assert.assertEquals(1024 / 32 + 1, reservoir.getSnapshot().size());
+
+        clock.advance(30, TimeUnit.MINUTES);
+        Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(0, snapshot.size());
+        Assert.assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    public void should_not_report_beyond_recorded_values() {
+        IntervalTimerTest.ManualClock clock = new IntervalTimerTest.ManualClock();
+        CompactReservoir reservoir = new CompactReservoir(clock);
+        reservoir.update(1000);
+        reservoir.update(1001);
+        reservoir.update(3001);
+        Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(1000, snapshot.getMin());
+        Assert.assertEquals(3001, snapshot.getMax());
+        Assert.assertEquals(3001, snapshot.getValue(1.0), 0.0);
+        Assert.assertTrue(snapshot.getValue(0.5) >= 1000);
+
+        // The max decayed away, the lower bound of the highest bucket left is reported
+        for (int i = 0; i < 8; i++) {
+            reservoir.update(2000 + i);
+        }
+        clock.advance(61, TimeUnit.SECONDS);
+        reservoir.update(1);
+        snapshot = reservoir.getSnapshot();
+        long highest = snapshot.getMax();
+        Assert.assertTrue(highest + " > recorded", highest <= 2000);
+        Assert.assertEquals(CompactReservoir.lowerOf(CompactReservoir.indexOf(2000)), highest);
+        Assert.assertEquals(1, snapshot.getMin());
+    }
+
+    @Test
+    public void should_estimate_footprint_by_type_and_family() {
+        String type = "footprintTest";
+        String key = ConfigConst.join(ConfigConst.Observability.METRICS, type, ConfigConst.Observability.KEY_COMM_HISTOGRAM);
+        MetricRegistry compact = MetricRegistryService.DEFAULT.createMetricRegistry(createConfig(key, "compact"), type);
+        MetricRegistry decaying = MetricRegistryService.DEFAULT.createMetricRegistry(createConfig(key, "decaying"), type + "Decaying");
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(compact.timer("t" + i) instanceof CompactTimer);
+            Assert.assertTrue(compact.histogram("h" + i) instanceof CompactHistogram);
+            for (int j = 0; j < 2000; j++) {
+                compact.timer("t" + i).update(j, TimeUnit.MILLISECONDS);
+                decaying.timer("t" + i).update(j, TimeUnit.MILLISECONDS);
+                compact.histogram("h" + i).update(j);
+                decaying.histogram("h" + i).update(j);
+            }
+            compact.counter("c" + i).inc();
+        }
+
+        SortedMap<String, SortedMap<String, long[]>> estimated = MetricFootprint.estimate();
+        Map<String, long[]> families = estimated.get(type);
+        Assert.assertEquals(10, families.get("timer")[1]);
+        Assert.assertEquals(10, families.get("counter")[1]);
+        long compactBytes = families.get("timer")[0];
+        long decayingBytes = estimated.get(type + "Decaying").get("timer")[0];
+        Assert.assertTrue(compactBytes + " vs " + decayingBytes, compactBytes * 10 < decayingBytes);
+        long compactHistogramBytes = families.get("histogram")[0];
+        long decayingHistogramBytes = estimated.get(type + "Decaying").get("histogram")[0];
+        Assert.assertTrue(compactHistogramBytes + " vs " + decayingHistogramBytes, compactHistogramBytes * 10 < decayingHistogramBytes);
+        Assert.assertTrue(families.get("counter")[0] < compactBytes);
+
+        boolean exported = new MetricFootprint().collect().stream()
+                .flatMap(f -> f.samples.stream())
+                .anyMatch(s -> s.name.equals(MetricFootprint.BYTES) && s.labelValues.get(0).equals(type)
+                        && s.labelValues.get(1).equals("timer") && s.value == compactBytes);
+        Assert.assertTrue(exported);
+    }
+
+    private static void assertClose(double expected, double actual) {
+        Assert.assertEquals(expected, actual, expected / 32);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.megaease.easeagent.metrics;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.dropwizard.DropwizardExports;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExpositionInputStreamTest {
+    private final CollectorRegistry registry = new CollectorRegistry();
+
+    @Before
+    public void setUp() {
+        MetricRegistry metrics = new MetricRegistry();
+        for (int i = 0; i < 1000; i++) {
+            Timer timer = metrics.timer("request.timer." + i);
+            timer.update(i, TimeUnit.MILLISECONDS);
+            metrics.counter("request.count." + i).inc(i);
+            final int value = i;
+            metrics.register("request.gauge." + i, (com.codahale.metrics.Gauge<Integer>) () -> value);
+        }
+        new DropwizardExports(metrics).register(registry);
+    }
+
+    @Test
+    public void should_write_same_output_as_text_format() throws IOException {
+        assertEquals(render(TextFormat.CONTENT_TYPE_004), stream(TextFormat.CONTENT_TYPE_004));
+    }
+
+    @Test
+    public void should_write_same_output_as_text_format_in_openmetrics() throws IOException {
+        String expected = render(TextFormat.CONTENT_TYPE_OPENMETRICS_100);
+        assertTrue(expected.endsWith("# EOF\n"));
+        assertEquals(expected, stream(TextFormat.CONTENT_TYPE_OPENMETRICS_100));
+    }
+
+    @Test
+    public void should_write_only_eof_without_samples() throws IOException {
+        CollectorRegistry empty = new CollectorRegistry();
+        InputStream in = new ExpositionInputStream(TextFormat.CONTENT_TYPE_OPENMETRICS_100,
+                empty.filteredMetricFamilySamples(Collections.emptySet()));
+        assertEquals("# EOF\n", read(in));
+    }
+
+    @Test
+    public void should_reuse_buffer_and_allocate_less_than_rendering() throws IOException {
+        // warm up both paths
+        for (int i = 0; i < 5; i++) {
+            render(TextFormat.CONTENT_TYPE_004);
+            stream(TextFormat.CONTENT_TYPE_004);
+        }
+        long rendered = allocated(() -> render(TextFormat.CONTENT_TYPE_004).getBytes(StandardCharsets.UTF_8).length);
+        long streamed = allocated(() -> drain(stream()));
+
+        ExpositionInputStream in = stream();
+        int size = drain(in);
+        assertTrue("the buffer is reused between families", in.bufferCapacity() * 50 < size);
+        assertTrue("streamed " + streamed + " bytes, rendered " + rendered, streamed < rendered);
+    }
+
+    private String render(String contentType) throws IOException {
+        StringWriter writer = new StringWriter();
+        TextFormat.writeFormat(contentType, writer, registry.filteredMetricFamilySamples(Collections.emptySet()));
+        return writer.toString();
+    }
+
+    private String stream(String contentType) throws IOException {
+        return read(new ExpositionInputStream(contentType, registry.filteredMetricFamilySamples(Collections.emptySet())));
+    }
+
+    private ExpositionInputStream stream() {
+        return new ExpositionInputStream(TextFormat.CONTENT_TYPE_004, registry.filteredMetricFamilySamples(Collections.emptySet()));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        for (int n; (n = in.read(buf)) != -1; ) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read like the server writing chunks, without keeping what is read.
+     */
+    private static int drain(InputStream in) throws IOException {
+        byte[] buf = new byte[16 * 1024];
+        int size = 0;
+        for (int n; (n = in.read(buf)) != -1; ) {
+            size += n;
+        }
+        return size;
+    }
+
+    private static long allocated(Scrape scrape) throws IOException {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long id = Thread.currentThread().getId();
+        long before = bean.getThreadAllocatedBytes(id);
+        scrape.run();
+        return bean.getThreadAllocatedBytes(id) - before;
+    }
+
+    interface Scrape {
+        int run() throws IOException;
+    }
+}
@@ -24,6 +24,7 @@ import com.megaease.easeagent.core.interceptor.AgentInterceptorChain;
 import com.megaease.easeagent.core.interceptor.MethodInfo;
 import com.megaease.easeagent.core.utils.ContextUtils;
 import com.megaease.easeagent.core.utils.ServletUtils;
+import com.megaease.easeagent.core.utils.ThreadResourceUsage;
 import com.megaease.easeagent.metrics.servlet.HttpFilterMetricsInterceptor;
 import com.megaease.easeagent.metrics.servlet.ServletMetric;
 import org.junit.Assert;
@@ -153,6 +154,57 @@ public class HttpFilterMetricsInterceptorTest extends BaseMetricsTest {
 
     }
 
+    @Test
+    public void threadUsage() {
+        Config config = this.createConfig(HttpFilterMetricsInterceptor.ENABLE_KEY, "true");
+        MetricRegistry metricRegistry = new MetricRegistry();
+        ServletMetric servletMetric = new ServletMetric(metricRegistry);
+        HttpFilterMetricsInterceptor interceptor = new HttpFilterMetricsInterceptor(servletMetric, config);
+
+        MetricNameFactory metricNameFactory = MetricNameFactory.createBuilder()
+                .histogramType(MetricSubType.THREAD_CPU, Maps.newHashMap())
+                .histogramType(MetricSubType.THREAD_ALLOCATION, Maps.newHashMap())
+                .build();
+
+        HttpServletRequest httpServletRequest = mock(HttpServletRequest.class);
+        HttpServletResponse httpServletResponse = mock(HttpServletResponse.class);
+        when(httpServletRequest.getMethod()).thenReturn("GET");
+        when(httpServletRequest.getAttribute(ServletUtils.BEST_MATCHING_PATTERN_ATTRIBUTE)).thenReturn("/path/users/{userId}/info");
+        when(httpServletResponse.getStatus()).thenReturn(200);
+
+        MethodInfo methodInfo = MethodInfo.builder()
+                .invoker(mock(Filter.class))
+                .method("doFilterInternal")
+                .args(new Object[]{httpServletRequest, httpServletResponse, mock(FilterChain.class)})
+                .build();
+
+        String key = "GET /path/users/{userId}/info";
+        ThreadResourceUsage.setEnabled(true);
+        try {
+            Map<Object, Object> context = ContextUtils.createContext();
+            interceptor.before(methodInfo, context, mock(AgentInterceptorChain.class));
+            ContextUtils.setEndTime(context);
+            interceptor.after(methodInfo, context, mock(AgentInterceptorChain.class));
+        } finally {
+            ThreadResourceUsage.setEnabled(false);
+        }
+        Assert.assertEquals(1L, metricRegistry.histogram(metricNameFactory.histogramName(key, MetricSubType.THREAD_CPU)).getCount());
+        Assert.assertEquals(1L, metricRegistry.histogram(metricNameFactory.histogramName(key, MetricSubType.THREAD_ALLOCATION)).getCount());
+
+        Map<String, Object> output = servletMetric.newConverter(HashMap::new).convertMap(
+                metricRegistry.getGauges(), metricRegistry.getCounters(), metricRegistry.getHistograms(),
+                metricRegistry.getMeters(), metricRegistry.getTimers()).get(0);
+        Assert.assertTrue(output.containsKey("cpup99"));
+        Assert.assertTrue(output.containsKey("allocmax"));
+
+        // Not measured once disabled
+        Map<Object, Object> context = ContextUtils.createContext();
+        interceptor.before(methodInfo, context, mock(AgentInterceptorChain.class));
+        ContextUtils.setEndTime(context);
+        interceptor.after(methodInfo, context, mock(AgentInterceptorChain.class));
+        Assert.assertEquals(1L, metricRegistry.histogram(metricNameFactory.histogramName(key, MetricSubType.THREAD_CPU)).getCount());
+    }
+
     @Test
     public void disableCollect() {
         Config config = this.createConfig(HttpFilterMetricsInterceptor.ENABLE_KEY, "false");
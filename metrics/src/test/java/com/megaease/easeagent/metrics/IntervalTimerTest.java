@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.metrics;
+
+import com.codahale.metrics.Clock;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.megaease.easeagent.config.ConfigConst;
+import com.megaease.easeagent.core.utils.JsonUtil;
+import com.megaease.easeagent.metrics.converter.ConverterAdapter;
+import com.megaease.easeagent.metrics.converter.KeyType;
+import com.megaease.easeagent.metrics.converter.MetricValueFetcher;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class IntervalTimerTest extends BaseMetricsTest {
+
+    static class ManualClock extends Clock {
+        private final AtomicLong tick = new AtomicLong();
+
+        void advance(long duration, TimeUnit unit) {
+            tick.addAndGet(unit.toNanos(duration));
+        }
+
+        @Override
+        public long getTick() {
+            return tick.get();
+        }
+    }
+
+    @Test
+    public void should_publish_last_interval_only() {
+        ManualClock clock = new ManualClock();
+        IntervalTimer timer = new IntervalTimer(clock, 16);
+        for (int i = 1; i <= 10; i++) {
+            timer.update(i * 100L, TimeUnit.NANOSECONDS);
+        }
+        // Nothing is published before the first interval closed
+        Assert.assertEquals(0, timer.getSnapshot().size());
+
+        clock.advance(30, TimeUnit.SECONDS);
+        IntervalResetReservoir.IntervalSnapshot first = timer.rotate();
+        Assert.assertEquals(10, first.getCount());
+        Assert.assertEquals(100, first.getMin());
+        Assert.assertEquals(1000, first.getMax());
+        Assert.assertEquals(550, first.getMedian(), 0.0);
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(30), first.getDurationNanos());
+
+        timer.update(5, TimeUnit.NANOSECONDS);
+        // Reading between rotations does not reset anything
+        Assert.assertSame(first, timer.getSnapshot());
+        Assert.assertSame(first, timer.getSnapshot());
+
+        clock.advance(10, TimeUnit.SECONDS);
+        IntervalResetReservoir.IntervalSnapshot second = timer.rotate();
+        Assert.assertEquals(1, second.getCount());
+        Assert.assertEquals(5, second.getMin());
+        Assert.assertEquals(5, second.getMax());
+        Assert.assertEquals(5, second.get99thPercentile(), 0.0);
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(10), second.getDurationNanos());
+        // The count of timer is cumulative, like other timers
+        Assert.assertEquals(11, timer.getCount());
+
+        Snapshot empty = timer.rotate();
+        Assert.assertEquals(0, empty.size());
+        Assert.assertEquals(0, empty.getMax());
+        Assert.assertEquals(0, empty.getMean(), 0.0);
+    }
+
+    @Test
+    public void should_keep_exact_count_min_max_beyond_capacity() {
+        IntervalTimer timer = new IntervalTimer(new ManualClock(), 300);
+        for (int i = 1; i <= 10000; i++) {
+            timer.update(i, TimeUnit.NANOSECONDS);
+        }
+        IntervalResetReservoir.IntervalSnapshot snapshot = timer.rotate();
+        Assert.assertEquals(300, snapshot.size());
+        Assert.assertEquals(10000, snapshot.getCount());
+        Assert.assertEquals(1, snapshot.getMin());
+        Assert.assertEquals(10000, snapshot.getMax());
+        Assert.assertEquals(5000, snapshot.getMedian(), 1500);
+    }
+
+    @Test
+    public void should_time_with_clock() {
+        ManualClock clock = new ManualClock();
+        IntervalTimer timer = new IntervalTimer(clock, 16);
+        Timer.Context context = timer.time();
+        clock.advance(25, TimeUnit.MILLISECONDS);
+        context.stop();
+        Snapshot snapshot = timer.rotate();
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(25), snapshot.getMax());
+    }
+
+    @Test
+    public void should_not_lose_updates_while_rotating() throws InterruptedException {
+        IntervalTimer timer = new IntervalTimer(new ManualClock(), 64);
+        int threads = 4;
+        int updates = 200000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < updates; i++) {
+                    timer.update(1, TimeUnit.NANOSECONDS);
+                }
+                done.countDown();
+            }).start();
+        }
+        long total = 0;
+        while (done.getCount() > 0) {
+            total += timer.rotate().getCount();
+        }
+        total += timer.rotate().getCount();
+        Assert.assertEquals((long) threads * updates, total);
+    }
+
+    @Test
+    public void should_select_histogram_per_metric_type() {
+        String key = ConfigConst.join(ConfigConst.Observability.METRICS, ConfigConst.Observability.KEY_METRICS_JDBC_STATEMENT,
+                ConfigConst.Observability.KEY_COMM_HISTOGRAM);
+        MetricRegistryService service = MetricRegistryService.DEFAULT;
+        MetricRegistry interval = service.createMetricRegistry(createConfig(key, "interval"),
+                ConfigConst.Observability.KEY_METRICS_JDBC_STATEMENT);
+        MetricRegistry decaying = service.createMetricRegistry(createConfig(key, "interval"),
+                ConfigConst.Observability.KEY_METRICS_REQUEST);
+        Assert.assertTrue(interval.timer("t") instanceof IntervalTimer);
+        Assert.assertFalse(decaying.timer("t") instanceof IntervalTimer);
+    }
+
+    @Test
+    public void should_rotate_on_report_even_if_disabled() {
+        MetricRegistry registry = new MetricRegistryService.IntervalMetricRegistry();
+        IntervalTimer timer = (IntervalTimer) registry.timer("t");
+        timer.update(7, TimeUnit.NANOSECONDS);
+        AgentScheduledReporter reporter = AgentScheduledReporter.forRegistry(registry)
+                .enabled(() -> false)
+                .outputTo(s -> {
+                })
+                .build();
+        reporter.report();
+        Assert.assertEquals(7, timer.getSnapshot().getMax());
+        reporter.report();
+        Assert.assertEquals(0, timer.getSnapshot().size());
+    }
+
+    @Test
+    public void should_publish_count_of_last_interval() {
+        MetricRegistry registry = new MetricRegistryService.IntervalMetricRegistry();
+        MetricNameFactory nameFactory = MetricNameFactory.createBuilder()
+                .timerType(MetricSubType.DEFAULT, Collections.singletonMap(MetricField.MAX_EXECUTION_TIME, MetricValueFetcher.SnapshotMaxValue))
+                .histogramType(MetricSubType.THREAD_CPU, Collections.singletonMap(MetricField.MAX_CPU_TIME, MetricValueFetcher.SnapshotMaxValue))
+                .build();
+        ConverterAdapter converter = new ConverterAdapter("application", "http-request", nameFactory, KeyType.Timer, HashMap::new, "url");
+        List<Map<String, Object>> outputs = new ArrayList<>();
+        AgentScheduledReporter reporter = AgentScheduledReporter.forRegistry(registry)
+                .enabled(() -> true)
+                .converter(converter)
+                .outputTo(s -> outputs.add(JsonUtil.toMap(s)))
+                .build();
+
+        Timer timer = registry.timer(nameFactory.timerName("GET /", MetricSubType.DEFAULT));
+        Histogram histogram = registry.histogram(nameFactory.histogramName("GET /", MetricSubType.THREAD_CPU));
+        Assert.assertTrue(histogram instanceof IntervalHistogram);
+        for (int i = 0; i < 3; i++) {
+            timer.update(1, TimeUnit.MILLISECONDS);
+            histogram.update(1000);
+        }
+        reporter.report();
+        timer.update(1, TimeUnit.MILLISECONDS);
+        histogram.update(1000);
+        reporter.report();
+
+        Assert.assertEquals(3, ((Number) outputs.get(0).get("intervalcnt")).longValue());
+        Assert.assertEquals(3, ((Number) outputs.get(0).get("cpuintervalcnt")).longValue());
+        Assert.assertEquals(1, ((Number) outputs.get(1).get("intervalcnt")).longValue());
+        Assert.assertEquals(1, ((Number) outputs.get(1).get("cpuintervalcnt")).longValue());
+        Assert.assertEquals(4, timer.getCount());
+    }
+}
@@ -98,6 +98,19 @@ public class JVMGCMetricTest extends BaseMetricsTest {
         });
     }
 
+    @Test
+    public void recordPausesOfStopTheWorldCollectionsOnly() {
+        Assert.assertTrue(JVMGCMetric.isStopTheWorld("G1 Young Generation"));
+        Assert.assertTrue(JVMGCMetric.isStopTheWorld("G1 Old Generation"));
+        Assert.assertTrue(JVMGCMetric.isStopTheWorld("PS MarkSweep"));
+        Assert.assertTrue(JVMGCMetric.isStopTheWorld("ZGC Pauses"));
+        Assert.assertTrue(JVMGCMetric.isStopTheWorld("Shenandoah Pauses"));
+        Assert.assertFalse(JVMGCMetric.isStopTheWorld("ConcurrentMarkSweep"));
+        Assert.assertTrue(JVMGCMetric.isStopTheWorld("G1 Concurrent GC"));
+        Assert.assertFalse(JVMGCMetric.isStopTheWorld("ZGC Cycles"));
+        Assert.assertFalse(JVMGCMetric.isStopTheWorld("Shenandoah Cycles"));
+    }
+
     @Test
     public void disableCollect() throws Exception {
         Config config = this.createConfig(JVMGCMetric.ENABLE_KEY, "false");
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.megaease.easeagent.metrics;
+
+import com.megaease.easeagent.httpserver.AgentHttpServer;
+import com.megaease.easeagent.report.telemetry.AgentTelemetry;
+import fi.iki.elonen.NanoHTTPD;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PrometheusAgentHttpHandlerTest {
+
+    @Test
+    public void should_export_agent_telemetry() throws IOException {
+        AgentTelemetry.counter("test_events", "Events of test.").add(3);
+        AgentTelemetry.gauge("test_level", "Level of test.", () -> 0.5);
+        AgentTelemetry.Timer timer = AgentTelemetry.timer("test_work", "Work of test.");
+        timer.record(TimeUnit.MILLISECONDS.toNanos(1500));
+        timer.record(TimeUnit.MILLISECONDS.toNanos(500));
+
+        NanoHTTPD.IHTTPSession session = mock(NanoHTTPD.IHTTPSession.class);
+        when(session.getHeaders()).thenReturn(Collections.emptyMap());
+        NanoHTTPD.Response response = new PrometheusAgentHttpHandler().process(null, Collections.emptyMap(), session);
+        String text = read(response.getData());
+
+        assertTrue(text, text.contains("# TYPE easeagent_agent_test_events_total counter\n"));
+        assertTrue(text, text.contains("easeagent_agent_test_events_total 3.0\n"));
+        assertTrue(text, text.contains("# HELP easeagent_agent_test_level Level of test.\n"));
+        assertTrue(text, text.contains("easeagent_agent_test_level 0.5\n"));
+        assertTrue(text, text.contains("# TYPE easeagent_agent_test_work_seconds summary\n"));
+        assertTrue(text, text.contains("easeagent_agent_test_work_seconds_count 2.0\n"));
+        assertTrue(text, text.contains("easeagent_agent_test_work_seconds_sum 2.0\n"));
+    }
+
+    @Test
+    public void should_stream_gzip_openmetrics() throws IOException {
+        AgentTelemetry.counter("test_scrapes", "Scrapes of test.").increment();
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        AgentHttpServer server = new AgentHttpServer(port);
+        server.addHttpRoutes(Collections.singletonList(new PrometheusAgentHttpHandler()));
+        server.startServer();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + "/prometheus/metrics").openConnection();
+            connection.setRequestProperty("Accept", "application/openmetrics-text; version=1.0.0,text/plain;version=0.0.4;q=0.5");
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(TextFormat.CONTENT_TYPE_OPENMETRICS_100, connection.getContentType());
+            assertEquals("chunked", connection.getHeaderField("Transfer-Encoding"));
+            assertEquals("gzip", connection.getContentEncoding());
+            String text = read(new GZIPInputStream(connection.getInputStream()));
+            assertTrue(text, text.contains("# TYPE easeagent_agent_test_scrapes counter\n"));
+            assertTrue(text, text.endsWith("# EOF\n"));
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        for (int n; (n = in.read(buf)) != -1; ) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
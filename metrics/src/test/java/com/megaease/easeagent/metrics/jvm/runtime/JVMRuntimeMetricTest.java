@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.metrics.jvm.runtime;
+
+import com.codahale.metrics.MetricRegistry;
+import com.megaease.easeagent.config.Config;
+import com.megaease.easeagent.metrics.BaseMetricsTest;
+import com.megaease.easeagent.metrics.converter.Converter;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class JVMRuntimeMetricTest extends BaseMetricsTest {
+
+    @Test
+    public void success() throws InterruptedException {
+        Config config = this.createConfig(JVMRuntimeMetric.ENABLE_KEY, "true");
+        MetricRegistry metricRegistry = new MetricRegistry();
+        JVMRuntimeMetric metric = new JVMRuntimeMetric(metricRegistry, config, false);
+
+        metric.doJob();
+        List<byte[]> allocated = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            allocated.add(new byte[1024 * 1024]);
+        }
+        Assert.assertEquals(16, allocated.size());
+
+        // A collection during allocation is accounted once its notification, delivered asynchronously, arrives
+        Map<String, Map<String, Object>> outputs = collect(metric, metricRegistry);
+        for (int i = 0; i < 100 && (Long) outputs.get(JVMRuntimeMetric.ALLOCATION).get("bytes-allocated") < 16 * 1024 * 1024; i++) {
+            Thread.sleep(50);
+            outputs = collect(metric, metricRegistry);
+        }
+        Assert.assertEquals("jvm-runtime", outputs.get(JVMRuntimeMetric.THREADS).get("type"));
+        Assert.assertTrue((Integer) outputs.get(JVMRuntimeMetric.THREADS).get("runnable") > 0);
+        Assert.assertTrue((Integer) outputs.get(JVMRuntimeMetric.CLASSES).get("loaded") > 0);
+        Assert.assertTrue((Long) outputs.get(JVMRuntimeMetric.CODE_CACHE).get("bytes-used") > 0);
+        Assert.assertTrue((Long) outputs.get(JVMRuntimeMetric.ALLOCATION).get("bytes-allocated") >= 16 * 1024 * 1024);
+        Assert.assertEquals(1, outputs.get("thread-pools.main").get("threads"));
+    }
+
+    private static Map<String, Map<String, Object>> collect(JVMRuntimeMetric metric, MetricRegistry metricRegistry) {
+        metric.doJob();
+        Converter converter = metric.newConverter(HashMap::new);
+        return converter.convertMap(metricRegistry.getGauges(), new TreeMap<>(),
+                new TreeMap<>(), new TreeMap<>(), new TreeMap<>()).stream()
+                .collect(Collectors.toMap(m -> (String) m.get("resource"), m -> m));
+    }
+
+    @Test
+    public void disableCollect() {
+        Config config = this.createConfig(JVMRuntimeMetric.ENABLE_KEY, "false");
+        MetricRegistry metricRegistry = new MetricRegistry();
+        JVMRuntimeMetric metric = new JVMRuntimeMetric(metricRegistry, config, false);
+
+        metric.doJob();
+
+        Assert.assertTrue(metricRegistry.getMetrics().isEmpty());
+    }
+
+    @Test
+    public void poolOfThreadName() {
+        Assert.assertEquals("http-nio-8080-exec", ThreadPoolSampler.poolOf("http-nio-8080-exec-12"));
+        Assert.assertEquals("pool-3-thread", ThreadPoolSampler.poolOf("pool-3-thread-7"));
+        Assert.assertEquals("ForkJoinPool.commonPool-worker", ThreadPoolSampler.poolOf("ForkJoinPool.commonPool-worker-3"));
+        Assert.assertEquals("C2-CompilerThread", ThreadPoolSampler.poolOf("C2 CompilerThread0"));
+        Assert.assertEquals("main", ThreadPoolSampler.poolOf("main"));
+        Assert.assertEquals("42", ThreadPoolSampler.poolOf("42"));
+    }
+
+    @Test
+    public void cpuTimeByPool() throws InterruptedException {
+        ThreadPoolSampler sampler = new ThreadPoolSampler(ManagementFactory.getThreadMXBean());
+        sampler.sample();
+        CountDownLatch done = new CountDownLatch(1);
+        List<Thread> threads = startThreads("busy-worker-", 3, () -> {
+            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+            while (System.nanoTime() < end) {
+                Thread.yield();
+            }
+            await(done);
+        });
+        TimeUnit.MILLISECONDS.sleep(300);
+        ThreadPoolSampler.Sample sample = sampler.sample();
+        ThreadPoolSampler.Pool usage = sample.pools.get("busy-worker");
+        Assert.assertEquals(3, usage.threads);
+        Assert.assertTrue(usage.cpuNanos > 0);
+        Assert.assertTrue(sample.intervalNanos > 0);
+
+        done.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(sampler.sample().pools.get("busy-worker"));
+    }
+
+    @Test
+    public void steadyUsageBeyondThreadsReadPerCycle() throws InterruptedException {
+        // Every thread uses a tenth of a core, whenever its CPU time is read
+        long begin = System.nanoTime();
+        com.sun.management.ThreadMXBean threadMXBean = Mockito.mock(com.sun.management.ThreadMXBean.class);
+        Mockito.when(threadMXBean.isThreadCpuTimeSupported()).thenReturn(true);
+        Mockito.when(threadMXBean.isThreadCpuTimeEnabled()).thenReturn(true);
+        Mockito.when(threadMXBean.getThreadCpuTime(Mockito.any(long[].class))).thenAnswer(invocation -> {
+            long[] cpuTimes = new long[((long[]) invocation.getArguments()[0]).length];
+            Arrays.fill(cpuTimes, (System.nanoTime() - begin) / 10);
+            return cpuTimes;
+        });
+        int n = ThreadPoolSampler.CPU_SAMPLES_PER_CYCLE + 100;
+        CountDownLatch done = new CountDownLatch(1);
+        List<Thread> threads = startThreads("steady-worker-", n, () -> await(done));
+        try {
+            ThreadPoolSampler sampler = new ThreadPoolSampler(threadMXBean);
+            // Each thread is read for a baseline, then read again for its usage
+            for (int i = 0; i < 4; i++) {
+                TimeUnit.MILLISECONDS.sleep(20);
+                sampler.sample();
+            }
+            for (int i = 0; i < 4; i++) {
+                TimeUnit.MILLISECONDS.sleep(20);
+                ThreadPoolSampler.Pool pool = sampler.sample().pools.get("steady-worker");
+                Assert.assertEquals(n, pool.threads);
+                Assert.assertEquals(n / 10.0, pool.cores, n / 10.0 * 0.1);
+            }
+        } finally {
+            done.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    @Test
+    public void removeGonePools() throws InterruptedException {
+        Config config = this.createConfig(JVMRuntimeMetric.ENABLE_KEY, "true");
+        MetricRegistry metricRegistry = new MetricRegistry();
+        JVMRuntimeMetric metric = new JVMRuntimeMetric(metricRegistry, config, false);
+        CountDownLatch done = new CountDownLatch(1);
+        List<Thread> threads = startThreads("short-lived-", 2, () -> await(done));
+        metric.doJob();
+        Assert.assertTrue(gaugeKeys(metricRegistry).contains("thread-pools.short-lived"));
+
+        done.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        metric.doJob();
+        Assert.assertFalse(gaugeKeys(metricRegistry).contains("thread-pools.short-lived"));
+    }
+
+    @Test
+    public void allocationBetweenCollections() {
+        HeapAllocationCounter counter = new HeapAllocationCounter(Collections.emptyList());
+        Assert.assertEquals(100, counter.allocatedBytes(100));
+        counter.onCollection(150, 20);
+        Assert.assertEquals(150, counter.allocatedBytes(20));
+        Assert.assertEquals(180, counter.allocatedBytes(50));
+        // Never goes backwards, even if heap used shrinks without a collection
+        Assert.assertEquals(180, counter.allocatedBytes(10));
+        counter.onCollection(70, 30);
+        Assert.assertEquals(200, counter.allocatedBytes(30));
+    }
+
+    @Test
+    public void collectWithThousandsOfThreads() throws InterruptedException {
+        Config config = this.createConfig(JVMRuntimeMetric.ENABLE_KEY, "true");
+        MetricRegistry metricRegistry = new MetricRegistry();
+        JVMRuntimeMetric metric = new JVMRuntimeMetric(metricRegistry, config, false);
+        CountDownLatch done = new CountDownLatch(1);
+        List<Thread> threads = startThreads("parked-worker-", 2000, () -> await(done));
+        try {
+            for (int i = 0; i < 5; i++) {
+                metric.doJob();
+            }
+            Assert.assertTrue(gaugeKeys(metricRegistry).contains("thread-pools.parked-worker"));
+        } finally {
+            done.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+    }
+
+    private static Set<String> gaugeKeys(MetricRegistry metricRegistry) {
+        return metricRegistry.getGauges().keySet().stream().map(name -> name.substring(3)).collect(Collectors.toSet());
+    }
+
+    private static List<Thread> startThreads(String prefix, int n, Runnable runnable) {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Thread thread = new Thread(runnable, prefix + i);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
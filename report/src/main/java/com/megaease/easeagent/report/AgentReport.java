@@ -17,16 +17,28 @@
 
 package com.megaease.easeagent.report;
 
+import brave.handler.MutableSpan;
+import brave.sampler.Sampler;
 import com.megaease.easeagent.config.Configs;
 import com.megaease.easeagent.report.metric.MetricItem;
 import com.megaease.easeagent.report.metric.MetricReport;
 import com.megaease.easeagent.report.trace.TraceReport;
-import zipkin2.Span;
 
 public interface AgentReport {
     void report(MetricItem item);
 
-    void report(Span span);
+    void report(MutableSpan span);
+
+    /**
+     * @return the sampler deciding whether new traces are recorded
+     */
+    Sampler sampler();
+
+    /**
+     * Count spans dropped outside of the trace report, such as failed by the zipkin sender
+     */
+    default void dropSpans(int count) {
+    }
 
     static AgentReport create(Configs config) {
         return new Default(new MetricReport(config), new TraceReport(config));
@@ -47,8 +59,18 @@ public interface AgentReport {
         }
 
         @Override
-        public void report(Span span) {
+        public void report(MutableSpan span) {
             this.traceReport.report(span);
         }
+
+        @Override
+        public Sampler sampler() {
+            return this.traceReport.sampler();
+        }
+
+        @Override
+        public void dropSpans(int count) {
+            this.traceReport.dropSpans(count);
+        }
     }
 }
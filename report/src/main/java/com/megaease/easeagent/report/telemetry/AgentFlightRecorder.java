@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.report.telemetry;
+
+/**
+ * Emits JDK Flight Recorder events of traced requests, span batches sent by the reporter and errors of
+ * interceptors, so that they could be correlated with GC, lock and I/O events of the same recording.
+ * <p>
+ * Events are off by default and switched at runtime by {@code easeagent.jfr.enabled}. Nothing of {@code jdk.jfr}
+ * is referenced from this class, so it is safe on a JVM without Flight Recorder. The {@code begin} methods
+ * return null when disabled or when no recording enables the event, callers should skip computing the fields
+ * of a null event, so the cost of a disabled event is a volatile read.
+ */
+public final class AgentFlightRecorder {
+    private static final boolean AVAILABLE = available();
+
+    private static volatile boolean enabled;
+
+    private AgentFlightRecorder() {
+    }
+
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        AgentFlightRecorder.enabled = enabled && AVAILABLE;
+    }
+
+    /**
+     * @return an event timing the request, or null if it would not be recorded
+     */
+    public static Object beginRequest() {
+        return enabled ? JfrEvents.beginRequest() : null;
+    }
+
+    public static void commitRequest(Object event, String traceId, String method, String route, int status) {
+        if (event != null) {
+            JfrEvents.commitRequest(event, traceId, method, route, status);
+        }
+    }
+
+    /**
+     * @return an event timing the sending of a batch of spans, or null if it would not be recorded
+     */
+    public static Object beginSpanBatch() {
+        return enabled ? JfrEvents.beginSpanBatch() : null;
+    }
+
+    public static void commitSpanBatch(Object event, int spans, long bytes, boolean sent) {
+        if (event != null) {
+            JfrEvents.commitSpanBatch(event, spans, bytes, sent);
+        }
+    }
+
+    public static void interceptorError(String phase, Object invoker, String method, Throwable error) {
+        if (enabled) {
+            JfrEvents.interceptorError(phase, invoker, method, error);
+        }
+    }
+
+    private static boolean available() {
+        try {
+            Class.forName("jdk.jfr.Event", false, AgentFlightRecorder.class.getClassLoader());
+            return JfrEvents.isAvailable();
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.megaease.easeagent.report.telemetry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters, gauges and timers of the agent itself, such as spans dropped by the trace reporter, kept apart from
+ * the metrics of application so that they stay cheap and dependency free. They are exported by the metrics
+ * module under the {@code easeagent_agent} namespace.
+ * <p>
+ * Names are in snake case without unit or suffix, a metric registered again with the same name replaces a gauge
+ * or function counter, and returns the existing one otherwise.
+ */
+public final class AgentTelemetry {
+    private static final ConcurrentMap<String, Metric> METRICS = new ConcurrentHashMap<>();
+
+    private AgentTelemetry() {
+    }
+
+    public static Counter counter(String name, String help) {
+        return (Counter) METRICS.computeIfAbsent(name, n -> new Counter(n, help, null));
+    }
+
+    /**
+     * Register a counter read from an existing monotonic source, replacing the former one of the same name.
+     */
+    public static void counter(String name, String help, LongSupplier source) {
+        METRICS.put(name, new Counter(name, help, source));
+    }
+
+    public static void gauge(String name, String help, DoubleSupplier value) {
+        METRICS.put(name, new Gauge(name, help, value));
+    }
+
+    public static Timer timer(String name, String help) {
+        return (Timer) METRICS.computeIfAbsent(name, n -> new Timer(n, help));
+    }
+
+    /**
+     * @return all metrics ordered by name
+     */
+    public static List<Metric> metrics() {
+        List<Metric> metrics = new ArrayList<>(METRICS.values());
+        metrics.sort(Comparator.comparing(Metric::getName));
+        return metrics;
+    }
+
+    public abstract static class Metric {
+        private final String name;
+        private final String help;
+
+        Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHelp() {
+            return help;
+        }
+    }
+
+    public static final class Counter extends Metric {
+        private final LongAdder adder = new LongAdder();
+        private final LongSupplier source;
+
+        Counter(String name, String help, LongSupplier source) {
+            super(name, help);
+            this.source = source;
+        }
+
+        public void increment() {
+            adder.increment();
+        }
+
+        public void add(long n) {
+            adder.add(n);
+        }
+
+        public long get() {
+            return source == null ? adder.sum() : source.getAsLong();
+        }
+    }
+
+    public static final class Gauge extends Metric {
+        private final DoubleSupplier value;
+
+        Gauge(String name, String help, DoubleSupplier value) {
+            super(name, help);
+            this.value = value;
+        }
+
+        public double get() {
+            return value.getAsDouble();
+        }
+    }
+
+    public static final class Timer extends Metric {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+
+        Timer(String name, String help) {
+            super(name, help);
+        }
+
+        public void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.sum();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.report.telemetry;
+
+import jdk.jfr.*;
+
+/**
+ * The event types of {@link AgentFlightRecorder}, only loaded once Flight Recorder is known to be present.
+ */
+final class JfrEvents {
+    private static final String CATEGORY = "EaseAgent";
+
+    private JfrEvents() {
+    }
+
+    static boolean isAvailable() {
+        return FlightRecorder.isAvailable();
+    }
+
+    static Object beginRequest() {
+        RequestEvent event = new RequestEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void commitRequest(Object o, String traceId, String method, String route, int status) {
+        RequestEvent event = (RequestEvent) o;
+        event.end();
+        if (event.shouldCommit()) {
+            event.traceId = traceId;
+            event.method = method;
+            event.route = route;
+            event.status = status;
+            event.commit();
+        }
+    }
+
+    static Object beginSpanBatch() {
+        SpanBatchEvent event = new SpanBatchEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void commitSpanBatch(Object o, int spans, long bytes, boolean sent) {
+        SpanBatchEvent event = (SpanBatchEvent) o;
+        event.end();
+        if (event.shouldCommit()) {
+            event.spans = spans;
+            event.bytes = bytes;
+            event.sent = sent;
+            event.commit();
+        }
+    }
+
+    static void interceptorError(String phase, Object invoker, String method, Throwable error) {
+        InterceptorErrorEvent event = new InterceptorErrorEvent();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.phase = phase;
+        event.invokerClass = invoker == null ? null : invoker.getClass();
+        event.method = method;
+        event.errorClass = error.getClass();
+        event.message = error.getMessage();
+        event.commit();
+    }
+
+    @Name("easeagent.Request")
+    @Label("Request")
+    @Category(CATEGORY)
+    @Description("A request traced by the agent, from receiving it to sending the response")
+    static class RequestEvent extends Event {
+        @Label("Trace Id")
+        String traceId;
+
+        @Label("Method")
+        String method;
+
+        @Label("Route")
+        String route;
+
+        @Label("Status")
+        int status;
+    }
+
+    @Name("easeagent.SpanBatch")
+    @Label("Span Batch")
+    @Category(CATEGORY)
+    @Description("A batch of spans sent by the trace reporter")
+    static class SpanBatchEvent extends Event {
+        @Label("Spans")
+        int spans;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Sent")
+        @Description("False if the spans were dropped by an error of sender")
+        boolean sent;
+    }
+
+    @Name("easeagent.InterceptorError")
+    @Label("Interceptor Error")
+    @Category(CATEGORY)
+    @Description("An error thrown by interceptors, which is logged and swallowed by the agent")
+    @StackTrace(false)
+    static class InterceptorErrorEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Invoker Class")
+        Class<?> invokerClass;
+
+        @Label("Method")
+        String method;
+
+        @Label("Error Class")
+        Class<?> errorClass;
+
+        @Label("Message")
+        String message;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.megaease.easeagent.report.trace;
+
+import brave.sampler.Sampler;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Samples new traces at a rate fed back by the reporter, so that spans are not created, tagged and encoded only to
+ * be dropped by a full queue. The rate is halved once spans were dropped since the last adjustment, reduced a
+ * little while the queue is nearly full, and raised gradually towards the ceiling while the queue is mostly empty.
+ * <p>
+ * All traces are sampled while disabled, the same as a sampler of rate 1. It is also the case while tail sampling is
+ * enabled, since traces dropped by the head are never seen by {@link TailSamplingReporter}, which would lose exactly
+ * the slow and failed traces it is meant to keep. Tail sampling bounds the output by itself.
+ */
+public class AdaptiveSampler extends Sampler implements Closeable {
+    static final double HIGH_OCCUPANCY = 0.8;
+    static final double LOW_OCCUPANCY = 0.5;
+    private static final double DROP_FACTOR = 0.5;
+    private static final double HIGH_OCCUPANCY_FACTOR = 0.8;
+    private static final double RECOVERY_FACTOR = 1.25;
+    private static final int PRECISION = 10000;
+
+    private final TraceProps.AdaptiveSamplingProps props;
+    private final TraceProps.TailSamplingProps tailSampling;
+    private final LongSupplier droppedSpans;
+    private final DoubleSupplier queueOccupancy;
+
+    private volatile double rate;
+    private long lastDroppedSpans;
+    private ScheduledExecutorService adjuster;
+
+    /**
+     * @param droppedSpans   total number of spans dropped by the reporter
+     * @param queueOccupancy how full the queue of the reporter is, from 0 to 1
+     */
+    public AdaptiveSampler(TraceProps.AdaptiveSamplingProps props, TraceProps.TailSamplingProps tailSampling,
+                           LongSupplier droppedSpans, DoubleSupplier queueOccupancy) {
+        this.props = props;
+        this.tailSampling = tailSampling;
+        this.droppedSpans = droppedSpans;
+        this.queueOccupancy = queueOccupancy;
+        this.rate = props.getCeiling();
+        this.lastDroppedSpans = droppedSpans.getAsLong();
+    }
+
+    /**
+     * Start a daemon thread adjusting the rate every interval.
+     */
+    public synchronized void startAdjustThread() {
+        if (adjuster != null) {
+            return;
+        }
+        adjuster = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "easeagent-adaptive-sampling");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(props.getInterval(), 1);
+        adjuster.scheduleWithFixedDelay(this::adjust, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isActive() {
+        return props.isEnabled() && !tailSampling.isEnabled();
+    }
+
+    @Override
+    public boolean isSampled(long traceId) {
+        if (!isActive()) {
+            return true;
+        }
+        // Decided by the trace id like brave's BoundarySampler, so the lower bits are expected to be random
+        return Math.abs(traceId % PRECISION) < (long) (rate * PRECISION);
+    }
+
+    /**
+     * Adjust the rate by the spans dropped since the last adjustment and the current occupancy of the queue.
+     */
+    public synchronized void adjust() {
+        long dropped = droppedSpans.getAsLong();
+        long delta = dropped - lastDroppedSpans;
+        lastDroppedSpans = dropped;
+        double occupancy = queueOccupancy.getAsDouble();
+        double floor = props.getFloor();
+        double ceiling = Math.max(floor, props.getCeiling());
+        if (!isActive()) {
+            rate = ceiling;
+            return;
+        }
+        double next = rate;
+        if (delta > 0) {
+            next = rate * DROP_FACTOR;
+        } else if (occupancy >= HIGH_OCCUPANCY) {
+            next = rate * HIGH_OCCUPANCY_FACTOR;
+        } else if (occupancy < LOW_OCCUPANCY) {
+            next = rate * RECOVERY_FACTOR;
+        }
+        rate = Math.min(ceiling, Math.max(floor, next));
+    }
+
+    public double getRate() {
+        return isActive() ? rate : 1.0;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (adjuster != null) {
+            adjuster.shutdownNow();
+            adjuster = null;
+        }
+    }
+}
@@ -21,7 +21,6 @@ import com.megaease.easeagent.report.OutputProperties;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import zipkin2.codec.Encoding;
 import zipkin2.reporter.Reporter;
 import zipkin2.reporter.SDKAsyncReporter;
 import zipkin2.reporter.kafka11.KafkaSender;
@@ -50,6 +49,10 @@ public class RefreshableReporter<S> implements Reporter<S> {
         this.agentOutputProperties = agentOutputProperties;
     }
 
+    public SDKAsyncReporter<S> getAsyncReporter() {
+        return asyncReporter;
+    }
+
     /**
      * report delegate span report to asyncReporter
      *
@@ -78,12 +81,12 @@ public class RefreshableReporter<S> implements Reporter<S> {
                             .bootstrapServers(agentOutputProperties.getServers())
                             .topic(traceProperties.getOutput().getTopic())
                             .messageMaxBytes(traceProperties.getOutput().getMessageMaxBytes())
-                            .encoding(Encoding.JSON)
+                            .encoding(asyncReporter.encoding())
                             .build());
             asyncReporter.setSender(sender);
 
         } else {
-            asyncReporter.setSender(new SimpleSender());
+            asyncReporter.setSender(new SimpleSender(asyncReporter.encoding()));
         }
         asyncReporter.setPending(traceProperties.getOutput().getQueuedMaxSpans(), traceProperties.getOutput().getQueuedMaxSize());
         asyncReporter.setMessageTimeoutNanos(messageTimeout(traceProperties.getOutput().getMessageTimeout(), TimeUnit.MILLISECONDS));
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.report.trace;
+
+import brave.Span;
+import brave.handler.MutableSpan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import zipkin2.reporter.Reporter;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Collapses sibling spans with the same name, remote service and normalized sql under one parent, such as those
+ * of a statement executed in a loop. The first spans up to the threshold are reported as they are, the following
+ * ones are merged into a summary span tagged with their count, total, min and max duration, and the first error.
+ * <p>
+ * Summaries are reported right before their parent span, or without it once they waited longer than the timeout.
+ * Server and consumer spans are never grouped, since their parents are remote and never finish in this process.
+ */
+public class SpanAggregationReporter implements Reporter<MutableSpan>, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpanAggregationReporter.class);
+
+    static final String COUNT_TAG = "aggregation.count";
+    static final String TOTAL_TAG = "aggregation.total";
+    static final String MIN_TAG = "aggregation.min";
+    static final String MAX_TAG = "aggregation.max";
+    private static final String SQL_TAG = "sql";
+    private static final String ERROR_TAG = "error";
+
+    private final Reporter<MutableSpan> delegate;
+    private final TraceProps.AggregationProps props;
+    private final LongSupplier clock;
+
+    /**
+     * Children grouped by trace id and parent id, access ordered so the head is the least recently updated parent.
+     */
+    private final LinkedHashMap<String, Parent> parents = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Spans reported as they are because there were already {@code maxParents} parents tracked.
+     */
+    private final LongAdder bypassed = new LongAdder();
+
+    private ScheduledExecutorService evictor;
+
+    public SpanAggregationReporter(Reporter<MutableSpan> delegate, TraceProps.AggregationProps props) {
+        this(delegate, props, System::currentTimeMillis);
+    }
+
+    SpanAggregationReporter(Reporter<MutableSpan> delegate, TraceProps.AggregationProps props, LongSupplier clock) {
+        this.delegate = delegate;
+        this.props = props;
+        this.clock = clock;
+    }
+
+    /**
+     * Start a daemon thread reporting summaries whose parent did not finish in time.
+     */
+    public synchronized void startEvictThread() {
+        if (evictor != null) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "easeagent-span-aggregation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void report(MutableSpan span) {
+        if (!props.isEnabled()) {
+            delegate.report(span);
+            return;
+        }
+        List<MutableSpan> reported = new ArrayList<>();
+        synchronized (this) {
+            Parent children = parents.remove(span.traceId() + '/' + span.id());
+            if (children != null) {
+                children.summaries(reported);
+            }
+            if (!groupable(span) || !group(span)) {
+                reported.add(span);
+            }
+            evict(false, reported);
+        }
+        report(reported);
+    }
+
+    /**
+     * Report summaries waiting longer than the timeout.
+     */
+    public void evictExpired() {
+        List<MutableSpan> reported = new ArrayList<>();
+        synchronized (this) {
+            evict(false, reported);
+        }
+        report(reported);
+    }
+
+    /**
+     * Report all summaries and stop the evict thread.
+     */
+    @Override
+    public void close() {
+        List<MutableSpan> reported = new ArrayList<>();
+        synchronized (this) {
+            if (evictor != null) {
+                evictor.shutdownNow();
+                evictor = null;
+            }
+            evict(true, reported);
+        }
+        report(reported);
+    }
+
+    synchronized int pendingParents() {
+        return parents.size();
+    }
+
+    /**
+     * @return the number of spans not aggregated because {@code maxParents} parents were tracked already
+     */
+    public long getBypassedSpans() {
+        return bypassed.sum();
+    }
+
+    private void report(List<MutableSpan> spans) {
+        for (MutableSpan span : spans) {
+            delegate.report(span);
+        }
+    }
+
+    private static boolean groupable(MutableSpan span) {
+        return span.parentId() != null && span.kind() != Span.Kind.SERVER && span.kind() != Span.Kind.CONSUMER;
+    }
+
+    /**
+     * @return true if the span is merged into a summary
+     */
+    private boolean group(MutableSpan span) {
+        final String parentKey = span.traceId() + '/' + span.parentId();
+        Parent parent = parents.get(parentKey);
+        if (parent == null) {
+            if (parents.size() >= props.getMaxParents()) {
+                if (bypassed.sum() == 0) {
+                    LOGGER.warn("{} parents of spans are tracked, spans of other parents are not aggregated.",
+                            props.getMaxParents());
+                }
+                bypassed.increment();
+                return false;
+            }
+            parent = new Parent();
+            parents.put(parentKey, parent);
+        }
+        parent.updated = clock.getAsLong();
+        final String key = span.name() + '|' + span.remoteServiceName() + '|' + normalizeSql(span.tag(SQL_TAG));
+        Siblings siblings = parent.siblings.get(key);
+        if (siblings == null) {
+            siblings = new Siblings();
+            parent.siblings.put(key, siblings);
+        }
+        if (++siblings.seen <= props.getThreshold()) {
+            return false;
+        }
+        siblings.merge(span);
+        return true;
+    }
+
+    private void evict(boolean all, List<MutableSpan> reported) {
+        final long expired = clock.getAsLong() - props.getTimeout();
+        final Iterator<Parent> iterator = parents.values().iterator();
+        while (iterator.hasNext()) {
+            Parent eldest = iterator.next();
+            if (!all && eldest.updated > expired) {
+                return;
+            }
+            iterator.remove();
+            eldest.summaries(reported);
+        }
+    }
+
+    /**
+     * Replace quoted and numeric literals with {@code ?}, and collapse whitespaces, so that statements differing
+     * only in their parameters are taken as the same.
+     */
+    static String normalizeSql(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        final StringBuilder normalized = new StringBuilder(sql.length());
+        final int length = sql.length();
+        int i = 0;
+        while (i < length) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                i = skipQuoted(sql, i, c);
+                normalized.append('?');
+            } else if (Character.isDigit(c) && !partOfIdentifier(normalized)) {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                normalized.append('?');
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (normalized.length() > 0 && i < length) {
+                    normalized.append(' ');
+                }
+            } else {
+                normalized.append(c);
+                i++;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static int skipQuoted(String sql, int begin, char quote) {
+        int i = begin + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i++) == quote) {
+                if (i < sql.length() && sql.charAt(i) == quote) {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+        }
+        return i;
+    }
+
+    private static boolean partOfIdentifier(StringBuilder normalized) {
+        if (normalized.length() == 0) {
+            return false;
+        }
+        char last = normalized.charAt(normalized.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_';
+    }
+
+    private static class Parent {
+        final Map<String, Siblings> siblings = new LinkedHashMap<>();
+        long updated;
+
+        void summaries(List<MutableSpan> reported) {
+            for (Siblings s : siblings.values()) {
+                if (s.summary != null) {
+                    reported.add(s.summary());
+                }
+            }
+        }
+    }
+
+    private static class Siblings {
+        int seen;
+        MutableSpan summary;
+        long count;
+        long total;
+        long min = Long.MAX_VALUE;
+        long max;
+        long finish;
+
+        void merge(MutableSpan span) {
+            final long duration = Math.max(span.finishTimestamp() - span.startTimestamp(), 0);
+            if (summary == null) {
+                summary = new MutableSpan(span);
+            } else {
+                if (span.startTimestamp() != 0 && span.startTimestamp() < summary.startTimestamp()) {
+                    summary.startTimestamp(span.startTimestamp());
+                }
+                if (summary.tag(ERROR_TAG) == null && span.tag(ERROR_TAG) != null) {
+                    summary.tag(ERROR_TAG, span.tag(ERROR_TAG));
+                    summary.error(span.error());
+                }
+            }
+            count++;
+            total += duration;
+            min = Math.min(min, duration);
+            max = Math.max(max, duration);
+            finish = Math.max(finish, span.finishTimestamp());
+        }
+
+        /**
+         * The summary spans from the earliest start to the latest finish of merged spans, durations are in
+         * microseconds like timestamps of span.
+         */
+        MutableSpan summary() {
+            summary.finishTimestamp(finish);
+            summary.tag(COUNT_TAG, String.valueOf(count));
+            summary.tag(TOTAL_TAG, String.valueOf(total));
+            summary.tag(MIN_TAG, String.valueOf(min));
+            summary.tag(MAX_TAG, String.valueOf(max));
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.report.trace;
+
+import brave.Span.Kind;
+import brave.handler.MutableSpan;
+import zipkin2.reporter.Reporter;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds finished spans by trace id until the local root span of trace finished, then reports the whole trace
+ * only if it took longer than the latency threshold, contains an error, or wins the base sampling draw.
+ * Spans finished after their trace decided follow the decision.
+ * <p>
+ * Traces waiting longer than the timeout, or exceeding the maximum number of traces or spans held, are decided
+ * without their local root, the oldest first.
+ */
+public class TailSamplingReporter implements Reporter<MutableSpan>, Closeable {
+    private static final String ERROR_TAG = "error";
+
+    private final Reporter<MutableSpan> delegate;
+    private final TraceProps.TailSamplingProps props;
+    private final LongSupplier clock;
+
+    /**
+     * Insertion ordered, so the head is the oldest trace.
+     */
+    private final LinkedHashMap<String, PendingTrace> pending = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Boolean> decided = new LinkedHashMap<String, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > props.getMaxTraces();
+        }
+    };
+    private int pendingSpans;
+
+    private ScheduledExecutorService evictor;
+
+    public TailSamplingReporter(Reporter<MutableSpan> delegate, TraceProps.TailSamplingProps props) {
+        this(delegate, props, System::currentTimeMillis);
+    }
+
+    TailSamplingReporter(Reporter<MutableSpan> delegate, TraceProps.TailSamplingProps props, LongSupplier clock) {
+        this.delegate = delegate;
+        this.props = props;
+        this.clock = clock;
+    }
+
+    /**
+     * Start a daemon thread evicting timeout traces, in case no more span reported to trigger it.
+     */
+    public synchronized void startEvictThread() {
+        if (evictor != null) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "easeagent-tail-sampling");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void report(MutableSpan span) {
+        if (!props.isEnabled()) {
+            delegate.report(span);
+            return;
+        }
+        List<MutableSpan> kept = new ArrayList<>();
+        synchronized (this) {
+            Boolean keep = decided.get(span.traceId());
+            if (keep != null) {
+                if (keep) {
+                    kept.add(span);
+                }
+            } else {
+                PendingTrace trace = pending.get(span.traceId());
+                if (trace == null) {
+                    trace = new PendingTrace(clock.getAsLong());
+                    pending.put(span.traceId(), trace);
+                }
+                trace.add(span);
+                pendingSpans++;
+                if (isLocalRoot(span)) {
+                    pending.remove(span.traceId());
+                    decide(span.traceId(), trace, kept);
+                }
+                evict(false, kept);
+            }
+        }
+        report(kept);
+    }
+
+    /**
+     * Decide traces waiting longer than the timeout.
+     */
+    public void evictExpired() {
+        List<MutableSpan> kept = new ArrayList<>();
+        synchronized (this) {
+            evict(false, kept);
+        }
+        report(kept);
+    }
+
+    /**
+     * Decide all held traces and stop the evict thread.
+     */
+    @Override
+    public void close() {
+        List<MutableSpan> kept = new ArrayList<>();
+        synchronized (this) {
+            if (evictor != null) {
+                evictor.shutdownNow();
+                evictor = null;
+            }
+            evict(true, kept);
+        }
+        report(kept);
+    }
+
+    synchronized int pendingTraces() {
+        return pending.size();
+    }
+
+    synchronized int pendingSpans() {
+        return pendingSpans;
+    }
+
+    private void report(List<MutableSpan> spans) {
+        for (MutableSpan span : spans) {
+            delegate.report(span);
+        }
+    }
+
+    private void evict(boolean all, List<MutableSpan> kept) {
+        final long expired = clock.getAsLong() - props.getTimeout();
+        final Iterator<Map.Entry<String, PendingTrace>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, PendingTrace> eldest = iterator.next();
+            if (!all && eldest.getValue().created > expired
+                    && pending.size() <= props.getMaxTraces() && pendingSpans <= props.getMaxSpans()) {
+                return;
+            }
+            iterator.remove();
+            decide(eldest.getKey(), eldest.getValue(), kept);
+        }
+    }
+
+    private void decide(String traceId, PendingTrace trace, List<MutableSpan> kept) {
+        pendingSpans -= trace.spans.size();
+        final boolean keep = trace.error
+                || trace.maxDuration >= TimeUnit.MILLISECONDS.toMicros(props.getLatencyThreshold())
+                || ThreadLocalRandom.current().nextDouble() < props.getBaseRate();
+        decided.put(traceId, keep);
+        if (keep) {
+            kept.addAll(trace.spans);
+        }
+    }
+
+    /**
+     * The local root id is not kept by every span, so an entry span of process or a span without parent
+     * is taken as local root too.
+     */
+    static boolean isLocalRoot(MutableSpan span) {
+        return span.parentId() == null || span.id().equals(span.localRootId())
+                || span.kind() == Kind.SERVER || span.kind() == Kind.CONSUMER;
+    }
+
+    private static class PendingTrace {
+        final long created;
+        final List<MutableSpan> spans = new ArrayList<>(4);
+        long maxDuration;
+        boolean error;
+
+        PendingTrace(long created) {
+            this.created = created;
+        }
+
+        void add(MutableSpan span) {
+            spans.add(span);
+            maxDuration = Math.max(maxDuration, span.finishTimestamp() - span.startTimestamp());
+            error |= span.error() != null || span.tag(ERROR_TAG) != null;
+        }
+    }
+}
@@ -20,6 +20,7 @@ package com.megaease.easeagent.report.trace;
 import com.megaease.easeagent.config.Config;
 import com.megaease.easeagent.config.ConfigUtils;
 import com.megaease.easeagent.config.Configs;
+import zipkin2.codec.Encoding;
 
 import static com.megaease.easeagent.config.ConfigConst.Observability.*;
 
@@ -29,6 +30,12 @@ public interface TraceProps {
 
     KafkaOutputProps getOutput();
 
+    TailSamplingProps getTailSampling();
+
+    AggregationProps getAggregation();
+
+    AdaptiveSamplingProps getAdaptiveSampling();
+
     interface KafkaOutputProps {
 
         boolean isEnabled();
@@ -44,6 +51,72 @@ public interface TraceProps {
         long getMessageTimeout();
 
         int getQueuedMaxSize();
+
+        /**
+         * @return {@link Encoding#PROTO3} if configured, otherwise {@link Encoding#JSON}
+         */
+        Encoding getEncoding();
+    }
+
+    interface TailSamplingProps {
+
+        boolean isEnabled();
+
+        /**
+         * @return milliseconds, traces took at least this long are always kept
+         */
+        long getLatencyThreshold();
+
+        /**
+         * @return ratio of traces kept without error or high latency
+         */
+        double getBaseRate();
+
+        int getMaxTraces();
+
+        int getMaxSpans();
+
+        /**
+         * @return milliseconds a trace waits for its local root span before being decided without it
+         */
+        long getTimeout();
+    }
+
+    interface AggregationProps {
+
+        boolean isEnabled();
+
+        /**
+         * @return number of identical sibling spans reported as they are before collapsing starts
+         */
+        int getThreshold();
+
+        int getMaxParents();
+
+        /**
+         * @return milliseconds a summary waits for its parent span before being reported without it
+         */
+        long getTimeout();
+    }
+
+    interface AdaptiveSamplingProps {
+
+        boolean isEnabled();
+
+        /**
+         * @return the lowest sampling rate reached under pressure
+         */
+        double getFloor();
+
+        /**
+         * @return the highest sampling rate, used without pressure
+         */
+        double getCeiling();
+
+        /**
+         * @return milliseconds between adjustments
+         */
+        long getInterval();
     }
 
     static TraceProps newDefault(Configs configs) {
@@ -52,11 +125,17 @@ public interface TraceProps {
 
     class Default implements TraceProps {
         private final KafkaOutputProps output;
+        private final TailSamplingProps tailSampling;
+        private final AggregationProps aggregation;
+        private final AdaptiveSamplingProps adaptiveSampling;
         private volatile boolean enabled;
 
         public Default(Configs configs) {
             ConfigUtils.bindProp(TRACE_ENABLED, configs, Config::getBoolean, v -> this.enabled = v);
             this.output = new KafkaOutputPropsImpl(configs);
+            this.tailSampling = new TailSamplingPropsImpl(configs);
+            this.aggregation = new AggregationPropsImpl(configs);
+            this.adaptiveSampling = new AdaptiveSamplingPropsImpl(configs);
         }
 
 
@@ -70,6 +149,21 @@ public interface TraceProps {
             return output;
         }
 
+        @Override
+        public TailSamplingProps getTailSampling() {
+            return tailSampling;
+        }
+
+        @Override
+        public AggregationProps getAggregation() {
+            return aggregation;
+        }
+
+        @Override
+        public AdaptiveSamplingProps getAdaptiveSampling() {
+            return adaptiveSampling;
+        }
+
         class KafkaOutputPropsImpl implements KafkaOutputProps {
             private volatile boolean enabled;
             private volatile String topic;
@@ -78,6 +172,7 @@ public interface TraceProps {
             private volatile int queuedMaxSpans;
             private volatile int queuedMaxSize;
             private volatile int messageTimeout;
+            private volatile Encoding encoding;
 
             public KafkaOutputPropsImpl(Configs configs) {
                 ConfigUtils.bindProp(TRACE_OUTPUT_ENABLED, configs, Config::getBoolean, v -> this.enabled = v);
@@ -87,6 +182,8 @@ public interface TraceProps {
                 ConfigUtils.bindProp(TRACE_OUTPUT_QUEUED_MAX_SPANS, configs, Config::getInt, v -> this.queuedMaxSpans = v);
                 ConfigUtils.bindProp(TRACE_OUTPUT_QUEUED_MAX_SIZE, configs, Config::getInt, v -> this.queuedMaxSize = v);
                 ConfigUtils.bindProp(TRACE_OUTPUT_MESSAGE_TIMEOUT, configs, Config::getInt, v -> this.messageTimeout = v);
+                ConfigUtils.bindProp(TRACE_OUTPUT_ENCODING, configs, Config::getString,
+                        v -> this.encoding = Encoding.PROTO3.name().equalsIgnoreCase(v) ? Encoding.PROTO3 : Encoding.JSON, "json");
             }
 
             @Override
@@ -123,6 +220,128 @@ public interface TraceProps {
             public int getQueuedMaxSize() {
                 return this.queuedMaxSize;
             }
+
+            @Override
+            public Encoding getEncoding() {
+                return this.encoding;
+            }
+        }
+
+        class TailSamplingPropsImpl implements TailSamplingProps {
+            private volatile boolean enabled;
+            private volatile long latencyThreshold;
+            private volatile double baseRate;
+            private volatile int maxTraces;
+            private volatile int maxSpans;
+            private volatile long timeout;
+
+            public TailSamplingPropsImpl(Configs configs) {
+                ConfigUtils.bindProp(TRACE_TAIL_SAMPLING_ENABLED, configs, Config::getBoolean, v -> this.enabled = v);
+                ConfigUtils.bindProp(TRACE_TAIL_SAMPLING_LATENCY_THRESHOLD, configs, Config::getLong, v -> this.latencyThreshold = v, 500L);
+                ConfigUtils.bindProp(TRACE_TAIL_SAMPLING_BASE_RATE, configs, Config::getDouble, v -> this.baseRate = v, 0.1);
+                ConfigUtils.bindProp(TRACE_TAIL_SAMPLING_MAX_TRACES, configs, Config::getInt, v -> this.maxTraces = v, 10000);
+                ConfigUtils.bindProp(TRACE_TAIL_SAMPLING_MAX_SPANS, configs, Config::getInt, v -> this.maxSpans = v, 100000);
+                ConfigUtils.bindProp(TRACE_TAIL_SAMPLING_TIMEOUT, configs, Config::getLong, v -> this.timeout = v, 30000L);
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return this.enabled;
+            }
+
+            @Override
+            public long getLatencyThreshold() {
+                return this.latencyThreshold;
+            }
+
+            @Override
+            public double getBaseRate() {
+                return this.baseRate;
+            }
+
+            @Override
+            public int getMaxTraces() {
+                return this.maxTraces;
+            }
+
+            @Override
+            public int getMaxSpans() {
+                return this.maxSpans;
+            }
+
+            @Override
+            public long getTimeout() {
+                return this.timeout;
+            }
+        }
+
+        class AggregationPropsImpl implements AggregationProps {
+            private volatile boolean enabled;
+            private volatile int threshold;
+            private volatile int maxParents;
+            private volatile long timeout;
+
+            public AggregationPropsImpl(Configs configs) {
+                ConfigUtils.bindProp(TRACE_AGGREGATION_ENABLED, configs, Config::getBoolean, v -> this.enabled = v);
+                ConfigUtils.bindProp(TRACE_AGGREGATION_THRESHOLD, configs, Config::getInt, v -> this.threshold = v, 5);
+                ConfigUtils.bindProp(TRACE_AGGREGATION_MAX_PARENTS, configs, Config::getInt, v -> this.maxParents = v, 10000);
+                ConfigUtils.bindProp(TRACE_AGGREGATION_TIMEOUT, configs, Config::getLong, v -> this.timeout = v, 10000L);
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return this.enabled;
+            }
+
+            @Override
+            public int getThreshold() {
+                return this.threshold;
+            }
+
+            @Override
+            public int getMaxParents() {
+                return this.maxParents;
+            }
+
+            @Override
+            public long getTimeout() {
+                return this.timeout;
+            }
+        }
+    
+
+        class AdaptiveSamplingPropsImpl implements AdaptiveSamplingProps {
+            private volatile boolean enabled;
+            private volatile double floor;
+            private volatile double ceiling;
+            private volatile long interval;
+
+            public AdaptiveSamplingPropsImpl(Configs configs) {
+                ConfigUtils.bindProp(TRACE_ADAPTIVE_SAMPLING_ENABLED, configs, Config::getBoolean, v -> this.enabled = v);
+                ConfigUtils.bindProp(TRACE_ADAPTIVE_SAMPLING_FLOOR, configs, Config::getDouble, v -> this.floor = v, 0.01);
+                ConfigUtils.bindProp(TRACE_ADAPTIVE_SAMPLING_CEILING, configs, Config::getDouble, v -> this.ceiling = v, 1.0);
+                ConfigUtils.bindProp(TRACE_ADAPTIVE_SAMPLING_INTERVAL, configs, Config::getLong, v -> this.interval = v, 1000L);
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return this.enabled;
+            }
+
+            @Override
+            public double getFloor() {
+                return this.floor;
+            }
+
+            @Override
+            public double getCeiling() {
+                return this.ceiling;
+            }
+
+            @Override
+            public long getInterval() {
+                return this.interval;
+            }
         }
     }
 }
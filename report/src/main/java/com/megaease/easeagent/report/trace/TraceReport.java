@@ -17,12 +17,14 @@
 
 package com.megaease.easeagent.report.trace;
 
+import brave.Tags;
+import brave.handler.MutableSpan;
+import brave.sampler.Sampler;
 import com.megaease.easeagent.config.*;
 import com.megaease.easeagent.report.OutputProperties;
+import com.megaease.easeagent.report.telemetry.AgentTelemetry;
 import com.megaease.easeagent.report.util.Utils;
 import org.apache.commons.lang3.StringUtils;
-import zipkin2.Span;
-import zipkin2.codec.Encoding;
 import zipkin2.internal.GlobalExtrasSupplier;
 import zipkin2.reporter.AsyncReporter;
 import zipkin2.reporter.SDKAsyncReporter;
@@ -36,25 +38,50 @@ import java.util.concurrent.TimeUnit;
 
 public class TraceReport {
 
-    private final RefreshableReporter<Span> spanRefreshableReporter;
+    private final RefreshableReporter<MutableSpan> spanRefreshableReporter;
+
+    private final TailSamplingReporter tailSamplingReporter;
+
+    private final SpanAggregationReporter spanAggregationReporter;
+
+    private final AdaptiveSampler adaptiveSampler;
 
     public TraceReport(Configs configs) {
         spanRefreshableReporter = initSpanRefreshableReporter(configs);
+        tailSamplingReporter = new TailSamplingReporter(spanRefreshableReporter, Utils.extractTraceProps(configs).getTailSampling());
+        tailSamplingReporter.startEvictThread();
+        spanAggregationReporter = new SpanAggregationReporter(tailSamplingReporter, Utils.extractTraceProps(configs).getAggregation());
+        spanAggregationReporter.startEvictThread();
+        SDKAsyncReporter<MutableSpan> asyncReporter = spanRefreshableReporter.getAsyncReporter();
+        TraceProps traceProps = Utils.extractTraceProps(configs);
+        adaptiveSampler = new AdaptiveSampler(traceProps.getAdaptiveSampling(), traceProps.getTailSampling(),
+                asyncReporter::getDroppedSpans, asyncReporter::getQueueOccupancy);
+        adaptiveSampler.startAdjustThread();
+        AgentTelemetry.counter("trace_spans_dropped", "Spans dropped by the trace output.",
+                asyncReporter::getDroppedSpans);
+        AgentTelemetry.gauge("trace_queued_spans", "Spans waiting in the trace output queue.",
+                asyncReporter::getQueuedSpans);
+        AgentTelemetry.gauge("trace_queue_occupancy", "Ratio of the trace output queue in use, from 0 to 1.",
+                asyncReporter::getQueueOccupancy);
+        AgentTelemetry.gauge("trace_sampling_rate", "Sampling rate of new traces.", adaptiveSampler::getRate);
+        AgentTelemetry.counter("trace_aggregation_bypassed_spans", "Spans not aggregated since too many parents were tracked.",
+                spanAggregationReporter::getBypassedSpans);
         configs.addChangeListener(new InternalListener());
     }
 
-    private RefreshableReporter<Span> initSpanRefreshableReporter(Configs configs) {
-        final RefreshableReporter<Span> spanRefreshableReporter;
+    private RefreshableReporter<MutableSpan> initSpanRefreshableReporter(Configs configs) {
+        final RefreshableReporter<MutableSpan> spanRefreshableReporter;
         OutputProperties outputProperties = Utils.extractOutputProperties(configs);
-        Sender sender = new SimpleSender();
         TraceProps traceProperties = Utils.extractTraceProps(configs);
+        // The encoding is decided at start, since the encoder of reporter could not be refreshed
+        Sender sender = new SimpleSender(traceProperties.getOutput().getEncoding());
         if (traceProperties.getOutput().isEnabled() && traceProperties.isEnabled()
                 && StringUtils.isNotEmpty(outputProperties.getServers())) {
             sender = SDKKafkaSender.wrap(traceProperties,
                     KafkaSender.newBuilder()
                             .bootstrapServers(outputProperties.getServers())
                             .topic(traceProperties.getOutput().getTopic())
-                            .encoding(Encoding.JSON)
+                            .encoding(traceProperties.getOutput().getEncoding())
                             .messageMaxBytes(traceProperties.getOutput().getMessageMaxBytes())
                             .build());
         }
@@ -73,20 +100,38 @@ public class TraceReport {
                 return systemName.getValue();
             }
         };
-        SDKAsyncReporter reporter = SDKAsyncReporter.
-                builderSDKAsyncReporter(AsyncReporter.builder(sender)
+        SDKAsyncReporter<MutableSpan> reporter = SDKAsyncReporter.
+                builderMutableSpanAsyncReporter(AsyncReporter.builder(sender)
                                 .queuedMaxSpans(traceProperties.getOutput().getQueuedMaxSpans())
                                 .messageTimeout(traceProperties.getOutput().getMessageTimeout(), TimeUnit.MILLISECONDS)
                                 .queuedMaxBytes(traceProperties.getOutput().getQueuedMaxSize()),
                         traceProperties,
                         extrasSupplier);
         reporter.startFlushThread();
-        spanRefreshableReporter = new RefreshableReporter<Span>(reporter, traceProperties, outputProperties);
+        spanRefreshableReporter = new RefreshableReporter<MutableSpan>(reporter, traceProperties, outputProperties);
         return spanRefreshableReporter;
     }
 
-    public void report(Span span) {
-        this.spanRefreshableReporter.report(span);
+    /**
+     * @return the sampler of new traces, adapted to the spans dropped by the reporter
+     */
+    public Sampler sampler() {
+        return adaptiveSampler;
+    }
+
+    /**
+     * Count spans dropped by another output, such as the zipkin sender, so that the sampler adapts to it too.
+     */
+    public void dropSpans(int count) {
+        spanRefreshableReporter.getAsyncReporter().dropSpans(count);
+    }
+
+    public void report(MutableSpan span) {
+        // The same as the error tag added by AsyncZipkinSpanHandler
+        if (span.error() != null && span.tag("error") == null) {
+            Tags.ERROR.tag(span.error(), null, span);
+        }
+        this.spanAggregationReporter.report(span);
     }
 
     private class InternalListener implements ConfigChangeListener {
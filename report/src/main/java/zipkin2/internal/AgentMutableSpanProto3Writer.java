@@ -0,0 +1,382 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zipkin2.internal;
+
+import brave.handler.MutableSpan;
+import com.megaease.easeagent.report.trace.TraceProps;
+import com.megaease.easeagent.report.util.TextUtils;
+import zipkin2.Endpoint;
+import zipkin2.Span;
+
+import static zipkin2.internal.AgentMutableSpanWriter.*;
+import static zipkin2.internal.WriteBuffer.utf8SizeInBytes;
+import static zipkin2.internal.WriteBuffer.varintSizeInBytes;
+
+/**
+ * Writes a {@link MutableSpan} as an element of zipkin proto3 {@code ListOfSpans}, the same bytes as
+ * {@code SpanBytesEncoder.PROTO3} does for the span converted by {@code AsyncZipkinSpanHandler}, so that messages
+ * could be decoded by {@code SpanBytesDecoder.PROTO3}.
+ * <p>
+ * Proto3 of zipkin has no field for the {@code type}, {@code service} and {@code system} of agent json, they are
+ * written as tags, unless the span has a tag of the same key.
+ */
+public class AgentMutableSpanProto3Writer implements WriteBuffer.Writer<MutableSpan> {
+    private static final int SPAN = key(1, 2);
+
+    private static final int TRACE_ID = key(1, 2);
+    private static final int PARENT_ID = key(2, 2);
+    private static final int ID = key(3, 2);
+    private static final int KIND = key(4, 0);
+    private static final int NAME = key(5, 2);
+    private static final int TIMESTAMP = key(6, 1);
+    private static final int DURATION = key(7, 0);
+    private static final int LOCAL_ENDPOINT = key(8, 2);
+    private static final int REMOTE_ENDPOINT = key(9, 2);
+    private static final int ANNOTATION = key(10, 2);
+    private static final int TAG = key(11, 2);
+    private static final int DEBUG = key(12, 0);
+    private static final int SHARED = key(13, 0);
+
+    private static final int ENDPOINT_SERVICE_NAME = key(1, 2);
+    private static final int ENDPOINT_IPV4 = key(2, 2);
+    private static final int ENDPOINT_IPV6 = key(3, 2);
+    private static final int ENDPOINT_PORT = key(4, 0);
+
+    private static final int ANNOTATION_TIMESTAMP = key(1, 1);
+    private static final int ANNOTATION_VALUE = key(2, 2);
+
+    private static final int TAG_KEY = key(1, 2);
+    private static final int TAG_VALUE = key(2, 2);
+
+    private static final String[] NO_EXTRAS = new String[0];
+
+    /**
+     * Values of lower hex characters, ids are validated before being written.
+     */
+    private static final byte[] HEX_DIGITS = new byte['f' + 1];
+
+    static {
+        for (char c = '0'; c <= '9'; c++) {
+            HEX_DIGITS[c] = (byte) (c - '0');
+        }
+        for (char c = 'a'; c <= 'f'; c++) {
+            HEX_DIGITS[c] = (byte) (c - 'a' + 10);
+        }
+    }
+
+    private final String type = "log-tracing";
+    private final GlobalExtrasSupplier extrasSupplier;
+    private final TraceProps traceProperties;
+    private final LocalEndpointCache localEndpoints = new LocalEndpointCache();
+
+    public AgentMutableSpanProto3Writer(GlobalExtrasSupplier extrasSupplier, TraceProps traceProperties) {
+        this.extrasSupplier = extrasSupplier;
+        this.traceProperties = traceProperties;
+    }
+
+    @Override
+    public int sizeInBytes(MutableSpan value) {
+        final int sizeOfSpan = new Fields(value).sizeInBytes();
+        return 1 + varintSizeInBytes(sizeOfSpan) + sizeOfSpan;
+    }
+
+    @Override
+    public void write(MutableSpan value, WriteBuffer b) {
+        final Fields fields = new Fields(value);
+        write(fields, fields.sizeInBytes(), b);
+    }
+
+    /**
+     * Unlike json, the size is known before writing, so fields are normalized only once.
+     */
+    public byte[] write(MutableSpan value) {
+        final Fields fields = new Fields(value);
+        final int sizeOfSpan = fields.sizeInBytes();
+        final byte[] bytes = new byte[1 + varintSizeInBytes(sizeOfSpan) + sizeOfSpan];
+        write(fields, sizeOfSpan, WriteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    private void write(Fields fields, int sizeOfSpan, WriteBuffer b) {
+        final MutableSpan value = fields.value;
+        final String traceId = fields.traceId, id = fields.id, parentId = fields.parentId, name = fields.name;
+        final String[] extras = fields.extras;
+        b.writeByte(SPAN);
+        b.writeVarint(sizeOfSpan);
+        writeHex(b, TRACE_ID, traceId);
+        if (parentId != null) {
+            writeHex(b, PARENT_ID, parentId);
+        }
+        writeHex(b, ID, id);
+        if (value.kind() != null) {
+            b.writeByte(KIND);
+            b.writeByte(kind(value));
+        }
+        if (name != null) {
+            writeString(b, NAME, name);
+        }
+        final long timestamp = timestamp(value);
+        if (timestamp != 0L) {
+            b.writeByte(TIMESTAMP);
+            b.writeLongLe(timestamp);
+        }
+        final long duration = duration(value);
+        if (duration != 0L) {
+            b.writeByte(DURATION);
+            b.writeVarint(duration);
+        }
+        writeEndpoint(b, LOCAL_ENDPOINT, fields.local);
+        writeEndpoint(b, REMOTE_ENDPOINT, fields.remote);
+        for (int i : fields.annotations) {
+            final long annotationTimestamp = value.annotationTimestampAt(i);
+            final String annotationValue = value.annotationValueAt(i);
+            b.writeByte(ANNOTATION);
+            b.writeVarint(annotationSizeInBytes(annotationTimestamp, annotationValue));
+            if (annotationTimestamp != 0L) {
+                b.writeByte(ANNOTATION_TIMESTAMP);
+                b.writeLongLe(annotationTimestamp);
+            }
+            writeString(b, ANNOTATION_VALUE, annotationValue);
+        }
+
+        // Tags and extras are merged in order of key like the tree map of zipkin span
+        int extra = 0;
+        for (int i : sortedTags(value)) {
+            final String key = value.tagKeyAt(i);
+            for (; extra < extras.length && extras[extra].compareTo(key) < 0; extra += 2) {
+                writeTag(b, extras[extra], extras[extra + 1]);
+            }
+            writeTag(b, key, value.tagValueAt(i));
+        }
+        for (; extra < extras.length; extra += 2) {
+            writeTag(b, extras[extra], extras[extra + 1]);
+        }
+
+        if (value.debug()) {
+            b.writeByte(DEBUG);
+            b.writeByte(1);
+        }
+        if (shared(value)) {
+            b.writeByte(SHARED);
+            b.writeByte(1);
+        }
+    }
+
+    /**
+     * @return keys and values of extras absent from tags of span, in order of key
+     */
+    private String[] extras(MutableSpan value) {
+        if (traceProperties == null) {
+            return NO_EXTRAS;
+        }
+        final String service = extrasSupplier.service();
+        final String system = extrasSupplier.system();
+        final boolean hasService = TextUtils.hasText(service) && value.tag("service") == null;
+        final boolean hasSystem = TextUtils.hasText(system) && value.tag("system") == null;
+        final boolean hasType = TextUtils.hasText(type) && value.tag("type") == null;
+        final String[] extras = new String[((hasService ? 1 : 0) + (hasSystem ? 1 : 0) + (hasType ? 1 : 0)) * 2];
+        int i = 0;
+        if (hasService) {
+            extras[i++] = "service";
+            extras[i++] = service;
+        }
+        if (hasSystem) {
+            extras[i++] = "system";
+            extras[i++] = system;
+        }
+        if (hasType) {
+            extras[i++] = "type";
+            extras[i] = type;
+        }
+        return extras;
+    }
+
+    private static int kind(MutableSpan value) {
+        switch (value.kind()) {
+            case CLIENT:
+                return 1;
+            case SERVER:
+                return 2;
+            case PRODUCER:
+                return 3;
+            case CONSUMER:
+                return 4;
+            default:
+                throw new IllegalArgumentException("unknown kind " + value.kind());
+        }
+    }
+
+    private static int endpointFieldSizeInBytes(Endpoint endpoint) {
+        return endpoint == null ? 0 : messageSizeInBytes(endpointSizeInBytes(endpoint));
+    }
+
+    private static int endpointSizeInBytes(Endpoint endpoint) {
+        int sizeInBytes = 0;
+        if (endpoint.serviceName() != null) {
+            sizeInBytes += stringSizeInBytes(endpoint.serviceName());
+        }
+        if (endpoint.ipv4() != null) {
+            sizeInBytes += 2 + 4;
+        }
+        if (endpoint.ipv6() != null) {
+            sizeInBytes += 2 + 16;
+        }
+        if (endpoint.portAsInt() != 0) {
+            sizeInBytes += 1 + varintSizeInBytes(endpoint.portAsInt());
+        }
+        return sizeInBytes;
+    }
+
+    private static void writeEndpoint(WriteBuffer b, int key, Endpoint endpoint) {
+        if (endpoint == null) {
+            return;
+        }
+        b.writeByte(key);
+        b.writeVarint(endpointSizeInBytes(endpoint));
+        if (endpoint.serviceName() != null) {
+            writeString(b, ENDPOINT_SERVICE_NAME, endpoint.serviceName());
+        }
+        if (endpoint.ipv4() != null) {
+            b.writeByte(ENDPOINT_IPV4);
+            b.writeByte(4);
+            b.write(endpoint.ipv4Bytes());
+        }
+        if (endpoint.ipv6() != null) {
+            b.writeByte(ENDPOINT_IPV6);
+            b.writeByte(16);
+            b.write(endpoint.ipv6Bytes());
+        }
+        if (endpoint.portAsInt() != 0) {
+            b.writeByte(ENDPOINT_PORT);
+            b.writeVarint(endpoint.portAsInt());
+        }
+    }
+
+    private static int annotationSizeInBytes(long timestamp, String value) {
+        return (timestamp != 0L ? 1 + 8 : 0) + stringSizeInBytes(value);
+    }
+
+    private static int tagSizeInBytes(String key, String value) {
+        return stringSizeInBytes(key) + stringSizeInBytes(value);
+    }
+
+    private static void writeTag(WriteBuffer b, String key, String value) {
+        b.writeByte(TAG);
+        b.writeVarint(tagSizeInBytes(key, value));
+        writeString(b, TAG_KEY, key);
+        writeString(b, TAG_VALUE, value);
+    }
+
+    private static int messageSizeInBytes(int sizeOfMessage) {
+        return 1 + varintSizeInBytes(sizeOfMessage) + sizeOfMessage;
+    }
+
+    private static int stringSizeInBytes(String value) {
+        return messageSizeInBytes(utf8SizeInBytes(value));
+    }
+
+    private static void writeString(WriteBuffer b, int key, String value) {
+        b.writeByte(key);
+        b.writeVarint(utf8SizeInBytes(value));
+        b.writeUtf8(value);
+    }
+
+    private static void writeHex(WriteBuffer b, int key, String hex) {
+        b.writeByte(key);
+        b.writeByte(hex.length() / 2);
+        for (int i = 0; i < hex.length(); i += 2) {
+            b.writeByte((HEX_DIGITS[hex.charAt(i)] << 4) | HEX_DIGITS[hex.charAt(i + 1)]);
+        }
+    }
+
+    private static int key(int fieldNumber, int wireType) {
+        return (fieldNumber << 3) | wireType;
+    }
+
+    /**
+     * Normalized fields of a span.
+     */
+    private final class Fields {
+        final MutableSpan value;
+        final String traceId;
+        final String id;
+        final String parentId;
+        final String name;
+        final Endpoint local;
+        final Endpoint remote;
+        final int[] annotations;
+        final String[] extras;
+
+        Fields(MutableSpan value) {
+            this.value = value;
+            this.traceId = Span.normalizeTraceId(value.traceId());
+            this.id = normalizeId(value.id());
+            this.parentId = parentId(value.parentId(), id);
+            this.name = lowerCase(value.name());
+            this.local = localEndpoints.get(value);
+            this.remote = remoteEndpoint(value);
+            this.annotations = sortedAnnotations(value);
+            this.extras = extras(value);
+        }
+
+        int sizeInBytes() {
+            int sizeInBytes = 2 + traceId.length() / 2;
+            if (parentId != null) {
+                sizeInBytes += 2 + 8;
+            }
+            sizeInBytes += 2 + 8;
+            if (value.kind() != null) {
+                sizeInBytes += 2;
+            }
+            if (name != null) {
+                sizeInBytes += stringSizeInBytes(name);
+            }
+            if (timestamp(value) != 0L) {
+                sizeInBytes += 1 + 8;
+            }
+            final long duration = duration(value);
+            if (duration != 0L) {
+                sizeInBytes += 1 + varintSizeInBytes(duration);
+            }
+            sizeInBytes += endpointFieldSizeInBytes(local);
+            sizeInBytes += endpointFieldSizeInBytes(remote);
+            for (int i : annotations) {
+                sizeInBytes += messageSizeInBytes(annotationSizeInBytes(value.annotationTimestampAt(i), value.annotationValueAt(i)));
+            }
+            final int tagCount = value.tagCount();
+            for (int i = 0; i < tagCount; i++) {
+                sizeInBytes += messageSizeInBytes(tagSizeInBytes(value.tagKeyAt(i), value.tagValueAt(i)));
+            }
+            for (int i = 0; i < extras.length; i += 2) {
+                sizeInBytes += messageSizeInBytes(tagSizeInBytes(extras[i], extras[i + 1]));
+            }
+            if (value.debug()) {
+                sizeInBytes += 2;
+            }
+            if (shared(value)) {
+                sizeInBytes += 2;
+            }
+            return sizeInBytes;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MutableSpan";
+    }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zipkin2.internal;
+
+import brave.Span.Kind;
+import brave.handler.MutableSpan;
+import com.megaease.easeagent.report.trace.TraceProps;
+import zipkin2.Endpoint;
+import zipkin2.Span;
+
+import java.util.Locale;
+
+/**
+ * Writes the same json as {@link AgentV2SpanWriter} does for the {@link Span} converted from a {@link MutableSpan}
+ * by {@code zipkin2.reporter.brave.AsyncZipkinSpanHandler}, but straight from the {@link MutableSpan}, so that tags
+ * and annotations are not copied into an intermediate span.
+ * <p>
+ * The normalization of {@link Span.Builder} is followed: ids are padded, span name and service names are lower case,
+ * tags are sorted by key, annotations are sorted and distinct, and the shared flag of client span is dropped.
+ */
+public class AgentMutableSpanWriter implements WriteBuffer.Writer<MutableSpan> {
+    private static final int[] EMPTY = new int[0];
+
+    final AgentV2SpanBaseWriter base = new AgentV2SpanBaseWriter();
+    final AgentV2SpanLocalEndpointWriter localEndpoint = new AgentV2SpanLocalEndpointWriter();
+    final AgentV2SpanRemoteEndpointWriter remoteEndpoint = new AgentV2SpanRemoteEndpointWriter();
+    final AgentV2SpanAnnotationsWriter annotations = new AgentV2SpanAnnotationsWriter();
+    final AgentV2SpanGlobalWriter global;
+
+    private final LocalEndpointCache localEndpoints = new LocalEndpointCache();
+
+    public AgentMutableSpanWriter(GlobalExtrasSupplier extrasSupplier, TraceProps properties) {
+        this.global = new AgentV2SpanGlobalWriter("log-tracing", extrasSupplier, properties);
+    }
+
+    @Override
+    public int sizeInBytes(MutableSpan value) {
+        int sizeInBytes = 1; // {
+        final String traceId = Span.normalizeTraceId(value.traceId());
+        final String id = normalizeId(value.id());
+        final String parentId = parentId(value.parentId(), id);
+
+        sizeInBytes += base.traceIDFieldName.length() + 1 + traceId.length();
+        if (parentId != null) {
+            sizeInBytes += base.parentIDFieldName.length() + 1 + parentId.length();
+        }
+        sizeInBytes += base.spanIDFieldName.length() + 1 + id.length();
+        if (value.kind() != null) {
+            sizeInBytes += base.kindFieldName.length() + 1 + value.kind().name().length();
+        }
+        final String name = lowerCase(value.name());
+        if (name != null) {
+            sizeInBytes += base.nameFieldName.length() + 1 + JsonEscaper.jsonEscapedSizeInBytes(name);
+        }
+        final long timestamp = timestamp(value);
+        if (timestamp != 0L) {
+            sizeInBytes += base.timestampFieldName.length() + WriteBuffer.asciiSizeInBytes(timestamp);
+        }
+        final long duration = duration(value);
+        if (duration != 0L) {
+            sizeInBytes += base.durationFieldName.length() + WriteBuffer.asciiSizeInBytes(duration);
+        }
+        if (value.debug()) {
+            sizeInBytes += base.debugFieldValue.length();
+        }
+        if (shared(value)) {
+            sizeInBytes += base.sharedFieldValue.length();
+        }
+
+        final Endpoint local = localEndpoints.get(value);
+        if (local != null) {
+            sizeInBytes += localEndpoint.localEndpointFieldName.length() + localEndpoint.endpointSizeInBytes(local, true);
+        }
+        final Endpoint remote = remoteEndpoint(value);
+        if (remote != null) {
+            sizeInBytes += remoteEndpoint.remoteEndpointFieldName.length() + remoteEndpoint.endpointSizeInBytes(remote, false);
+        }
+
+        final int[] sortedAnnotations = sortedAnnotations(value);
+        if (sortedAnnotations.length > 0) {
+            sizeInBytes += annotations.annotationFieldName.length() + 1 + sortedAnnotations.length - 1;
+            for (int i : sortedAnnotations) {
+                sizeInBytes += annotations.annotationSizeInBytes(value.annotationTimestampAt(i), value.annotationValueAt(i), 0);
+            }
+        }
+
+        final int tagCount = value.tagCount();
+        if (tagCount > 0) {
+            sizeInBytes += 10 + tagCount - 1; // ,"tags":{ } and , between tags
+            for (int i = 0; i < tagCount; i++) {
+                sizeInBytes += 5; // " ":" "
+                sizeInBytes += JsonEscaper.jsonEscapedSizeInBytes(value.tagKeyAt(i));
+                sizeInBytes += JsonEscaper.jsonEscapedSizeInBytes(value.tagValueAt(i));
+            }
+        }
+
+        sizeInBytes += global.sizeInBytes(null);
+        sizeInBytes += 1; // }
+        return sizeInBytes;
+    }
+
+    @Override
+    public void write(MutableSpan value, WriteBuffer b) {
+        b.writeByte('{');
+        final String id = normalizeId(value.id());
+        final String parentId = parentId(value.parentId(), id);
+
+        b.writeAscii(base.traceIDFieldName);
+        b.writeAscii(Span.normalizeTraceId(value.traceId()));
+        b.writeByte('\"');
+        if (parentId != null) {
+            b.writeAscii(base.parentIDFieldName);
+            b.writeAscii(parentId);
+            b.writeByte('\"');
+        }
+        b.writeAscii(base.spanIDFieldName);
+        b.writeAscii(id);
+        b.writeByte('\"');
+        if (value.kind() != null) {
+            b.writeAscii(base.kindFieldName);
+            b.writeAscii(value.kind().name());
+            b.writeByte('\"');
+        }
+        final String name = lowerCase(value.name());
+        if (name != null) {
+            b.writeAscii(base.nameFieldName);
+            b.writeUtf8(JsonEscaper.jsonEscape(name));
+            b.writeByte('\"');
+        }
+        final long timestamp = timestamp(value);
+        if (timestamp != 0L) {
+            b.writeAscii(base.timestampFieldName);
+            b.writeAscii(timestamp);
+        }
+        final long duration = duration(value);
+        if (duration != 0L) {
+            b.writeAscii(base.durationFieldName);
+            b.writeAscii(duration);
+        }
+        if (value.debug()) {
+            b.writeAscii(base.debugFieldValue);
+        }
+        if (shared(value)) {
+            b.writeAscii(base.sharedFieldValue);
+        }
+
+        final Endpoint local = localEndpoints.get(value);
+        if (local != null) {
+            b.writeAscii(localEndpoint.localEndpointFieldName);
+            localEndpoint.writeEndpoint(local, b, true);
+        }
+        final Endpoint remote = remoteEndpoint(value);
+        if (remote != null) {
+            b.writeAscii(remoteEndpoint.remoteEndpointFieldName);
+            remoteEndpoint.writeEndpoint(remote, b, false);
+        }
+
+        final int[] sortedAnnotations = sortedAnnotations(value);
+        if (sortedAnnotations.length > 0) {
+            b.writeAscii(annotations.annotationFieldName);
+            for (int i = 0; i < sortedAnnotations.length; i++) {
+                if (i > 0) {
+                    b.writeByte(',');
+                }
+                final int index = sortedAnnotations[i];
+                annotations.writeAnnotation(value.annotationTimestampAt(index), value.annotationValueAt(index), null, b);
+            }
+            b.writeByte(']');
+        }
+
+        final int tagCount = value.tagCount();
+        if (tagCount > 0) {
+            b.writeAscii(",\"tags\":{");
+            final int[] sortedTags = sortedTags(value);
+            for (int i = 0; i < tagCount; i++) {
+                if (i > 0) {
+                    b.writeByte(',');
+                }
+                b.writeByte('\"');
+                b.writeUtf8(JsonEscaper.jsonEscape(value.tagKeyAt(sortedTags[i])));
+                b.writeAscii("\":\"");
+                b.writeUtf8(JsonEscaper.jsonEscape(value.tagValueAt(sortedTags[i])));
+                b.writeByte('\"');
+            }
+            b.writeByte('}');
+        }
+
+        global.write(null, b);
+        b.writeByte('}');
+    }
+
+    static long timestamp(MutableSpan value) {
+        return Math.max(value.startTimestamp(), 0L);
+    }
+
+    static long duration(MutableSpan value) {
+        final long start = value.startTimestamp(), finish = value.finishTimestamp();
+        return start != 0L && finish != 0L ? Math.max(finish - start, 1L) : 0L;
+    }
+
+    static boolean shared(MutableSpan value) {
+        return value.shared() && value.kind() != Kind.CLIENT;
+    }
+
+    static String lowerCase(String name) {
+        return name == null || name.isEmpty() ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+    static Endpoint remoteEndpoint(MutableSpan value) {
+        final String serviceName = value.remoteServiceName(), ip = value.remoteIp();
+        if (serviceName == null && ip == null) {
+            return null;
+        }
+        return endpoint(serviceName, ip, value.remotePort());
+    }
+
+    private static Endpoint endpoint(String serviceName, String ip, int port) {
+        final Endpoint.Builder builder = Endpoint.newBuilder().serviceName(serviceName);
+        builder.ip(ip);
+        final Endpoint endpoint = builder.port(port).build();
+        return endpoint.serviceName() == null && endpoint.ipv4() == null && endpoint.ipv6() == null
+                && endpoint.portAsInt() == 0 ? null : endpoint;
+    }
+
+    static String parentId(String parentId, String id) {
+        if (parentId == null) {
+            return null;
+        }
+        final int length = parentId.length();
+        if (length == 0) throw new IllegalArgumentException("parentId is empty");
+        if (length > 16) throw new IllegalArgumentException("parentId.length > 16");
+        if (zeroPrefix(parentId) == length) {
+            return null;
+        }
+        final String normalized = length < 16 ? padLeft(parentId) : parentId;
+        // The same as the circular dependency undone by Span.Builder
+        return normalized.equals(id) ? null : normalized;
+    }
+
+    static String normalizeId(String id) {
+        if (id == null) throw new NullPointerException("id == null");
+        final int length = id.length();
+        if (length == 0) throw new IllegalArgumentException("id is empty");
+        if (length > 16) throw new IllegalArgumentException("id.length > 16");
+        if (zeroPrefix(id) == 16) throw new IllegalArgumentException("id is all zeros");
+        return length < 16 ? padLeft(id) : id;
+    }
+
+    private static int zeroPrefix(String id) {
+        int zeros = 0;
+        boolean inZeroPrefix = id.charAt(0) == '0';
+        for (int i = 0; i < id.length(); i++) {
+            final char c = id.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                throw new IllegalArgumentException(id + " should be lower-hex encoded with no prefix");
+            }
+            if (c != '0') {
+                inZeroPrefix = false;
+            } else if (inZeroPrefix) {
+                zeros++;
+            }
+        }
+        return zeros;
+    }
+
+    private static String padLeft(String id) {
+        final StringBuilder builder = new StringBuilder(16);
+        for (int i = id.length(); i < 16; i++) {
+            builder.append('0');
+        }
+        return builder.append(id).toString();
+    }
+
+    /**
+     * @return indexes of tags in order of key
+     */
+    static int[] sortedTags(MutableSpan value) {
+        final int count = value.tagCount();
+        final int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            final String key = value.tagKeyAt(i);
+            int j = i;
+            for (; j > 0 && value.tagKeyAt(sorted[j - 1]).compareTo(key) > 0; j--) {
+                sorted[j] = sorted[j - 1];
+            }
+            sorted[j] = i;
+        }
+        return sorted;
+    }
+
+    /**
+     * @return indexes of distinct annotations in order of timestamp and value
+     */
+    static int[] sortedAnnotations(MutableSpan value) {
+        final int count = value.annotationCount();
+        if (count == 0) {
+            return EMPTY;
+        }
+        final int[] sorted = new int[count];
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            int j = distinct;
+            int compared = 1;
+            for (; j > 0 && (compared = compareAnnotation(value, sorted[j - 1], i)) > 0; j--) {
+                // find the position
+            }
+            if (j > 0 && compared == 0) {
+                continue;
+            }
+            System.arraycopy(sorted, j, sorted, j + 1, distinct - j);
+            sorted[j] = i;
+            distinct++;
+        }
+        if (distinct == count) {
+            return sorted;
+        }
+        final int[] result = new int[distinct];
+        System.arraycopy(sorted, 0, result, 0, distinct);
+        return result;
+    }
+
+    private static int compareAnnotation(MutableSpan value, int i, int j) {
+        final int compared = Long.compare(value.annotationTimestampAt(i), value.annotationTimestampAt(j));
+        return compared != 0 ? compared : value.annotationValueAt(i).compareTo(value.annotationValueAt(j));
+    }
+
+    @Override
+    public String toString() {
+        return "MutableSpan";
+    }
+
+    /**
+     * Local endpoint is the same for almost every span of the process.
+     */
+    static final class LocalEndpointCache {
+        private volatile CachedEndpoint cached;
+
+        Endpoint get(MutableSpan value) {
+            final String serviceName = value.localServiceName(), ip = value.localIp();
+            if (serviceName == null && ip == null) {
+                return null;
+            }
+            final int port = value.localPort();
+            CachedEndpoint cached = this.cached;
+            if (cached == null || !cached.matches(serviceName, ip, port)) {
+                cached = new CachedEndpoint(serviceName, ip, port, endpoint(serviceName, ip, port));
+                this.cached = cached;
+            }
+            return cached.endpoint;
+        }
+    }
+
+    private static final class CachedEndpoint {
+        final String serviceName;
+        final String ip;
+        final int port;
+        final Endpoint endpoint;
+
+        CachedEndpoint(String serviceName, String ip, int port, Endpoint endpoint) {
+            this.serviceName = serviceName;
+            this.ip = ip;
+            this.port = port;
+            this.endpoint = endpoint;
+        }
+
+        boolean matches(String serviceName, String ip, int port) {
+            return this.port == port && equals(this.serviceName, serviceName) && equals(this.ip, ip);
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+}
@@ -17,6 +17,9 @@
 
 package zipkin2.reporter;
 
+import brave.handler.MutableSpan;
+import com.megaease.easeagent.report.telemetry.AgentFlightRecorder;
+import com.megaease.easeagent.report.telemetry.AgentTelemetry;
 import com.megaease.easeagent.report.trace.TraceProps;
 import lombok.SneakyThrows;
 import zipkin2.Call;
@@ -25,9 +28,13 @@ import zipkin2.Span;
 import zipkin2.codec.BytesEncoder;
 import zipkin2.codec.Encoding;
 import zipkin2.codec.SpanBytesEncoder;
+import zipkin2.internal.AgentMutableSpanProto3Writer;
+import zipkin2.internal.AgentMutableSpanWriter;
 import zipkin2.internal.AgentV2SpanWriter;
 import zipkin2.internal.GlobalExtrasSupplier;
 import zipkin2.internal.JsonCodec;
+import zipkin2.internal.WriteBuffer;
+import zipkin2.reporter.http.AsyncHttpSender;
 import zipkin2.reporter.kafka11.SDKSender;
 
 import java.io.IOException;
@@ -38,6 +45,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,6 +55,8 @@ import static java.util.logging.Level.WARNING;
 
 public class SDKAsyncReporter<S> extends AsyncReporter<S> {
     static final Logger logger = Logger.getLogger(BoundedAsyncReporter.class.getName());
+    static final AgentTelemetry.Timer ENCODE_TIMER = AgentTelemetry.timer("trace_span_encode",
+            "Time spent encoding spans of the trace output.");
     final AtomicBoolean closed = new AtomicBoolean(false);
     final BytesEncoder<S> encoder;
     ByteBoundedQueue<S> pending;
@@ -55,6 +65,7 @@ public class SDKAsyncReporter<S> extends AsyncReporter<S> {
     final long closeTimeoutNanos;
     final CountDownLatch close;
     final ReporterMetrics metrics;
+    final LongAdder droppedSpans = new LongAdder();
     final TracerConverter tracerConverter;
     Sender sender;
     TraceProps traceProperties;
@@ -90,6 +101,19 @@ public class SDKAsyncReporter<S> extends AsyncReporter<S> {
         return reporter;
     }
 
+    /**
+     * Builds an async reporter that encodes brave spans directly, without converting them to zipkin spans.
+     */
+    public static SDKAsyncReporter<MutableSpan> builderMutableSpanAsyncReporter(AsyncReporter.Builder builder,
+                                                                                TraceProps traceProperties,
+                                                                                GlobalExtrasSupplier extrasSupplier) {
+        final SDKAsyncReporter<MutableSpan> reporter = new Builder(builder
+                .messageMaxBytes(traceProperties.getOutput().getMessageMaxBytes()))
+                .buildMutableSpan(traceProperties, extrasSupplier);
+        reporter.setTraceProperties(traceProperties);
+        return reporter;
+    }
+
     public void setFlushThreads(List<Thread> flushThreads) {
         this.flushThreads = flushThreads;
     }
@@ -99,9 +123,47 @@ public class SDKAsyncReporter<S> extends AsyncReporter<S> {
         return this.sender;
     }
 
+    /**
+     * @return encoding of spans, senders set later should accept it
+     */
+    public Encoding encoding() {
+        return encoder.encoding();
+    }
+
     //修改sender
     public void setSender(Sender sender) {
         this.sender = sender;
+        if (sender instanceof AsyncHttpSender) {
+            ((AsyncHttpSender) sender).setDroppedSpansListener(this::dropSpans);
+        }
+    }
+
+    /**
+     * @return spans dropped since created, either refused by the queue or failed to send
+     */
+    public long getDroppedSpans() {
+        return droppedSpans.sum();
+    }
+
+    /**
+     * Count spans failed by the sender after they left the queue, such as those sent asynchronously.
+     */
+    public void dropSpans(int count) {
+        metrics.incrementSpansDropped(count);
+        droppedSpans.add(count);
+    }
+
+    public int getQueuedSpans() {
+        return pending.count;
+    }
+
+    /**
+     * @return the fuller one of the count and the size of the queue, from 0 to 1
+     */
+    public double getQueueOccupancy() {
+        ByteBoundedQueue<S> queue = this.pending;
+        // Read without the lock, a slightly stale value is good enough
+        return Math.max((double) queue.count / queue.maxSize, (double) queue.sizeInBytes / queue.maxBytes);
     }
 
     public void setTraceProperties(TraceProps traceProperties) {
@@ -155,10 +217,14 @@ public class SDKAsyncReporter<S> extends AsyncReporter<S> {
                 messageSizeOfNextSpan > messageMaxBytes ||
                 !pending.offer(next, nextSizeInBytes)) {
             metrics.incrementSpansDropped(1);
+            droppedSpans.increment();
         }
     }
 
     private boolean isValidSpan(S next) {
+        if (next instanceof MutableSpan) {
+            return ((MutableSpan) next).startTimestamp() > 0;
+        }
         if (!(next instanceof Span)) {
             return false;
         }
@@ -199,7 +265,9 @@ public class SDKAsyncReporter<S> extends AsyncReporter<S> {
         bundler.drain(new SpanWithSizeConsumer<S>() {
             @Override
             public boolean offer(S next, int nextSizeInBytes) {
+                long start = System.nanoTime();
                 nextMessage.add(encoder.encode(next)); // speculatively add to the pending message
+                ENCODE_TIMER.record(System.nanoTime() - start);
                 if (sender.messageSizeInBytes(nextMessage) > messageMaxBytes) {
                     // if we overran the message size, remove the encoded message.
                     nextMessage.remove(nextMessage.size() - 1);
@@ -210,15 +278,23 @@ public class SDKAsyncReporter<S> extends AsyncReporter<S> {
             }
         });
 
+        Object batchEvent = AgentFlightRecorder.beginSpanBatch();
         try {
 
             sender.sendSpans(nextMessage).execute();
+            if (batchEvent != null) {
+                AgentFlightRecorder.commitSpanBatch(batchEvent, nextMessage.size(), sender.messageSizeInBytes(nextMessage), true);
+            }
         } catch (IOException | RuntimeException | Error t) {
+            if (batchEvent != null) {
+                AgentFlightRecorder.commitSpanBatch(batchEvent, nextMessage.size(), sender.messageSizeInBytes(nextMessage), false);
+            }
             // In failure case, we increment messages and spans dropped.
             int count = nextMessage.size();
             Call.propagateIfFatal(t);
             metrics.incrementMessagesDropped(t);
             metrics.incrementSpansDropped(count);
+            droppedSpans.add(count);
 
             Level logLevel = FINE;
 
@@ -392,6 +468,21 @@ public class SDKAsyncReporter<S> extends AsyncReporter<S> {
             }
         }
 
+        /**
+         * Builds an async reporter that encodes brave spans as they are reported, json and proto3 are supported.
+         */
+        public SDKAsyncReporter<MutableSpan> buildMutableSpan(TraceProps traceProperties, GlobalExtrasSupplier extrasSupplier) {
+            this.traceProperties = traceProperties;
+            switch (builder.sender.encoding()) {
+                case JSON:
+                    return build(new AgentMutableSpanJSONByteEncoder(extrasSupplier, traceProperties));
+                case PROTO3:
+                    return build(new AgentMutableSpanProto3ByteEncoder(extrasSupplier, traceProperties));
+                default:
+                    throw new UnsupportedOperationException(builder.sender.encoding().name());
+            }
+        }
+
         private BytesEncoder<Span> getAgentEncoder(TraceProps tp, GlobalExtrasSupplier extrasSupplier) {
             return new AgentJSONByteEncoder( extrasSupplier, tp);
         }
@@ -474,6 +565,76 @@ public class SDKAsyncReporter<S> extends AsyncReporter<S> {
         }
     }
 
+    private static class AgentMutableSpanJSONByteEncoder implements BytesEncoder<MutableSpan> {
+
+        final AgentMutableSpanWriter writer;
+
+        AgentMutableSpanJSONByteEncoder(GlobalExtrasSupplier extrasSupplier, TraceProps traceProperties) {
+            writer = new AgentMutableSpanWriter(extrasSupplier, traceProperties);
+        }
+
+        @Override
+        public Encoding encoding() {
+            return Encoding.JSON;
+        }
+
+        @Override
+        public int sizeInBytes(MutableSpan input) {
+            return writer.sizeInBytes(input);
+        }
+
+        @Override
+        public byte[] encode(MutableSpan span) {
+            return JsonCodec.write(writer, span);
+        }
+
+        @Override
+        public byte[] encodeList(List<MutableSpan> spans) {
+            return JsonCodec.writeList(writer, spans);
+        }
+    }
+
+    private static class AgentMutableSpanProto3ByteEncoder implements BytesEncoder<MutableSpan> {
+
+        final AgentMutableSpanProto3Writer writer;
+
+        AgentMutableSpanProto3ByteEncoder(GlobalExtrasSupplier extrasSupplier, TraceProps traceProperties) {
+            writer = new AgentMutableSpanProto3Writer(extrasSupplier, traceProperties);
+        }
+
+        @Override
+        public Encoding encoding() {
+            return Encoding.PROTO3;
+        }
+
+        @Override
+        public int sizeInBytes(MutableSpan input) {
+            return writer.sizeInBytes(input);
+        }
+
+        @Override
+        public byte[] encode(MutableSpan span) {
+            return writer.write(span);
+        }
+
+        /**
+         * A list of proto3 spans is the concatenation of them.
+         */
+        @Override
+        public byte[] encodeList(List<MutableSpan> spans) {
+            int sizeInBytes = 0;
+            for (MutableSpan span : spans) {
+                sizeInBytes += writer.sizeInBytes(span);
+            }
+            final byte[] out = new byte[sizeInBytes];
+            final WriteBuffer buffer = WriteBuffer.wrap(out);
+            for (MutableSpan span : spans) {
+                writer.write(span, buffer);
+            }
+            return out;
+        }
+    }
+
     public static final class Flusher<S> implements Runnable {
         static final Logger logger = Logger.getLogger(Flusher.class.getName());
 
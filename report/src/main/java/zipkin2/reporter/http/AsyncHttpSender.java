@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zipkin2.reporter.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import zipkin2.Call;
+import zipkin2.Callback;
+import zipkin2.CheckResult;
+import zipkin2.codec.Encoding;
+import zipkin2.reporter.BytesMessageEncoder;
+import zipkin2.reporter.Sender;
+import zipkin2.reporter.kafka11.SDKSender;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Posts json messages of spans to a zipkin compatible collector without blocking the flush thread of reporter,
+ * a replacement of {@code URLConnectionSender}.
+ * <p>
+ * {@link Call#execute()} hands the message over to one of the sending threads and returns at once. When the
+ * maximum number of messages are in flight, it fails with {@link RejectedExecutionException}, so that the
+ * reporter drops the spans and counts them, instead of backing up behind a slow collector. Messages failed later by
+ * the sending threads are reported to the {@link #setDroppedSpansListener listener} by their number of spans, since
+ * the reporter has moved on by then.
+ * <p>
+ * Messages larger than 1KiB are gzip compressed. Responses are read fully, so that the connections are kept alive and reused
+ * by {@link HttpURLConnection}.
+ */
+public final class AsyncHttpSender extends Sender implements SDKSender {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncHttpSender.class);
+    private static final int MIN_GZIP_BYTES = 1024;
+
+    private final URL endpoint;
+    private final BytesMessageEncoder encoder = BytesMessageEncoder.JSON;
+    private final int messageMaxBytes;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final boolean compressionEnabled;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final ExecutorService executor;
+
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder failedMessages = new LongAdder();
+    private final LongAdder rejectedMessages = new LongAdder();
+
+    private volatile IntConsumer droppedSpansListener = spans -> {
+    };
+    private volatile boolean closeCalled;
+
+    public static AsyncHttpSender create(String endpoint) {
+        return newBuilder().endpoint(endpoint).build();
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    AsyncHttpSender(Builder builder) {
+        if (builder.endpoint == null) {
+            throw new NullPointerException("endpoint == null");
+        }
+        this.endpoint = builder.endpoint;
+        this.messageMaxBytes = builder.messageMaxBytes;
+        this.connectTimeout = builder.connectTimeout;
+        this.readTimeout = builder.readTimeout;
+        this.compressionEnabled = builder.compressionEnabled;
+        this.maxInFlight = builder.maxInFlight;
+        this.inFlight = new Semaphore(builder.maxInFlight);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(builder.maxInFlight, r -> {
+            Thread thread = new Thread(r, "easeagent-http-sender-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public Encoding encoding() {
+        return Encoding.JSON;
+    }
+
+    @Override
+    public int messageMaxBytes() {
+        return messageMaxBytes;
+    }
+
+    @Override
+    public int messageSizeInBytes(List<byte[]> encodedSpans) {
+        return Encoding.JSON.listSizeInBytes(encodedSpans);
+    }
+
+    @Override
+    public int messageSizeInBytes(int encodedSizeInBytes) {
+        return Encoding.JSON.listSizeInBytes(encodedSizeInBytes);
+    }
+
+    @Override
+    public Call<Void> sendSpans(List<byte[]> encodedSpans) {
+        if (closeCalled) {
+            throw new IllegalStateException("closed");
+        }
+        return new PostCall(encoder.encode(encodedSpans), encodedSpans.size());
+    }
+
+    /**
+     * Posts an empty list synchronously.
+     */
+    @Override
+    public CheckResult check() {
+        try {
+            post(encoder.encode(Collections.emptyList()));
+            return CheckResult.OK;
+        } catch (Exception e) {
+            return CheckResult.failed(e);
+        }
+    }
+
+    @Override
+    public boolean isClose() {
+        return closeCalled;
+    }
+
+    /**
+     * Waits a while for messages in flight.
+     */
+    @Override
+    public void close() {
+        if (closeCalled) {
+            return;
+        }
+        closeCalled = true;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(readTimeout + connectTimeout, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param listener accepts the number of spans in each message failed after {@link Call#execute()} returned
+     */
+    public void setDroppedSpansListener(IntConsumer listener) {
+        this.droppedSpansListener = listener == null ? spans -> {
+        } : listener;
+    }
+
+    public int getInFlightMessages() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public long getSentMessages() {
+        return sentMessages.sum();
+    }
+
+    public long getFailedMessages() {
+        return failedMessages.sum();
+    }
+
+    /**
+     * @return messages rejected since the maximum number of messages were in flight
+     */
+    public long getRejectedMessages() {
+        return rejectedMessages.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncHttpSender{" + endpoint + "}";
+    }
+
+    private void submit(byte[] message, Callback<Void> callback) {
+        if (!inFlight.tryAcquire()) {
+            rejectedMessages.increment();
+            throw new RejectedExecutionException(maxInFlight + " messages in flight to " + endpoint);
+        }
+        try {
+            executor.execute(() -> {
+                Throwable error = null;
+                try {
+                    post(message);
+                    sentMessages.increment();
+                } catch (Throwable e) {
+                    failedMessages.increment();
+                    error = e;
+                } finally {
+                    // Released before the callback, so that it could send the next message
+                    inFlight.release();
+                }
+                if (error == null) {
+                    callback.onSuccess(null);
+                } else {
+                    callback.onError(error);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            rejectedMessages.increment();
+            throw e;
+        }
+    }
+
+    void post(byte[] message) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) endpoint.openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        byte[] body = message;
+        if (compressionEnabled && message.length >= MIN_GZIP_BYTES) {
+            body = gzip(message);
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        }
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+
+        int code = connection.getResponseCode();
+        // Read till the end, otherwise the connection would not be kept alive
+        try (InputStream in = code >= 400 ? connection.getErrorStream() : connection.getInputStream()) {
+            skipAll(in);
+        }
+        if (code >= 300) {
+            throw new IOException("response " + code + " from " + endpoint);
+        }
+    }
+
+    private static byte[] gzip(byte[] message) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(message.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer)) {
+            gzip.write(message);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static void skipAll(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        byte[] buf = new byte[512];
+        while (in.read(buf) != -1) {
+            // skip
+        }
+    }
+
+    private final class PostCall extends Call.Base<Void> {
+        private final byte[] message;
+        private final int spans;
+
+        PostCall(byte[] message, int spans) {
+            this.message = message;
+            this.spans = spans;
+        }
+
+        /**
+         * Returns once the message is handed over, failures of sending are logged and reported as dropped spans.
+         */
+        @Override
+        protected Void doExecute() {
+            submit(message, new Callback<Void>() {
+                @Override
+                public void onSuccess(Void value) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    LOGGER.warn("send spans to {} failed: {}", endpoint, t.toString());
+                    droppedSpansListener.accept(spans);
+                }
+            });
+            return null;
+        }
+
+        @Override
+        protected void doEnqueue(Callback<Void> callback) {
+            submit(message, callback);
+        }
+
+        @Override
+        public Call<Void> clone() {
+            return new PostCall(message, spans);
+        }
+    }
+
+    public static final class Builder {
+        private URL endpoint;
+        private int messageMaxBytes = 5 * 1024 * 1024;
+        private int connectTimeout = 10 * 1000;
+        private int readTimeout = 60 * 1000;
+        private boolean compressionEnabled = true;
+        private int maxInFlight = 4;
+
+        Builder() {
+        }
+
+        public Builder endpoint(String endpoint) {
+            try {
+                this.endpoint = new URL(endpoint);
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            return this;
+        }
+
+        public Builder messageMaxBytes(int messageMaxBytes) {
+            this.messageMaxBytes = messageMaxBytes;
+            return this;
+        }
+
+        /**
+         * @param connectTimeout milliseconds
+         */
+        public Builder connectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * @param readTimeout milliseconds
+         */
+        public Builder readTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public Builder compressionEnabled(boolean compressionEnabled) {
+            this.compressionEnabled = compressionEnabled;
+            return this;
+        }
+
+        /**
+         * The number of messages posted concurrently, each by its own thread and connection.
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("maxInFlight <= 0");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public AsyncHttpSender build() {
+            return new AsyncHttpSender(this);
+        }
+    }
+}
@@ -17,8 +17,10 @@
 
 package zipkin2.reporter.kafka11;
 
+import com.megaease.easeagent.report.telemetry.AgentTelemetry;
 import com.megaease.easeagent.report.trace.TraceProps;
 import zipkin2.Call;
+import zipkin2.Callback;
 import zipkin2.CheckResult;
 import zipkin2.codec.Encoding;
 import zipkin2.reporter.Sender;
@@ -27,6 +29,11 @@ import java.io.IOException;
 import java.util.List;
 
 public class SDKKafkaSender extends Sender implements SDKSender {
+    static final AgentTelemetry.Timer SEND_TIMER = AgentTelemetry.timer("trace_kafka_send",
+            "Time spent sending messages of spans to kafka.");
+    static final AgentTelemetry.Counter SEND_FAILURES = AgentTelemetry.counter("trace_kafka_send_failures",
+            "Messages of spans failed to send to kafka.");
+
     private KafkaSender kafkaSender;
 
     private TraceProps traceProperties;
@@ -56,7 +63,7 @@ public class SDKKafkaSender extends Sender implements SDKSender {
             throw new IllegalStateException("closed");
         } else {
             byte[] message = kafkaSender.encoder.encode(encodedSpans);
-            return kafkaSender.new KafkaCall(message);
+            return new TimedCall(kafkaSender.new KafkaCall(message));
         }
     }
 
@@ -85,5 +92,45 @@ public class SDKKafkaSender extends Sender implements SDKSender {
         return kafkaSender.messageSizeInBytes(encodedSizeInBytes);
     }
 
+    /**
+     * Records the latency and failures of sending, which is synchronous in the flush thread of reporter.
+     */
+    static final class TimedCall extends Call.Base<Void> {
+        private final Call<Void> delegate;
+
+        TimedCall(Call<Void> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected Void doExecute() throws IOException {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                delegate.execute();
+                success = true;
+                return null;
+            } finally {
+                SEND_TIMER.record(System.nanoTime() - start);
+                if (!success) {
+                    SEND_FAILURES.increment();
+                }
+            }
+        }
 
+        @Override
+        protected void doEnqueue(Callback<Void> callback) {
+            delegate.enqueue(callback);
+        }
+
+        @Override
+        protected void doCancel() {
+            delegate.cancel();
+        }
+
+        @Override
+        public Call<Void> clone() {
+            return new TimedCall(delegate.clone());
+        }
+    }
 }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.report.telemetry;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class AgentFlightRecorderTest {
+    private Recording recording;
+
+    @Before
+    public void before() {
+        assumeTrue(AgentFlightRecorder.isAvailable());
+        recording = new Recording();
+        recording.enable("easeagent.Request").withThreshold(Duration.ZERO);
+        recording.enable("easeagent.SpanBatch").withThreshold(Duration.ZERO);
+        recording.enable("easeagent.InterceptorError");
+        recording.start();
+    }
+
+    @After
+    public void after() {
+        AgentFlightRecorder.setEnabled(false);
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    @Test
+    public void recordEventsWhenEnabled() throws IOException {
+        AgentFlightRecorder.setEnabled(true);
+        AgentFlightRecorder.commitRequest(AgentFlightRecorder.beginRequest(), "463ac35c9f6413ad", "GET", "/users/{id}", 200);
+        AgentFlightRecorder.commitSpanBatch(AgentFlightRecorder.beginSpanBatch(), 3, 1024, true);
+        AgentFlightRecorder.interceptorError("before", this, "doFilter", new IllegalStateException("broken"));
+
+        List<RecordedEvent> events = stopAndRead();
+        RecordedEvent request = single(events, "easeagent.Request");
+        assertEquals("463ac35c9f6413ad", request.getString("traceId"));
+        assertEquals("GET", request.getString("method"));
+        assertEquals("/users/{id}", request.getString("route"));
+        assertEquals(200, request.getInt("status"));
+
+        RecordedEvent batch = single(events, "easeagent.SpanBatch");
+        assertEquals(3, batch.getInt("spans"));
+        assertEquals(1024, batch.getLong("bytes"));
+        assertTrue(batch.getBoolean("sent"));
+
+        RecordedEvent error = single(events, "easeagent.InterceptorError");
+        assertEquals("before", error.getString("phase"));
+        assertEquals("doFilter", error.getString("method"));
+        assertEquals("broken", error.getString("message"));
+        assertEquals(IllegalStateException.class.getName(), error.getClass("errorClass").getName());
+        assertEquals(getClass().getName(), error.getClass("invokerClass").getName());
+    }
+
+    @Test
+    public void recordNothingWhenDisabled() throws IOException {
+        assertNull(AgentFlightRecorder.beginRequest());
+        assertNull(AgentFlightRecorder.beginSpanBatch());
+        AgentFlightRecorder.commitRequest(null, "463ac35c9f6413ad", "GET", "/", 200);
+        AgentFlightRecorder.interceptorError("after", this, "doFilter", new IllegalStateException());
+
+        assertTrue(stopAndRead().isEmpty());
+    }
+
+    @Test
+    public void skipEventsNotEnabledByRecording() {
+        recording.disable("easeagent.Request");
+        AgentFlightRecorder.setEnabled(true);
+        assertNull(AgentFlightRecorder.beginRequest());
+        assertNotNull(AgentFlightRecorder.beginSpanBatch());
+    }
+
+    private List<RecordedEvent> stopAndRead() throws IOException {
+        recording.stop();
+        Path file = Files.createTempFile("easeagent", ".jfr");
+        try {
+            recording.dump(file);
+            List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().startsWith("easeagent.")) {
+                    events.add(event);
+                }
+            }
+            return events;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        RecordedEvent found = null;
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                assertNull("more than one " + name, found);
+                found = event;
+            }
+        }
+        assertNotNull("no " + name, found);
+        return found;
+    }
+}
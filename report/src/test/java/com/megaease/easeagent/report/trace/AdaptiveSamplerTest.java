@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.megaease.easeagent.report.trace;
+
+import com.megaease.easeagent.config.ConfigConst;
+import com.megaease.easeagent.config.Configs;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveSamplerTest {
+    private final HashMap<String, String> source = new HashMap<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile double occupancy;
+
+    @Before
+    public void setUp() {
+        source.put(ConfigConst.SERVICE_NAME, "test-service");
+        source.put(ConfigConst.Observability.TRACE_ENABLED, "true");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_REPORT_THREAD, "1");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_MESSAGE_MAX_BYTES, "999900");
+        source.put(ConfigConst.Observability.TRACE_ADAPTIVE_SAMPLING_ENABLED, "true");
+        source.put(ConfigConst.Observability.TRACE_ADAPTIVE_SAMPLING_FLOOR, "0.1");
+        source.put(ConfigConst.Observability.TRACE_ADAPTIVE_SAMPLING_CEILING, "0.8");
+    }
+
+    private AdaptiveSampler sampler() {
+        TraceProps traceProps = TraceProps.newDefault(new Configs(source));
+        return new AdaptiveSampler(traceProps.getAdaptiveSampling(), traceProps.getTailSampling(), dropped::get, () -> occupancy);
+    }
+
+    @Test
+    public void should_start_at_ceiling() {
+        assertEquals(0.8, sampler().getRate(), 0);
+    }
+
+    @Test
+    public void should_halve_rate_on_drops_down_to_floor() {
+        AdaptiveSampler sampler = sampler();
+        dropped.addAndGet(10);
+        sampler.adjust();
+        assertEquals(0.4, sampler.getRate(), 1e-9);
+        // no new drops while the queue is between the watermarks, hold the rate
+        occupancy = 0.6;
+        sampler.adjust();
+        assertEquals(0.4, sampler.getRate(), 1e-9);
+        for (int i = 0; i < 10; i++) {
+            dropped.incrementAndGet();
+            sampler.adjust();
+        }
+        assertEquals(0.1, sampler.getRate(), 1e-9);
+    }
+
+    @Test
+    public void should_reduce_rate_when_queue_nearly_full() {
+        AdaptiveSampler sampler = sampler();
+        occupancy = AdaptiveSampler.HIGH_OCCUPANCY;
+        sampler.adjust();
+        assertEquals(0.64, sampler.getRate(), 1e-9);
+    }
+
+    @Test
+    public void should_recover_to_ceiling_once_pressure_eases() {
+        AdaptiveSampler sampler = sampler();
+        for (int i = 0; i < 5; i++) {
+            dropped.incrementAndGet();
+            sampler.adjust();
+        }
+        assertEquals(0.1, sampler.getRate(), 1e-9);
+        occupancy = 0.1;
+        sampler.adjust();
+        assertEquals(0.125, sampler.getRate(), 1e-9);
+        for (int i = 0; i < 20; i++) {
+            sampler.adjust();
+        }
+        assertEquals(0.8, sampler.getRate(), 1e-9);
+    }
+
+    @Test
+    public void should_sample_by_rate() {
+        AdaptiveSampler sampler = sampler();
+        dropped.incrementAndGet();
+        sampler.adjust();
+        Random random = new Random(1);
+        int sampled = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (sampler.isSampled(random.nextLong())) {
+                sampled++;
+            }
+        }
+        assertEquals(0.4, sampled / 100000.0, 0.01);
+    }
+
+    @Test
+    public void should_sample_all_when_disabled() {
+        source.put(ConfigConst.Observability.TRACE_ADAPTIVE_SAMPLING_ENABLED, "false");
+        AdaptiveSampler sampler = sampler();
+        dropped.incrementAndGet();
+        sampler.adjust();
+        assertEquals(1.0, sampler.getRate(), 0);
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(sampler.isSampled(random.nextLong()));
+        }
+    }
+
+    @Test
+    public void should_sample_all_while_tail_sampling() {
+        source.put(ConfigConst.Observability.TRACE_TAIL_SAMPLING_ENABLED, "true");
+        AdaptiveSampler sampler = sampler();
+        dropped.incrementAndGet();
+        sampler.adjust();
+        assertEquals(1.0, sampler.getRate(), 0);
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(sampler.isSampled(random.nextLong()));
+        }
+    }
+
+    @Test
+    public void should_converge_drops_toward_zero_with_slow_output() {
+        source.put(ConfigConst.Observability.TRACE_ADAPTIVE_SAMPLING_FLOOR, "0.01");
+        source.put(ConfigConst.Observability.TRACE_ADAPTIVE_SAMPLING_CEILING, "1.0");
+        TraceProps traceProps = TraceProps.newDefault(new Configs(source));
+        BoundedOutput output = new BoundedOutput(100);
+        AdaptiveSampler sampler = new AdaptiveSampler(traceProps.getAdaptiveSampling(), traceProps.getTailSampling(),
+                output::getDropped, output::getOccupancy);
+        Random random = new Random(1);
+        long[] drops = new long[30];
+        for (int round = 0; round < drops.length; round++) {
+            long before = output.getDropped();
+            // 2000 new traces per round, while only 100 spans are sent, far more than the output could take at rate 1
+            for (int i = 0; i < 2000; i++) {
+                if (sampler.isSampled(random.nextLong())) {
+                    output.offer();
+                }
+                if (i % 20 == 19) {
+                    output.send();
+                }
+            }
+            drops[round] = output.getDropped() - before;
+            sampler.adjust();
+        }
+        long first = drops[0] + drops[1];
+        long last = 0;
+        for (int round = drops.length - 10; round < drops.length; round++) {
+            last += drops[round];
+        }
+        assertTrue("first rounds should drop spans at full rate", first > 1000);
+        assertTrue("drops of the last rounds should converge toward zero, but " + last, last * 10 < first);
+        assertTrue(sampler.getRate() < 0.5);
+    }
+
+    /**
+     * A queue of spans in front of a sender taking a span at a time, in place of the reporter and its flush thread.
+     */
+    static class BoundedOutput {
+        private final int capacity;
+        private int queued;
+        private long dropped;
+
+        BoundedOutput(int capacity) {
+            this.capacity = capacity;
+        }
+
+        void offer() {
+            if (queued < capacity) {
+                queued++;
+            } else {
+                dropped++;
+            }
+        }
+
+        void send() {
+            if (queued > 0) {
+                queued--;
+            }
+        }
+
+        long getDropped() {
+            return dropped;
+        }
+
+        double getOccupancy() {
+            return (double) queued / capacity;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.report.trace;
+
+import brave.Span;
+import brave.handler.MutableSpan;
+import com.megaease.easeagent.config.ConfigConst;
+import com.megaease.easeagent.config.Configs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class SpanAggregationReporterTest {
+    private final List<MutableSpan> reported = new ArrayList<>();
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final HashMap<String, String> source = new HashMap<>();
+    private SpanAggregationReporter reporter;
+
+    @Before
+    public void setUp() {
+        source.put(ConfigConst.Observability.TRACE_AGGREGATION_ENABLED, "true");
+        source.put(ConfigConst.Observability.TRACE_AGGREGATION_THRESHOLD, "2");
+        source.put(ConfigConst.Observability.TRACE_AGGREGATION_MAX_PARENTS, "2");
+        source.put(ConfigConst.Observability.TRACE_AGGREGATION_TIMEOUT, "5000");
+    }
+
+    private void start() {
+        TraceProps traceProps = TraceProps.newDefault(new Configs(source));
+        reporter = new SpanAggregationReporter(reported::add, traceProps.getAggregation(), clock::get);
+    }
+
+    @After
+    public void tearDown() {
+        if (reporter != null) {
+            reporter.close();
+        }
+    }
+
+    @Test
+    public void should_report_as_it_is_when_disabled() {
+        source.put(ConfigConst.Observability.TRACE_AGGREGATION_ENABLED, "false");
+        start();
+        for (int i = 0; i < 10; i++) {
+            reporter.report(query("11", "c" + i, "f1", 1000 + i * 10, 5, "select * from user where id = " + i));
+        }
+        assertEquals(10, reported.size());
+        assertEquals(0, reporter.pendingParents());
+    }
+
+    @Test
+    public void should_collapse_siblings_after_threshold() {
+        start();
+        reporter.report(query("11", "c1", "f1", 1000, 5, "select * from user where id = 1"));
+        reporter.report(query("11", "c2", "f1", 1010, 3, "select * from user where id = 2"));
+        reporter.report(query("11", "c3", "f1", 1020, 7, "select  *  from user where id = 3"));
+        reporter.report(query("11", "c4", "f1", 1030, 2, "select * from user where id = 4"));
+        reporter.report(query("11", "c5", "f1", 1040, 4, "select * from user where id = 5"));
+        assertEquals(2, reported.size());
+        assertNull(reported.get(0).tag(SpanAggregationReporter.COUNT_TAG));
+
+        reporter.report(span("11", "f1", null, 900, 500));
+        assertEquals(4, reported.size());
+        MutableSpan summary = reported.get(2);
+        assertEquals("00000000000000c3", summary.id());
+        assertEquals("3", summary.tag(SpanAggregationReporter.COUNT_TAG));
+        assertEquals("13", summary.tag(SpanAggregationReporter.TOTAL_TAG));
+        assertEquals("2", summary.tag(SpanAggregationReporter.MIN_TAG));
+        assertEquals("7", summary.tag(SpanAggregationReporter.MAX_TAG));
+        assertEquals(1020, summary.startTimestamp());
+        assertEquals(1044, summary.finishTimestamp());
+        assertEquals("00000000000000f1", reported.get(3).id());
+        assertEquals(0, reporter.pendingParents());
+    }
+
+    @Test
+    public void should_not_collapse_different_siblings() {
+        source.put(ConfigConst.Observability.TRACE_AGGREGATION_MAX_PARENTS, "3");
+        start();
+        for (int i = 0; i < 3; i++) {
+            reporter.report(query("11", "a" + i, "f1", 1000, 5, "select * from user where id = ?"));
+            reporter.report(query("11", "b" + i, "f1", 1000, 5, "select * from orders where id = ?"));
+            reporter.report(query("11", "c" + i, "f2", 1000, 5, "select * from user where id = ?"));
+            reporter.report(query("12", "d" + i, "f1", 1000, 5, "select * from user where id = ?"));
+        }
+        assertEquals(8, reported.size());
+        if (reporter != null) {
+            reporter.close();
+        }
+        assertEquals(12, reported.size());
+    }
+
+    @Test
+    public void should_keep_first_error() {
+        start();
+        reporter.report(query("11", "c1", "f1", 1000, 5, "select 1"));
+        reporter.report(query("11", "c2", "f1", 1000, 5, "select 1"));
+        reporter.report(query("11", "c3", "f1", 1000, 5, "select 1"));
+        MutableSpan failed = query("11", "c4", "f1", 1000, 5, "select 1");
+        failed.tag("error", "first");
+        reporter.report(failed);
+        failed = query("11", "c5", "f1", 1000, 5, "select 1");
+        failed.tag("error", "second");
+        reporter.report(failed);
+        reporter.report(span("11", "f1", null, 900, 500));
+        assertEquals("first", reported.get(2).tag("error"));
+        assertEquals("3", reported.get(2).tag(SpanAggregationReporter.COUNT_TAG));
+    }
+
+    @Test
+    public void should_report_summary_without_parent_after_timeout() {
+        start();
+        for (int i = 0; i < 4; i++) {
+            reporter.report(query("11", "c" + i, "f1", 1000, 5, "select 1"));
+        }
+        assertEquals(2, reported.size());
+        clock.addAndGet(4000);
+        reporter.evictExpired();
+        assertEquals(2, reported.size());
+        clock.addAndGet(2000);
+        reporter.evictExpired();
+        assertEquals(3, reported.size());
+        assertEquals("2", reported.get(2).tag(SpanAggregationReporter.COUNT_TAG));
+        assertEquals(0, reporter.pendingParents());
+    }
+
+    @Test
+    public void should_report_as_it_is_when_too_many_parents() {
+        start();
+        for (int i = 0; i < 4; i++) {
+            reporter.report(query("11", "a" + i, "f1", 1000, 5, "select 1"));
+            reporter.report(query("11", "b" + i, "f2", 1000, 5, "select 1"));
+            reporter.report(query("11", "c" + i, "f3", 1000, 5, "select 1"));
+        }
+        assertEquals(2, reporter.pendingParents());
+        assertEquals(2 + 2 + 4, reported.size());
+        assertEquals(4, reporter.getBypassedSpans());
+    }
+
+    @Test
+    public void should_not_track_parents_of_server_and_consumer_spans() {
+        start();
+        for (int i = 0; i < 4; i++) {
+            MutableSpan server = span("1" + i, "a" + i, "f" + i, 1000, 5);
+            server.kind(Span.Kind.SERVER);
+            reporter.report(server);
+            MutableSpan consumer = span("2" + i, "c" + i, "f" + i, 1000, 5);
+            consumer.kind(Span.Kind.CONSUMER);
+            reporter.report(consumer);
+        }
+        assertEquals(8, reported.size());
+        assertEquals(0, reporter.pendingParents());
+        assertEquals(0, reporter.getBypassedSpans());
+    }
+
+    @Test
+    public void should_evict_in_order_of_update() {
+        start();
+        for (int i = 0; i < 3; i++) {
+            reporter.report(query("11", "a" + i, "f1", 1000, 5, "select 1"));
+        }
+        clock.addAndGet(1000);
+        for (int i = 0; i < 3; i++) {
+            reporter.report(query("11", "b" + i, "f2", 1000, 5, "select 1"));
+        }
+        assertEquals(4, reported.size());
+        // f1 keeps busy, f2 behind it expires anyway
+        for (int i = 0; i < 6; i++) {
+            clock.addAndGet(1000);
+            reporter.report(query("11", "a" + (i + 3), "f1", 1000, 5, "select 1"));
+        }
+        reporter.evictExpired();
+        assertEquals(5, reported.size());
+        assertEquals("00000000000000b2", reported.get(4).id());
+        assertEquals(1, reporter.pendingParents());
+    }
+
+    @Test
+    public void should_normalize_sql() {
+        assertEquals("select * from t where a = ? and b in (?, ?) and c=?",
+                SpanAggregationReporter.normalizeSql("select *\n from t where a = 'x''y' and b in (1, 2.5) and c=\"z\""));
+        assertEquals("select t1.c2 from t1 where c3 = ?", SpanAggregationReporter.normalizeSql("  select t1.c2 from t1 where c3 = 0x1F "));
+        assertNull(SpanAggregationReporter.normalizeSql(null));
+    }
+
+    private static MutableSpan query(String traceId, String id, String parentId, long start, long duration, String sql) {
+        MutableSpan span = span(traceId, id, parentId, start, duration);
+        span.kind(Span.Kind.CLIENT);
+        span.name("executeQuery");
+        span.remoteServiceName("mysql");
+        span.tag("sql", sql);
+        return span;
+    }
+
+    private static MutableSpan span(String traceId, String id, String parentId, long start, long duration) {
+        MutableSpan span = new MutableSpan();
+        span.traceId(traceId);
+        span.id(id);
+        span.parentId(parentId);
+        span.startTimestamp(start);
+        span.finishTimestamp(start + duration);
+        return span;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.report.trace;
+
+import brave.Span;
+import brave.handler.MutableSpan;
+import com.megaease.easeagent.config.ConfigConst;
+import com.megaease.easeagent.config.Configs;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import zipkin2.Call;
+import zipkin2.codec.Encoding;
+import zipkin2.internal.GlobalExtrasSupplier;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.SDKAsyncReporter;
+import zipkin2.reporter.Sender;
+import zipkin2.reporter.kafka11.SDKSender;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TailSamplingReporterTest {
+    private final InMemorySender sender = new InMemorySender();
+    private final AtomicLong clock = new AtomicLong(1000);
+    private final HashMap<String, String> source = new HashMap<>();
+    private SDKAsyncReporter<MutableSpan> asyncReporter;
+    private TailSamplingReporter reporter;
+
+    @Before
+    public void setUp() {
+        source.put(ConfigConst.SERVICE_NAME, "test-service");
+        source.put(ConfigConst.Observability.TRACE_ENABLED, "true");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_REPORT_THREAD, "1");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_MESSAGE_MAX_BYTES, "999900");
+        source.put(ConfigConst.Observability.TRACE_TAIL_SAMPLING_ENABLED, "true");
+        source.put(ConfigConst.Observability.TRACE_TAIL_SAMPLING_LATENCY_THRESHOLD, "100");
+        source.put(ConfigConst.Observability.TRACE_TAIL_SAMPLING_BASE_RATE, "0");
+        source.put(ConfigConst.Observability.TRACE_TAIL_SAMPLING_MAX_TRACES, "3");
+        source.put(ConfigConst.Observability.TRACE_TAIL_SAMPLING_MAX_SPANS, "6");
+        source.put(ConfigConst.Observability.TRACE_TAIL_SAMPLING_TIMEOUT, "5000");
+    }
+
+    private void start() {
+        TraceProps traceProps = TraceProps.newDefault(new Configs(source));
+        asyncReporter = SDKAsyncReporter.builderMutableSpanAsyncReporter(AsyncReporter.builder(sender)
+                        .queuedMaxSpans(1000)
+                        .messageTimeout(10, TimeUnit.MILLISECONDS)
+                        .queuedMaxBytes(1000000),
+                traceProps, new GlobalExtrasSupplier() {
+                    @Override
+                    public String service() {
+                        return "test-service";
+                    }
+
+                    @Override
+                    public String system() {
+                        return "test-system";
+                    }
+                });
+        reporter = new TailSamplingReporter(asyncReporter, traceProps.getTailSampling(), clock::get);
+    }
+
+    @After
+    public void tearDown() {
+        reporter.close();
+        asyncReporter.close();
+    }
+
+    @Test
+    public void should_keep_slow_trace() throws InterruptedException {
+        start();
+        reporter.report(span(1, 2, 1, Span.Kind.CLIENT, 10, false));
+        assertEquals(1, reporter.pendingTraces());
+        reporter.report(span(1, 1, null, Span.Kind.SERVER, 150_000, false));
+        assertEquals(0, reporter.pendingTraces());
+        // finished after the decision
+        reporter.report(span(1, 3, 1, null, 10, false));
+
+        assertSent(2, 1, 3);
+    }
+
+    @Test
+    public void should_keep_trace_with_error() throws InterruptedException {
+        start();
+        reporter.report(span(1, 2, 1, Span.Kind.CLIENT, 10, true));
+        reporter.report(span(1, 1, null, Span.Kind.SERVER, 20, false));
+        reporter.report(span(2, 4, 3, Span.Kind.CLIENT, 10, false));
+        reporter.report(span(2, 3, null, Span.Kind.SERVER, 20, false));
+
+        assertSent(2, 1);
+        assertNotSent(4, 3);
+    }
+
+    @Test
+    public void should_keep_all_by_base_rate() throws InterruptedException {
+        source.put(ConfigConst.Observability.TRACE_TAIL_SAMPLING_BASE_RATE, "1");
+        start();
+        reporter.report(span(2, 4, 3, Span.Kind.CLIENT, 10, false));
+        reporter.report(span(2, 3, null, Span.Kind.SERVER, 20, false));
+
+        assertSent(4, 3);
+    }
+
+    @Test
+    public void should_report_directly_when_disabled() throws InterruptedException {
+        source.put(ConfigConst.Observability.TRACE_TAIL_SAMPLING_ENABLED, "false");
+        start();
+        reporter.report(span(2, 4, 3, Span.Kind.CLIENT, 10, false));
+
+        assertEquals(0, reporter.pendingTraces());
+        assertSent(4);
+    }
+
+    @Test
+    public void should_evict_expired_trace() throws InterruptedException {
+        start();
+        reporter.report(span(1, 2, 1, Span.Kind.CLIENT, 10, true));
+        reporter.evictExpired();
+        assertEquals(1, reporter.pendingTraces());
+
+        clock.addAndGet(5001);
+        reporter.evictExpired();
+        assertEquals(0, reporter.pendingTraces());
+        assertSent(2);
+    }
+
+    @Test
+    public void should_bound_traces_and_spans() {
+        start();
+        for (int i = 1; i <= 10; i++) {
+            reporter.report(span(i, 100 + i, 1, Span.Kind.CLIENT, 10, false));
+            assertTrue(reporter.pendingTraces() <= 3);
+        }
+        for (int i = 0; i < 10; i++) {
+            reporter.report(span(10, 200 + i, 1, Span.Kind.CLIENT, 10, false));
+            assertTrue(reporter.pendingSpans() <= 6);
+        }
+    }
+
+    private void assertSent(long... spanIds) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            String sent = sender.sent();
+            boolean all = true;
+            for (long id : spanIds) {
+                all &= sent.contains(idField(id));
+            }
+            if (all) {
+                return;
+            }
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        fail("spans not sent: " + sender.sent());
+    }
+
+    private void assertNotSent(long... spanIds) throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(100);
+        for (long id : spanIds) {
+            assertFalse(sender.sent().contains(idField(id)));
+        }
+    }
+
+    private static String idField(long id) {
+        return "\"id\":\"" + String.format("%016x", id) + "\"";
+    }
+
+    private static MutableSpan span(long traceId, long id, Integer parentId, Span.Kind kind, long duration, boolean error) {
+        MutableSpan span = new MutableSpan();
+        span.traceId(String.format("%016x", traceId));
+        span.id(String.format("%016x", id));
+        span.kind(kind);
+        span.name("test");
+        long timestamp = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        span.startTimestamp(timestamp);
+        span.finishTimestamp(timestamp + duration);
+        if (parentId != null) {
+            span.parentId(String.format("%016x", parentId));
+        }
+        if (error) {
+            span.error(new IllegalStateException("failed"));
+        }
+        return span;
+    }
+
+    static class InMemorySender extends Sender implements SDKSender {
+        private final ConcurrentLinkedQueue<String> spans = new ConcurrentLinkedQueue<>();
+
+        String sent() {
+            return String.join("\n", spans);
+        }
+
+        @Override
+        public Encoding encoding() {
+            return Encoding.JSON;
+        }
+
+        @Override
+        public int messageMaxBytes() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public int messageSizeInBytes(List<byte[]> encodedSpans) {
+            return encoding().listSizeInBytes(encodedSpans);
+        }
+
+        @Override
+        public Call<Void> sendSpans(List<byte[]> encodedSpans) {
+            for (byte[] span : encodedSpans) {
+                spans.add(new String(span, StandardCharsets.UTF_8));
+            }
+            return Call.create(null);
+        }
+
+        @Override
+        public boolean isClose() {
+            return false;
+        }
+    }
+}
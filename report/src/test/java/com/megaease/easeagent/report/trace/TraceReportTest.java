@@ -17,10 +17,10 @@
 
 package com.megaease.easeagent.report.trace;
 
+import brave.handler.MutableSpan;
 import com.megaease.easeagent.config.ConfigConst;
 import com.megaease.easeagent.config.Configs;
 import org.junit.Test;
-import zipkin2.Span;
 
 import java.util.HashMap;
 import java.util.concurrent.TimeUnit;
@@ -39,11 +39,10 @@ public class TraceReportTest {
         source.put(ConfigConst.Observability.TRACE_OUTPUT_QUEUED_MAX_SIZE, "1000000");
         source.put(ConfigConst.Observability.TRACE_OUTPUT_QUEUED_MAX_SPANS, "1000");
         final TraceReport report = new TraceReport(new Configs(source));
-        final Span build = Span.newBuilder()
-                .traceId("122332")
-                .id(1L)
-                .timestamp(10000)
-                .build();
+        final MutableSpan build = new MutableSpan();
+        build.traceId("122332");
+        build.id("1");
+        build.startTimestamp(10000);
         report.report(build);
         TimeUnit.SECONDS.sleep(3);
     }
@@ -63,12 +62,32 @@ public class TraceReportTest {
         source.put(ConfigConst.Observability.TRACE_OUTPUT_QUEUED_MAX_SIZE, "1000000");
         source.put(ConfigConst.Observability.TRACE_OUTPUT_QUEUED_MAX_SPANS, "1000");
         final TraceReport report = new TraceReport(new Configs(source));
-        final Span build = Span.newBuilder()
-                .traceId("122332")
-                .id(1L)
-                .timestamp(10000)
-                .build();
+        final MutableSpan build = new MutableSpan();
+        build.traceId("122332");
+        build.id("1");
+        build.startTimestamp(10000);
         report.report(build);
         TimeUnit.SECONDS.sleep(3);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void should_report_in_proto3() throws InterruptedException {
+        final HashMap<String, String> source = new HashMap<>();
+        source.put(ConfigConst.SERVICE_NAME, "test-service");
+        source.put(ConfigConst.Observability.TRACE_ENABLED, "true");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_ENABLED, "false");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_REPORT_THREAD, "1");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_MESSAGE_TIMEOUT, "1000");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_MESSAGE_MAX_BYTES, "999900");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_QUEUED_MAX_SIZE, "1000000");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_QUEUED_MAX_SPANS, "1000");
+        source.put(ConfigConst.Observability.TRACE_OUTPUT_ENCODING, "proto3");
+        final TraceReport report = new TraceReport(new Configs(source));
+        final MutableSpan build = new MutableSpan();
+        build.traceId("122332");
+        build.id("1");
+        build.startTimestamp(10000);
+        report.report(build);
+        TimeUnit.SECONDS.sleep(2);
+    }
+}
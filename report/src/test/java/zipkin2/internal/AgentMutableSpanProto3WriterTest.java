@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zipkin2.internal;
+
+import brave.Span.Kind;
+import brave.handler.MutableSpan;
+import com.megaease.easeagent.config.ConfigConst;
+import com.megaease.easeagent.config.Configs;
+import com.megaease.easeagent.report.trace.TraceProps;
+import org.junit.Test;
+import zipkin2.Annotation;
+import zipkin2.Span;
+import zipkin2.codec.SpanBytesDecoder;
+import zipkin2.codec.SpanBytesEncoder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static zipkin2.internal.MutableSpans.span;
+
+public class AgentMutableSpanProto3WriterTest {
+    private final GlobalExtrasSupplier extras = new GlobalExtrasSupplier() {
+        @Override
+        public String service() {
+            return "demo-service";
+        }
+
+        @Override
+        public String system() {
+            return "demo-system";
+        }
+    };
+    private final TraceProps traceProps = traceProps();
+    private final AgentMutableSpanProto3Writer writer = new AgentMutableSpanProto3Writer(extras, traceProps);
+
+    private static TraceProps traceProps() {
+        HashMap<String, String> source = new HashMap<>();
+        source.put(ConfigConst.Observability.TRACE_ENABLED, "true");
+        return TraceProps.newDefault(new Configs(source));
+    }
+
+    @Test
+    public void should_write_server_span() {
+        MutableSpan span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", "72485a3953bb6124");
+        span.kind(Kind.SERVER);
+        span.name("GET /Users/{id}");
+        span.localServiceName("Demo-Service");
+        span.localIp("192.168.1.2");
+        span.localPort(8080);
+        span.remoteIpAndPort("2001:db8::c001", 52000);
+        span.tag("http.path", "/users/1");
+        span.tag("http.method", "GET");
+        span.annotate(1617235200000100L, "wr");
+        span.annotate(0L, "ws");
+        span.setShared();
+        span.setDebug();
+        assertSameAsConverted(span);
+    }
+
+    @Test
+    public void should_write_128_bit_trace_id() {
+        assertSameAsConverted(span("48485a3953bb61246b221d5bc9e6496c", "a2fb", null));
+        assertSameAsConverted(span("0000000000000000463ac35c9f6413ad", "a2fb4a1d1a96d312", "a2fb4a1d1a96d312"));
+    }
+
+    @Test
+    public void should_not_override_tags_by_extras() {
+        MutableSpan span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.tag("type", "custom");
+        span.tag("service", "tagged-service");
+        Span decoded = SpanBytesDecoder.PROTO3.decodeOne(JsonCodec.write(writer, span));
+        assertEquals("custom", decoded.tags().get("type"));
+        assertEquals("tagged-service", decoded.tags().get("service"));
+        assertEquals("demo-system", decoded.tags().get("system"));
+        assertSameAsConverted(span);
+    }
+
+    @Test
+    public void should_write_without_extras() {
+        AgentMutableSpanProto3Writer withoutExtras = new AgentMutableSpanProto3Writer(extras, null);
+        MutableSpan span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.tag("k", "v");
+        assertArrayEquals(SpanBytesEncoder.PROTO3.encode(MutableSpans.converted(span)), JsonCodec.write(withoutExtras, span));
+    }
+
+    @Test
+    public void should_write_random_spans_like_converted() {
+        Random random = new Random(20210402);
+        for (int n = 0; n < 2000; n++) {
+            assertSameAsConverted(MutableSpans.random(random));
+        }
+    }
+
+    @Test
+    public void should_decode_concatenated_spans() {
+        MutableSpan first = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        MutableSpan second = span("463ac35c9f6413ad", "b2fb4a1d1a96d312", "a2fb4a1d1a96d312");
+        byte[] a = JsonCodec.write(writer, first), b = JsonCodec.write(writer, second);
+        byte[] message = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, message, a.length, b.length);
+        List<Span> decoded = SpanBytesDecoder.PROTO3.decodeList(message);
+        assertEquals(2, decoded.size());
+        assertEquals("a2fb4a1d1a96d312", decoded.get(1).parentId());
+    }
+
+    @Test
+    public void should_be_smaller_than_json() {
+        MutableSpan span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", "72485a3953bb6124");
+        span.kind(Kind.CLIENT);
+        span.name("executeQuery");
+        span.localServiceName("demo-service");
+        span.localIp("192.168.1.2");
+        span.remoteServiceName("mysql");
+        span.remoteIpAndPort("10.0.0.1", 3306);
+        span.tag("sql", "select * from user where id = ?");
+        span.tag("local-component", "database");
+        span.tag("url", "jdbc:mysql://10.0.0.1:3306/demo");
+        int json = new AgentMutableSpanWriter(extras, traceProps).sizeInBytes(span);
+        int proto3 = writer.sizeInBytes(span);
+        assertTrue(json + " vs " + proto3, proto3 * 10 < json * 7);
+    }
+
+    private void assertSameAsConverted(MutableSpan span) {
+        Span converted = MutableSpans.converted(span);
+        Span.Builder expected = converted.toBuilder();
+        if (!converted.tags().containsKey("service")) expected.putTag("service", "demo-service");
+        if (!converted.tags().containsKey("system")) expected.putTag("system", "demo-system");
+        if (!converted.tags().containsKey("type")) expected.putTag("type", "log-tracing");
+
+        MutableSpan reported = MutableSpans.reported(span);
+        byte[] bytes = writer.write(reported);
+        assertEquals(bytes.length, writer.sizeInBytes(reported));
+        assertArrayEquals(bytes, JsonCodec.write(writer, reported));
+        assertArrayEquals(SpanBytesEncoder.PROTO3.encode(expected.build()), bytes);
+
+        // Annotations without value are skipped by the decoder of zipkin
+        expected.clearAnnotations();
+        for (Annotation annotation : converted.annotations()) {
+            if (!annotation.value().isEmpty()) {
+                expected.addAnnotation(annotation.timestamp(), annotation.value());
+            }
+        }
+        assertEquals(expected.build(), SpanBytesDecoder.PROTO3.decodeOne(bytes));
+    }
+}
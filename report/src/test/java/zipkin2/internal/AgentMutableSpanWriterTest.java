@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zipkin2.internal;
+
+import brave.Span.Kind;
+import brave.handler.MutableSpan;
+import com.megaease.easeagent.config.ConfigConst;
+import com.megaease.easeagent.config.Configs;
+import com.megaease.easeagent.report.trace.TraceProps;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static zipkin2.internal.MutableSpans.span;
+
+public class AgentMutableSpanWriterTest {
+    private final GlobalExtrasSupplier extras = new GlobalExtrasSupplier() {
+        @Override
+        public String service() {
+            return "demo-service";
+        }
+
+        @Override
+        public String system() {
+            return "demo-system";
+        }
+    };
+    private final TraceProps traceProps = traceProps();
+    private final AgentV2SpanWriter spanWriter = new AgentV2SpanWriter(extras, traceProps);
+    private final AgentMutableSpanWriter mutableSpanWriter = new AgentMutableSpanWriter(extras, traceProps);
+
+    private static TraceProps traceProps() {
+        HashMap<String, String> source = new HashMap<>();
+        source.put(ConfigConst.Observability.TRACE_ENABLED, "true");
+        return TraceProps.newDefault(new Configs(source));
+    }
+
+    @Test
+    public void should_write_server_span() {
+        MutableSpan span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", "72485a3953bb6124");
+        span.kind(Kind.SERVER);
+        span.name("GET /Users/{id}");
+        span.localServiceName("Demo-Service");
+        span.localIp("192.168.1.2");
+        span.localPort(8080);
+        span.remoteIpAndPort("10.0.0.1", 52000);
+        span.tag("http.path", "/users/1");
+        span.tag("http.method", "GET");
+        span.tag("i", "host-1");
+        span.setShared();
+        assertSameAsConverted(span);
+    }
+
+    @Test
+    public void should_write_client_span_without_shared() {
+        MutableSpan span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", "463ac35c9f6413ad");
+        span.kind(Kind.CLIENT);
+        span.name("query");
+        span.remoteServiceName("MySQL");
+        span.remoteIp("::1");
+        span.setShared();
+        span.setDebug();
+        span.tag("sql", "select * from \"user\" where name = '\\u4e2d\\n'\t");
+        assertSameAsConverted(span);
+    }
+
+    @Test
+    public void should_normalize_ids() {
+        MutableSpan span = span("0000000000000000463ac35c9f6413ad", "a2fb", "1");
+        assertSameAsConverted(span);
+
+        span = span("48485a3953bb61246b221d5bc9e6496c", "a2fb4a1d1a96d312", "a2fb4a1d1a96d312");
+        assertSameAsConverted(span);
+
+        span = span("3ac35c9f6413ad", "a2fb4a1d1a96d312", "000000000000000f");
+        assertSameAsConverted(span);
+    }
+
+    @Test
+    public void should_write_timestamps_like_converted() {
+        MutableSpan span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.finishTimestamp(0L);
+        assertSameAsConverted(span);
+
+        span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.finishTimestamp(span.startTimestamp());
+        assertSameAsConverted(span);
+
+        span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.startTimestamp(0L);
+        assertSameAsConverted(span);
+    }
+
+    @Test
+    public void should_sort_and_distinct_annotations() {
+        MutableSpan span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.annotate(3L, "ws");
+        span.annotate(1L, "wr");
+        span.annotate(3L, "cs");
+        span.annotate(1L, "wr");
+        span.annotate(2L, "中文");
+        assertSameAsConverted(span);
+    }
+
+    @Test
+    public void should_add_error_tag_like_converted() {
+        MutableSpan span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.error(new IllegalStateException("boom"));
+        assertSameAsConverted(span);
+
+        span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.error(new IllegalStateException());
+        assertSameAsConverted(span);
+
+        span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.tag("error", "preset");
+        span.error(new IllegalStateException("boom"));
+        assertSameAsConverted(span);
+    }
+
+    @Test
+    public void should_write_endpoints_like_converted() {
+        MutableSpan span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.localServiceName("");
+        span.localPort(80);
+        span.remoteServiceName("");
+        assertSameAsConverted(span);
+
+        span = span("463ac35c9f6413ad", "a2fb4a1d1a96d312", null);
+        span.localIp("2001:db8::c001");
+        span.remoteServiceName("Redis");
+        span.remotePort(6379);
+        assertSameAsConverted(span);
+    }
+
+    @Test
+    public void should_write_random_spans_like_converted() {
+        Random random = new Random(20210401);
+        for (int n = 0; n < 2000; n++) {
+            assertSameAsConverted(MutableSpans.random(random));
+        }
+    }
+
+    private void assertSameAsConverted(MutableSpan span) {
+        String expected = new String(JsonCodec.write(spanWriter, MutableSpans.converted(span)), StandardCharsets.UTF_8);
+
+        MutableSpan reported = MutableSpans.reported(span);
+        byte[] bytes = JsonCodec.write(mutableSpanWriter, reported);
+        assertEquals(bytes.length, mutableSpanWriter.sizeInBytes(reported));
+        assertEquals(expected, new String(bytes, StandardCharsets.UTF_8));
+    }
+}
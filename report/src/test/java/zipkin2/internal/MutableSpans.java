@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zipkin2.internal;
+
+import brave.Span.Kind;
+import brave.Tags;
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
+import brave.propagation.TraceContext;
+import zipkin2.Span;
+import zipkin2.reporter.brave.AsyncZipkinSpanHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Spans for comparing writers of {@link MutableSpan} with those of the converted {@link Span}.
+ */
+final class MutableSpans {
+    private static final TraceContext CONTEXT = TraceContext.newBuilder().traceId(1L).spanId(1L).build();
+
+    private static final String[] NAMES = {null, "", "GET", "get /api", "Kafka/Send", "中文"};
+    private static final String[] VALUES = {"", "v", "Value With \"Quote\"", "\\", "\n\r\t", "é中", "a,b:c{d}"};
+    private static final String[] SERVICES = {null, "", "svc", "Svc-A"};
+    private static final String[] IPS = {null, "127.0.0.1", "::1", "not-ip", "::ffff:10.0.0.1"};
+
+    private MutableSpans() {
+    }
+
+    static MutableSpan span(String traceId, String id, String parentId) {
+        MutableSpan span = new MutableSpan();
+        span.traceId(traceId);
+        span.id(id);
+        span.parentId(parentId);
+        span.startTimestamp(1617235200000000L);
+        span.finishTimestamp(1617235200012345L);
+        return span;
+    }
+
+    static MutableSpan random(Random random) {
+        MutableSpan span = span(Long.toHexString(random.nextLong() | 1L), Long.toHexString(random.nextLong() | 1L),
+                random.nextBoolean() ? null : Long.toHexString(random.nextLong()));
+        if (random.nextBoolean()) {
+            span.kind(Kind.values()[random.nextInt(Kind.values().length)]);
+        }
+        span.name(NAMES[random.nextInt(NAMES.length)]);
+        span.finishTimestamp(span.startTimestamp() + random.nextInt(3) * random.nextInt(100_000));
+        span.localServiceName(SERVICES[random.nextInt(SERVICES.length)]);
+        span.localIp(IPS[random.nextInt(IPS.length)]);
+        span.localPort(random.nextInt(3) == 0 ? 0 : random.nextInt(65536));
+        span.remoteServiceName(SERVICES[random.nextInt(SERVICES.length)]);
+        span.remoteIpAndPort(IPS[random.nextInt(IPS.length)], random.nextInt(65536));
+        for (int i = random.nextInt(12); i > 0; i--) {
+            span.tag("k" + random.nextInt(20) + VALUES[random.nextInt(VALUES.length)], VALUES[random.nextInt(VALUES.length)]);
+        }
+        for (int i = random.nextInt(4); i > 0; i--) {
+            span.annotate(random.nextInt(3), VALUES[random.nextInt(VALUES.length)]);
+        }
+        if (random.nextInt(4) == 0) {
+            span.setShared();
+        }
+        if (random.nextInt(4) == 0) {
+            span.setDebug();
+        }
+        if (random.nextInt(4) == 0) {
+            span.error(new RuntimeException(random.nextBoolean() ? null : VALUES[random.nextInt(VALUES.length)]));
+        }
+        return span;
+    }
+
+    /**
+     * @return the span converted by the zipkin span handler
+     */
+    static Span converted(MutableSpan span) {
+        List<Span> converted = new ArrayList<>();
+        AsyncZipkinSpanHandler.newBuilder(converted::add).alwaysReportSpans(true).build()
+                .end(CONTEXT, new MutableSpan(span), SpanHandler.Cause.FINISHED);
+        return converted.get(0);
+    }
+
+    /**
+     * @return a copy of span with the error tag added, the same as TraceReport does before encoding
+     */
+    static MutableSpan reported(MutableSpan span) {
+        MutableSpan reported = new MutableSpan(span);
+        if (reported.error() != null && reported.tag("error") == null) {
+            Tags.ERROR.tag(reported.error(), null, reported);
+        }
+        return reported;
+    }
+}
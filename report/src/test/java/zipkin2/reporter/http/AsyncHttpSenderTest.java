@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package zipkin2.reporter.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import zipkin2.Callback;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class AsyncHttpSenderTest {
+    private final BlockingQueue<String> bodies = new LinkedBlockingQueue<>();
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile int status = 202;
+    private volatile boolean slow;
+    private HttpServer server;
+    private AsyncHttpSender sender;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/v2/spans", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (sender != null) {
+            sender.close();
+        }
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        InputStream in = exchange.getRequestBody();
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            in = new GZIPInputStream(in);
+        }
+        bodies.add(read(in));
+        if (slow) {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private AsyncHttpSender.Builder builder() {
+        return AsyncHttpSender.newBuilder()
+                .endpoint("http://127.0.0.1:" + server.getAddress().getPort() + "/api/v2/spans")
+                .readTimeout(10000);
+    }
+
+    @Test
+    public void should_post_json_list() throws Exception {
+        sender = builder().build();
+        sender.sendSpans(Arrays.asList(bytes("{\"id\":\"1\"}"), bytes("{\"id\":\"2\"}"))).execute();
+        assertEquals("[{\"id\":\"1\"},{\"id\":\"2\"}]", bodies.poll(5, TimeUnit.SECONDS));
+        assertTrue(sender.check().ok());
+        assertEquals("[]", bodies.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_gzip_large_message() throws Exception {
+        sender = builder().build();
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 2048; i++) {
+            name.append('a');
+        }
+        String span = "{\"name\":\"" + name + "\"}";
+        Result result = new Result();
+        sender.sendSpans(Collections.singletonList(bytes(span))).enqueue(result);
+        result.await();
+        assertNull(result.error);
+        assertEquals("[" + span + "]", bodies.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_reuse_connection() throws Exception {
+        sender = builder().maxInFlight(1).build();
+        for (int i = 0; i < 10; i++) {
+            Result result = new Result();
+            sender.sendSpans(Collections.singletonList(bytes("{}"))).enqueue(result);
+            result.await();
+        }
+        assertEquals(10, sender.getSentMessages());
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void should_reject_without_blocking_when_collector_is_slow() throws Exception {
+        slow = true;
+        sender = builder().maxInFlight(2).build();
+        sender.sendSpans(Collections.singletonList(bytes("{}"))).execute();
+        sender.sendSpans(Collections.singletonList(bytes("{}"))).execute();
+        assertNotNull(bodies.poll(5, TimeUnit.SECONDS));
+        assertNotNull(bodies.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, sender.getInFlightMessages());
+
+        long begin = System.nanoTime();
+        try {
+            sender.sendSpans(Collections.singletonList(bytes("{}"))).execute();
+            fail("should reject");
+        } catch (RejectedExecutionException expected) {
+            assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(1));
+        }
+        assertEquals(1, sender.getRejectedMessages());
+
+        release.countDown();
+        sender.close();
+        assertEquals(0, sender.getInFlightMessages());
+        assertEquals(2, sender.getSentMessages());
+    }
+
+    @Test
+    public void should_count_failure_of_collector() throws Exception {
+        status = 500;
+        sender = builder().build();
+        Result result = new Result();
+        sender.sendSpans(Collections.singletonList(bytes("{}"))).enqueue(result);
+        result.await();
+        assertNotNull(result.error);
+        assertEquals(1, sender.getFailedMessages());
+        assertFalse(sender.check().ok());
+
+        status = 202;
+        result = new Result();
+        sender.sendSpans(Collections.singletonList(bytes("{}"))).enqueue(result);
+        result.await();
+        assertNull(result.error);
+    }
+
+    @Test
+    public void should_report_spans_of_failed_message_as_dropped() throws Exception {
+        status = 500;
+        sender = builder().build();
+        BlockingQueue<Integer> dropped = new LinkedBlockingQueue<>();
+        sender.setDroppedSpansListener(dropped::add);
+        sender.sendSpans(Arrays.asList(bytes("{}"), bytes("{}"), bytes("{}"))).execute();
+        assertEquals(Integer.valueOf(3), dropped.poll(5, TimeUnit.SECONDS));
+
+        status = 202;
+        sender.sendSpans(Collections.singletonList(bytes("{}"))).execute();
+        assertNotNull(bodies.poll(5, TimeUnit.SECONDS));
+        assertNotNull(bodies.poll(5, TimeUnit.SECONDS));
+        sender.close();
+        assertTrue(dropped.isEmpty());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void should_not_send_after_close() {
+        sender = builder().build();
+        sender.close();
+        assertTrue(sender.isClose());
+        sender.sendSpans(Collections.singletonList(bytes("{}")));
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[1024];
+        for (int n; (n = in.read(buf)) != -1; ) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static class Result implements Callback<Void> {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Throwable error;
+
+        @Override
+        public void onSuccess(Void value) {
+            done.countDown();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            done.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+}
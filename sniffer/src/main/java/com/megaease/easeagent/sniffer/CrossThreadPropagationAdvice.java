@@ -17,13 +17,13 @@
 
 package com.megaease.easeagent.sniffer;
 
-import brave.Tracing;
 import com.megaease.easeagent.core.AdviceTo;
 import com.megaease.easeagent.core.Definition;
 import com.megaease.easeagent.core.Injection;
 import com.megaease.easeagent.core.Transformation;
-import com.megaease.easeagent.core.utils.ThreadLocalCurrentContext;
 import com.megaease.easeagent.gen.Generate;
+import com.megaease.easeagent.sniffer.thread.ContextSnapshotCallable;
+import com.megaease.easeagent.sniffer.thread.ContextSnapshotRunnable;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.implementation.bytecode.assign.Assigner;
@@ -31,6 +31,8 @@ import net.bytebuddy.matcher.ElementMatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.Callable;
+
 import static net.bytebuddy.matcher.ElementMatchers.*;
 
 @Generate.Advice
@@ -38,6 +40,14 @@ import static net.bytebuddy.matcher.ElementMatchers.*;
 public abstract class CrossThreadPropagationAdvice implements Transformation {
     public static final String CLASS_THREAD_POOL_EXECUTOR = "java.util.concurrent.ThreadPoolExecutor";
     public static final String CLASS_REACTOR_SCHEDULERS = "reactor.core.scheduler.Schedulers";
+    public static final String CLASS_SCHEDULED_THREAD_POOL_EXECUTOR = "java.util.concurrent.ScheduledThreadPoolExecutor";
+    public static final String CLASS_FORK_JOIN_POOL = "java.util.concurrent.ForkJoinPool";
+    public static final String CLASS_COMPLETABLE_FUTURE_THREAD_PER_TASK_EXECUTOR = "java.util.concurrent.CompletableFuture$ThreadPerTaskExecutor";
+    public static final String CLASS_THREAD_BUILDERS = "java.lang.ThreadBuilders";
+    /**
+     * Prefix of the continuation of virtual threads submitted to their scheduler, which is a {@code ForkJoinPool}.
+     */
+    static final String VIRTUAL_THREAD_PREFIX = "java.lang.VirtualThread";
 
     @Override
     public <T extends Definition> T define(Definition<T> def) {
@@ -52,6 +62,35 @@ public abstract class CrossThreadPropagationAdvice implements Transformation {
                         .and(takesArguments(1))
                         .and(takesArgument(0, named("java.lang.Runnable")))
                 ))
+                // execute and submit of ScheduledThreadPoolExecutor delegate to schedule
+                .type(named(CLASS_SCHEDULED_THREAD_POOL_EXECUTOR))
+                .transform(runnableTask(namedOneOf("schedule", "scheduleAtFixedRate", "scheduleWithFixedDelay")
+                        .and(takesArgument(0, named("java.lang.Runnable")))
+                ))
+                .transform(callableTask(named("schedule")
+                        .and(takesArgument(0, named("java.util.concurrent.Callable")))
+                ))
+                // CompletableFuture.*Async run on common pool by default
+                .type(named(CLASS_FORK_JOIN_POOL))
+                .transform(runnableTask(namedOneOf("execute", "submit")
+                        .and(takesArgument(0, named("java.lang.Runnable")))
+                ))
+                .transform(callableTask(named("submit")
+                        .and(takesArgument(0, named("java.util.concurrent.Callable")))
+                ))
+                // CompletableFuture.*Async without executor when common pool has no parallelism
+                .type(named(CLASS_COMPLETABLE_FUTURE_THREAD_PER_TASK_EXECUTOR))
+                .transform(runnableTask(named("execute")
+                        .and(takesArguments(1))
+                        .and(takesArgument(0, named("java.lang.Runnable")))
+                ))
+                // All virtual threads are created through ThreadBuilders since Java 21
+                .type(named(CLASS_THREAD_BUILDERS))
+                .transform(virtualThreadTask(named("newVirtualThread")
+                        .and(isStatic())
+                        .and(takesArguments(4))
+                        .and(takesArgument(3, named("java.lang.Runnable")))
+                ))
                 .end();
     }
 
@@ -61,6 +100,15 @@ public abstract class CrossThreadPropagationAdvice implements Transformation {
     @AdviceTo(ReactorSchedulersOnSchedule.class)
     abstract Definition.Transformer reactorSchedulersOnSchedule(ElementMatcher<? super MethodDescription> matcher);
 
+    @AdviceTo(RunnableTask.class)
+    abstract Definition.Transformer runnableTask(ElementMatcher<? super MethodDescription> matcher);
+
+    @AdviceTo(CallableTask.class)
+    abstract Definition.Transformer callableTask(ElementMatcher<? super MethodDescription> matcher);
+
+    @AdviceTo(VirtualThreadTask.class)
+    abstract Definition.Transformer virtualThreadTask(ElementMatcher<? super MethodDescription> matcher);
+
 
     static class ThreadPoolExecutorExecute {
         private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -71,10 +119,8 @@ public abstract class CrossThreadPropagationAdvice implements Transformation {
             try {
 //            logger.debug("enter method [{}]", method);
                 Runnable task = (Runnable) args[0];
-                if (!ThreadLocalCurrentContext.isWrapped(task)) {
-                    Runnable firstWrap = Tracing.current().currentTraceContext().wrap(task);
-                    final Runnable wrap = ThreadLocalCurrentContext.DEFAULT.wrap(firstWrap);
-                    args[0] = wrap;
+                if (!ContextSnapshotRunnable.isWrapped(task)) {
+                    args[0] = ContextSnapshotRunnable.wrap(task);
                 }
             } catch (Throwable e) {
                 logger.warn("intercept method [{}] failure", method, e);
@@ -91,10 +137,8 @@ public abstract class CrossThreadPropagationAdvice implements Transformation {
             try {
 //            logger.debug("enter method [{}]", method);
                 Runnable task = (Runnable) args[0];
-                if (!ThreadLocalCurrentContext.isWrapped(task)) {
-                    Runnable firstWrap = Tracing.current().currentTraceContext().wrap(task);
-                    final Runnable wrap = ThreadLocalCurrentContext.DEFAULT.wrap(firstWrap);
-                    args[0] = wrap;
+                if (!ContextSnapshotRunnable.isWrapped(task)) {
+                    args[0] = ContextSnapshotRunnable.wrap(task);
                 }
             } catch (Throwable e) {
                 logger.warn("intercept method [{}] failure", method, e);
@@ -102,4 +146,55 @@ public abstract class CrossThreadPropagationAdvice implements Transformation {
         }
     }
 
+    static class RunnableTask {
+        private final Logger logger = LoggerFactory.getLogger(getClass());
+
+        @Advice.OnMethodEnter
+        void enter(@Advice.Origin String method,
+                   @Advice.AllArguments(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object[] args) {
+            try {
+                Runnable task = (Runnable) args[0];
+                if (task != null && !ContextSnapshotRunnable.isWrapped(task)
+                        && !task.getClass().getName().startsWith(VIRTUAL_THREAD_PREFIX)) {
+                    args[0] = ContextSnapshotRunnable.wrap(task);
+                }
+            } catch (Throwable e) {
+                logger.warn("intercept method [{}] failure", method, e);
+            }
+        }
+    }
+
+    static class CallableTask {
+        private final Logger logger = LoggerFactory.getLogger(getClass());
+
+        @Advice.OnMethodEnter
+        void enter(@Advice.Origin String method,
+                   @Advice.AllArguments(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object[] args) {
+            try {
+                Callable<?> task = (Callable<?>) args[0];
+                if (task != null && !ContextSnapshotCallable.isWrapped(task)) {
+                    args[0] = ContextSnapshotCallable.wrap(task);
+                }
+            } catch (Throwable e) {
+                logger.warn("intercept method [{}] failure", method, e);
+            }
+        }
+    }
+
+    static class VirtualThreadTask {
+        private final Logger logger = LoggerFactory.getLogger(getClass());
+
+        @Advice.OnMethodEnter
+        void enter(@Advice.Origin String method,
+                   @Advice.AllArguments(readOnly = false, typing = Assigner.Typing.DYNAMIC) Object[] args) {
+            try {
+                Runnable task = (Runnable) args[3];
+                if (task != null && !ContextSnapshotRunnable.isWrapped(task)) {
+                    args[3] = ContextSnapshotRunnable.wrap(task);
+                }
+            } catch (Throwable e) {
+                logger.warn("intercept method [{}] failure", method, e);
+            }
+        }
+    }
 }
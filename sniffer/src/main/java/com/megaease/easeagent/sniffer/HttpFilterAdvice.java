@@ -57,6 +57,7 @@ public abstract class HttpFilterAdvice implements Transformation {
     @AdviceTo(DoFilterOrService.class)
     protected abstract Definition.Transformer doFilterOrService(ElementMatcher<? super MethodDescription> matcher);
 
+    @Generate.Arguments({0, 1})
     static class DoFilterOrService extends AbstractAdvice {
 
         @Injection.Autowire
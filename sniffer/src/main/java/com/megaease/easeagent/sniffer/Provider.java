@@ -18,8 +18,10 @@
 package com.megaease.easeagent.sniffer;
 
 import brave.Tracing;
+import brave.handler.MutableSpan;
+import brave.handler.SpanHandler;
 import brave.propagation.ThreadLocalCurrentTraceContext;
-import brave.sampler.CountingSampler;
+import brave.propagation.TraceContext;
 import com.codahale.metrics.MetricRegistry;
 import com.megaease.easeagent.common.AdditionalAttributes;
 import com.megaease.easeagent.common.HostAddress;
@@ -50,6 +52,7 @@ import com.megaease.easeagent.metrics.jdbc.interceptor.JdbcDataSourceMetricInter
 import com.megaease.easeagent.metrics.jdbc.interceptor.JdbcStmMetricInterceptor;
 import com.megaease.easeagent.metrics.jvm.gc.JVMGCMetric;
 import com.megaease.easeagent.metrics.jvm.memory.JVMMemoryMetric;
+import com.megaease.easeagent.metrics.jvm.runtime.JVMRuntimeMetric;
 import com.megaease.easeagent.metrics.kafka.KafkaConsumerMetricInterceptor;
 import com.megaease.easeagent.metrics.kafka.KafkaMessageListenerMetricInterceptor;
 import com.megaease.easeagent.metrics.kafka.KafkaMetric;
@@ -82,6 +85,7 @@ import com.megaease.easeagent.sniffer.thread.CrossThreadPropagationConfig;
 import com.megaease.easeagent.sniffer.thread.HTTPHeaderExtractInterceptor;
 import com.megaease.easeagent.sniffer.webclient.WebClientBuildInterceptor;
 import com.megaease.easeagent.zipkin.CustomTagsSpanHandler;
+import com.megaease.easeagent.zipkin.DroppedSpansReporterMetrics;
 import com.megaease.easeagent.zipkin.http.FeignClientTracingInterceptor;
 import com.megaease.easeagent.zipkin.http.HttpFilterTracingInterceptor;
 import com.megaease.easeagent.zipkin.http.RestTemplateTracingInterceptor;
@@ -109,9 +113,8 @@ import com.megaease.easeagent.zipkin.redis.JedisTracingInterceptor;
 import org.apache.commons.lang3.StringUtils;
 import zipkin2.Span;
 import zipkin2.reporter.AsyncReporter;
-import zipkin2.reporter.Reporter;
 import zipkin2.reporter.brave.AsyncZipkinSpanHandler;
-import zipkin2.reporter.urlconnection.URLConnectionSender;
+import zipkin2.reporter.http.AsyncHttpSender;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -171,22 +174,34 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
             toZipkin = true;
             zipkinUrl = zipkinUrlFromEnv;
         }
-        Reporter<Span> reporter;
+        SpanHandler spanHandler;
         if (toZipkin) {
-            reporter = AsyncReporter.create(URLConnectionSender.create(zipkinUrl));
+            AsyncHttpSender sender = AsyncHttpSender.create(zipkinUrl);
+            // Spans failed after being sent are reported by the sender, others dropped by the reporter by metrics
+            sender.setDroppedSpansListener(agentReport::dropSpans);
+            AsyncReporter<Span> reporter = AsyncReporter.builder(sender)
+                .metrics(new DroppedSpansReporterMetrics(agentReport::dropSpans))
+                .build();
+            spanHandler = AsyncZipkinSpanHandler
+                .newBuilder(reporter)
+                .alwaysReportSpans(true)
+                .build();
         } else {
-            reporter = span -> agentReport.report(span);
+            // Spans are encoded by agent report directly, without converting to zipkin spans
+            spanHandler = new SpanHandler() {
+                @Override
+                public boolean end(TraceContext context, MutableSpan span, Cause cause) {
+                    agentReport.report(span);
+                    return true;
+                }
+            };
         }
         this.tracing = Tracing.newBuilder()
             .localServiceName(serviceName.getValue())
             .traceId128Bit(false)
-            .sampler(CountingSampler.create(1))
+            .sampler(agentReport.sampler())
             .addSpanHandler(new CustomTagsSpanHandler(serviceName::getValue, AdditionalAttributes.getHostName()))
-            .addSpanHandler(AsyncZipkinSpanHandler
-                .newBuilder(reporter)
-                .alwaysReportSpans(true)
-                .build()
-            )
+            .addSpanHandler(spanHandler)
             .currentTraceContext(traceContext)
             .build();
     }
@@ -203,7 +218,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
 
     @Injection.Bean
     public JVMMemoryMetric jvmMemoryMetric() {
-        MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+        MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(this.config, ConfigConst.Observability.KEY_METRICS_JVM_MEMORY);
         JVMMemoryMetric jvmMemoryMetric = new JVMMemoryMetric(metricRegistry, config);
         MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(this.config, ConfigConst.Observability.KEY_METRICS_JVM_MEMORY);
         new AutoRefreshReporter(metricRegistry, collectorConfig,
@@ -214,7 +229,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
 
     @Injection.Bean
     public JVMGCMetric jvmgcMetric() {
-        MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+        MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(this.config, ConfigConst.Observability.KEY_METRICS_JVM_GC);
         JVMGCMetric jvmgcMetric = new JVMGCMetric(metricRegistry, config);
         MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(this.config, ConfigConst.Observability.KEY_METRICS_JVM_GC);
         new AutoRefreshReporter(metricRegistry, collectorConfig,
@@ -223,6 +238,17 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
         return jvmgcMetric;
     }
 
+    @Injection.Bean
+    public JVMRuntimeMetric jvmRuntimeMetric() {
+        MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(this.config, ConfigConst.Observability.KEY_METRICS_JVM_RUNTIME);
+        JVMRuntimeMetric jvmRuntimeMetric = new JVMRuntimeMetric(metricRegistry, config);
+        MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(this.config, ConfigConst.Observability.KEY_METRICS_JVM_RUNTIME);
+        new AutoRefreshReporter(metricRegistry, collectorConfig,
+            jvmRuntimeMetric.newConverter(this.additionalAttributes),
+            s -> Provider.this.agentReport.report(new MetricItem(ConfigConst.Observability.KEY_METRICS_JVM_RUNTIME, s))).run();
+        return jvmRuntimeMetric;
+    }
+
     @Injection.Bean
     public AgentInterceptorChainInvoker agentInterceptorChainInvoker() {
         return chainInvoker;
@@ -231,7 +257,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4DataSourceGetCon")
     public Supplier<AgentInterceptorChain.Builder> supplier4DataSourceGetCon() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(this.config, ConfigConst.Observability.KEY_METRICS_JDBC_CONNECTION);
             MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(this.config, ConfigConst.Observability.KEY_METRICS_JDBC_CONNECTION);
             final JdbcDataSourceMetricInterceptor interceptor = new JdbcDataSourceMetricInterceptor(metricRegistry, config);
             new AutoRefreshReporter(metricRegistry, collectorConfig,
@@ -273,7 +299,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4JdbcStmExecute")
     public Supplier<AgentInterceptorChain.Builder> supplier4JdbcStmExecute() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(this.config, ConfigConst.Observability.KEY_METRICS_JDBC_STATEMENT);
             SQLCompression sqlCompression = new MD5SQLCompression(new Md5ReportConsumer(config));
             MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(this.config, ConfigConst.Observability.KEY_METRICS_JDBC_STATEMENT);
             JdbcStmMetricInterceptor metricInterceptor = new JdbcStmMetricInterceptor(metricRegistry, sqlCompression, config);
@@ -292,7 +318,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4Filter")
     public Supplier<AgentInterceptorChain.Builder> supplier4Filter() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(this.config, ConfigConst.Observability.KEY_METRICS_REQUEST);
             MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(this.config, ConfigConst.Observability.KEY_METRICS_REQUEST);
             ServletMetric servletMetric = new ServletMetric(metricRegistry);
             new AutoRefreshReporter(metricRegistry, collectorConfig, servletMetric.newConverter(this.additionalAttributes),
@@ -321,7 +347,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4Gateway")
     public Supplier<AgentInterceptorChain.Builder> supplier4Gateway() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(this.config, ConfigConst.Observability.KEY_METRICS_REQUEST);
             MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(this.config, ConfigConst.Observability.KEY_METRICS_REQUEST);
             GatewayMetricsInterceptor gatewayMetricsInterceptor = new GatewayMetricsInterceptor(metricRegistry, config);
             new AutoRefreshReporter(metricRegistry, collectorConfig,
@@ -357,7 +383,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4LettuceDoWrite")
     public Supplier<AgentInterceptorChain.Builder> supplier4LettuceDoWrite() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(config, ConfigConst.Observability.KEY_METRICS_CACHE);
             LettuceMetricInterceptor metricInterceptor = new LettuceMetricInterceptor(metricRegistry, config);
 
             MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(config, ConfigConst.Observability.KEY_METRICS_CACHE);
@@ -393,7 +419,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4Jedis")
     public Supplier<AgentInterceptorChain.Builder> supplier4Jedis() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(config, ConfigConst.Observability.KEY_METRICS_CACHE);
             JedisMetricInterceptor metricInterceptor = new JedisMetricInterceptor(metricRegistry, config);
 
             MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(config, ConfigConst.Observability.KEY_METRICS_CACHE);
@@ -410,7 +436,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4KafkaProducerDoSend")
     public Supplier<AgentInterceptorChain.Builder> supplier4KafkaProducerDoSend() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(config, ConfigConst.Observability.KEY_METRICS_KAFKA);
             KafkaMetric kafkaMetric = new KafkaMetric(metricRegistry);
 
             MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(config, ConfigConst.Observability.KEY_METRICS_KAFKA);
@@ -459,7 +485,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4KafkaConsumerDoPoll")
     public Supplier<AgentInterceptorChain.Builder> supplier4KafkaConsumerDoPoll() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(config, ConfigConst.Observability.KEY_METRICS_KAFKA);
             KafkaMetric kafkaMetric = new KafkaMetric(metricRegistry);
 
             MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(config, ConfigConst.Observability.KEY_METRICS_KAFKA);
@@ -478,7 +504,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4SpringKafkaMessageListenerOnMessage")
     public Supplier<AgentInterceptorChain.Builder> supplier4SpringKafkaMessageListenerOnMessage() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(config, ConfigConst.Observability.KEY_METRICS_KAFKA);
             KafkaMetric kafkaMetric = new KafkaMetric(metricRegistry);
 
             MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(config, ConfigConst.Observability.KEY_METRICS_KAFKA);
@@ -496,7 +522,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4RabbitMqBasicPublish")
     public Supplier<AgentInterceptorChain.Builder> supplier4RabbitMqBasicPublish() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(config, ConfigConst.Observability.KEY_METRICS_RABBIT);
             RabbitMqProducerMetric metric = new RabbitMqProducerMetric(metricRegistry);
             RabbitMqProducerMetricInterceptor metricInterceptor = new RabbitMqProducerMetricInterceptor(metric, config);
 
@@ -522,7 +548,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4RabbitMqHandleDelivery")
     public Supplier<AgentInterceptorChain.Builder> supplier4RabbitMqHandleDelivery() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(config, ConfigConst.Observability.KEY_METRICS_RABBIT);
             RabbitMqConsumerMetric metric = new RabbitMqConsumerMetric(metricRegistry);
             RabbitMqConsumerMetricInterceptor metricInterceptor = new RabbitMqConsumerMetricInterceptor(metric, config);
 
@@ -542,7 +568,7 @@ public abstract class Provider implements AgentReportAware, ConfigAware, IProvid
     @Injection.Bean("supplier4SpringRabbitMqMessageListenerOnMessage")
     public Supplier<AgentInterceptorChain.Builder> supplier4SpringRabbitMqMessageListenerOnMessage() {
         return () -> {
-            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry();
+            MetricRegistry metricRegistry = MetricRegistryService.DEFAULT.createMetricRegistry(config, ConfigConst.Observability.KEY_METRICS_RABBIT);
             RabbitMqConsumerMetric metric = new RabbitMqConsumerMetric(metricRegistry);
 
             MetricsCollectorConfig collectorConfig = new MetricsCollectorConfig(config, ConfigConst.Observability.KEY_METRICS_RABBIT);
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.sniffer.thread;
+
+import brave.Tracing;
+import brave.propagation.CurrentTraceContext;
+import brave.propagation.TraceContext;
+import com.megaease.easeagent.core.utils.ThreadLocalCurrentContext;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The {@link Callable} counterpart of {@link ContextSnapshotRunnable}.
+ */
+public class ContextSnapshotCallable<V> implements Callable<V> {
+    private final CurrentTraceContext currentTraceContext;
+    private final TraceContext traceContext;
+    private final ThreadLocalCurrentContext.Context context;
+    private final Callable<V> original;
+
+    ContextSnapshotCallable(CurrentTraceContext currentTraceContext, TraceContext traceContext,
+                            ThreadLocalCurrentContext.Context context, Callable<V> original) {
+        this.currentTraceContext = currentTraceContext;
+        this.traceContext = traceContext;
+        this.context = context;
+        this.original = original;
+    }
+
+    /**
+     * Wraps the input so that it executes with the same contexts as now.
+     */
+    public static <V> Callable<V> wrap(Callable<V> task) {
+        final Tracing tracing = Tracing.current();
+        final CurrentTraceContext current = tracing == null ? null : tracing.currentTraceContext();
+        return new ContextSnapshotCallable<>(current, current == null ? null : current.get(),
+                ThreadLocalCurrentContext.DEFAULT.get(), task);
+    }
+
+    public static boolean isWrapped(Callable<?> task) {
+        return task instanceof ContextSnapshotCallable;
+    }
+
+    @Override
+    public V call() throws Exception {
+        try (ThreadLocalCurrentContext.Scope ignored = ThreadLocalCurrentContext.DEFAULT.maybeScope(context)) {
+            if (currentTraceContext == null) {
+                return original.call();
+            }
+            try (CurrentTraceContext.Scope ignoredTrace = currentTraceContext.maybeScope(traceContext)) {
+                return original.call();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.sniffer.thread;
+
+import brave.Tracing;
+import brave.propagation.CurrentTraceContext;
+import brave.propagation.TraceContext;
+import com.megaease.easeagent.core.utils.ThreadLocalCurrentContext;
+
+/**
+ * The snapshot of both tracing context and {@link ThreadLocalCurrentContext} of the submitting thread, restored
+ * together around the task. The MDC follows the tracing context through the scope decorator of {@link Tracing}.
+ */
+public class ContextSnapshotRunnable implements Runnable {
+    private final CurrentTraceContext currentTraceContext;
+    private final TraceContext traceContext;
+    private final ThreadLocalCurrentContext.Context context;
+    private final Runnable original;
+
+    ContextSnapshotRunnable(CurrentTraceContext currentTraceContext, TraceContext traceContext,
+                            ThreadLocalCurrentContext.Context context, Runnable original) {
+        this.currentTraceContext = currentTraceContext;
+        this.traceContext = traceContext;
+        this.context = context;
+        this.original = original;
+    }
+
+    /**
+     * Wraps the input so that it executes with the same contexts as now.
+     */
+    public static Runnable wrap(Runnable task) {
+        final Tracing tracing = Tracing.current();
+        final CurrentTraceContext current = tracing == null ? null : tracing.currentTraceContext();
+        return new ContextSnapshotRunnable(current, current == null ? null : current.get(),
+                ThreadLocalCurrentContext.DEFAULT.get(), task);
+    }
+
+    public static boolean isWrapped(Runnable task) {
+        return task instanceof ContextSnapshotRunnable || ThreadLocalCurrentContext.isWrapped(task);
+    }
+
+    @Override
+    public void run() {
+        try (ThreadLocalCurrentContext.Scope ignored = ThreadLocalCurrentContext.DEFAULT.maybeScope(context)) {
+            if (currentTraceContext == null) {
+                original.run();
+                return;
+            }
+            try (CurrentTraceContext.Scope ignoredTrace = currentTraceContext.maybeScope(traceContext)) {
+                original.run();
+            }
+        }
+    }
+}
@@ -39,16 +39,23 @@ public class HTTPHeaderExtractInterceptor implements AgentInterceptor {
     @Override
     public void before(MethodInfo methodInfo, Map<Object, Object> context, AgentInterceptorChain chain) {
         HttpServletRequest request = (HttpServletRequest) methodInfo.getArgs()[0];
-        final ThreadLocalCurrentContext.Context ctx = ThreadLocalCurrentContext.createContext();
+        ThreadLocalCurrentContext.Context ctx = null;
         final String[] canaryHeaders = this.config.getCanaryHeaders();
         for (String header : canaryHeaders) {
             final String value = request.getHeader(header);
-            ctx.put(header, value == null ? "" : value);
+            if (value == null) {
+                continue;
+            }
+            if (ctx == null) {
+                ctx = ThreadLocalCurrentContext.createContext();
+            }
+            ctx.put(header, value);
         }
         if (logger.isDebugEnabled()) {
             logger.debug("extract ctx:{} from http request with headers:{}", ctx, Arrays.toString(canaryHeaders));
         }
-        final ThreadLocalCurrentContext.Scope scope = ThreadLocalCurrentContext.DEFAULT.newScope(ctx);
+        // Most requests carry none of headers, a null context hides the one inherited by the thread without allocation
+        final ThreadLocalCurrentContext.Scope scope = ThreadLocalCurrentContext.DEFAULT.maybeScope(ctx);
         context.put(ThreadLocalCurrentContext.Scope.class, scope);
         chain.doBefore(methodInfo, context);
     }
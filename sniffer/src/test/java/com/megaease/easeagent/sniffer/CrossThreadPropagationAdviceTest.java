@@ -17,24 +17,257 @@
 
 package com.megaease.easeagent.sniffer;
 
+import brave.Tracing;
+import brave.propagation.CurrentTraceContext;
+import brave.propagation.ThreadLocalCurrentTraceContext;
+import brave.propagation.TraceContext;
+import com.megaease.easeagent.core.Classes;
+import com.megaease.easeagent.core.Definition;
+import com.megaease.easeagent.core.utils.ThreadLocalCurrentContext;
 import net.bytebuddy.agent.builder.AgentBuilder;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.dynamic.loading.ClassInjector;
+import net.bytebuddy.jar.asm.Opcodes;
+import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.StringMatcher;
+import net.bytebuddy.pool.TypePool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
 
 import java.io.File;
 import java.io.IOException;
 import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Method;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
 
 import static net.bytebuddy.dynamic.ClassFileLocator.ForClassLoader.read;
 import static net.bytebuddy.dynamic.loading.ClassInjector.UsingInstrumentation.Target.BOOTSTRAP;
 import static net.bytebuddy.matcher.ElementMatchers.*;
+import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 
 public class CrossThreadPropagationAdviceTest {
+    private static final String CANARY = "X-Mesh-Canary";
+    private static final String THREAD_PER_TASK_EXECUTOR = "java.util.concurrent.CompletableFuture$ThreadPerTaskExecutor";
+
+    private final CurrentTraceContext currentTraceContext = ThreadLocalCurrentTraceContext.create();
+    private final TraceContext traceContext = TraceContext.newBuilder().traceId(1L).spanId(2L).build();
+    private Tracing tracing;
+
+    @Before
+    public void setUp() {
+        tracing = Tracing.newBuilder().currentTraceContext(currentTraceContext).build();
+    }
+
+    @After
+    public void tearDown() {
+        tracing.close();
+    }
+
+    @Test
+    public void should_propagate_to_scheduled_thread_pool_executor() throws Exception {
+        final ScheduledThreadPoolExecutor executor = (ScheduledThreadPoolExecutor) transform(
+                new TypeDescription.ForLoadedType(ScheduledThreadPoolExecutor.class), "ScheduledExecutor").newInstance();
+        try {
+            inContexts(() -> executor.execute(this::record));
+            awaitRecorded();
+
+            inContexts(() -> executor.schedule(this::record, 1, TimeUnit.MILLISECONDS));
+            awaitRecorded();
+
+            final Future<Object> future = inContexts(() -> executor.schedule(this::recorded, 1, TimeUnit.MILLISECONDS));
+            assertRecorded(future.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void should_propagate_to_fork_join_pool() throws Exception {
+        final ForkJoinPool pool = (ForkJoinPool) transform(
+                new TypeDescription.ForLoadedType(ForkJoinPool.class), "Pool").newInstance();
+        try {
+            inContexts(() -> pool.execute((Runnable) this::record));
+            awaitRecorded();
+
+            inContexts(() -> pool.submit((Runnable) this::record));
+            awaitRecorded();
+
+            final ForkJoinTask<Object> task = inContexts(() -> pool.submit((Callable<Object>) this::recorded));
+            assertRecorded(task.get(5, TimeUnit.SECONDS));
+
+            // CompletableFuture runs its async stages by execute of the pool
+            final CompletableFuture<Object> future = inContexts(() -> CompletableFuture
+                    .supplyAsync(() -> "ignored", pool)
+                    .thenApplyAsync(previous -> recorded(), pool));
+            assertRecorded(future.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void should_propagate_to_completable_future_thread_per_task_executor() throws Exception {
+        // The JDK class is final, so a copy of it is transformed by the advice of the JDK class
+        final Executor executor = (Executor) transform(
+                new TypeDescription.ForLoadedType(Class.forName(THREAD_PER_TASK_EXECUTOR)), "ThreadPerTaskExecutor")
+                .newInstance();
+        final CompletableFuture<Object> future = inContexts(() -> CompletableFuture
+                .supplyAsync(() -> "ignored", executor)
+                .thenApplyAsync(previous -> recorded(), executor));
+        assertRecorded(future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_propagate_to_virtual_thread() throws Exception {
+        // ThreadBuilders is only available since Java 21, a copy of its factory method starts a platform thread instead
+        final TypeDescription threadBuilders = new TypeDescription.Latent(CrossThreadPropagationAdvice.CLASS_THREAD_BUILDERS,
+                Opcodes.ACC_FINAL, TypeDescription.Generic.OBJECT);
+        final Method newVirtualThread = transform(threadBuilders, "ThreadBuilders")
+                .getDeclaredMethod("newVirtualThread", Executor.class, String.class, int.class, Runnable.class);
+        final Thread thread = inContexts(() -> (Thread) newVirtualThread.invoke(null, null, "virtual", 0, (Runnable) this::record));
+        thread.start();
+        thread.join();
+        assertRecorded();
+    }
+
+    @Test
+    public void should_not_match_other_executors() {
+        // Described without loading, the copies are transformed by other tests
+        final TypePool pool = TypePool.Default.of(getClass().getClassLoader());
+        assertTrue(transformersOf(pool.describe(getClass().getName() + "$ThreadPerTaskExecutor").resolve()).isEmpty());
+        assertTrue(transformersOf(pool.describe(getClass().getName() + "$Pool").resolve()).isEmpty());
+        assertTrue(transformersOf(new TypeDescription.ForLoadedType(ThreadPoolExecutor.class)).stream()
+                .noneMatch(transformer -> transformer.inlineAdviceClassName.endsWith("$RunnableTask_inline")));
+    }
+
+    /**
+     * Transforms the copy of the JDK type in this test by the generated advice matched for the JDK type, since
+     * the classes of JDK could not be redefined here.
+     */
+    private Class<?> transform(TypeDescription jdkType, String copy) {
+        final List<Definition.Transformer> transformers = transformersOf(jdkType);
+        assertFalse("no advice for " + jdkType, transformers.isEmpty());
+        final String name = getClass().getName() + "$" + copy;
+        Definition.Transforming<Definition.Default> transforming = Definition.Default.EMPTY.type(named(name));
+        Definition.Fork<Definition.Default> fork = null;
+        for (Definition.Transformer transformer : transformers) {
+            fork = fork == null ? transforming.transform(transformer) : fork.transform(transformer);
+        }
+        return Classes.transform(name).with(fork.end()).load(getClass().getClassLoader()).get(0);
+    }
+
+    private static List<Definition.Transformer> transformersOf(TypeDescription type) {
+        final Definition.Default def = new GenCrossThreadPropagationAdvice().define(Definition.Default.EMPTY);
+        final List<Definition.Transformer> transformers = new ArrayList<>();
+        for (Map.Entry<ElementMatcher<? super TypeDescription>, Iterable<Definition.Transformer>> entry : def.asMap().entrySet()) {
+            if (entry.getKey().matches(type)) {
+                entry.getValue().forEach(transformers::add);
+            }
+        }
+        return transformers;
+    }
+
+    private final BlockingQueue<Object> recorded = new LinkedBlockingQueue<>();
+
+    private void record() {
+        recorded.add(recorded());
+    }
+
+    private Object recorded() {
+        final ThreadLocalCurrentContext.Context ctx = ThreadLocalCurrentContext.DEFAULT.get();
+        return currentTraceContext.get() + "/" + (ctx == null ? null : ctx.get(CANARY));
+    }
+
+    private void awaitRecorded() throws InterruptedException {
+        assertRecorded(recorded.poll(5, TimeUnit.SECONDS));
+    }
+
+    private void assertRecorded() {
+        assertRecorded(recorded.poll());
+    }
+
+    private void assertRecorded(Object value) {
+        assertEquals(traceContext + "/lane1", value);
+    }
+
+    private <T> T inContexts(Callable<T> submit) throws Exception {
+        try (CurrentTraceContext.Scope ignored = currentTraceContext.newScope(traceContext);
+             ThreadLocalCurrentContext.Scope ignoredCtx = ThreadLocalCurrentContext.DEFAULT.newScope(
+                     ThreadLocalCurrentContext.createContext(CANARY, "lane1"))) {
+            return submit.call();
+        }
+    }
+
+    private void inContexts(Runnable submit) throws Exception {
+        inContexts(() -> {
+            submit.run();
+            return null;
+        });
+    }
+
+    public static class ScheduledExecutor extends ScheduledThreadPoolExecutor {
+        public ScheduledExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return super.schedule(command, delay, unit);
+        }
+
+        @Override
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            return super.schedule(callable, delay, unit);
+        }
+    }
+
+    public static class Pool extends ForkJoinPool {
+        public Pool() {
+            super(2);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            super.execute(task);
+        }
+
+        @Override
+        public ForkJoinTask<?> submit(Runnable task) {
+            return super.submit(task);
+        }
+
+        @Override
+        public <T> ForkJoinTask<T> submit(Callable<T> task) {
+            return super.submit(task);
+        }
+    }
+
+    /**
+     * The same as {@code CompletableFuture.ThreadPerTaskExecutor}.
+     */
+    public static final class ThreadPerTaskExecutor implements Executor {
+        @Override
+        public void execute(Runnable r) {
+            new Thread(r).start();
+        }
+    }
+
+    /**
+     * The same signature as the factory method of virtual threads in {@code java.lang.ThreadBuilders}.
+     */
+    public static final class ThreadBuilders {
+        static Thread newVirtualThread(Executor scheduler, String name, int characteristics, Runnable task) {
+            return new Thread(task, name);
+        }
+    }
 
     //    @Test
 //    public void test_feignLoadBalancer_execute() throws Exception {
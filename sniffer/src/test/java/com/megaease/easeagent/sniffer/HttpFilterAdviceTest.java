@@ -24,7 +24,10 @@ import com.megaease.easeagent.core.interceptor.AgentInterceptor;
 import com.megaease.easeagent.core.interceptor.AgentInterceptorChain;
 import com.megaease.easeagent.core.interceptor.AgentInterceptorChainInvoker;
 import com.megaease.easeagent.core.interceptor.DefaultAgentInterceptorChain;
+import com.megaease.easeagent.core.interceptor.MethodInfo;
+import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServlet;
@@ -32,8 +35,10 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Supplier;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
 @SuppressWarnings("all")
@@ -58,6 +63,11 @@ public class HttpFilterAdviceTest extends BaseSnifferTest {
         filter.doFilter(httpServletRequest, httpServletResponse, filterChain);
         this.verifyInvokeTimes(chainInvoker, 1);
 
+        // Only the selected request and response are bound, the filter chain is not
+        ArgumentCaptor<MethodInfo> captor = ArgumentCaptor.forClass(MethodInfo.class);
+        verify(chainInvoker).doBefore(any(AgentInterceptorChain.Builder.class), captor.capture(), any(Map.class));
+        Assert.assertArrayEquals(new Object[]{httpServletRequest, httpServletResponse}, captor.getValue().getArgs());
+
         reset(chainInvoker);
 
         MyServlet myServlet = (MyServlet) classList.get(1).newInstance();
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.sniffer.thread;
+
+import brave.Tracing;
+import brave.propagation.CurrentTraceContext;
+import brave.propagation.ThreadLocalCurrentTraceContext;
+import brave.propagation.TraceContext;
+import com.megaease.easeagent.core.utils.ThreadLocalCurrentContext;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ContextSnapshotRunnableTest {
+
+    @Test
+    public void should_restore_contexts_around_task() throws Exception {
+        final CurrentTraceContext currentTraceContext = ThreadLocalCurrentTraceContext.create();
+        final Tracing tracing = Tracing.newBuilder().currentTraceContext(currentTraceContext).build();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final TraceContext traceContext = TraceContext.newBuilder().traceId(1L).spanId(2L).build();
+            final AtomicReference<TraceContext> tracedInTask = new AtomicReference<>();
+            final AtomicReference<String> canaryInTask = new AtomicReference<>();
+            final Runnable task;
+            try (CurrentTraceContext.Scope ignored = currentTraceContext.newScope(traceContext);
+                 ThreadLocalCurrentContext.Scope ignoredCtx = ThreadLocalCurrentContext.DEFAULT.newScope(
+                         ThreadLocalCurrentContext.createContext("X-Canary", "lane1"))) {
+                task = ContextSnapshotRunnable.wrap(() -> {
+                    tracedInTask.set(currentTraceContext.get());
+                    canaryInTask.set(ThreadLocalCurrentContext.DEFAULT.get().get("X-Canary"));
+                });
+            }
+            assertTrue(ContextSnapshotRunnable.isWrapped(task));
+
+            executor.submit(task).get();
+            assertEquals(traceContext, tracedInTask.get());
+            assertEquals("lane1", canaryInTask.get());
+
+            final AtomicReference<Object> leftInWorker = new AtomicReference<>();
+            executor.submit(() -> leftInWorker.set(currentTraceContext.get())).get();
+            assertNull(leftInWorker.get());
+            executor.submit(() -> leftInWorker.set(ThreadLocalCurrentContext.DEFAULT.get())).get();
+            assertNull(leftInWorker.get());
+        } finally {
+            executor.shutdown();
+            tracing.close();
+        }
+    }
+}
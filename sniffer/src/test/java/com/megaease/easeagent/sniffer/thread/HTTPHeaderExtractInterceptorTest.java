@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.sniffer.thread;
+
+import com.megaease.easeagent.config.ConfigConst;
+import com.megaease.easeagent.config.Configs;
+import com.megaease.easeagent.core.interceptor.AgentInterceptorChain;
+import com.megaease.easeagent.core.interceptor.MethodInfo;
+import com.megaease.easeagent.core.utils.ContextUtils;
+import com.megaease.easeagent.core.utils.ThreadLocalCurrentContext;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class HTTPHeaderExtractInterceptorTest {
+    private static final String CANARY = "X-Mesh-Canary";
+
+    private final HTTPHeaderExtractInterceptor interceptor = new HTTPHeaderExtractInterceptor(new CrossThreadPropagationConfig(
+            new Configs(Collections.singletonMap(ConfigConst.GlobalCanaryLabels.SERVICE_HEADERS + ".0", CANARY))));
+
+    @Test
+    public void should_extract_present_headers() {
+        final ThreadLocalCurrentContext.Context[] inScope = new ThreadLocalCurrentContext.Context[1];
+        final MethodInfo methodInfo = MethodInfo.builder().args(new Object[]{request("lane1")}).build();
+        final Map<Object, Object> context = ContextUtils.createContext();
+
+        interceptor.before(methodInfo, context, new NoOpChain() {
+            @Override
+            public void doBefore(MethodInfo methodInfo, Map<Object, Object> context) {
+                inScope[0] = ThreadLocalCurrentContext.DEFAULT.get();
+            }
+        });
+        interceptor.after(methodInfo, context, new NoOpChain());
+
+        assertEquals("lane1", inScope[0].get(CANARY));
+        assertNull(ThreadLocalCurrentContext.DEFAULT.get());
+    }
+
+    @Test
+    public void should_hide_inherited_context_without_headers() {
+        final ThreadLocalCurrentContext.Context[] inScope = {ThreadLocalCurrentContext.createContext()};
+        final MethodInfo methodInfo = MethodInfo.builder().args(new Object[]{request(null)}).build();
+        final Map<Object, Object> context = ContextUtils.createContext();
+
+        try (ThreadLocalCurrentContext.Scope ignored = ThreadLocalCurrentContext.DEFAULT.newScope(
+                ThreadLocalCurrentContext.createContext(CANARY, "inherited"))) {
+            interceptor.before(methodInfo, context, new NoOpChain() {
+                @Override
+                public void doBefore(MethodInfo methodInfo, Map<Object, Object> context) {
+                    inScope[0] = ThreadLocalCurrentContext.DEFAULT.get();
+                }
+            });
+            interceptor.after(methodInfo, context, new NoOpChain());
+            assertEquals("inherited", ThreadLocalCurrentContext.DEFAULT.get().get(CANARY));
+        }
+
+        assertNull(inScope[0]);
+    }
+
+    @Test
+    public void should_allocate_nothing_without_headers() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        // Debug logging of tests would allocate for every request
+        final Logger logger = (Logger) LoggerFactory.getLogger(HTTPHeaderExtractInterceptor.class);
+        final Level level = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        try {
+            assertAllocateNothing(threadBean);
+        } finally {
+            logger.setLevel(level);
+        }
+    }
+
+    private void assertAllocateNothing(com.sun.management.ThreadMXBean threadBean) {
+        final MethodInfo methodInfo = MethodInfo.builder().args(new Object[]{request(null)}).build();
+        final Map<Object, Object> context = ContextUtils.createContext();
+        final AgentInterceptorChain chain = new NoOpChain();
+        final int times = 100_000;
+        for (int i = 0; i < times; i++) {
+            interceptor.before(methodInfo, context, chain);
+            interceptor.after(methodInfo, context, chain);
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long begin = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < times; i++) {
+            interceptor.before(methodInfo, context, chain);
+            interceptor.after(methodInfo, context, chain);
+        }
+        final long allocated = threadBean.getThreadAllocatedBytes(threadId) - begin;
+
+        // Leave room for the measurement itself, a single context per request would take megabytes
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static HttpServletRequest request(String canary) {
+        final HttpServletRequest unused = (HttpServletRequest) Proxy.newProxyInstance(
+                HTTPHeaderExtractInterceptorTest.class.getClassLoader(), new Class[]{HttpServletRequest.class},
+                (proxy, method, args) -> {
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        return new HttpServletRequestWrapper(unused) {
+            @Override
+            public String getHeader(String name) {
+                return CANARY.equals(name) ? canary : null;
+            }
+        };
+    }
+
+    static class NoOpChain implements AgentInterceptorChain {
+        @Override
+        public void doBefore(MethodInfo methodInfo, Map<Object, Object> context) {
+        }
+
+        @Override
+        public Object doAfter(MethodInfo methodInfo, Map<Object, Object> context) {
+            return null;
+        }
+
+        @Override
+        public void skipBegin() {
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.zipkin;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Forwards spans dropped by the reporter, such as those of messages the sender rejected or failed synchronously,
+ * to a listener besides debug logging.
+ */
+public class DroppedSpansReporterMetrics extends DebugReporterMetrics {
+    private final IntConsumer listener;
+
+    public DroppedSpansReporterMetrics(IntConsumer listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void incrementSpansDropped(int quantity) {
+        super.incrementSpansDropped(quantity);
+        listener.accept(quantity);
+    }
+}
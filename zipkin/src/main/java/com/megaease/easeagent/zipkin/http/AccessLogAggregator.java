@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.zipkin.http;
+
+import com.megaease.easeagent.common.concurrent.ScheduleHelper;
+import com.megaease.easeagent.config.Config;
+import com.megaease.easeagent.config.ConfigUtils;
+import com.megaease.easeagent.core.interceptor.NanoHistogram;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Reports access logs either one record per request, or aggregated when {@code observability.metrics.access.mode}
+ * is {@code aggregate}: a summary of each route and status is reported every interval, with count, latency
+ * percentiles and response bytes, and full records are only kept for
+ * <ul>
+ * <li>requests of error status, reported at once</li>
+ * <li>a random sample of requests, reported at once</li>
+ * <li>the slowest requests of the interval, reported with the summaries</li>
+ * </ul>
+ * Records carry the trace id as before, and each summary the trace id of its slowest request.
+ * <p>
+ * Summaries are sent to the same consumer, and so the same topic, as records. Both are JSON lists, records of
+ * {@code "type":"access-log"} and summaries of {@code "type":"access-log-summary"}, which tells them apart.
+ * The interval is checked every second, so that a change of it applies from the next flush.
+ * <p>
+ * Requests are summarized without locking, a flush removes each summary before closing it, and requests finding
+ * it closed retry with a new summary of the next interval.
+ */
+public class AccessLogAggregator {
+    public static final String MODE_KEY = "observability.metrics.access.mode";
+    public static final String SLOWEST_KEY = "observability.metrics.access.slowest";
+    public static final String SAMPLE_RATIO_KEY = "observability.metrics.access.sampleRatio";
+    public static final String INTERVAL_KEY = "observability.metrics.access.interval";
+    public static final String MODE_RECORD = "record";
+    public static final String MODE_AGGREGATE = "aggregate";
+    static final String SUMMARY_TYPE = "access-log-summary";
+    static final String UNMATCHED_ROUTE = "unmatched";
+    static final String OVERFLOW_ROUTE = "overflow";
+
+    private static final int DEF_INTERVAL = 30;
+    private static final int DEF_SLOWEST = 10;
+    private static final double DEF_SAMPLE_RATIO = 0.01;
+    /**
+     * Routes beyond it are summarized as {@value #OVERFLOW_ROUTE}, in case of routes not templated
+     */
+    private static final int MAX_SUMMARIES = 1000;
+
+    private final Consumer<String> consumer;
+    private final ConcurrentHashMap<String, Summary> summaries = new ConcurrentHashMap<>();
+    private final PriorityQueue<Slow> slowest = new PriorityQueue<>(Comparator.comparingLong(s -> s.requestTime));
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private long intervalBegin = System.currentTimeMillis();
+
+    private volatile boolean aggregate;
+    private volatile int intervalSeconds = DEF_INTERVAL;
+    private volatile int slowestSize = DEF_SLOWEST;
+    private volatile double sampleRatio = DEF_SAMPLE_RATIO;
+
+    public AccessLogAggregator(Config config, Consumer<String> consumer) {
+        this.consumer = consumer;
+        ConfigUtils.bindProp(INTERVAL_KEY, config, Config::getInt, v -> this.intervalSeconds = v <= 0 ? DEF_INTERVAL : v, DEF_INTERVAL);
+        ConfigUtils.bindProp(MODE_KEY, config, Config::getString, v -> this.aggregate = MODE_AGGREGATE.equalsIgnoreCase(v.trim()), MODE_RECORD);
+        ConfigUtils.bindProp(SLOWEST_KEY, config, Config::getInt, v -> this.slowestSize = Math.max(0, v), DEF_SLOWEST);
+        ConfigUtils.bindProp(SAMPLE_RATIO_KEY, config, Config::getDouble, v -> this.sampleRatio = Math.max(0, Math.min(1, v)), DEF_SAMPLE_RATIO);
+    }
+
+    public boolean isAggregate() {
+        return aggregate;
+    }
+
+    /**
+     * @param record encodes the full record, only called if it is reported or kept
+     */
+    public void report(RequestInfo info, Supplier<String> record) {
+        if (!aggregate) {
+            consumer.accept(record.get());
+            return;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            synchronized (slowest) {
+                intervalBegin = System.currentTimeMillis();
+            }
+            ScheduleHelper.DEFAULT.execute(1, 1, this::flushIfDue);
+        }
+        summarize(info);
+        if (isError(info.getStatusCode()) || sampled()) {
+            consumer.accept(record.get());
+        } else {
+            keepIfSlow(info, record);
+        }
+    }
+
+    private void flushIfDue() {
+        long begin;
+        synchronized (slowest) {
+            begin = intervalBegin;
+        }
+        if (System.currentTimeMillis() - begin >= intervalSeconds * 1000L) {
+            flush();
+        }
+    }
+
+    /**
+     * Report summaries and the slowest records since the former flush.
+     */
+    public void flush() {
+        long begin;
+        long end = System.currentTimeMillis();
+        List<Slow> slows;
+        synchronized (slowest) {
+            begin = intervalBegin;
+            intervalBegin = end;
+            slows = new ArrayList<>(slowest);
+            slowest.clear();
+        }
+        StringBuilder sb = new StringBuilder(256);
+        for (Map.Entry<String, Summary> entry : summaries.entrySet()) {
+            Summary summary = entry.getValue();
+            summaries.remove(entry.getKey(), summary);
+            summary.close();
+            sb.append(sb.length() == 0 ? '[' : ',');
+            summary.write(sb, (end - begin) / 1000, end);
+        }
+        if (sb.length() > 0) {
+            consumer.accept(sb.append(']').toString());
+        }
+        if (!slows.isEmpty()) {
+            slows.sort(Comparator.comparingLong((Slow s) -> s.requestTime).reversed());
+            sb.setLength(0);
+            for (Slow slow : slows) {
+                // Each record is a list of one
+                sb.append(sb.length() == 0 ? '[' : ',').append(slow.record, 1, slow.record.length() - 1);
+            }
+            consumer.accept(sb.append(']').toString());
+        }
+    }
+
+    private void summarize(RequestInfo info) {
+        String route = info.getMatchUrl() == null || info.getMatchUrl().isEmpty() ? UNMATCHED_ROUTE : info.getMatchUrl();
+        String key = route + ' ' + info.getStatusCode();
+        while (true) {
+            Summary summary = summaries.get(key);
+            if (summary == null) {
+                if (summaries.size() >= MAX_SUMMARIES && !route.equals(OVERFLOW_ROUTE)) {
+                    route = OVERFLOW_ROUTE;
+                    key = route + ' ' + info.getStatusCode();
+                    continue;
+                }
+                final String summaryRoute = route;
+                summary = summaries.computeIfAbsent(key, k -> new Summary(info, summaryRoute));
+            }
+            if (summary.record(info)) {
+                return;
+            }
+        }
+    }
+
+    private void keepIfSlow(RequestInfo info, Supplier<String> record) {
+        int size = this.slowestSize;
+        if (size == 0) {
+            return;
+        }
+        synchronized (slowest) {
+            if (slowest.size() >= size && info.getRequestTime() <= slowest.peek().requestTime) {
+                return;
+            }
+        }
+        // Encode outside of the lock, it is rare once the slowest are collected
+        Slow slow = new Slow(info.getRequestTime(), record.get());
+        synchronized (slowest) {
+            slowest.add(slow);
+            while (slowest.size() > size) {
+                slowest.poll();
+            }
+        }
+    }
+
+    private boolean sampled() {
+        double ratio = this.sampleRatio;
+        return ratio > 0 && (ratio >= 1 || ThreadLocalRandom.current().nextDouble() < ratio);
+    }
+
+    private static boolean isError(String statusCode) {
+        return statusCode != null && !statusCode.isEmpty() && statusCode.charAt(0) >= '4';
+    }
+
+    private static final class Slow {
+        private final long requestTime;
+        private final String record;
+
+        Slow(long requestTime, String record) {
+            this.requestTime = requestTime;
+            this.record = record;
+        }
+    }
+
+    private static final class Summary {
+        private final String service;
+        private final String system;
+        private final String hostName;
+        private final String hostIpv4;
+        private final String route;
+        private final String statusCode;
+        private final NanoHistogram requestTimes = new NanoHistogram();
+        private final LongAdder responseBytes = new LongAdder();
+        private final AtomicInteger writers = new AtomicInteger();
+        private volatile long slowestTime = -1;
+        private String slowestTraceId;
+        private volatile boolean closed;
+
+        Summary(RequestInfo info, String route) {
+            this.service = info.getService();
+            this.system = info.getSystem();
+            this.hostName = info.getHostName();
+            this.hostIpv4 = info.getHostIpv4();
+            this.route = route;
+            this.statusCode = info.getStatusCode();
+        }
+
+        /**
+         * @return false if it is closed by a flush, and the request should be recorded by a new summary
+         */
+        boolean record(RequestInfo info) {
+            writers.incrementAndGet();
+            try {
+                if (closed) {
+                    return false;
+                }
+                final long requestTime = info.getRequestTime();
+                requestTimes.record(requestTime);
+                responseBytes.add(info.getResponseSize());
+                if (requestTime > slowestTime) {
+                    // Rare once the slowest of the interval is seen, the lock keeps time and trace id consistent
+                    synchronized (this) {
+                        if (requestTime > slowestTime) {
+                            slowestTime = requestTime;
+                            slowestTraceId = info.getTraceId();
+                        }
+                    }
+                }
+                return true;
+            } finally {
+                writers.decrementAndGet();
+            }
+        }
+
+        /**
+         * Stops recording and waits for the requests being recorded, so that it could be written completely.
+         */
+        void close() {
+            closed = true;
+            while (writers.get() != 0) {
+                Thread.yield();
+            }
+        }
+
+        void write(StringBuilder sb, long intervalSeconds, long timestamp) {
+            long count = requestTimes.getCount();
+            sb.append('{');
+            field(sb, "type", SUMMARY_TYPE);
+            field(sb, "category", "application");
+            field(sb, "service", service);
+            field(sb, "system", system);
+            field(sb, "host_name", hostName);
+            field(sb, "host_ipv4", hostIpv4);
+            field(sb, "match_url", route);
+            field(sb, "status_code", statusCode);
+            sb.append("\"count\":").append(count).append(',');
+            sb.append("\"mean\":").append(count == 0 ? 0 : requestTimes.getTotal() / (double) count).append(',');
+            sb.append("\"p50\":").append(requestTimes.getValueAtPercentile(50)).append(',');
+            sb.append("\"p90\":").append(requestTimes.getValueAtPercentile(90)).append(',');
+            sb.append("\"p99\":").append(requestTimes.getValueAtPercentile(99)).append(',');
+            sb.append("\"max\":").append(requestTimes.getMax()).append(',');
+            sb.append("\"response_size\":").append(responseBytes.sum()).append(',');
+            synchronized (this) {
+                field(sb, "slowest_trace_id", slowestTraceId);
+            }
+            sb.append("\"interval\":").append(intervalSeconds).append(',');
+            sb.append("\"timestamp\":").append(timestamp);
+            sb.append('}');
+        }
+
+        private static void field(StringBuilder sb, String name, String value) {
+            AccessLogEncoder.writeString(sb, name);
+            sb.append(':');
+            AccessLogEncoder.writeString(sb, value);
+            sb.append(',');
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.zipkin.http;
+
+import com.megaease.easeagent.config.Config;
+import com.megaease.easeagent.config.ConfigUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Writes an access log in the same JSON schema as {@link RequestInfo} serialized by Jackson, a list of one
+ * object, straight into a buffer reused by each thread. Headers and queries are streamed from
+ * {@link AccessLogServerInfo} rather than copied into maps, and only those in the allowlists are written.
+ * <p>
+ * Allowlists are comma separated names, {@code *} for all. Header names are matched ignoring case.
+ */
+public class AccessLogEncoder {
+    public static final String HEADERS_KEY = "observability.metrics.access.headers";
+    public static final String QUERIES_KEY = "observability.metrics.access.queries";
+    static final String ALL = "*";
+
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+    private static final ThreadLocal<Buffer> BUFFERS = ThreadLocal.withInitial(Buffer::new);
+
+    /**
+     * Null for all
+     */
+    private volatile String[] headerAllowlist;
+    private volatile String[] queryAllowlist;
+
+    public AccessLogEncoder() {
+    }
+
+    public AccessLogEncoder(Config config) {
+        ConfigUtils.bindProp(HEADERS_KEY, config, Config::getString, this::setHeaderAllowlist, ALL);
+        ConfigUtils.bindProp(QUERIES_KEY, config, Config::getString, this::setQueryAllowlist, ALL);
+    }
+
+    public void setHeaderAllowlist(String names) {
+        this.headerAllowlist = parse(names);
+    }
+
+    public void setQueryAllowlist(String names) {
+        this.queryAllowlist = parse(names);
+    }
+
+    public String encode(RequestInfo info, AccessLogServerInfo serverInfo) {
+        Buffer buffer = BUFFERS.get();
+        StringBuilder sb = buffer.reset();
+        sb.append("[{");
+        // Jackson writes the properties renamed by @JsonProperty after the others
+        writeField(sb, "type", info.getType());
+        writeField(sb, "service", info.getService());
+        writeField(sb, "system", info.getSystem());
+        writeField(sb, "user", info.getUser());
+        writeName(sb, "beginTime").append(info.getBeginTime()).append(',');
+        writeName(sb, "beginCpuTime").append(info.getBeginCpuTime()).append(',');
+        writeName(sb, "cpuElapsedTime").append(info.getCpuElapsedTime()).append(',');
+        writeField(sb, "url", info.getUrl());
+        writeField(sb, "method", info.getMethod());
+        writeField(sb, "category", info.getCategory());
+        writeName(sb, "headers");
+        if (info.getHeaders() != null) {
+            writeMap(sb, info.getHeaders());
+        } else {
+            sb.append('{');
+            serverInfo.forEachHeader(buffer.headerWriter(headerAllowlist));
+            endObject(sb);
+        }
+        sb.append(',');
+        writeName(sb, "queries");
+        if (info.getQueries() != null) {
+            writeMap(sb, info.getQueries());
+        } else {
+            sb.append('{');
+            serverInfo.forEachQuery(buffer.queryWriter(queryAllowlist));
+            endObject(sb);
+        }
+        sb.append(',');
+        writeName(sb, "timestamp").append(info.getTimestamp()).append(',');
+        writeField(sb, "span_id", info.getSpanId());
+        writeField(sb, "trace_id", info.getTraceId());
+        writeField(sb, "pspan_id", info.getParentSpanId());
+        writeField(sb, "client_ip", info.getClientIP());
+        writeName(sb, "response_size").append(info.getResponseSize()).append(',');
+        writeName(sb, "request_time").append(info.getRequestTime()).append(',');
+        writeField(sb, "status_code", info.getStatusCode());
+        writeField(sb, "host_name", info.getHostName());
+        writeField(sb, "host_ipv4", info.getHostIpv4());
+        writeName(sb, "match_url");
+        writeString(sb, info.getMatchUrl());
+        sb.append("}]");
+        return buffer.release();
+    }
+
+    private static void writeMap(StringBuilder sb, Map<String, String> map) {
+        sb.append('{');
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            writeField(sb, entry.getKey(), entry.getValue());
+        }
+        endObject(sb);
+    }
+
+    private static void endObject(StringBuilder sb) {
+        int last = sb.length() - 1;
+        if (sb.charAt(last) == ',') {
+            sb.setCharAt(last, '}');
+        } else {
+            sb.append('}');
+        }
+    }
+
+    private static void writeField(StringBuilder sb, String name, String value) {
+        writeName(sb, name);
+        writeString(sb, value);
+        sb.append(',');
+    }
+
+    private static StringBuilder writeName(StringBuilder sb, String name) {
+        writeString(sb, name);
+        return sb.append(':');
+    }
+
+    /**
+     * Escape as Jackson does by default
+     */
+    static void writeString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\b':
+                    sb.append("\\b");
+                    break;
+                case '\f':
+                    sb.append("\\f");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private static String[] parse(String names) {
+        if (names == null || names.trim().equals(ALL)) {
+            return null;
+        }
+        List<String> list = new ArrayList<>();
+        for (String name : names.split(",")) {
+            if (!name.trim().isEmpty()) {
+                list.add(name.trim());
+            }
+        }
+        return list.toArray(new String[0]);
+    }
+
+    private static boolean allowed(String[] allowlist, String name, boolean ignoreCase) {
+        if (allowlist == null) {
+            return true;
+        }
+        for (String allowed : allowlist) {
+            if (ignoreCase ? allowed.equalsIgnoreCase(name) : allowed.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Buffer {
+        private StringBuilder sb = new StringBuilder(1024);
+        private final List<String> written = new ArrayList<>();
+        private String[] allowlist;
+
+        private final BiConsumer<String, String> headerWriter = (name, value) -> {
+            if (allowed(allowlist, name, true)) {
+                writeField(sb, name, value);
+            }
+        };
+
+        /**
+         * The first value of a query name wins, as {@code ServletUtils.getQueries4SingleValue} does
+         */
+        private final BiConsumer<String, String> queryWriter = (name, value) -> {
+            if (allowed(allowlist, name, false) && !written.contains(name)) {
+                written.add(name);
+                writeField(sb, name, value);
+            }
+        };
+
+        StringBuilder reset() {
+            sb.setLength(0);
+            return sb;
+        }
+
+        BiConsumer<String, String> headerWriter(String[] allowlist) {
+            this.allowlist = allowlist;
+            return headerWriter;
+        }
+
+        BiConsumer<String, String> queryWriter(String[] allowlist) {
+            this.allowlist = allowlist;
+            written.clear();
+            return queryWriter;
+        }
+
+        String release() {
+            String s = sb.toString();
+            written.clear();
+            if (sb.capacity() > MAX_RETAINED_CAPACITY) {
+                sb = new StringBuilder(1024);
+            }
+            return s;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package com.megaease.easeagent.zipkin.http;
 
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public interface AccessLogServerInfo {
 
@@ -39,6 +40,20 @@ public interface AccessLogServerInfo {
 
     String getStatusCode();
 
+    /**
+     * Pass each header name and its first value to consumer, without copying them into a map.
+     */
+    default void forEachHeader(BiConsumer<String, String> consumer) {
+        findHeaders().forEach(consumer);
+    }
+
+    /**
+     * Pass each query name and its value to consumer in order, a name may be passed more than once.
+     */
+    default void forEachQuery(BiConsumer<String, String> consumer) {
+        findQueries().forEach(consumer);
+    }
+
     default String getClientIP() {
         return AccessLogServerInfo.getRemoteHost(this);
     }
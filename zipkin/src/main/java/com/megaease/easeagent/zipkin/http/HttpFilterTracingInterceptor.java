@@ -35,6 +35,8 @@ import com.megaease.easeagent.core.interceptor.AgentInterceptorChain;
 import com.megaease.easeagent.core.interceptor.MethodInfo;
 import com.megaease.easeagent.core.utils.ContextUtils;
 import com.megaease.easeagent.core.utils.ServletUtils;
+import com.megaease.easeagent.core.utils.ThreadResourceUsage;
+import com.megaease.easeagent.report.telemetry.AgentFlightRecorder;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -46,7 +48,10 @@ public class HttpFilterTracingInterceptor implements AgentInterceptor {
     private final HttpServerHandler<HttpServerRequest, HttpServerResponse> httpServerHandler;
     private static final String SCOPE_CONTEXT_KEY = HttpFilterTracingInterceptor.class.getName() + "-Tracer.SpanInScope";
     private static final String SEND_HANDLED_KEY = "brave.servlet.TracingFilter$SendHandled";
+    private static final String FLIGHT_EVENT_KEY = HttpFilterTracingInterceptor.class.getName() + "-FlightEvent";
     public static final String ENABLE_KEY = "observability.tracings.request.enabled";
+    public static final String THREAD_CPU_TAG = "thread.cpu.nanos";
+    public static final String THREAD_ALLOCATED_TAG = "thread.allocated.bytes";
     private final ServletRuntime servletRuntime = ServletRuntime.get();
     private final Config config;
 
@@ -73,6 +78,11 @@ public class HttpFilterTracingInterceptor implements AgentInterceptor {
             return;
         }
 
+        Object flightEvent = AgentFlightRecorder.beginRequest();
+        if (flightEvent != null) {
+            context.put(FLIGHT_EVENT_KEY, flightEvent);
+        }
+        ThreadResourceUsage.begin(context);
         HttpServerRequest requestWrapper = HttpServletRequestWrapper.create(httpServletRequest);
         span = httpServerHandler.handleReceive(requestWrapper);
         httpServletRequest.setAttribute(ContextCons.SPAN, span);
@@ -102,8 +112,15 @@ public class HttpFilterTracingInterceptor implements AgentInterceptor {
                 this.servletRuntime.handleAsync(this.httpServerHandler, httpServletRequest, response, span);
             } else {
                 HttpServerResponse responseWrapper = HttpServletResponseWrapper.create(httpServletRequest, httpServletResponse, methodInfo.getThrowable());
-                span.tag("http.route", ServletUtils.getHttpRouteAttributeFromRequest(httpServletRequest));
+                String route = ServletUtils.getHttpRouteAttributeFromRequest(httpServletRequest);
+                span.tag("http.route", route);
+                tagThreadUsage(span, ThreadResourceUsage.end(context));
                 httpServerHandler.handleSend(responseWrapper, span);
+                Object flightEvent = context.get(FLIGHT_EVENT_KEY);
+                if (flightEvent != null) {
+                    AgentFlightRecorder.commitRequest(flightEvent, span.context().traceIdString(),
+                            httpServletRequest.getMethod(), route, responseWrapper.statusCode());
+                }
             }
             return chain.doAfter(methodInfo, context);
         } finally {
@@ -111,6 +128,18 @@ public class HttpFilterTracingInterceptor implements AgentInterceptor {
         }
     }
 
+    private static void tagThreadUsage(Span span, ThreadResourceUsage usage) {
+        if (usage == null) {
+            return;
+        }
+        if (usage.getCpuNanos() >= 0) {
+            span.tag(THREAD_CPU_TAG, String.valueOf(usage.getCpuNanos()));
+        }
+        if (usage.getAllocatedBytes() >= 0) {
+            span.tag(THREAD_ALLOCATED_TAG, String.valueOf(usage.getAllocatedBytes()));
+        }
+    }
+
     static final class SendHandled extends AtomicBoolean {
     }
 }
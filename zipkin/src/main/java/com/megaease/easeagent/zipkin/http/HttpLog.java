@@ -19,14 +19,17 @@ package com.megaease.easeagent.zipkin.http;
 
 import brave.Span;
 import com.megaease.easeagent.common.HostAddress;
-import com.megaease.easeagent.core.utils.JsonUtil;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
-import java.util.List;
-
 @Slf4j
 public class HttpLog {
+    private final AccessLogEncoder encoder;
+    private final AccessLogAggregator aggregator;
+
+    public HttpLog(AccessLogEncoder encoder, AccessLogAggregator aggregator) {
+        this.encoder = encoder;
+        this.aggregator = aggregator;
+    }
 
     public RequestInfo prepare(String system, String serviceName, Long beginTime, Span span, AccessLogServerInfo serverInfo) {
         RequestInfo requestInfo = new RequestInfo();
@@ -36,9 +39,7 @@ public class HttpLog {
         requestInfo.setHostIpv4(HostAddress.getHostIpv4());
         requestInfo.setUrl(serverInfo.getMethod() + " " + serverInfo.getRequestURI());
         requestInfo.setMethod(serverInfo.getMethod());
-        requestInfo.setHeaders(serverInfo.findHeaders());
         requestInfo.setBeginTime(beginTime);
-        requestInfo.setQueries(serverInfo.findQueries());
         requestInfo.setClientIP(serverInfo.getClientIP());
         requestInfo.setBeginCpuTime(System.nanoTime());
         requestInfo.setTraceId(span.context().traceIdString());
@@ -47,7 +48,21 @@ public class HttpLog {
         return requestInfo;
     }
 
+    /**
+     * Report the access log of a finished request to the aggregator, which decides whether to report the record.
+     */
+    public void report(RequestInfo requestInfo, boolean success, Long beginTime, AccessLogServerInfo serverInfo) {
+        complete(requestInfo, success, beginTime, serverInfo);
+        aggregator.report(requestInfo, () -> encoder.encode(requestInfo, serverInfo));
+    }
+
     public String getLogString(RequestInfo requestInfo, boolean success, Long beginTime, AccessLogServerInfo serverInfo) {
+        complete(requestInfo, success, beginTime, serverInfo);
+        // Headers and queries are written by encoder from server info
+        return encoder.encode(requestInfo, serverInfo);
+    }
+
+    private void complete(RequestInfo requestInfo, boolean success, Long beginTime, AccessLogServerInfo serverInfo) {
         requestInfo.setStatusCode(serverInfo.getStatusCode());
         if (!success) {
             requestInfo.setStatusCode("500");
@@ -57,9 +72,5 @@ public class HttpLog {
         requestInfo.setResponseSize(serverInfo.getResponseBufferSize());
         requestInfo.setMatchUrl(serverInfo.getMatchURL());
         requestInfo.setTimestamp(System.currentTimeMillis());
-        List<RequestInfo> list = new ArrayList<>(1);
-        list.add(requestInfo);
-        String logString = JsonUtil.toJson(list);
-        return logString;
     }
 }
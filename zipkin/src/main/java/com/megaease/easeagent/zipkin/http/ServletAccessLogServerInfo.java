@@ -26,6 +26,7 @@ import javax.servlet.http.HttpServletResponse;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class ServletAccessLogServerInfo implements AccessLogServerInfo {
 
@@ -87,6 +88,20 @@ public class ServletAccessLogServerInfo implements AccessLogServerInfo {
         return ServletUtils.getQueries4SingleValue(request);
     }
 
+    @Override
+    public void forEachHeader(BiConsumer<String, String> consumer) {
+        final Enumeration<String> headerNames = request.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+            final String key = headerNames.nextElement();
+            consumer.accept(key, request.getHeader(key));
+        }
+    }
+
+    @Override
+    public void forEachQuery(BiConsumer<String, String> consumer) {
+        ServletUtils.forEachQuery(request.getQueryString(), consumer);
+    }
+
     @Override
     public String getStatusCode() {
         return String.valueOf(response.getStatus());
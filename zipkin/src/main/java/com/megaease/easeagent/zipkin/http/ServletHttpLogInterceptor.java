@@ -38,17 +38,15 @@ public class ServletHttpLogInterceptor extends HttpServletInterceptor {
 
     private final Config config;
 
-    private final HttpLog httpLog = new HttpLog();
-
-    private final Consumer<String> reportConsumer;
+    private final HttpLog httpLog;
 
     private final static String PROCESSED_BEFORE_KEY = ServletHttpLogInterceptor.class.getName() + ".processedBefore";
 
     private final static String PROCESSED_AFTER_KEY = ServletHttpLogInterceptor.class.getName() + ".processedAfter";
 
     public ServletHttpLogInterceptor(Config config, Consumer<String> reportConsumer) {
-        this.reportConsumer = reportConsumer;
         this.config = config;
+        this.httpLog = new HttpLog(new AccessLogEncoder(config), new AccessLogAggregator(config, reportConsumer));
     }
 
     public AccessLogServerInfo serverInfo(HttpServletRequest request, HttpServletResponse response) {
@@ -81,8 +79,7 @@ public class ServletHttpLogInterceptor extends HttpServletInterceptor {
         Long beginTime = ContextUtils.getBeginTime(context);
         RequestInfo requestInfo = (RequestInfo) httpServletRequest.getAttribute(RequestInfo.class.getName());
         AccessLogServerInfo serverInfo = this.serverInfo(httpServletRequest, httpServletResponse);
-        String logString = this.httpLog.getLogString(requestInfo, methodInfo.isSuccess(), beginTime, serverInfo);
-        reportConsumer.accept(logString);
+        this.httpLog.report(requestInfo, methodInfo.isSuccess(), beginTime, serverInfo);
     }
 
     @Override
@@ -25,8 +25,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.web.server.ServerWebExchange;
 
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 public class SpringGatewayAccessLogServerInfo implements AccessLogServerInfo {
 
@@ -85,6 +87,20 @@ public class SpringGatewayAccessLogServerInfo implements AccessLogServerInfo {
         return exchange.getRequest().getQueryParams().toSingleValueMap();
     }
 
+    @Override
+    public void forEachHeader(BiConsumer<String, String> consumer) {
+        exchange.getRequest().getHeaders().forEach((name, values) -> consumer.accept(name, first(values)));
+    }
+
+    @Override
+    public void forEachQuery(BiConsumer<String, String> consumer) {
+        exchange.getRequest().getQueryParams().forEach((name, values) -> consumer.accept(name, first(values)));
+    }
+
+    private static String first(List<String> values) {
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
     @Override
     public String getStatusCode() {
         HttpStatus rawStatusCode = exchange.getResponse().getStatusCode();
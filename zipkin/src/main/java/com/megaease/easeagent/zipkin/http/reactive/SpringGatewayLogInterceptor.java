@@ -25,6 +25,8 @@ import com.megaease.easeagent.core.interceptor.AgentInterceptor;
 import com.megaease.easeagent.core.interceptor.AgentInterceptorChain;
 import com.megaease.easeagent.core.interceptor.MethodInfo;
 import com.megaease.easeagent.core.utils.ContextUtils;
+import com.megaease.easeagent.zipkin.http.AccessLogAggregator;
+import com.megaease.easeagent.zipkin.http.AccessLogEncoder;
 import com.megaease.easeagent.zipkin.http.AccessLogServerInfo;
 import com.megaease.easeagent.zipkin.http.HttpLog;
 import com.megaease.easeagent.zipkin.http.RequestInfo;
@@ -35,15 +37,14 @@ import java.util.function.Consumer;
 
 public class SpringGatewayLogInterceptor implements AgentInterceptor {
     public static final String ENABLE_KEY = "observability.metrics.access.enabled";
-    private final Consumer<String> reportConsumer;
 
-    private final HttpLog httpLog = new HttpLog();
+    private final HttpLog httpLog;
 
     private final Config config;
 
     public SpringGatewayLogInterceptor(Config config, Consumer<String> reportConsumer) {
-        this.reportConsumer = reportConsumer;
         this.config = config;
+        this.httpLog = new HttpLog(new AccessLogEncoder(config), new AccessLogAggregator(config, reportConsumer));
     }
 
     public AccessLogServerInfo serverInfo(ServerWebExchange exchange) {
@@ -75,8 +76,7 @@ public class SpringGatewayLogInterceptor implements AgentInterceptor {
         }
         Long beginTime = ContextUtils.getBeginTime(context);
         AccessLogServerInfo serverInfo = this.serverInfo(exchange);
-        String logString = this.httpLog.getLogString(requestInfo, methodInfo.isSuccess(), beginTime, serverInfo);
-        reportConsumer.accept(logString);
+        this.httpLog.report(requestInfo, methodInfo.isSuccess(), beginTime, serverInfo);
         return chain.doAfter(methodInfo, context);
     }
 }
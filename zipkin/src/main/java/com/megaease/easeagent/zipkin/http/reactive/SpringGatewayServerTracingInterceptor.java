@@ -30,6 +30,7 @@ import com.megaease.easeagent.core.interceptor.AgentInterceptor;
 import com.megaease.easeagent.core.interceptor.AgentInterceptorChain;
 import com.megaease.easeagent.core.interceptor.MethodInfo;
 import com.megaease.easeagent.core.utils.ContextUtils;
+import com.megaease.easeagent.report.telemetry.AgentFlightRecorder;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpRequest;
@@ -45,6 +46,7 @@ public class SpringGatewayServerTracingInterceptor implements AgentInterceptor {
 
     private final HttpServerHandler<HttpServerRequest, HttpServerResponse> httpServerHandler;
     private static final String SPAN_CONTEXT_KEY = SpringGatewayServerTracingInterceptor.class.getName() + "-Span";
+    private static final String FLIGHT_EVENT_KEY = SpringGatewayServerTracingInterceptor.class.getName() + "-FlightEvent";
     public static final String ENABLE_KEY = "observability.tracings.request.enabled";
     private final Config config;
 
@@ -61,6 +63,10 @@ public class SpringGatewayServerTracingInterceptor implements AgentInterceptor {
             return;
         }
         ServerWebExchange exchange = (ServerWebExchange) methodInfo.getArgs()[0];
+        Object flightEvent = AgentFlightRecorder.beginRequest();
+        if (flightEvent != null) {
+            context.put(FLIGHT_EVENT_KEY, flightEvent);
+        }
         FluxHttpServerRequest httpServerRequest = new FluxHttpServerRequest(exchange.getRequest());
         Span span = this.httpServerHandler.handleReceive(httpServerRequest);
         context.put(SPAN_CONTEXT_KEY, span);
@@ -91,6 +97,11 @@ public class SpringGatewayServerTracingInterceptor implements AgentInterceptor {
         }
         HttpServerResponse response = new FluxHttpServerResponse(httpServerRequest, exchange.getResponse(), route);
         this.httpServerHandler.handleSend(response, span);
+        Object flightEvent = context.get(FLIGHT_EVENT_KEY);
+        if (flightEvent != null) {
+            AgentFlightRecorder.commitRequest(flightEvent, span.context().traceIdString(),
+                    exchange.getRequest().getMethodValue(), route, response.statusCode());
+        }
         exchange.getAttributes().remove(GatewayCons.SPAN_KEY);
         return chain.doAfter(methodInfo, context);
     }
@@ -25,9 +25,9 @@ import brave.http.HttpClientResponse;
 import brave.http.HttpTracing;
 import com.megaease.easeagent.common.config.SwitchUtil;
 import com.megaease.easeagent.config.Config;
-import com.megaease.easeagent.core.interceptor.AgentInterceptor;
 import com.megaease.easeagent.core.interceptor.AgentInterceptorChain;
 import com.megaease.easeagent.core.interceptor.MethodInfo;
+import com.megaease.easeagent.core.interceptor.ReactiveAgentInterceptor;
 import com.megaease.easeagent.core.utils.ContextUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.reactive.function.client.ClientRequest;
@@ -36,7 +36,7 @@ import org.springframework.web.reactive.function.client.ClientResponse;
 import java.util.List;
 import java.util.Map;
 
-public class WebClientTracingInterceptor implements AgentInterceptor {
+public class WebClientTracingInterceptor implements ReactiveAgentInterceptor {
 
     private static final String SPAN_KEY = WebClientTracingInterceptor.class.getName() + "-SPAN";
     public static final String ENABLE_KEY = "observability.tracings.remoteInvoke.enabled";
@@ -64,6 +64,12 @@ public class WebClientTracingInterceptor implements AgentInterceptor {
         chain.doBefore(methodInfo, context);
     }
 
+    @Override
+    public boolean materializeResults() {
+        // The exchange emits a single response
+        return true;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public Object after(MethodInfo methodInfo, Map<Object, Object> context, AgentInterceptorChain chain) {
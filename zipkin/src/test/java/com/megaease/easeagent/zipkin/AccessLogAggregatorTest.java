@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.zipkin;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.megaease.easeagent.config.Configs;
+import com.megaease.easeagent.core.utils.JsonUtil;
+import com.megaease.easeagent.zipkin.http.AccessLogAggregator;
+import com.megaease.easeagent.zipkin.http.RequestInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class AccessLogAggregatorTest {
+    private static final TypeReference<List<Map<String, Object>>> LIST_OF_MAP = new TypeReference<List<Map<String, Object>>>() {
+    };
+
+    private final List<String> reported = new ArrayList<>();
+
+    @Test
+    public void reportEveryRecordByDefault() {
+        AccessLogAggregator aggregator = new AccessLogAggregator(new Configs(new HashMap<>()), reported::add);
+        Assert.assertFalse(aggregator.isAggregate());
+        for (int i = 1; i <= 10; i++) {
+            report(aggregator, request("GET /users", "200", i, i));
+        }
+        aggregator.flush();
+        Assert.assertEquals(10, reported.size());
+    }
+
+    @Test
+    public void summarizeSyntheticStream() {
+        AccessLogAggregator aggregator = new AccessLogAggregator(configs("aggregate", "3", "0"), reported::add);
+        AtomicInteger encoded = new AtomicInteger();
+        // 1000 successes of 1..1000ms in random order on one route, 10 errors on another, 100 successes of 5ms without route
+        List<Integer> latencies = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            latencies.add(i);
+        }
+        Collections.shuffle(latencies, new Random(7));
+        for (int latency : latencies) {
+            RequestInfo info = request("GET /users/{id}", "200", latency, 100);
+            aggregator.report(info, () -> {
+                encoded.incrementAndGet();
+                return record(info);
+            });
+        }
+        for (int i = 1; i <= 10; i++) {
+            report(aggregator, request("POST /orders", "503", 2000 + i, 10));
+        }
+        for (int i = 1; i <= 100; i++) {
+            report(aggregator, request("", "200", 5, 1));
+        }
+        // Only errors are reported at once
+        Assert.assertEquals(10, reported.size());
+        Assert.assertTrue("records encoded " + encoded.get(), encoded.get() < 100);
+        reported.clear();
+
+        aggregator.flush();
+        Assert.assertEquals(2, reported.size());
+        Map<String, Map<String, Object>> summaries = JsonUtil.toObject(reported.get(0), LIST_OF_MAP).stream()
+                .collect(Collectors.toMap(m -> m.get("match_url") + " " + m.get("status_code"), m -> m));
+        Assert.assertEquals(3, summaries.size());
+
+        Map<String, Object> users = summaries.get("GET /users/{id} 200");
+        Assert.assertEquals("access-log-summary", users.get("type"));
+        Assert.assertEquals("demo-service", users.get("service"));
+        Assert.assertEquals(1000, users.get("count"));
+        Assert.assertEquals(500.5, (Double) users.get("mean"), 0.001);
+        assertNear(500, users.get("p50"));
+        assertNear(900, users.get("p90"));
+        assertNear(990, users.get("p99"));
+        Assert.assertEquals(1000, users.get("max"));
+        Assert.assertEquals(100000, users.get("response_size"));
+        Assert.assertEquals(traceId(1000), users.get("slowest_trace_id"));
+
+        Map<String, Object> orders = summaries.get("POST /orders 503");
+        Assert.assertEquals(10, orders.get("count"));
+        Assert.assertEquals(2010, orders.get("max"));
+        Assert.assertEquals(traceId(2010), orders.get("slowest_trace_id"));
+
+        Map<String, Object> unmatched = summaries.get("unmatched 200");
+        Assert.assertEquals(100, unmatched.get("count"));
+        Assert.assertEquals(5, unmatched.get("p99"));
+
+        // The slowest successes are kept as full records, the slowest first
+        List<Map<String, Object>> slowest = JsonUtil.toObject(reported.get(1), LIST_OF_MAP);
+        Assert.assertEquals(Arrays.asList(traceId(1000), traceId(999), traceId(998)),
+                slowest.stream().map(m -> m.get("trace_id")).collect(Collectors.toList()));
+
+        // A new interval starts empty
+        reported.clear();
+        aggregator.flush();
+        Assert.assertTrue(reported.isEmpty());
+    }
+
+    @Test
+    public void sampleRecords() {
+        AccessLogAggregator aggregator = new AccessLogAggregator(configs("aggregate", "0", "1"), reported::add);
+        for (int i = 1; i <= 10; i++) {
+            report(aggregator, request("GET /users", "200", i, i));
+        }
+        Assert.assertEquals(10, reported.size());
+        reported.clear();
+        aggregator.flush();
+        Assert.assertEquals(1, reported.size());
+    }
+
+    @Test
+    public void switchModeAtRuntime() {
+        Configs configs = configs("record", "3", "0");
+        AccessLogAggregator aggregator = new AccessLogAggregator(configs, reported::add);
+        report(aggregator, request("GET /users", "200", 1, 1));
+        Assert.assertEquals(1, reported.size());
+
+        configs.updateConfigs(Collections.singletonMap(AccessLogAggregator.MODE_KEY, "aggregate"));
+        Assert.assertTrue(aggregator.isAggregate());
+        report(aggregator, request("GET /users", "200", 1, 1));
+        Assert.assertEquals(1, reported.size());
+    }
+
+    @Test
+    public void loseNoRequestFlushedConcurrently() throws InterruptedException {
+        List<String> flushed = Collections.synchronizedList(new ArrayList<>());
+        AccessLogAggregator aggregator = new AccessLogAggregator(configs("aggregate", "0", "0"), flushed::add);
+        int threads = 4;
+        int requests = 10000;
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread writer = new Thread(() -> {
+                for (int i = 1; i <= requests; i++) {
+                    report(aggregator, request("GET /users", "200", i, 1));
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+        for (Thread writer : writers) {
+            while (writer.isAlive()) {
+                aggregator.flush();
+            }
+            writer.join();
+        }
+        aggregator.flush();
+
+        long count = 0;
+        long responseSize = 0;
+        synchronized (flushed) {
+            for (String summaries : flushed) {
+                for (Map<String, Object> summary : JsonUtil.toObject(summaries, LIST_OF_MAP)) {
+                    count += ((Number) summary.get("count")).longValue();
+                    responseSize += ((Number) summary.get("response_size")).longValue();
+                }
+            }
+        }
+        Assert.assertEquals(threads * requests, count);
+        Assert.assertEquals(threads * requests, responseSize);
+    }
+
+    private static void assertNear(long expected, Object actual) {
+        long value = ((Number) actual).longValue();
+        Assert.assertTrue(expected + " != " + value, Math.abs(value - expected) <= expected * 0.07);
+    }
+
+    private void report(AccessLogAggregator aggregator, RequestInfo info) {
+        aggregator.report(info, () -> record(info));
+    }
+
+    private static Configs configs(String mode, String slowest, String sampleRatio) {
+        Map<String, String> map = new HashMap<>();
+        map.put(AccessLogAggregator.MODE_KEY, mode);
+        map.put(AccessLogAggregator.SLOWEST_KEY, slowest);
+        map.put(AccessLogAggregator.SAMPLE_RATIO_KEY, sampleRatio);
+        return new Configs(map);
+    }
+
+    private static String traceId(long requestTime) {
+        return String.format("%016x", requestTime);
+    }
+
+    private static String record(RequestInfo info) {
+        return JsonUtil.toJson(Collections.singletonList(info));
+    }
+
+    private static RequestInfo request(String matchUrl, String statusCode, long requestTime, int responseSize) {
+        RequestInfo info = new RequestInfo();
+        info.setTraceId(traceId(requestTime));
+        info.setService("demo-service");
+        info.setSystem("demo-system");
+        info.setMatchUrl(matchUrl);
+        info.setStatusCode(statusCode);
+        info.setRequestTime(requestTime);
+        info.setResponseSize(responseSize);
+        return info;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.zipkin;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.megaease.easeagent.core.utils.JsonUtil;
+import com.megaease.easeagent.zipkin.http.AccessLogEncoder;
+import com.megaease.easeagent.zipkin.http.RequestInfo;
+import com.megaease.easeagent.zipkin.http.ServletAccessLogServerInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+public class AccessLogEncoderTest {
+    private static final TypeReference<List<Map<String, Object>>> LIST_OF_MAP = new TypeReference<List<Map<String, Object>>>() {
+    };
+
+    @Test
+    public void sameAsJackson() {
+        RequestInfo info = requestInfo();
+        info.setParentSpanId(null);
+        info.setUrl("GET /users?name=\"tab\t\u0001\"");
+        info.setHeaders(Collections.singletonMap("x-quote", "a\"b\\c\n"));
+        info.setQueries(new HashMap<>());
+
+        Assert.assertEquals(JsonUtil.toJson(Collections.singletonList(info)),
+                new AccessLogEncoder().encode(info, serverInfo("", new String[0])));
+    }
+
+    @Test
+    public void streamHeadersAndQueries() {
+        ServletAccessLogServerInfo serverInfo = serverInfo("name=John%20Doe&page=2&page=3&flag&empty=&a+b=c",
+                "Host", "localhost", "User-Agent", "curl/7.64.1", "Accept", "*/*");
+        RequestInfo info = requestInfo();
+        String json = new AccessLogEncoder().encode(info, serverInfo);
+
+        info.setHeaders(serverInfo.findHeaders());
+        info.setQueries(serverInfo.findQueries());
+        String expected = JsonUtil.toJson(Collections.singletonList(info));
+        Assert.assertEquals(JsonUtil.toObject(expected, LIST_OF_MAP), JsonUtil.toObject(json, LIST_OF_MAP));
+    }
+
+    @Test
+    public void allowlist() {
+        ServletAccessLogServerInfo serverInfo = serverInfo("name=John&page=2",
+                "Host", "localhost", "User-Agent", "curl/7.64.1", "Accept", "*/*");
+        AccessLogEncoder encoder = new AccessLogEncoder();
+        encoder.setHeaderAllowlist("user-agent, accept");
+        encoder.setQueryAllowlist("page");
+
+        Map<String, Object> log = JsonUtil.toObject(encoder.encode(requestInfo(), serverInfo), LIST_OF_MAP).get(0);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("User-Agent", "curl/7.64.1");
+        headers.put("Accept", "*/*");
+        Assert.assertEquals(headers, log.get("headers"));
+        Assert.assertEquals(Collections.singletonMap("page", "2"), log.get("queries"));
+
+        encoder.setHeaderAllowlist("");
+        encoder.setQueryAllowlist("*");
+        log = JsonUtil.toObject(encoder.encode(requestInfo(), serverInfo), LIST_OF_MAP).get(0);
+        Assert.assertEquals(Collections.emptyMap(), log.get("headers"));
+        Assert.assertEquals(2, ((Map<?, ?>) log.get("queries")).size());
+    }
+
+    @Test
+    public void allocateLessThanJackson() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ServletAccessLogServerInfo serverInfo = serverInfo("name=John&page=2&size=20",
+                "Host", "localhost:8080", "User-Agent", "Mozilla/5.0 (X11; Linux x86_64)", "Accept", "application/json",
+                "Accept-Encoding", "gzip, deflate", "Connection", "keep-alive", "X-Request-Id", "4bf92f3577b34da6a3ce929d0e0e4736");
+        AccessLogEncoder encoder = new AccessLogEncoder();
+        encoder.setHeaderAllowlist("User-Agent,X-Request-Id");
+        int n = 20000;
+        long jackson = 0;
+        long streaming = 0;
+        for (int round = 0; round < 2; round++) {
+            // The first round warms up
+            long begin = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < n; i++) {
+                RequestInfo info = requestInfo();
+                info.setHeaders(serverInfo.findHeaders());
+                info.setQueries(serverInfo.findQueries());
+                JsonUtil.toJson(Collections.singletonList(info));
+            }
+            long middle = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int i = 0; i < n; i++) {
+                encoder.encode(requestInfo(), serverInfo);
+            }
+            jackson = middle - begin;
+            streaming = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - middle;
+        }
+        Assert.assertTrue("jackson: " + jackson / n + " bytes, streaming: " + streaming / n + " bytes",
+                streaming * 2 < jackson);
+    }
+
+    private static RequestInfo requestInfo() {
+        RequestInfo info = new RequestInfo();
+        info.setSpanId("0a1b2c3d4e5f6a7b");
+        info.setTraceId("463ac35c9f6413ad");
+        info.setParentSpanId("463ac35c9f6413ad");
+        info.setService("demo-service");
+        info.setSystem("demo-system");
+        info.setClientIP("127.0.0.1");
+        info.setResponseSize(8192);
+        info.setBeginTime(1600000000000L);
+        info.setBeginCpuTime(123456789L);
+        info.setRequestTime(12);
+        info.setCpuElapsedTime(12000000L);
+        info.setUrl("GET /users");
+        info.setMethod("GET");
+        info.setStatusCode("200");
+        info.setHostName("host-1");
+        info.setHostIpv4("10.0.0.1");
+        info.setMatchUrl("GET /users");
+        info.setTimestamp(1600000000012L);
+        return info;
+    }
+
+    private static ServletAccessLogServerInfo serverInfo(String queryString, String... headers) {
+        Map<String, String> headerMap = new LinkedHashMap<>();
+        for (int i = 0; i < headers.length; i += 2) {
+            headerMap.put(headers[i], headers[i + 1]);
+        }
+        HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(AccessLogEncoderTest.class.getClassLoader(),
+                new Class[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getHeaderNames":
+                            return Collections.enumeration(headerMap.keySet());
+                        case "getHeader":
+                            return headerMap.get((String) args[0]);
+                        case "getQueryString":
+                            return queryString;
+                        default:
+                            return null;
+                    }
+                });
+        ServletAccessLogServerInfo serverInfo = new ServletAccessLogServerInfo();
+        serverInfo.load(request, null);
+        return serverInfo;
+    }
+}
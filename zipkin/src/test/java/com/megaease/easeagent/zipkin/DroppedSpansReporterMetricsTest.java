@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017, MegaEase
+ * All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.megaease.easeagent.zipkin;
+
+import org.junit.Assert;
+import org.junit.Test;
+import zipkin2.Call;
+import zipkin2.Span;
+import zipkin2.codec.Encoding;
+import zipkin2.reporter.AsyncReporter;
+import zipkin2.reporter.Sender;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DroppedSpansReporterMetricsTest {
+
+    @Test
+    public void forwardSpansOfRejectedMessages() {
+        AtomicInteger dropped = new AtomicInteger();
+        AsyncReporter<Span> reporter = AsyncReporter.builder(new RejectingSender())
+                .messageTimeout(0, TimeUnit.MILLISECONDS)
+                .metrics(new DroppedSpansReporterMetrics(dropped::addAndGet))
+                .build();
+        reporter.report(span("1"));
+        reporter.report(span("2"));
+        reporter.flush();
+        Assert.assertEquals(2, dropped.get());
+    }
+
+    private static Span span(String id) {
+        return Span.newBuilder().traceId(id).id(id).name("test").build();
+    }
+
+    private static class RejectingSender extends Sender {
+        @Override
+        public Encoding encoding() {
+            return Encoding.JSON;
+        }
+
+        @Override
+        public int messageMaxBytes() {
+            return 1024 * 1024;
+        }
+
+        @Override
+        public int messageSizeInBytes(List<byte[]> encodedSpans) {
+            return encoding().listSizeInBytes(encodedSpans);
+        }
+
+        @Override
+        public Call<Void> sendSpans(List<byte[]> encodedSpans) {
+            throw new RejectedExecutionException("too many messages in flight");
+        }
+    }
+}